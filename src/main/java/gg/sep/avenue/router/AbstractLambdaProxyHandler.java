@@ -22,26 +22,68 @@
 
 package gg.sep.avenue.router;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.Reader;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
 import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
 import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
+import org.apache.http.HttpStatus;
 
+import gg.sep.avenue.router.assets.StaticAsset;
+import gg.sep.avenue.router.assets.StaticAssets;
+import gg.sep.avenue.router.batch.BatchEndpoint;
+import gg.sep.avenue.router.cache.ETagGenerator;
+import gg.sep.avenue.router.cache.RequestCoalescer;
+import gg.sep.avenue.router.cache.ResponseCache;
+import gg.sep.avenue.router.compression.ResponseCompression;
+import gg.sep.avenue.router.core.MessageRoute;
 import gg.sep.avenue.router.core.Route;
+import gg.sep.avenue.router.core.RouteRequestMethod;
+import gg.sep.avenue.router.cors.CorsPolicy;
+import gg.sep.avenue.router.cors.PreflightIndex;
+import gg.sep.avenue.router.event.AlbCodec;
+import gg.sep.avenue.router.event.AlbRequest;
+import gg.sep.avenue.router.event.EventFormat;
+import gg.sep.avenue.router.event.HttpApiV2Codec;
+import gg.sep.avenue.router.event.HttpApiV2Request;
+import gg.sep.avenue.router.message.MessageCodec;
+import gg.sep.avenue.router.message.MessageEvent;
+import gg.sep.avenue.router.message.MessageRecord;
+import gg.sep.avenue.router.metrics.InitTimings;
+import gg.sep.avenue.router.metrics.InvocationListener;
+import gg.sep.avenue.router.metrics.InvocationRecord;
+import gg.sep.avenue.router.metrics.ResourceAccounting;
+import gg.sep.avenue.router.streaming.StreamingResponse;
 
 /**
  * Abstract implementation of {@link LambdaProxyHandler} that provides
@@ -52,6 +94,26 @@ import gg.sep.avenue.router.core.Route;
 @Log4j2
 public abstract class AbstractLambdaProxyHandler implements LambdaProxyHandler {
 
+    /**
+     * Whether any handler in this container (JVM) has been invoked yet.
+     */
+    private static final AtomicBoolean CONTAINER_INVOKED = new AtomicBoolean();
+
+    private static final Duration DEFAULT_TIMEOUT_MARGIN = Duration.ofMillis(250);
+
+    private static final int EVENT_BUFFER_SIZE = 8192;
+
+    private static final int DEFAULT_MESSAGE_PARALLELISM = 4;
+
+    private static final int DEFAULT_BLOCKING_ROUTE_THREADS = 32;
+
+    private static final long BLOCKING_ROUTE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final long constructionStartNanos = System.nanoTime();
+    private long constructionEndNanos = constructionStartNanos;
+    private long registerControllerNanos;
+    private long routeBuildNanos;
+
     @Getter(AccessLevel.PROTECTED)
     private ObjectMapper objectMapper;
 
@@ -61,6 +123,61 @@ public abstract class AbstractLambdaProxyHandler implements LambdaProxyHandler {
     @Getter(AccessLevel.PROTECTED)
     private Set<Route> registeredRoutes = ConcurrentHashMap.newKeySet();
 
+    @Getter(AccessLevel.PROTECTED)
+    private Set<MessageRoute> registeredMessageRoutes = ConcurrentHashMap.newKeySet();
+
+    @Getter(AccessLevel.PROTECTED)
+    private List<InvocationListener> invocationListeners = new CopyOnWriteArrayList<>();
+
+    private final List<InterceptorBinding> interceptorBindings = new CopyOnWriteArrayList<>();
+
+    private Thread listenerShutdownHook;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile ResourceAccounting resourceAccounting;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile Duration timeoutMargin = DEFAULT_TIMEOUT_MARGIN;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile ExecutorService blockingRouteExecutor;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile ResponseCompression responseCompression;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile ETagGenerator eTagGenerator;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile ResponseCache responseCache;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile RequestCoalescer requestCoalescer;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile BatchEndpoint batchEndpoint;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile StaticAssets staticAssets;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile CorsPolicy corsPolicy;
+
+    private volatile PreflightIndex preflightIndex;
+
+    @Getter(AccessLevel.PROTECTED)
+    private volatile ExecutorService messageExecutor = newMessageExecutor(DEFAULT_MESSAGE_PARALLELISM);
+
+    @Getter(AccessLevel.PROTECTED)
+    private final MessageCodec messageCodec;
+
+    private volatile boolean responseStreaming;
+
+    private final HttpApiV2Codec httpApiV2Codec;
+    private final AlbCodec albCodec;
+    private final byte[] timeoutPayload;
+    private final byte[] unavailablePayload;
+
     /**
      * Creates an instance of the class using the specified {@link ObjectMapper} class,
      * which might contain custom type adapters for your own needs.
@@ -69,6 +186,47 @@ public abstract class AbstractLambdaProxyHandler implements LambdaProxyHandler {
      */
     public AbstractLambdaProxyHandler(final ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
+        this.httpApiV2Codec = new HttpApiV2Codec(objectMapper);
+        this.albCodec = new AlbCodec(objectMapper);
+        this.messageCodec = new MessageCodec(objectMapper);
+        this.timeoutPayload = preSerialize(HttpStatus.SC_GATEWAY_TIMEOUT, "Gateway Timeout");
+        this.unavailablePayload = preSerialize(HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+    }
+
+    /**
+     * Serializes a simple response ahead of time, so that it can be sent without delay when the
+     * invocation is about to time out.
+     *
+     * @param status The status code of the response.
+     * @param body The body of the response.
+     * @return The serialized response payload.
+     */
+    private byte[] preSerialize(final int status, final String body) {
+        final AwsProxyResponse response = simpleResponse(status, body);
+        // single value headers too, so that the payload is valid for both API Gateway payload formats
+        final Map<String, String> headers = new HashMap<>();
+        response.getMultiValueHeaders().forEach((name, values) -> headers.put(name, values.get(0)));
+        response.setHeaders(headers);
+        try {
+            return objectMapper.writeValueAsBytes(response);
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize timeout responses", e);
+        }
+    }
+
+    /**
+     * Builds a simple HTML response, used for the timeout and unavailable responses.
+     *
+     * @param status The status code of the response.
+     * @param body The body of the response.
+     * @return The response.
+     */
+    private static AwsProxyResponse simpleResponse(final int status, final String body) {
+        return AwsResponseBuilder.newBuilder()
+            .status(status)
+            .html()
+            .stringBody(body)
+            .build();
     }
 
     /**
@@ -77,14 +235,23 @@ public abstract class AbstractLambdaProxyHandler implements LambdaProxyHandler {
      * <p>If more than one route is thrown which could possibly handle the event,
      * an {@link IllegalStateException} will be thrown.
      *
+     * <p>A {@code HEAD} request which no {@link HEAD} route handles is handled by the {@link GET}
+     * route of its path, if there is one, and the body of its response is not sent.
+     *
      * @param request The input request to be used to find the route.
      * @return Returns an optional containing the route if one was found,
      *         otherwise an empty optional.
      */
     protected Optional<Route> findRoute(final AwsProxyRequest request) {
-        final Set<Route> matchingRoutes = registeredRoutes.stream()
+        Set<Route> matchingRoutes = registeredRoutes.stream()
             .filter(route -> route.handlesRequest(request))
             .collect(Collectors.toSet());
+        if (matchingRoutes.isEmpty() && isHeadRequest(request)) {
+            matchingRoutes = registeredRoutes.stream()
+                .filter(route -> route.getRouteRequestMethod() == RouteRequestMethod.GET)
+                .filter(route -> route.handlesPath(request.getPath()))
+                .collect(Collectors.toSet());
+        }
 
         if (matchingRoutes.size() > 1) {
             final String msg = String.format(
@@ -96,6 +263,41 @@ public abstract class AbstractLambdaProxyHandler implements LambdaProxyHandler {
         return matchingRoutes.isEmpty() ? Optional.empty() : Optional.of(matchingRoutes.iterator().next());
     }
 
+    /**
+     * Checks whether the request is a {@code HEAD} request, whose response must not have a body.
+     *
+     * @param request The request.
+     * @return Returns {@code true} if the request's HTTP method is {@code HEAD}, otherwise {@code false}.
+     */
+    protected static boolean isHeadRequest(final AwsProxyRequest request) {
+        return request != null && "HEAD".equals(request.getHttpMethod());
+    }
+
+    /**
+     * Attempts to find the message route which handles a record of a non-HTTP event.
+     *
+     * <p>As for {@link #findRoute(AwsProxyRequest)}, if more than one message route handles the
+     * record, an {@link IllegalStateException} will be thrown.
+     *
+     * @param record The record to be used to find the message route.
+     * @return Returns an optional containing the message route if one was found,
+     *         otherwise an empty optional.
+     */
+    protected Optional<MessageRoute> findMessageRoute(final MessageRecord record) {
+        final Set<MessageRoute> matchingRoutes = registeredMessageRoutes.stream()
+            .filter(route -> route.handlesRecord(record))
+            .collect(Collectors.toSet());
+
+        if (matchingRoutes.size() > 1) {
+            final String msg = String.format(
+                "More than one message route handles record. id=%s, routes=%s",
+                record.getRecordId(), matchingRoutes);
+            log.error(msg);
+            throw new IllegalStateException(msg);
+        }
+        return matchingRoutes.isEmpty() ? Optional.empty() : Optional.of(matchingRoutes.iterator().next());
+    }
+
     /**
      * Register's a new {@link RouteController}, adding all of it's routes to the handler.
      *
@@ -117,12 +319,93 @@ public abstract class AbstractLambdaProxyHandler implements LambdaProxyHandler {
      *                            the controller.
      */
     protected void registerController(final RouteController controller, final boolean skipDuplicateRoutes) {
+        final long start = System.nanoTime();
+        try {
+            addControllerRoutes(controller, skipDuplicateRoutes);
+        } finally {
+            constructionEndNanos = System.nanoTime();
+            registerControllerNanos += constructionEndNanos - start;
+        }
+    }
+
+    /**
+     * Registers an interceptor for the routes whose method, or controller class, has an annotation.
+     * The interceptor is added to the chain of each such route, whether it is registered before or
+     * after the interceptor.
+     *
+     * @param interceptor The interceptor.
+     * @param annotation The annotation type, which must be retained at runtime.
+     */
+    protected void registerInterceptor(final RouteInterceptor interceptor,
+                                       final Class<? extends Annotation> annotation) {
+        if (annotation == null) {
+            throw new IllegalArgumentException("Interceptor annotation must not be null");
+        }
+        final Retention retention = annotation.getAnnotation(Retention.class);
+        if (retention == null || retention.value() != RetentionPolicy.RUNTIME) {
+            throw new IllegalArgumentException("Interceptor annotation must be retained at runtime: " + annotation);
+        }
+        addInterceptorBinding(new InterceptorBinding(interceptor, annotation, null));
+    }
+
+    /**
+     * Registers an interceptor for the routes whose path is, or is under, a path prefix, eg:
+     * {@code /admin}. The interceptor is added to the chain of each such route, whether it is
+     * registered before or after the interceptor.
+     *
+     * @param interceptor The interceptor.
+     * @param pathPrefix The path prefix, which must be absolute.
+     */
+    protected void registerInterceptor(final RouteInterceptor interceptor, final String pathPrefix) {
+        if (pathPrefix == null || !pathPrefix.startsWith("/")) {
+            throw new IllegalArgumentException("Interceptor path prefix must be absolute: " + pathPrefix);
+        }
+        addInterceptorBinding(new InterceptorBinding(interceptor, null, pathPrefix));
+    }
+
+    /**
+     * Adds an interceptor's binding, and resolves the interceptor chains of the registered routes again.
+     *
+     * @param binding The binding.
+     */
+    private void addInterceptorBinding(final InterceptorBinding binding) {
+        interceptorBindings.add(binding);
+        registeredRoutes.forEach(this::resolveInterceptors);
+    }
+
+    /**
+     * Resolves the chain of interceptors which apply to a route, in the order they were registered.
+     *
+     * @param route The route.
+     */
+    private void resolveInterceptors(final Route route) {
+        route.setInterceptors(interceptorBindings.stream()
+            .filter(binding -> binding.appliesTo(route))
+            .map(binding -> binding.interceptor)
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Adds all of the controller's routes to the handler, as described by
+     * {@link #registerController(RouteController, boolean)}.
+     *
+     * @param controller Instance of a route controller to register.
+     * @param skipDuplicateRoutes Whether to skip/ignore any duplicate {@link Route}'s found on
+     *                            the controller.
+     */
+    private void addControllerRoutes(final RouteController controller, final boolean skipDuplicateRoutes) {
         if (!registeredControllers.add(controller)) {
             log.info("Controller '{}' has already been registered. Skipping.", controller);
             return;
         }
 
-        for (final Route route : controller.getRoutes()) {
+        final long routeBuildStart = System.nanoTime();
+        final Set<Route> controllerRoutes = controller.getRoutes();
+        final Set<MessageRoute> controllerMessageRoutes = controller.getMessageRoutes();
+        routeBuildNanos += System.nanoTime() - routeBuildStart;
+        registeredMessageRoutes.addAll(controllerMessageRoutes);
+
+        for (final Route route : controllerRoutes) {
             if (!registeredRoutes.add(route)) {
                 if (skipDuplicateRoutes) {
                     log.info("Found duplicate route {}, skipping", route);
@@ -130,16 +413,460 @@ public abstract class AbstractLambdaProxyHandler implements LambdaProxyHandler {
                 }
                 throw new IllegalArgumentException("Controller contains duplicate routes. Route: " + route);
             }
+            resolveInterceptors(route);
+        }
+        preflightIndex = null;
+    }
+
+    /**
+     * Starts the {@link InvocationRecord} for a new invocation. If this is the first invocation
+     * of any handler in the container, the record is marked as a cold start and includes the
+     * handler's {@link InitTimings}.
+     *
+     * @param context Context of the Lambda event, which may be {@code null}.
+     * @return The record for the new invocation.
+     */
+    protected InvocationRecord startInvocationRecord(final Context context) {
+        final InvocationRecord record = new InvocationRecord(context);
+        if (!CONTAINER_INVOKED.get() && CONTAINER_INVOKED.compareAndSet(false, true)) {
+            record.markColdStart(getInitTimings());
+        }
+        return record;
+    }
+
+    /**
+     * Gets the breakdown of the time spent initializing this handler.
+     *
+     * @return The breakdown of the time spent initializing this handler.
+     */
+    public InitTimings getInitTimings() {
+        return InitTimings.builder()
+            .constructionNanos(constructionEndNanos - constructionStartNanos)
+            .registerControllerNanos(registerControllerNanos)
+            .routeBuildNanos(routeBuildNanos)
+            .controllerCount(registeredControllers.size())
+            .routeCount(registeredRoutes.size())
+            .build();
+    }
+
+    /**
+     * Resets the container's cold start state, so that the next invocation is treated as a cold start.
+     * Used only for testing.
+     */
+    static void resetColdStart() {
+        CONTAINER_INVOKED.set(false);
+    }
+
+    /**
+     * Registers an {@link InvocationListener} which will receive an {@link InvocationRecord}
+     * for each request handled once its response has been sent.
+     *
+     * <p>Registering the first listener also registers a single JVM shutdown hook for this handler,
+     * which calls {@link #flushInvocationListeners()} so that data buffered by the listeners for the
+     * current interval is not lost when the runtime shuts down.
+     *
+     * @param listener The listener to register.
+     */
+    public void addInvocationListener(final InvocationListener listener) {
+        invocationListeners.add(listener);
+        synchronized (invocationListeners) {
+            if (listenerShutdownHook == null) {
+                listenerShutdownHook = new Thread(this::flushInvocationListeners, "avenue-listener-flush");
+                Runtime.getRuntime().addShutdownHook(listenerShutdownHook);
+            }
+        }
+    }
+
+    /**
+     * Gets the shutdown hook which flushes the invocation listeners, registered with the first listener.
+     *
+     * @return The shutdown hook, or {@code null} if no listener has been registered.
+     */
+    Thread getListenerShutdownHook() {
+        synchronized (invocationListeners) {
+            return listenerShutdownHook;
+        }
+    }
+
+    /**
+     * Enables per-invocation heap allocation and CPU time accounting of each route's
+     * binding and invocation, which is reported on the {@link InvocationRecord} passed to
+     * the registered {@link InvocationListener}'s.
+     *
+     * @return Returns {@code true} if accounting was enabled, or {@code false} if the JVM
+     *         does not support it.
+     */
+    public boolean enableResourceAccounting() {
+        resourceAccounting = ResourceAccounting.create();
+        return resourceAccounting != null;
+    }
+
+    /**
+     * Sets how long before the Lambda invocation's hard timeout the handler gives up on a route and
+     * sends a 504 response. Requests received with less than this time remaining are rejected with
+     * a 503 response without invoking a route. Defaults to 250 milliseconds.
+     *
+     * <p>The margin is also subtracted from the {@link Deadline} seen by routes.
+     *
+     * @param margin The time reserved for sending the timeout response.
+     */
+    public void setTimeoutMargin(final Duration margin) {
+        timeoutMargin = margin;
+    }
+
+    /**
+     * Enables deadlines for synchronous routes.
+     *
+     * <p>Asynchronous routes are always limited by the request's {@link Deadline}. Synchronous
+     * routes are invoked on the handler's thread and so can not be abandoned. Once enabled,
+     * synchronous routes are instead invoked on a separate thread, and interrupted if they do not
+     * return before the deadline, while the handler sends a 504 response. Resource accounting
+     * does not include the time or memory used by routes run on the separate thread.
+     *
+     * <p>Routes are run on a pool of at most {@value #DEFAULT_BLOCKING_ROUTE_THREADS} threads, which
+     * are stopped after being idle for a minute. A route which ignores being interrupted keeps its
+     * thread busy, so once every thread is busy, further routes wait for one to become free and
+     * are answered with a 504 response if none does before their deadline. Use
+     * {@link #enableBlockingRouteTimeouts(ExecutorService)} to size the pool differently.
+     */
+    public void enableBlockingRouteTimeouts() {
+        if (blockingRouteExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                DEFAULT_BLOCKING_ROUTE_THREADS, DEFAULT_BLOCKING_ROUTE_THREADS,
+                BLOCKING_ROUTE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "avenue-route-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            executor.allowCoreThreadTimeOut(true);
+            blockingRouteExecutor = executor;
+        }
+    }
+
+    /**
+     * Enables deadlines for synchronous routes, as {@link #enableBlockingRouteTimeouts()}, running
+     * the routes on the given executor, which replaces any executor set previously. The executor
+     * should be bounded, as a route which ignores being interrupted holds on to its thread after
+     * its deadline. The handler does not shut the executor down.
+     *
+     * @param executor The executor which runs synchronous routes.
+     */
+    public void enableBlockingRouteTimeouts(final ExecutorService executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        blockingRouteExecutor = executor;
+    }
+
+    /**
+     * Enables compression of responses, negotiated from each request's {@code Accept-Encoding} header.
+     *
+     * @param compression The compression settings, or {@code null} to disable compression.
+     */
+    public void setResponseCompression(final ResponseCompression compression) {
+        responseCompression = compression;
+    }
+
+    /**
+     * Compresses the response if compression is enabled and the request accepts it.
+     *
+     * @param request The request which the response answers.
+     * @param response The response to compress.
+     * @return The response, which may have been compressed in place.
+     */
+    protected AwsProxyResponse compressResponse(final AwsProxyRequest request, final AwsProxyResponse response) {
+        final ResponseCompression compression = responseCompression;
+        return compression == null ? response : compression.compress(request, response);
+    }
+
+    /**
+     * Enables ETags on successful GET responses, and 304 responses to conditional requests
+     * whose {@code If-None-Match} header matches.
+     *
+     * @param generator The ETag settings, or {@code null} to disable ETags.
+     */
+    public void setETagGenerator(final ETagGenerator generator) {
+        eTagGenerator = generator;
+    }
+
+    /**
+     * Adds an ETag to the response if ETags are enabled, replacing it with a 304 response if
+     * the request's {@code If-None-Match} header matches.
+     *
+     * @param request The request which the response answers.
+     * @param response The response.
+     * @return The response, or a 304 response.
+     */
+    protected AwsProxyResponse applyETag(final AwsProxyRequest request, final AwsProxyResponse response) {
+        final ETagGenerator generator = eTagGenerator;
+        return generator == null ? response : generator.apply(request, response);
+    }
+
+    /**
+     * Enables caching of the responses of routes annotated with {@link Cached}. Cache hits are
+     * sent without invoking the route or serializing the response.
+     *
+     * @param cache The cache to store responses in, or {@code null} to disable caching.
+     */
+    public void setResponseCache(final ResponseCache cache) {
+        responseCache = cache;
+    }
+
+    /**
+     * Enables coalescing of identical concurrent GET requests, so that they share a single
+     * invocation of the route. This applies to requests handled by
+     * {@link BasicLambdaProxyHandler#dispatch(AwsProxyRequest)}, eg: from the embedded server.
+     *
+     * @param coalescer The coalescing settings, or {@code null} to disable coalescing.
+     */
+    public void setRequestCoalescer(final RequestCoalescer coalescer) {
+        requestCoalescer = coalescer;
+    }
+
+    /**
+     * Enables an endpoint which accepts batches of sub-requests, each of which is dispatched
+     * through the route table, in parallel, within the batch request's {@link Deadline}.
+     *
+     * @param endpoint The batch endpoint, or {@code null} to disable batches.
+     */
+    public void setBatchEndpoint(final BatchEndpoint endpoint) {
+        batchEndpoint = endpoint;
+    }
+
+    /**
+     * Enables serving static assets. Requests for an asset are answered with its prebuilt response,
+     * without matching or invoking a route.
+     *
+     * @param assets The static assets, or {@code null} to disable them.
+     */
+    public void setStaticAssets(final StaticAssets assets) {
+        staticAssets = assets;
+    }
+
+    /**
+     * Enables cross-origin resource sharing (CORS). Preflight requests for a path which has routes
+     * are answered with the methods of those routes, from a prebuilt response, without invoking a
+     * route, so routes do not need to handle {@code OPTIONS} themselves. CORS headers are added to
+     * the responses of routes. The responses of static assets are sent as they are.
+     *
+     * @param policy The CORS policy, or {@code null} to disable CORS.
+     */
+    public void setCorsPolicy(final CorsPolicy policy) {
+        corsPolicy = policy;
+        preflightIndex = null;
+    }
+
+    /**
+     * Selects the prebuilt response to a CORS preflight request, if CORS is enabled. The index of
+     * the routes' allowed methods is built the first time a preflight request is received, and again
+     * after controllers are registered.
+     *
+     * @param request The request.
+     * @return The response, which must not be modified, or {@code null} if CORS is disabled, the
+     *         request is not a preflight request, or no route handles its path.
+     */
+    protected StaticAsset.Response selectPreflightResponse(final AwsProxyRequest request) {
+        final CorsPolicy policy = corsPolicy;
+        if (policy == null || !CorsPolicy.isPreflight(request)) {
+            return null;
+        }
+        PreflightIndex index = preflightIndex;
+        if (index == null || index.getPolicy() != policy) {
+            index = new PreflightIndex(policy, registeredRoutes);
+            preflightIndex = index;
+        }
+        return index.select(request);
+    }
+
+    /**
+     * Adds the CORS headers to the response if CORS is enabled and the request has an {@code Origin}.
+     *
+     * @param request The request which the response answers.
+     * @param response The response.
+     * @return The response, which may have been modified in place.
+     */
+    protected AwsProxyResponse applyCors(final AwsProxyRequest request, final AwsProxyResponse response) {
+        final CorsPolicy policy = corsPolicy;
+        return policy == null || request == null ? response : policy.apply(request, response);
+    }
+
+    /**
+     * Enables response streaming for Lambda function URLs whose invoke mode is
+     * {@code RESPONSE_STREAM}. Function URL requests are then answered in the streaming format:
+     * the status code and headers are sent first, followed by the body, which for a
+     * {@link StreamingResponse} is sent as it is written rather than once it is complete. This
+     * requires the function to run on the custom runtime, see
+     * {@link gg.sep.avenue.router.runtime.LambdaRuntimeBootstrap}.
+     *
+     * <p>Responses to streamed requests are not cached. Other requests, and all requests when
+     * streaming is disabled, have the bodies of streaming responses buffered, and are answered
+     * as usual.
+     *
+     * @param streaming Whether to stream responses.
+     */
+    public void setResponseStreaming(final boolean streaming) {
+        responseStreaming = streaming;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isResponseStreaming() {
+        return responseStreaming;
+    }
+
+    /**
+     * Checks whether the response to the request is sent in the streaming format, ie: response
+     * streaming is enabled and the request is from a function URL.
+     *
+     * @param request The request.
+     * @return Returns {@code true} if the response to the request is streamed, otherwise {@code false}.
+     */
+    protected boolean isStreamedResponse(final AwsProxyRequest request) {
+        return responseStreaming && request instanceof HttpApiV2Request;
+    }
+
+    /**
+     * Sends a streaming response to the output stream in the streaming format, writing its body
+     * as it is produced. The stream is then closed.
+     *
+     * <p>The status code and headers are flushed before the body is written, so if writing the
+     * body fails the response can no longer be replaced by an error response. Instead the stream is
+     * left open and the failure is thrown, so that the caller aborts the response rather than
+     * completing it as though the body were whole; the Lambda runtime then reports the invocation
+     * as failed.
+     *
+     * @param response The response to send.
+     * @param outputStream The output stream to used when sending the response.
+     * @return The size of the payload sent.
+     * @throws IOException Exception thrown if sending the response fails, or the response's body writer fails.
+     */
+    protected long streamResponse(final StreamingResponse response, final OutputStream outputStream)
+        throws IOException {
+        final CountingOutputStream output = new CountingOutputStream(outputStream);
+        httpApiV2Codec.writeStreamingPrelude(response, output);
+        output.flush();
+        try {
+            response.writeBody(output);
+        } catch (final IOException | RuntimeException e) {
+            throw new IOException("Failed to write streaming response body after "
+                + output.getCount() + " bytes", e);
+        }
+        outputStream.close();
+        return output.getCount();
+    }
+
+    /**
+     * Sets the maximum number of records of an SQS batch which are handled at once. Defaults to 4.
+     *
+     * <p>Messages from FIFO queues which share a message group are always handled one at a time,
+     * in order.
+     *
+     * @param parallelism The number of threads which handle records, which must be positive.
+     */
+    public void setMessageParallelism(final int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Message parallelism must be positive: " + parallelism);
+        }
+        final ExecutorService previous = messageExecutor;
+        messageExecutor = newMessageExecutor(parallelism);
+        previous.shutdown();
+    }
+
+    /**
+     * Creates the executor which handles the records of SQS batches.
+     *
+     * @param parallelism The number of threads.
+     * @return The executor, whose threads are daemon threads.
+     */
+    private static ExecutorService newMessageExecutor(final int parallelism) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "avenue-message-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Flushes any data buffered by the registered {@link InvocationListener}'s.
+     *
+     * <p>Called when the JVM shuts down and when an embedded server built for this handler is stopped.
+     * An exception thrown by a listener is logged, so that the remaining listeners are still flushed.
+     */
+    public void flushInvocationListeners() {
+        for (final InvocationListener listener : invocationListeners) {
+            try {
+                listener.flush();
+            } catch (final RuntimeException e) {
+                log.warn("Invocation listener '{}' failed to flush", listener, e);
+            }
+        }
+    }
+
+    /**
+     * Passes a completed {@link InvocationRecord} to each of the registered {@link InvocationListener}'s.
+     *
+     * <p>The response has already been sent by the time listeners are notified, so an exception
+     * thrown by a listener is logged rather than failing the invocation.
+     *
+     * @param record The completed invocation record.
+     */
+    protected void notifyInvocationListeners(final InvocationRecord record) {
+        for (final InvocationListener listener : invocationListeners) {
+            try {
+                listener.onInvocation(record);
+            } catch (final RuntimeException e) {
+                log.warn("Invocation listener '{}' failed", listener, e);
+            }
         }
     }
 
     /**
      * {@inheritDoc}
+     *
+     * <p>The format of the event is detected with {@link EventFormat#detect}. Events from API
+     * Gateway HTTP APIs using payload format version 2.0 are read into an {@link HttpApiV2Request},
+     * and events from Application Load Balancers into an {@link AlbRequest}. Responses to them
+     * are written in the same format. SQS batches and EventBridge events are read into a
+     * {@link MessageEvent}.
      */
     @Override
     public AwsProxyRequest parseInput(final InputStream inputStream) throws IOException {
-        final Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-        return objectMapper.readValue(reader, AwsProxyRequest.class);
+        final byte[] event = readEvent(inputStream);
+        switch (EventFormat.detect(objectMapper.getFactory(), event)) {
+            case HTTP_API_V2:
+                return httpApiV2Codec.readRequest(event);
+            case ALB:
+                return albCodec.readRequest(event);
+            case SQS:
+                return messageCodec.readSqsEvent(event);
+            case EVENTBRIDGE:
+                return messageCodec.readEventBridgeEvent(event);
+            default:
+                return objectMapper.readValue(event, AwsProxyRequest.class);
+        }
+    }
+
+    /**
+     * Reads the whole event from the input stream.
+     *
+     * @param inputStream The raw input stream passed from the Lambda runtime.
+     * @return The serialized event.
+     * @throws IOException Exception thrown if reading from the stream fails.
+     */
+    private static byte[] readEvent(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream event =
+            new ByteArrayOutputStream(Math.max(inputStream.available(), EVENT_BUFFER_SIZE));
+        final byte[] buffer = new byte[EVENT_BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            event.write(buffer, 0, read);
+        }
+        return event.toByteArray();
     }
 
     /**
@@ -171,11 +898,93 @@ public abstract class AbstractLambdaProxyHandler implements LambdaProxyHandler {
     }
 
     @Override
-    public void handleInvokeError(final Exception e, final OutputStream output) throws IOException {
+    public int handleInvokeError(final Exception e, final AwsProxyRequest request, final OutputStream output)
+        throws IOException {
+        final byte[] payload = serializeResponse(request, buildInvokeErrorResponse(e));
+        writePayload(payload, output);
+        return payload.length;
+    }
+
+    /**
+     * Builds the response which is sent if invocation of a {@link Route} fails.
+     *
+     * @param e The exception that was thrown during invocation of the {@link Route}.
+     * @return The response to send.
+     */
+    protected AwsProxyResponse buildInvokeErrorResponse(final Exception e) {
         // TODO: Response Builder
         final AwsProxyResponse response = new AwsProxyResponse(500);
         response.setBody("Server Error");
-        sendResponse(response, output);
+        return response;
+    }
+
+    /**
+     * Sends the pre-serialized 504 response, used when a route does not respond before the
+     * request's {@link Deadline}. The stream is then closed.
+     *
+     * @param outputStream The output stream to used when sending the response.
+     * @return The size of the payload sent.
+     * @throws IOException Exception thrown if writing to or closing the {@link OutputStream} fails.
+     */
+    protected int sendTimeoutResponse(final OutputStream outputStream) throws IOException {
+        writePayload(timeoutPayload, outputStream);
+        return timeoutPayload.length;
+    }
+
+    /**
+     * Sends the pre-serialized 503 response, used when a request is received with too little time
+     * remaining to handle it. The stream is then closed.
+     *
+     * @param outputStream The output stream to used when sending the response.
+     * @return The size of the payload sent.
+     * @throws IOException Exception thrown if writing to or closing the {@link OutputStream} fails.
+     */
+    protected int sendUnavailableResponse(final OutputStream outputStream) throws IOException {
+        writePayload(unavailablePayload, outputStream);
+        return unavailablePayload.length;
+    }
+
+    /**
+     * Sends the 504 response in the payload format of the request. The stream is then closed.
+     *
+     * <p>Load balancer responses depend on the target group's header mode, and streamed responses
+     * have their own format, so they are serialized when sent, rather than ahead of time.
+     *
+     * @param request The request which the response answers.
+     * @param outputStream The output stream to used when sending the response.
+     * @return The size of the payload sent.
+     * @throws IOException Exception thrown if writing to or closing the {@link OutputStream} fails.
+     */
+    protected int sendTimeoutResponse(final AwsProxyRequest request, final OutputStream outputStream)
+        throws IOException {
+        if (request instanceof AlbRequest || isStreamedResponse(request)) {
+            return sendSimpleResponse(request, HttpStatus.SC_GATEWAY_TIMEOUT, "Gateway Timeout", outputStream);
+        }
+        return sendTimeoutResponse(outputStream);
+    }
+
+    /**
+     * Sends the 503 response in the payload format of the request. The stream is then closed.
+     *
+     * @param request The request which the response answers.
+     * @param outputStream The output stream to used when sending the response.
+     * @return The size of the payload sent.
+     * @throws IOException Exception thrown if writing to or closing the {@link OutputStream} fails.
+     */
+    protected int sendUnavailableResponse(final AwsProxyRequest request, final OutputStream outputStream)
+        throws IOException {
+        if (request instanceof AlbRequest || isStreamedResponse(request)) {
+            return sendSimpleResponse(request, HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable",
+                outputStream);
+        }
+        return sendUnavailableResponse(outputStream);
+    }
+
+    private int sendSimpleResponse(final AwsProxyRequest request, final int status, final String body,
+                                   final OutputStream outputStream) throws IOException {
+        final byte[] payload = serializeResponse(request, simpleResponse(status, body));
+        writePayload(payload, outputStream);
+        return payload.length;
     }
 
     /**
@@ -187,8 +996,125 @@ public abstract class AbstractLambdaProxyHandler implements LambdaProxyHandler {
      * @throws IOException Exception thrown if writing to or closing the {@link OutputStream} fails.
      */
     protected void sendResponse(final AwsProxyResponse response, final OutputStream outputStream) throws IOException {
-        final String payload = objectMapper.writeValueAsString(response);
-        outputStream.write(payload.getBytes(StandardCharsets.UTF_8));
+        writePayload(serializeResponse(response), outputStream);
+    }
+
+    /**
+     * Serializes the {@link AwsProxyResponse} in the payload format of the request it answers, and
+     * sends the response to the given {@link OutputStream}. The stream is then closed.
+     *
+     * @param request The request which the response answers.
+     * @param response The response to serialize and send to the output stream.
+     * @param outputStream The output stream to used when sending the response.
+     * @throws IOException Exception thrown if writing to or closing the {@link OutputStream} fails.
+     */
+    protected void sendResponse(final AwsProxyRequest request, final AwsProxyResponse response,
+                                final OutputStream outputStream) throws IOException {
+        writePayload(serializeResponse(request, response), outputStream);
+    }
+
+    /**
+     * Serializes the {@link AwsProxyResponse} into the JSON payload expected by the Lambda runtime,
+     * in the payload format of the request it answers.
+     *
+     * @param request The request which the response answers.
+     * @param response The response to serialize.
+     * @return The UTF-8 encoded JSON payload.
+     * @throws IOException Exception thrown if serializing the response fails.
+     */
+    protected byte[] serializeResponse(final AwsProxyRequest request, final AwsProxyResponse response)
+        throws IOException {
+        if (isStreamedResponse(request)) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            httpApiV2Codec.writeStreamingPrelude(response, output);
+            if (response.getBody() != null) {
+                output.write(response.isBase64Encoded()
+                    ? Base64.getDecoder().decode(response.getBody())
+                    : response.getBody().getBytes(StandardCharsets.UTF_8));
+            }
+            return output.toByteArray();
+        }
+        if (request instanceof HttpApiV2Request) {
+            return httpApiV2Codec.writeResponse(response);
+        }
+        if (request instanceof AlbRequest) {
+            return albCodec.writeResponse((AlbRequest) request, response);
+        }
+        return serializeResponse(response);
+    }
+
+    /**
+     * Serializes the {@link AwsProxyResponse} into the JSON payload expected by the Lambda runtime.
+     *
+     * @param response The response to serialize.
+     * @return The UTF-8 encoded JSON payload.
+     * @throws IOException Exception thrown if serializing the response fails.
+     */
+    protected byte[] serializeResponse(final AwsProxyResponse response) throws IOException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    /**
+     * Writes an already serialized response payload to the given {@link OutputStream}. The stream is then closed.
+     *
+     * @param payload The serialized response payload.
+     * @param outputStream The output stream to used when sending the response.
+     * @throws IOException Exception thrown if writing to or closing the {@link OutputStream} fails.
+     */
+    protected void writePayload(final byte[] payload, final OutputStream outputStream) throws IOException {
+        outputStream.write(payload);
         outputStream.close();
     }
+
+    /**
+     * An interceptor, and the annotation or path prefix of the routes it applies to.
+     */
+    private static final class InterceptorBinding {
+        private final RouteInterceptor interceptor;
+        private final Class<? extends Annotation> annotation;
+        private final String pathPrefix;
+
+        private InterceptorBinding(final RouteInterceptor interceptor, final Class<? extends Annotation> annotation,
+                                   final String pathPrefix) {
+            if (interceptor == null) {
+                throw new IllegalArgumentException("Interceptor must not be null");
+            }
+            this.interceptor = interceptor;
+            this.annotation = annotation;
+            this.pathPrefix = pathPrefix;
+        }
+
+        private boolean appliesTo(final Route route) {
+            return annotation != null ? route.isAnnotated(annotation) : route.isUnderPath(pathPrefix);
+        }
+    }
+
+    /**
+     * Counts the bytes written through it to the underlying stream, which it does not close.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        @Getter
+        private long count;
+
+        CountingOutputStream(final OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() {
+            // the stream is closed once the response is complete
+        }
+    }
 }
@@ -27,10 +27,13 @@ import static java.lang.String.format;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -38,6 +41,8 @@ import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
 import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.Level;
 
+import gg.sep.avenue.router.cache.CachePolicy;
+import gg.sep.avenue.router.core.MessageRoute;
 import gg.sep.avenue.router.core.Route;
 import gg.sep.avenue.router.core.RoutePathParser;
 import gg.sep.avenue.router.core.RouteRequestMethod;
@@ -100,6 +105,36 @@ public abstract class AbstractRouteController implements RouteController {
         return foundRoutes;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Message route methods must be public, and must return {@code void} or a
+     * {@link CompletionStage} for asynchronous handling.
+     */
+    @Override
+    public Set<MessageRoute> getMessageRoutes() {
+        final Collection<Class<? extends Annotation>> validAnnotations = MessageRoute.getValidAnnotations();
+        final Set<MessageRoute> foundRoutes = new HashSet<>();
+        for (final Method method : getClass().getDeclaredMethods()) {
+            if (!Modifier.isPublic(method.getModifiers())) {
+                continue;
+            }
+            for (final Annotation annotation : method.getAnnotations()) {
+                if (!validAnnotations.contains(annotation.annotationType())) {
+                    continue;
+                }
+                if (!void.class.equals(method.getReturnType())
+                    && !CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+                    throw log.throwing(Level.ERROR, new IllegalStateException(
+                        format("Controller '%s' has a message route which does not return void or a "
+                            + "CompletionStage: %s", this, method)));
+                }
+                foundRoutes.add(MessageRoute.fromAnnotation(annotation, this, method));
+            }
+        }
+        return foundRoutes;
+    }
+
     /**
      * Builds each one of the routes mapped to a route handler method along with it's annotation.
      *
@@ -111,30 +146,73 @@ public abstract class AbstractRouteController implements RouteController {
      */
     private Set<Route> buildRoutes(final Annotation annotation, final Method method) {
         final Set<Route> routes = new HashSet<>();
+        final CachePolicy cachePolicy = buildCachePolicy(annotation, method);
         for (final String routePath : RouterUtils.getAnnotationPaths(annotation)) {
             final Route route = Route.builder()
                 .routeRequestMethod(RouteRequestMethod.forAnnotation(annotation))
+                .routePath(routePath)
                 .controller(this)
                 .method(method)
                 .pathParameters(parser.buildPathParameters(routePath))
                 .pattern(parser.buildRoutePattern(routePath))
+                .cachePolicy(cachePolicy)
                 .build();
             routes.add(route);
         }
         return routes;
     }
 
+    /**
+     * Compiles the caching settings of a route handler method, if it is annotated with {@link Cached}.
+     *
+     * @param annotation The HTTP method annotation on the method.
+     * @param method The route handler method.
+     * @return The caching settings, or {@code null} if the method is not cached.
+     */
+    private CachePolicy buildCachePolicy(final Annotation annotation, final Method method) {
+        final Cached cached = method.getAnnotation(Cached.class);
+        if (cached == null) {
+            return null;
+        }
+        if (RouteRequestMethod.forAnnotation(annotation) != RouteRequestMethod.GET) {
+            throw log.throwing(Level.ERROR, new IllegalStateException(
+                format("Controller '%s' caches a route which does not handle GET: %s", this, method)));
+        }
+        return CachePolicy.fromAnnotation(cached);
+    }
+
     /**
      * Get a list of valid handler method on the controller.
      *
-     * The handler methods must be public and must have a return type of {@link AwsProxyResponse}.
+     * The handler methods must be public and must have a return type of {@link AwsProxyResponse},
+     * or of a {@link CompletionStage} (eg: {@link java.util.concurrent.CompletableFuture}) of
+     * {@link AwsProxyResponse} for asynchronous routes.
      *
      * @return List of valid handler methods on the route.
      */
     private List<Method> getHandlerMethods() {
         return Stream.of(getClass().getDeclaredMethods())
             .filter(method -> Modifier.isPublic(method.getModifiers()))
-            .filter(method -> method.getReturnType().equals(AwsProxyResponse.class))
+            .filter(AbstractRouteController::hasHandlerReturnType)
             .collect(Collectors.toList());
     }
+
+    /**
+     * Checks whether the method's return type is valid for a route handler method.
+     *
+     * @param method The method to check.
+     * @return Returns {@code true} if the method returns {@link AwsProxyResponse} or a
+     *         {@link CompletionStage} of {@link AwsProxyResponse}, otherwise {@code false}.
+     */
+    private static boolean hasHandlerReturnType(final Method method) {
+        if (method.getReturnType().equals(AwsProxyResponse.class)) {
+            return true;
+        }
+        if (!CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+            return false;
+        }
+        final Type returnType = method.getGenericReturnType();
+        return returnType instanceof ParameterizedType
+            && ((ParameterizedType) returnType).getActualTypeArguments()[0].equals(AwsProxyResponse.class);
+    }
 }
@@ -23,17 +23,24 @@ package gg.sep.avenue.router;
 
 import java.net.URL;
 import java.util.Base64;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
 import com.amazonaws.serverless.proxy.model.Headers;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.apache.http.HttpStatus;
 
+import gg.sep.avenue.router.streaming.JsonArrayBody;
+import gg.sep.avenue.router.streaming.StreamingResponse;
+
 /**
  * Builder class for more easily constructing {@link com.amazonaws.serverless.proxy.model.AwsProxyResponse}.
  */
 public final class AwsResponseBuilder {
 
     private final AwsProxyResponse response = new AwsProxyResponse(HttpStatus.SC_OK);
+    private StreamingResponse.BodyWriter bodyWriter;
 
     private AwsResponseBuilder() {
     }
@@ -114,6 +121,7 @@ public final class AwsResponseBuilder {
      * @return The builder instance.
      */
     public AwsResponseBuilder stringBody(final String bodyText) {
+        bodyWriter = null;
         response.setBase64Encoded(false);
         response.setBody(bodyText);
         return this;
@@ -127,16 +135,85 @@ public final class AwsResponseBuilder {
      * @return The builder instance.
      */
     public AwsResponseBuilder binaryBody(final byte[] bytes) {
+        bodyWriter = null;
         response.setBase64Encoded(true);
         response.setBody(Base64.getEncoder().encodeToString(bytes));
         return this;
     }
 
     /**
-     * Returns the built {@link AwsProxyResponse}.
+     * Sets a body on the response which is written while the response is being sent, making the
+     * built response a {@link StreamingResponse}.
+     *
+     * @param writer Writes the body of the response.
+     * @return The builder instance.
+     */
+    public AwsResponseBuilder streamingBody(final StreamingResponse.BodyWriter writer) {
+        if (writer == null) {
+            throw new IllegalArgumentException("Body writer must not be null");
+        }
+        bodyWriter = writer;
+        response.setBase64Encoded(false);
+        response.setBody(null);
+        return this;
+    }
+
+    /**
+     * Sets a body on the response which is sent in chunks as they are produced, making the
+     * built response a {@link StreamingResponse}.
+     *
+     * @param chunks The chunks of the body, which are produced as they are iterated.
+     * @return The builder instance.
+     */
+    public AwsResponseBuilder chunkedBody(final Iterator<byte[]> chunks) {
+        return streamingBody(StreamingResponse.chunks(chunks));
+    }
+
+    /**
+     * Sets a JSON array body on the response, which is written an element at a time as the
+     * elements are produced, making the built response a {@link StreamingResponse}. The content
+     * type is set to "application/json".
+     *
+     * @param body The JSON array body.
+     * @return The builder instance.
+     */
+    public AwsResponseBuilder jsonArrayBody(final JsonArrayBody<?> body) {
+        return json().streamingBody(body);
+    }
+
+    /**
+     * Sets a JSON array body on the response with the elements produced by the iterator, as
+     * {@link #jsonArrayBody(JsonArrayBody)}.
+     *
+     * @param elements The elements of the array.
+     * @param writer The writer used to serialize each element.
+     * @return The builder instance.
+     */
+    public AwsResponseBuilder jsonArrayBody(final Iterator<?> elements, final ObjectWriter writer) {
+        return jsonArrayBody(JsonArrayBody.builder(elements, writer).build());
+    }
+
+    /**
+     * Sets a JSON array body on the response with the elements of the stream, as
+     * {@link #jsonArrayBody(JsonArrayBody)}. The stream is closed once the body has been written.
+     *
+     * @param elements The elements of the array.
+     * @param writer The writer used to serialize each element.
+     * @return The builder instance.
+     */
+    public AwsResponseBuilder jsonArrayBody(final Stream<?> elements, final ObjectWriter writer) {
+        return jsonArrayBody(JsonArrayBody.builder(elements, writer).build());
+    }
+
+    /**
+     * Returns the built {@link AwsProxyResponse}, which is a {@link StreamingResponse} if a
+     * streaming body was set.
      * @return The built response.
      */
     public AwsProxyResponse build() {
+        if (bodyWriter != null) {
+            return new StreamingResponse(response.getStatusCode(), response.getMultiValueHeaders(), bodyWriter);
+        }
         return response;
     }
 
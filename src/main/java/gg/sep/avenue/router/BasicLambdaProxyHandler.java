@@ -25,15 +25,51 @@ package gg.sep.avenue.router;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
 import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
 import org.apache.http.HttpStatus;
 
+import gg.sep.avenue.router.assets.StaticAsset;
+import gg.sep.avenue.router.assets.StaticAssets;
+import gg.sep.avenue.router.batch.BatchEndpoint;
+import gg.sep.avenue.router.cache.CachePolicy;
+import gg.sep.avenue.router.cache.CachedResponse;
+import gg.sep.avenue.router.cache.ETagGenerator;
+import gg.sep.avenue.router.cache.RequestCoalescer;
+import gg.sep.avenue.router.cache.ResponseCache;
+import gg.sep.avenue.router.core.MessageRoute;
 import gg.sep.avenue.router.core.Route;
+import gg.sep.avenue.router.cors.CorsPolicy;
+import gg.sep.avenue.router.event.AlbRequest;
+import gg.sep.avenue.router.event.EventFormat;
+import gg.sep.avenue.router.event.HttpApiV2Request;
+import gg.sep.avenue.router.message.MessageEvent;
+import gg.sep.avenue.router.message.MessageRecord;
+import gg.sep.avenue.router.message.SqsMessage;
+import gg.sep.avenue.router.metrics.InvocationPhase;
+import gg.sep.avenue.router.metrics.InvocationRecord;
+import gg.sep.avenue.router.metrics.ResourceAccounting;
+import gg.sep.avenue.router.streaming.StreamingResponse;
 
 /**
  * Basic implementation of {@link LambdaProxyHandler} which services the most basic needs.
@@ -42,7 +78,20 @@ import gg.sep.avenue.router.core.Route;
  * the route and the response sent back to the output stream. If no route matching
  * the request was found, a simple 404 JSON message is returned.
  */
+@Log4j2
 public class BasicLambdaProxyHandler extends AbstractLambdaProxyHandler {
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final int BASE64_DECODED_BYTES = 3;
+    private static final int BASE64_ENCODED_CHARS = 4;
+    private static final char UTF8_ONE_BYTE_LIMIT = 0x80;
+    private static final char UTF8_TWO_BYTE_LIMIT = 0x800;
+    private static final int UTF8_THREE_BYTES = 3;
+    private static final int UTF8_SUPPLEMENTARY_BYTES = 4;
+    private static final String HTTP_API_V2_KEY_SUFFIX = "\u0000v2";
+    private static final String ALB_KEY_SUFFIX = "\u0000alb";
+    private static final String ALB_MULTI_VALUE_KEY_SUFFIX = "\u0000alb-mv";
+    private static final String STREAMED_KEY_SUFFIX = "\u0000stream";
 
     /**
      * Initializes the proxy handler with a default {@link ObjectMapper} object.
@@ -53,51 +102,1125 @@ public class BasicLambdaProxyHandler extends AbstractLambdaProxyHandler {
 
     /**
      * {@inheritDoc}
+     *
+     * <p>If the route has {@link RouteInterceptor}s, they are run before the response cache is
+     * checked, and any of them may answer the request instead of the route.
+     *
+     * <p>If the route is {@link Cached} and its response is in the handler's {@link ResponseCache},
+     * the cached payload is written without invoking the route.
+     *
+     * <p>The request's {@link Deadline} is the Lambda's remaining time less the handler's timeout
+     * margin. If it has already passed once the request is parsed, a 503 response is sent without
+     * invoking a route. If the route does not respond before it passes, a 504 response is sent.
+     *
+     * <p>If CORS is enabled and the request is a preflight request for a path which has routes, the
+     * prebuilt preflight response is sent without invoking a route, see {@link #setCorsPolicy}.
+     *
+     * <p>If the handler has {@link StaticAssets} and the request is for one, the asset's prebuilt
+     * response is sent without matching a route.
+     *
+     * <p>If the handler has a {@link BatchEndpoint} and the request is a batch, its sub-requests are
+     * dispatched in parallel, and any which have not responded by the deadline have a 504 response
+     * in the batch.
+     *
+     * <p>The records of SQS batches and EventBridge events are handled by the handler's
+     * {@link MessageRoute}s instead, as described by {@link #handleMessageEvent}.
+     *
+     * <p>If response streaming is enabled and the request is from a function URL, the body of a
+     * {@link StreamingResponse} is written to the output stream as it is produced, while the request's
+     * deadline is still current, see {@link #setResponseStreaming(boolean)}.
      */
     @Override
     public void handleRequest(final InputStream input, final OutputStream output,
                               final Context context) throws IOException {
+        final InvocationRecord record = startInvocationRecord(context);
+        final Deadline deadline = Deadline.fromContext(context).minus(getTimeoutMargin());
         beforeParse(input, output, context);
+        record.startPhase(InvocationPhase.PARSE);
         final AwsProxyRequest request = parseInput(input);
+        record.setRequest(request);
+        record.endPhase();
         beforeHandle(request);
 
-        final Optional<Route> foundRoute = findRoute(request);
+        if (request instanceof MessageEvent) {
+            respondToMessageEvent((MessageEvent) request, output, deadline, record);
+            return;
+        }
+
+        if (deadline.isExpired()) {
+            log.warn("Too little time remaining to handle request. path={}", request.getPath());
+            record.complete(HttpStatus.SC_SERVICE_UNAVAILABLE, sendUnavailableResponse(request, output));
+            notifyInvocationListeners(record);
+            return;
+        }
+
+        final BatchEndpoint batch = getBatchEndpoint();
+        if (batch != null && batch.matches(request)) {
+            respond(handleBatch(batch, request, deadline), output, record, null);
+            notifyInvocationListeners(record);
+            return;
+        }
+
+        if (respondWithPrebuilt(request, selectPreflightResponse(request), output, record)
+            || respondWithPrebuilt(request, selectStaticAsset(request), output, record)) {
+            notifyInvocationListeners(record);
+            return;
+        }
+
+        final Optional<Route> foundRoute = matchRoute(request, record);
         if (!foundRoute.isPresent()) {
-            final AwsProxyResponse response = AwsResponseBuilder.newBuilder()
-                .status(HttpStatus.SC_NOT_FOUND)
-                .html()
-                .stringBody("Not found")
-                .build();
-            sendResponse(response, output);
+            respond(notFoundResponse(), output, record, null);
+            notifyInvocationListeners(record);
             return;
         }
         final Route route = foundRoute.get();
-        invokeAndRespond(route, request, output);
+        final AwsProxyResponse intercepted = route.hasInterceptors() ? interceptBefore(route, request) : null;
+        if (intercepted != null) {
+            respond(intercepted, output, record, null);
+            notifyInvocationListeners(record);
+            return;
+        }
+        final String cacheKey = responseCacheKey(route, request);
+        if (respondFromCache(cacheKey, output, record)) {
+            notifyInvocationListeners(record);
+            return;
+        }
+        Deadline.setCurrent(deadline);
+        try {
+            invokeAndRespond(route, request, output, deadline, cacheKey, record);
+        } finally {
+            Deadline.setCurrent(null);
+        }
+        notifyInvocationListeners(record);
+    }
+
+    /**
+     * Handles an already parsed request and returns its response, rather than reading from and
+     * writing to the Lambda's streams. This is used to serve requests which do not arrive
+     * through the Lambda runtime, such as from the embedded HTTP server.
+     *
+     * <p>The same hooks are called as for {@link #handleRequest(InputStream, OutputStream, Context)},
+     * except {@link #beforeParse(InputStream, OutputStream, Context)}. Since the response is sent by
+     * the caller, {@link #afterResponse()} is called once the response has been produced, and the
+     * {@link InvocationRecord} has no {@link InvocationPhase#SERIALIZE} time.
+     *
+     * <p>The calling thread is not blocked waiting for asynchronous routes; the returned stage
+     * completes when the route's stage does. Exceptions thrown while invoking the route, or
+     * completing its stage, are converted using {@link #buildInvokeErrorResponse(Exception)},
+     * except for a {@link TimeoutException}, eg: from waiting on a coalesced request, which is
+     * converted to a 504 response.
+     *
+     * <p>CORS preflight requests and requests for static assets are answered with their prebuilt
+     * responses, which must not be modified.
+     *
+     * <p>Batch requests are handled as by {@link #handleRequest(InputStream, OutputStream, Context)},
+     * but without a deadline.
+     *
+     * @param request The request to handle.
+     * @return A stage which completes with the response to the request.
+     */
+    public CompletionStage<AwsProxyResponse> dispatch(final AwsProxyRequest request) {
+        final InvocationRecord record = startInvocationRecord(null);
+        record.setRequest(request);
+        beforeHandle(request);
+
+        final BatchEndpoint batch = getBatchEndpoint();
+        if (batch != null && batch.matches(request)) {
+            final List<CompletableFuture<AwsProxyResponse>> responses;
+            try {
+                responses = startBatch(batch, request, Deadline.none());
+            } catch (final IllegalArgumentException e) {
+                return CompletableFuture.completedFuture(completeDispatch(badBatchResponse(e), record, null));
+            }
+            return CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, error) -> completeDispatch(batchResponse(batch, responses), record, null));
+        }
+
+        StaticAsset.Response prebuilt = selectPreflightResponse(request);
+        if (prebuilt == null) {
+            prebuilt = selectStaticAsset(request);
+        }
+        if (prebuilt != null) {
+            final AwsProxyResponse response = prebuilt.getResponse();
+            record.complete(response.getStatusCode(), response.getBody() == null ? 0 : response.getBody().length());
+            notifyInvocationListeners(record);
+            return CompletableFuture.completedFuture(response);
+        }
+
+        final Optional<Route> foundRoute = matchRoute(request, record);
+        if (!foundRoute.isPresent()) {
+            return CompletableFuture.completedFuture(completeDispatch(notFoundResponse(), record, null));
+        }
+
+        final Route route = foundRoute.get();
+        final AwsProxyResponse intercepted = route.hasInterceptors() ? interceptBefore(route, request) : null;
+        if (intercepted != null) {
+            return CompletableFuture.completedFuture(completeDispatch(intercepted, record, null));
+        }
+        final String cacheKey = responseCacheKey(route, request);
+        final CachedResponse cached = lookupCachedResponse(cacheKey);
+        final AwsProxyResponse cachedResponse = cached == null ? null : completeCachedDispatch(cached, record);
+        if (cachedResponse != null) {
+            return CompletableFuture.completedFuture(cachedResponse);
+        }
+        final ETagGenerator eTags = getETagGenerator();
+        String versionETag = null;
+        CompletionStage<AwsProxyResponse> stage;
+        try {
+            versionETag = eTags == null ? null : eTags.versionETag(route, request);
+            final AwsProxyResponse notModified =
+                versionETag == null ? null : eTags.notModifiedIfMatches(request, versionETag);
+            if (notModified != null) {
+                return CompletableFuture.completedFuture(completeDispatch(notModified, record, null));
+            }
+            stage = invokeRouteAsync(route, request, record);
+        } catch (final Exception e) {
+            final CompletableFuture<AwsProxyResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            stage = failed;
+        }
+        final String responseETag = versionETag;
+        return stage.handle((response, error) -> {
+            if (error != null) {
+                route.interceptFailure(request);
+                final Exception cause = unwrapCompletionException(error);
+                if (cause instanceof TimeoutException) {
+                    log.error("Timed out waiting for the route's response. path={}", request.getPath());
+                    return completeDispatch(gatewayTimeoutResponse(), record, null);
+                }
+                log.error("Failed to invoke route for request. path={}", request.getPath(), cause);
+                return completeDispatch(buildInvokeErrorResponse(cause), record, null);
+            }
+            final AwsProxyResponse buffered = bufferResponse(request, route.interceptAfter(request, response));
+            setETag(buffered, responseETag);
+            beforeResponse(buffered);
+            afterResponse();
+            return completeDispatch(buffered, record, cacheKey);
+        });
+    }
+
+    /**
+     * Handles a batch request, waiting for its sub-requests until the deadline.
+     *
+     * @param batch The batch endpoint.
+     * @param request The batch request.
+     * @param deadline The deadline by which the sub-requests must respond.
+     * @return The response to the batch request.
+     */
+    private AwsProxyResponse handleBatch(final BatchEndpoint batch, final AwsProxyRequest request,
+                                         final Deadline deadline) {
+        final List<CompletableFuture<AwsProxyResponse>> responses;
+        try {
+            responses = startBatch(batch, request, deadline);
+        } catch (final IllegalArgumentException e) {
+            return badBatchResponse(e);
+        }
+        if (!awaitAll(responses, deadline)) {
+            log.error("Batch sub-requests did not respond before the deadline. path={}", request.getPath());
+        }
+        return batchResponse(batch, responses);
+    }
+
+    /**
+     * Waits for all of the futures to complete, until the deadline.
+     *
+     * @param futures The futures, which must not complete exceptionally.
+     * @param deadline The deadline by which the futures must complete.
+     * @return Returns {@code true} if all of the futures completed, otherwise {@code false}.
+     */
+    private static boolean awaitAll(final List<? extends CompletableFuture<?>> futures, final Deadline deadline) {
+        final CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        try {
+            if (deadline.isLimited()) {
+                all.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                all.get();
+            }
+            return true;
+        } catch (final TimeoutException e) {
+            return false;
+        } catch (final InterruptedException e) {
+            log.warn("Interrupted waiting for the deadline");
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Futures must not complete exceptionally", e);
+        }
+    }
+
+    /**
+     * Handles a message event, recording it on the invocation's record under the event's format,
+     * eg: {@code SQS}, with a 200 status if it was handled and a 500 status if it failed, then
+     * notifies the invocation listeners.
+     *
+     * @param event The SQS batch or EventBridge event.
+     * @param output The output stream to send the response to.
+     * @param deadline The deadline by which the records must be handled.
+     * @param record The record of the current invocation.
+     * @throws IOException Exception thrown if sending the response to the output stream failed.
+     */
+    private void respondToMessageEvent(final MessageEvent event, final OutputStream output,
+                                       final Deadline deadline, final InvocationRecord record) throws IOException {
+        record.setRouteKey(event.getFormat().name());
+        record.startPhase(InvocationPhase.INVOKE);
+        boolean handled = false;
+        try {
+            record.complete(HttpStatus.SC_OK, handleMessageEvent(event, output, deadline));
+            handled = true;
+        } finally {
+            if (!handled) {
+                record.complete(HttpStatus.SC_INTERNAL_SERVER_ERROR, 0);
+            }
+            notifyInvocationListeners(record);
+        }
+    }
+
+    /**
+     * Handles the records of an SQS batch or EventBridge event with the message routes which
+     * handle them.
+     *
+     * <p>The messages of an SQS batch are handled concurrently on the handler's message executor,
+     * except for messages of a FIFO queue which share a message group, which are handled in order.
+     * Messages which fail, have no message route, or are not handled by the deadline, are reported
+     * as {@code batchItemFailures}, so that only they are retried. Once a message of a FIFO group
+     * fails, the rest of the group is also reported as failed without being handled.
+     *
+     * <p>An EventBridge event is handled on the calling thread, and if it fails the exception is
+     * thrown, so that the invocation fails and EventBridge retries the event.
+     *
+     * <p>As with HTTP requests, an event received with less time remaining than the timeout margin
+     * is not handled: every message of an SQS batch is reported as failed, and an EventBridge
+     * event fails the invocation.
+     *
+     * @param event The SQS batch or EventBridge event.
+     * @param output The output stream to send the response to.
+     * @param deadline The deadline by which the records must be handled.
+     * @return The size of the payload sent.
+     * @throws IOException Exception thrown if sending the response to the output stream failed.
+     */
+    protected int handleMessageEvent(final MessageEvent event, final OutputStream output,
+                                     final Deadline deadline) throws IOException {
+        if (deadline.isExpired()) {
+            log.warn("Too little time remaining to handle {} event", event.getFormat());
+            if (event.getFormat() == EventFormat.EVENTBRIDGE) {
+                throw new IllegalStateException("Too little time remaining to handle EventBridge event. id="
+                    + event.getRecords().get(0).getRecordId());
+            }
+            final List<String> failures = new ArrayList<>(event.getRecords().size());
+            event.getRecords().forEach(record -> failures.add(record.getRecordId()));
+            final byte[] payload = getMessageCodec().writeBatchResponse(failures);
+            writePayload(payload, output);
+            return payload.length;
+        }
+        if (event.getFormat() == EventFormat.EVENTBRIDGE) {
+            final MessageRecord record = event.getRecords().get(0);
+            try {
+                handleMessage(record, deadline);
+            } catch (final Exception e) {
+                final String msg = "Failed to handle EventBridge event. id=" + record.getRecordId();
+                log.error(msg, e);
+                throw new IllegalStateException(msg, unwrapCompletionException(e));
+            }
+            output.close();
+            return 0;
+        }
+
+        final List<List<MessageRecord>> groups = new ArrayList<>();
+        final Map<String, List<MessageRecord>> fifoGroups = new HashMap<>();
+        for (final MessageRecord record : event.getRecords()) {
+            final String groupId = record instanceof SqsMessage ? ((SqsMessage) record).getMessageGroupId() : null;
+            if (groupId == null) {
+                groups.add(Collections.singletonList(record));
+            } else {
+                fifoGroups.computeIfAbsent(groupId, id -> {
+                    final List<MessageRecord> group = new ArrayList<>();
+                    groups.add(group);
+                    return group;
+                }).add(record);
+            }
+        }
+
+        final AtomicBoolean abandoned = new AtomicBoolean();
+        final List<CompletableFuture<List<String>>> results = new ArrayList<>(groups.size());
+        for (final List<MessageRecord> group : groups) {
+            results.add(CompletableFuture.supplyAsync(() -> handleMessageGroup(group, deadline, abandoned),
+                getMessageExecutor()));
+        }
+        if (!awaitAll(results, deadline)) {
+            log.error("Messages were not handled before the deadline");
+            abandoned.set(true);
+        }
+
+        final List<String> failures = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            final List<String> failed = results.get(i).getNow(null);
+            if (failed != null) {
+                failures.addAll(failed);
+            } else {
+                groups.get(i).forEach(record -> failures.add(record.getRecordId()));
+            }
+        }
+        final byte[] payload = getMessageCodec().writeBatchResponse(failures);
+        writePayload(payload, output);
+        return payload.length;
+    }
+
+    /**
+     * Handles the messages of a group in order, stopping at the first which fails.
+     *
+     * @param group The messages of the group, in order.
+     * @param deadline The deadline by which the messages must be handled.
+     * @param abandoned Set once the batch has stopped waiting for the group.
+     * @return The identifiers of the messages which failed or were not handled.
+     */
+    private List<String> handleMessageGroup(final List<MessageRecord> group, final Deadline deadline,
+                                            final AtomicBoolean abandoned) {
+        final List<String> failed = new ArrayList<>();
+        for (final MessageRecord record : group) {
+            if (!failed.isEmpty() || abandoned.get() || deadline.isExpired()) {
+                failed.add(record.getRecordId());
+                continue;
+            }
+            try {
+                handleMessage(record, deadline);
+            } catch (final Exception e) {
+                log.error("Failed to handle message. id={}", record.getRecordId(), unwrapCompletionException(e));
+                failed.add(record.getRecordId());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Handles a record with the message route which handles it, waiting for asynchronous message
+     * routes until the deadline. As for HTTP routes, synchronous message routes are run on the
+     * blocking route executor and interrupted at the deadline if blocking route timeouts are enabled,
+     * see {@link #enableBlockingRouteTimeouts()}.
+     *
+     * @param record The record.
+     * @param deadline The deadline by which the record must be handled.
+     * @throws Exception Exception thrown if no message route handles the record, or it fails.
+     */
+    private void handleMessage(final MessageRecord record, final Deadline deadline) throws Exception {
+        final MessageRoute route = findMessageRoute(record).orElseThrow(() ->
+            new IllegalStateException("No message route handles record. id=" + record.getRecordId()));
+        final Object[] invokeArgs = route.buildArgs(record);
+        final ExecutorService executor = getBlockingRouteExecutor();
+        if (!route.isAsync() && executor != null && deadline.isLimited()) {
+            awaitResponse(executor.submit(() -> {
+                Deadline.setCurrent(deadline);
+                try {
+                    return route.invokeAsyncWithArgs(invokeArgs);
+                } finally {
+                    Deadline.setCurrent(null);
+                }
+            }), deadline);
+            return;
+        }
+        Deadline.setCurrent(deadline);
+        try {
+            awaitResponse(route.invokeAsyncWithArgs(invokeArgs).toCompletableFuture(), deadline);
+        } finally {
+            Deadline.setCurrent(null);
+        }
+    }
+
+    /**
+     * Dispatches each of the batch's sub-requests on the batch endpoint's executor.
+     *
+     * <p>Sub-requests are isolated from each other: exceptions are converted to error responses
+     * for the sub-request using {@link #buildInvokeErrorResponse(Exception)}.
+     *
+     * @param batch The batch endpoint.
+     * @param request The batch request.
+     * @param deadline The deadline seen by the sub-requests' routes.
+     * @return The pending responses to the sub-requests, in order.
+     * @throws IllegalArgumentException Exception thrown if the batch request is invalid.
+     */
+    private List<CompletableFuture<AwsProxyResponse>> startBatch(final BatchEndpoint batch,
+                                                                 final AwsProxyRequest request,
+                                                                 final Deadline deadline) {
+        final List<AwsProxyRequest> subRequests = batch.readRequests(request);
+        final List<CompletableFuture<AwsProxyResponse>> responses = new ArrayList<>(subRequests.size());
+        for (final AwsProxyRequest subRequest : subRequests) {
+            responses.add(CompletableFuture.supplyAsync(() -> {
+                Deadline.setCurrent(deadline);
+                try {
+                    return dispatch(subRequest);
+                } finally {
+                    Deadline.setCurrent(null);
+                }
+            }, batch.getExecutor()).thenCompose(stage -> stage).exceptionally(error -> {
+                final Exception cause = unwrapCompletionException(error);
+                log.error("Batch sub-request failed. path={}", subRequest.getPath(), cause);
+                return buildInvokeErrorResponse(cause);
+            }));
+        }
+        return responses;
+    }
+
+    /**
+     * Combines the responses to a batch's sub-requests. Sub-requests which have not yet responded
+     * are cancelled, and have a 504 response.
+     *
+     * @param batch The batch endpoint.
+     * @param responses The pending responses to the sub-requests, in order.
+     * @return The response to the batch request.
+     */
+    private AwsProxyResponse batchResponse(final BatchEndpoint batch,
+                                           final List<CompletableFuture<AwsProxyResponse>> responses) {
+        final List<AwsProxyResponse> completed = new ArrayList<>(responses.size());
+        for (final CompletableFuture<AwsProxyResponse> response : responses) {
+            final AwsProxyResponse done = response.getNow(null);
+            if (done == null) {
+                response.cancel(true);
+            }
+            completed.add(done == null ? gatewayTimeoutResponse() : done);
+        }
+        try {
+            return batch.writeResponse(completed);
+        } catch (final IOException e) {
+            log.error("Failed to serialize batch responses", e);
+            return buildInvokeErrorResponse(e);
+        }
+    }
+
+    /**
+     * Builds the response sent for an invalid batch request.
+     *
+     * @param e The exception describing why the batch is invalid.
+     * @return A 400 response.
+     */
+    private static AwsProxyResponse badBatchResponse(final IllegalArgumentException e) {
+        log.warn("Invalid batch request: {}", e.getMessage());
+        return AwsResponseBuilder.newBuilder()
+            .status(HttpStatus.SC_BAD_REQUEST)
+            .setHeader("Content-Type", "text/plain")
+            .stringBody(e.getMessage())
+            .build();
+    }
+
+    /**
+     * Adds CORS headers, compresses and tags (if enabled) and caches (if the route is cached) the
+     * response of a dispatched request, then completes its invocation record and notifies the listeners.
+     *
+     * @param response The response to the request.
+     * @param record The record of the current invocation.
+     * @param cacheKey The key to cache the response under, or {@code null} if it is not cached.
+     * @return The response to the request.
+     */
+    private AwsProxyResponse completeDispatch(final AwsProxyResponse response, final InvocationRecord record,
+                                              final String cacheKey) {
+        final AwsProxyRequest request = record.getRequest();
+        final AwsProxyResponse encoded =
+            omitHeadBody(request, applyETag(request, compressResponse(request, applyCors(request, response))));
+        if (cacheKey != null && isCacheable(encoded)) {
+            try {
+                storeResponse(cacheKey, encoded, serializeResponse(request, encoded), record);
+            } catch (final IOException e) {
+                log.warn("Failed to serialize response for caching. path={}", request.getPath(), e);
+            }
+        }
+        record.complete(encoded.getStatusCode(), encoded.getBody() == null ? 0 : encoded.getBody().length());
+        notifyInvocationListeners(record);
+        return encoded;
+    }
+
+    /**
+     * Completes the invocation record of a dispatched request answered from the response cache
+     * and notifies the listeners.
+     *
+     * @param cached The cached response.
+     * @param record The record of the current invocation.
+     * @return The response to the request, which must not be modified, or {@code null} if the
+     *         cached response was evicted before it could be read.
+     */
+    private AwsProxyResponse completeCachedDispatch(final CachedResponse cached, final InvocationRecord record) {
+        final AwsProxyResponse notModified = notModifiedFromCache(cached, record.getRequest());
+        if (notModified != null) {
+            return completeDispatch(notModified, record, null);
+        }
+        final AwsProxyResponse response = cached.getResponse();
+        if (response == null) {
+            return null;
+        }
+        record.complete(response.getStatusCode(), response.getBody() == null ? 0 : response.getBody().length());
+        notifyInvocationListeners(record);
+        return response;
+    }
+
+    /**
+     * Builds the key of the route's response to the request in the response cache. Since the
+     * cache holds compressed responses, the request's {@code Accept-Encoding} is part of the key
+     * when compression is enabled, and since it holds serialized payloads, so is the request's
+     * payload format. Since it holds responses with their CORS headers, so is the request's allowed
+     * origin when CORS is enabled. Responses which are streamed, and responses to {@code HEAD}
+     * requests, which have no body, are not cached.
+     *
+     * @param route The route which handles the request.
+     * @param request The request.
+     * @return The key, or {@code null} if the route or response is not cached, or caching is disabled.
+     */
+    private String responseCacheKey(final Route route, final AwsProxyRequest request) {
+        final CachePolicy policy = route.getCachePolicy();
+        if (policy == null || getResponseCache() == null || isStreamedResponse(request) || isHeadRequest(request)) {
+            return null;
+        }
+        final CorsPolicy cors = getCorsPolicy();
+        final String key = policy.key(route, request) + payloadFormatKey(request)
+            + (cors == null ? "" : cors.cacheKey(request));
+        final Headers headers = request.getMultiValueHeaders();
+        final String acceptEncoding = headers == null ? null : headers.getFirst(ACCEPT_ENCODING);
+        return getResponseCompression() == null || acceptEncoding == null ? key : key + '\u0000' + acceptEncoding;
+    }
+
+    /**
+     * Gets the part of a response cache key which identifies the payload format of the request,
+     * which also identifies the payloads of static assets.
+     *
+     * @param request The request.
+     * @return The payload format's part of the key, which is empty for API Gateway REST APIs.
+     */
+    private String payloadFormatKey(final AwsProxyRequest request) {
+        if (isStreamedResponse(request)) {
+            return STREAMED_KEY_SUFFIX;
+        }
+        if (request instanceof HttpApiV2Request) {
+            return HTTP_API_V2_KEY_SUFFIX;
+        }
+        if (request instanceof AlbRequest) {
+            return ((AlbRequest) request).isMultiValueMode() ? ALB_MULTI_VALUE_KEY_SUFFIX : ALB_KEY_SUFFIX;
+        }
+        return "";
+    }
+
+    /**
+     * Selects the prebuilt response to a request for a static asset, if the handler has static assets.
+     *
+     * @param request The request.
+     * @return The asset's response, or {@code null} if the request is not for a static asset.
+     */
+    private StaticAsset.Response selectStaticAsset(final AwsProxyRequest request) {
+        final StaticAssets assets = getStaticAssets();
+        return assets == null ? null : assets.select(request);
+    }
+
+    /**
+     * Sends a prebuilt response, such as that of a static asset or CORS preflight request, if there
+     * is one. The response is serialized only the first time it is sent in the request's payload
+     * format, so no route is matched or invoked and nothing is encoded.
+     *
+     * @param request The request.
+     * @param prebuilt The prebuilt response, or {@code null} if there is none.
+     * @param output The output stream to send the response to.
+     * @param record The record of the current invocation.
+     * @return Returns {@code true} if the prebuilt response was sent, otherwise {@code false}.
+     * @throws IOException Exception thrown if sending the response to the output stream failed.
+     */
+    private boolean respondWithPrebuilt(final AwsProxyRequest request, final StaticAsset.Response prebuilt,
+                                        final OutputStream output, final InvocationRecord record) throws IOException {
+        if (prebuilt == null) {
+            return false;
+        }
+        record.startPhase(InvocationPhase.SERIALIZE);
+        final byte[] payload =
+            prebuilt.payload(payloadFormatKey(request), response -> serializeResponse(request, response));
+        writePayload(payload, output);
+        record.complete(prebuilt.getResponse().getStatusCode(), payload.length);
+        return true;
+    }
+
+    /**
+     * Looks up a response in the response cache.
+     *
+     * @param cacheKey The response's key, or {@code null} if the route is not cached.
+     * @return The cached response, or {@code null} if there is none.
+     */
+    private CachedResponse lookupCachedResponse(final String cacheKey) {
+        final ResponseCache cache = getResponseCache();
+        return cacheKey == null || cache == null ? null : cache.get(cacheKey);
+    }
+
+    /**
+     * Sends the cached response to the output stream, if there is one and it has not since been
+     * evicted. The payload is written as-is, unless the request's {@code If-None-Match} header
+     * matches its ETag.
+     *
+     * @param cacheKey The response's key, or {@code null} if the route is not cached.
+     * @param output The output stream to send the response to.
+     * @param record The record of the current invocation.
+     * @return Returns {@code true} if a cached response was sent, otherwise {@code false}.
+     * @throws IOException Exception thrown if sending the response to the output stream failed.
+     */
+    private boolean respondFromCache(final String cacheKey, final OutputStream output,
+                                     final InvocationRecord record) throws IOException {
+        final CachedResponse cached = lookupCachedResponse(cacheKey);
+        if (cached == null) {
+            return false;
+        }
+        final AwsProxyResponse notModified = notModifiedFromCache(cached, record.getRequest());
+        if (notModified != null) {
+            respond(notModified, output, record, null);
+            return true;
+        }
+        record.startPhase(InvocationPhase.SERIALIZE);
+        if (!cached.writeTo(output)) {
+            return false;
+        }
+        output.close();
+        record.complete(cached.getStatusCode(), cached.getPayloadLength());
+        return true;
+    }
+
+    /**
+     * Creates the 304 response to a conditional request whose {@code If-None-Match} header
+     * matches the cached response's ETag. The cached response is only read if it matches, to
+     * preserve its caching headers.
+     *
+     * @param cached The cached response.
+     * @param request The request.
+     * @return The 304 response, or {@code null} if ETags are disabled or the header does not match.
+     */
+    private AwsProxyResponse notModifiedFromCache(final CachedResponse cached, final AwsProxyRequest request) {
+        final ETagGenerator eTags = getETagGenerator();
+        if (eTags == null || cached.getETag() == null
+            || eTags.notModifiedIfMatches(request, cached.getETag()) == null) {
+            return null;
+        }
+        final AwsProxyResponse response = cached.getResponse();
+        return response == null
+            ? eTags.notModifiedIfMatches(request, cached.getETag()) : eTags.apply(request, response);
+    }
+
+    /**
+     * Stores the response in the response cache, for the TTL of the invocation's route.
+     *
+     * @param cacheKey The response's key.
+     * @param response The encoded response, which must not be modified afterwards.
+     * @param payload The serialized response.
+     * @param record The record of the current invocation.
+     */
+    private void storeResponse(final String cacheKey, final AwsProxyResponse response, final byte[] payload,
+                               final InvocationRecord record) {
+        final ResponseCache cache = getResponseCache();
+        if (cache != null) {
+            cache.put(cacheKey, response, payload, record.getRoute().getCachePolicy().getTtl());
+        }
+    }
+
+    /**
+     * Checks whether a response may be shared with other requests: it must be a 200 response,
+     * without cookies, whose {@code Cache-Control} header does not forbid it.
+     *
+     * @param response The encoded response.
+     * @return Returns {@code true} if the response may be cached, otherwise {@code false}.
+     */
+    private static boolean isCacheable(final AwsProxyResponse response) {
+        if (response.getStatusCode() != HttpStatus.SC_OK) {
+            return false;
+        }
+        final Headers headers = response.getMultiValueHeaders();
+        if (headers == null) {
+            return true;
+        }
+        final String cacheControl = headers.getFirst("Cache-Control");
+        return !headers.containsKey("Set-Cookie") && (cacheControl == null
+            || !(cacheControl.contains("no-store") || cacheControl.contains("private")));
+    }
+
+    /**
+     * Sets the ETag derived from the route's version tag on a successful response, unless the
+     * route set its own.
+     *
+     * @param response The route's response.
+     * @param eTag The ETag of the route's version tag, or {@code null} if there is none.
+     */
+    private static void setETag(final AwsProxyResponse response, final String eTag) {
+        if (eTag == null || response.getStatusCode() != HttpStatus.SC_OK) {
+            return;
+        }
+        if (response.getMultiValueHeaders() == null) {
+            response.setMultiValueHeaders(new Headers());
+        }
+        if (!response.getMultiValueHeaders().containsKey("ETag")) {
+            response.getMultiValueHeaders().putSingle("ETag", eTag);
+        }
+    }
+
+    /**
+     * Runs the route's interceptors before it is invoked, converting an exception thrown by an
+     * interceptor using {@link #buildInvokeErrorResponse(Exception)}.
+     *
+     * @param route The route which handles the request.
+     * @param request The request.
+     * @return The response to answer the request with, or {@code null} if the route should be invoked.
+     */
+    private AwsProxyResponse interceptBefore(final Route route, final AwsProxyRequest request) {
+        try {
+            return route.interceptBefore(request);
+        } catch (final Exception e) {
+            log.error("Route interceptor failed. path={}, route={}", request.getPath(), route, e);
+            return buildInvokeErrorResponse(e);
+        }
+    }
+
+    /**
+     * Finds the route which handles the request, recording the time taken and the route found.
+     *
+     * @param request The request for which to find a route.
+     * @param record The record of the current invocation.
+     * @return Returns an optional containing the route if one was found, otherwise an empty optional.
+     */
+    private Optional<Route> matchRoute(final AwsProxyRequest request, final InvocationRecord record) {
+        record.startPhase(InvocationPhase.MATCH);
+        final Optional<Route> foundRoute = findRoute(request);
+        foundRoute.ifPresent(record::setRoute);
+        record.endPhase();
+        return foundRoute;
+    }
+
+    /**
+     * Builds the response sent when no route handles a request.
+     *
+     * @return A simple 404 response.
+     */
+    private static AwsProxyResponse notFoundResponse() {
+        return AwsResponseBuilder.newBuilder()
+            .status(HttpStatus.SC_NOT_FOUND)
+            .html()
+            .stringBody("Not found")
+            .build();
+    }
+
+    /**
+     * Builds the response sent when a request times out waiting for a response.
+     *
+     * @return A simple 504 response.
+     */
+    private static AwsProxyResponse gatewayTimeoutResponse() {
+        return AwsResponseBuilder.newBuilder()
+            .status(HttpStatus.SC_GATEWAY_TIMEOUT)
+            .html()
+            .stringBody("Gateway Timeout")
+            .build();
     }
 
     /**
      * Invokes the route with the request and sends the response back to the Lambda's
      * output stream.
      *
+     * <p>If ETags are enabled and the route's controller provides a version tag which matches
+     * the request's {@code If-None-Match} header, a 304 response is sent without invoking the route.
+     *
      * Exceptions thrown during the course of the invoke will be caught and
-     * sent to {@link #handleInvokeError(Exception, OutputStream)} for processing.
+     * sent to {@link #handleInvokeError(Exception, AwsProxyRequest, OutputStream)} for processing.
      *
      * @param route The route to invoke.
      * @param request The AWS Lambda request which triggered the route.
      * @param output The output stream to send any responses to.
+     * @param deadline The deadline by which the route must respond.
+     * @param cacheKey The key to cache the response under, or {@code null} if it is not cached.
+     * @param record The record of the current invocation.
      * @throws IOException Exception thrown if sending the response to the output stream failed.
      */
-    private void invokeAndRespond(final Route route, final AwsProxyRequest request,
-                                  final OutputStream output) throws IOException {
+    private void invokeAndRespond(final Route route, final AwsProxyRequest request, final OutputStream output,
+                                  final Deadline deadline, final String cacheKey,
+                                  final InvocationRecord record) throws IOException {
         try {
-            final AwsProxyResponse response = route.invoke(request);
+            final ETagGenerator eTags = getETagGenerator();
+            final String versionETag = eTags == null ? null : eTags.versionETag(route, request);
+            final AwsProxyResponse notModified =
+                versionETag == null ? null : eTags.notModifiedIfMatches(request, versionETag);
+            if (notModified != null) {
+                respond(notModified, output, record, null);
+                return;
+            }
+            final AwsProxyResponse response = bufferResponse(request, route.hasInterceptors()
+                ? route.intercept(request, () -> invokeRoute(route, request, deadline, record))
+                : invokeRoute(route, request, deadline, record));
+            setETag(response, versionETag);
             beforeResponse(response);
-            sendResponse(response, output);
+            respond(response, output, record, cacheKey);
             afterResponse();
         } catch (final IOException e) {
             throw e; // catch the IOException from sendResponse and re-throw it
+        } catch (final DeadlineExceededException e) {
+            log.error("Route did not respond before the deadline. path={}, route={}", request.getPath(), route);
+            record.complete(HttpStatus.SC_GATEWAY_TIMEOUT, sendTimeoutResponse(request, output));
         } catch (final Exception e) {
-            handleInvokeError(e, output);
+            record.complete(HttpStatus.SC_INTERNAL_SERVER_ERROR, handleInvokeError(e, request, output));
+        }
+    }
+
+    /**
+     * Binds the request to the route's parameters and invokes the route, recording the time
+     * taken by each phase and, if enabled, the resources used.
+     *
+     * <p>If the route is asynchronous, its response is waited for until the deadline, after which
+     * the route's stage is cancelled and a {@link DeadlineExceededException} is thrown. The same
+     * applies to synchronous routes if blocking route timeouts are enabled, in which case the
+     * route is invoked on a separate thread, which is interrupted.
+     *
+     * @param route The route to invoke.
+     * @param request The request which triggered the route.
+     * @param deadline The deadline by which the route must respond.
+     * @param record The record of the current invocation.
+     * @return The route's response.
+     * @throws Exception Exception thrown if binding or invoking the route fails.
+     */
+    private AwsProxyResponse invokeRoute(final Route route, final AwsProxyRequest request,
+                                         final Deadline deadline, final InvocationRecord record) throws Exception {
+        final ResourceAccounting accounting = getResourceAccounting();
+        if (accounting != null) {
+            accounting.begin(record);
+        }
+        try {
+            record.startPhase(InvocationPhase.BIND);
+            final Object[] invokeArgs = route.buildArgs(request);
+            record.startPhase(InvocationPhase.INVOKE);
+            if (route.isAsync()) {
+                return awaitResponse(route.invokeAsyncWithArgs(invokeArgs).toCompletableFuture(), deadline);
+            }
+            final ExecutorService executor = getBlockingRouteExecutor();
+            if (executor != null && deadline.isLimited()) {
+                return awaitResponse(executor.submit(() -> {
+                    Deadline.setCurrent(deadline);
+                    try {
+                        return route.invokeWithArgs(invokeArgs);
+                    } finally {
+                        Deadline.setCurrent(null);
+                    }
+                }), deadline);
+            }
+            return route.invokeWithArgs(invokeArgs);
+        } finally {
+            record.endPhase();
+            if (accounting != null) {
+                accounting.end(record);
+            }
+        }
+    }
+
+    /**
+     * Binds the request to the route's parameters and invokes the route without waiting for
+     * the response of an asynchronous route. The {@link InvocationPhase#INVOKE} phase of an
+     * asynchronous route ends when its invocation record is completed.
+     *
+     * <p>If request coalescing is enabled, the invocation is shared with identical concurrent requests.
+     *
+     * @param route The route to invoke.
+     * @param request The request which triggered the route.
+     * @param record The record of the current invocation.
+     * @return A stage which completes with the route's response.
+     * @throws Exception Exception thrown if binding or invoking the route fails.
+     */
+    private CompletionStage<AwsProxyResponse> invokeRouteAsync(final Route route, final AwsProxyRequest request,
+                                                               final InvocationRecord record) throws Exception {
+        final RequestCoalescer coalescer = getRequestCoalescer();
+        if (!route.isAsync() && coalescer == null) {
+            return CompletableFuture.completedFuture(invokeRoute(route, request, Deadline.none(), record));
+        }
+        final ResourceAccounting accounting = getResourceAccounting();
+        if (accounting != null) {
+            accounting.begin(record);
+        }
+        try {
+            record.startPhase(InvocationPhase.BIND);
+            final Object[] invokeArgs = route.buildArgs(request);
+            record.startPhase(InvocationPhase.INVOKE);
+            if (coalescer != null && coalescer.canCoalesce(route, invokeArgs)) {
+                return coalescer.coalesce(route, invokeArgs, () -> route.invokeAsyncWithArgs(invokeArgs));
+            }
+            return route.invokeAsyncWithArgs(invokeArgs);
+        } finally {
+            if (!route.isAsync()) {
+                record.endPhase();
+            }
+            if (accounting != null) {
+                accounting.end(record);
+            }
+        }
+    }
+
+    /**
+     * Waits for the response of a route running on another thread, until the deadline.
+     *
+     * @param <T> The type of the response.
+     * @param future The route's pending response.
+     * @param deadline The deadline by which the route must respond.
+     * @return The route's response.
+     * @throws Exception The exception thrown by the route, or a {@link DeadlineExceededException}
+     *                   if the deadline passed first, in which case the future is cancelled.
+     */
+    private static <T> T awaitResponse(final Future<T> future, final Deadline deadline) throws Exception {
+        try {
+            if (!deadline.isLimited()) {
+                return future.get();
+            }
+            return future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException e) {
+            throw unwrapCompletionException(e);
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            throw new DeadlineExceededException(deadline);
+        }
+    }
+
+    /**
+     * Gets the exception thrown by the route from the exception which completed its stage.
+     *
+     * @param error The exception which completed the stage.
+     * @return The exception thrown by the route.
+     */
+    private static Exception unwrapCompletionException(final Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+            && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+    }
+
+    /**
+     * Buffers the body of a {@link StreamingResponse}, unless the response to the request is streamed.
+     * If writing the body fails, the response is replaced by that of
+     * {@link #buildInvokeErrorResponse(Exception)}. The body of a streaming response to a
+     * {@code HEAD} request is never written.
+     *
+     * @param request The request which the response answers.
+     * @param response The route's response.
+     * @return The response, or the buffered response.
+     */
+    private AwsProxyResponse bufferResponse(final AwsProxyRequest request, final AwsProxyResponse response) {
+        if (response instanceof StreamingResponse && isHeadRequest(request)) {
+            return omitHeadBody(request, response);
+        }
+        if (!(response instanceof StreamingResponse) || isStreamedResponse(request)) {
+            return response;
+        }
+        try {
+            return ((StreamingResponse) response).buffer();
+        } catch (final IOException | RuntimeException e) {
+            log.error("Failed to write streaming response body. path={}", request.getPath(), e);
+            return buildInvokeErrorResponse(e);
+        }
+    }
+
+    /**
+     * Removes the body of the response to a {@code HEAD} request, once it has been encoded, so that
+     * its headers, including {@code ETag} and {@code Content-Encoding}, are those of the
+     * corresponding {@code GET} response, but the body is not serialized. The body's size is sent
+     * as its {@code Content-Length}, except for a {@link StreamingResponse}, whose body is not
+     * written and so is not known.
+     *
+     * @param request The request which the response answers.
+     * @param response The encoded response.
+     * @return The response, which may have been modified in place, or a copy of a streaming
+     *         response without its body.
+     */
+    private static AwsProxyResponse omitHeadBody(final AwsProxyRequest request, final AwsProxyResponse response) {
+        if (!isHeadRequest(request)) {
+            return response;
+        }
+        if (response instanceof StreamingResponse) {
+            return new AwsProxyResponse(response.getStatusCode(), response.getMultiValueHeaders());
+        }
+        final String body = response.getBody();
+        if (body == null) {
+            return response;
+        }
+        if (response.getMultiValueHeaders() == null) {
+            response.setMultiValueHeaders(new Headers());
+        }
+        response.getMultiValueHeaders().putSingle(CONTENT_LENGTH,
+            String.valueOf(response.isBase64Encoded() ? base64DecodedLength(body) : utf8Length(body)));
+        response.setBody(null);
+        response.setBase64Encoded(false);
+        return response;
+    }
+
+    /**
+     * Computes the length of the data encoded by a base64 string, without decoding it.
+     *
+     * @param base64 The base64 encoded data, with padding.
+     * @return The length of the decoded data, in bytes.
+     */
+    private static long base64DecodedLength(final String base64) {
+        int padding = 0;
+        for (int i = base64.length() - 1; i >= 0 && base64.charAt(i) == '='; i--) {
+            padding++;
+        }
+        return (long) base64.length() * BASE64_DECODED_BYTES / BASE64_ENCODED_CHARS - padding;
+    }
+
+    /**
+     * Computes the length of the string encoded in UTF-8, without encoding it.
+     *
+     * @param text The text.
+     * @return The length of the encoded text, in bytes.
+     */
+    private static long utf8Length(final String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < UTF8_ONE_BYTE_LIMIT) {
+                length++;
+            } else if (c < UTF8_TWO_BYTE_LIMIT) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += UTF8_SUPPLEMENTARY_BYTES;
+                i++;
+            } else {
+                length += UTF8_THREE_BYTES;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Adds CORS headers, compresses and tags (if enabled), serializes, caches (if the route is cached)
+     * and sends the response to the output stream, recording the time spent and the size of the
+     * payload on the invocation's record. A {@link StreamingResponse}, which is only passed here if the response is
+     * streamed, is instead sent as its body is written.
+     *
+     * @param response The response to send.
+     * @param output The output stream to send the response to.
+     * @param record The record of the current invocation.
+     * @param cacheKey The key to cache the response under, or {@code null} if it is not cached.
+     * @throws IOException Exception thrown if sending the response to the output stream failed.
+     */
+    private void respond(final AwsProxyResponse response, final OutputStream output,
+                         final InvocationRecord record, final String cacheKey) throws IOException {
+        record.startPhase(InvocationPhase.SERIALIZE);
+        final AwsProxyRequest request = record.getRequest();
+        applyCors(request, response);
+        if (response instanceof StreamingResponse) {
+            record.complete(response.getStatusCode(), streamResponse((StreamingResponse) response, output));
+            return;
+        }
+        final AwsProxyResponse encoded = omitHeadBody(request, applyETag(request, compressResponse(request, response)));
+        final byte[] payload = serializeResponse(request, encoded);
+        if (cacheKey != null && isCacheable(encoded)) {
+            storeResponse(cacheKey, encoded, payload, record);
+        }
+        writePayload(payload, output);
+        record.complete(encoded.getStatusCode(), payload.length);
+    }
+
+    /**
+     * Thrown when a route does not respond before the request's {@link Deadline}.
+     */
+    private static final class DeadlineExceededException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the exception.
+         *
+         * @param deadline The deadline which passed.
+         */
+        DeadlineExceededException(final Deadline deadline) {
+            super("Route did not respond before the deadline: " + deadline);
         }
     }
 }
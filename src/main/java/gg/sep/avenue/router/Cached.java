@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import gg.sep.avenue.router.cache.CachePolicy;
+import gg.sep.avenue.router.cache.ResponseCache;
+
+/**
+ * Annotation used to designate a {@link GET} route whose successful responses may be cached
+ * and served again, without invoking the route, until they expire.
+ *
+ * <p>Responses are only cached while the handler has a {@link ResponseCache} set. Requests share
+ * a cached response when they match the same route and have the same values for each
+ * of the {@code key} components, for example:
+ *
+ * <pre>{@code
+ * @GET(paths = "/countries")
+ * @Cached(ttl = 5, unit = TimeUnit.MINUTES, key = {"path", "query:lang", "header:Accept-Language"})
+ * public AwsProxyResponse countries(@Query("lang") final String lang) { ... }
+ * }</pre>
+ *
+ * See documentation on {@link CachePolicy} for information regarding the {@code key} component format.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cached {
+    /**
+     * How long a cached response may be served for, in the {@link #unit()}.
+     *
+     * @return How long a cached response may be served for.
+     */
+    long ttl();
+
+    /**
+     * The unit of the {@link #ttl()}.
+     *
+     * @return The unit of the {@link #ttl()}.
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * The components of the request which identify the response, in addition to the route.
+     *
+     * @return The components of the request which identify the response.
+     */
+    String[] key() default {"path"};
+}
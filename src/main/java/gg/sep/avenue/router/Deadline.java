@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.lambda.runtime.Context;
+
+/**
+ * The point in time by which the response to the current request must be produced.
+ *
+ * <p>While a route is being invoked by a {@link LambdaProxyHandler}, {@link #current()} returns
+ * the deadline of the request, which is derived from {@link Context#getRemainingTimeInMillis()}
+ * less the handler's timeout margin. Routes can use it to size the timeouts of downstream calls
+ * from the time which is actually left, eg:
+ *
+ * <pre>{@code
+ * final Deadline deadline = Deadline.current();
+ * httpClient.send(request.timeout(deadline.remaining()));
+ * }</pre>
+ *
+ * <p>The current deadline is bound to the thread invoking the route. Asynchronous routes should
+ * capture it before handing work to other threads.
+ */
+public final class Deadline {
+    private static final Deadline NONE = new Deadline(0, false);
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final boolean limited;
+
+    private Deadline(final long deadlineNanos, final boolean limited) {
+        this.deadlineNanos = deadlineNanos;
+        this.limited = limited;
+    }
+
+    /**
+     * Gets a deadline which never expires.
+     *
+     * @return A deadline which never expires.
+     */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * Creates a deadline which expires after the given amount of time from now.
+     *
+     * @param timeout The time from now after which the deadline expires.
+     * @return The new deadline.
+     */
+    public static Deadline after(final Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+    }
+
+    /**
+     * Creates a deadline which expires when the Lambda invocation times out.
+     *
+     * @param context Context of the Lambda event.
+     * @return The new deadline, or {@link #none()} if the context is {@code null}. A context which
+     *         reports no remaining time produces a deadline which has already expired.
+     */
+    public static Deadline fromContext(final Context context) {
+        if (context == null) {
+            return NONE;
+        }
+        return after(Duration.ofMillis(context.getRemainingTimeInMillis()));
+    }
+
+    /**
+     * Gets the deadline of the request whose route is being invoked on this thread.
+     *
+     * @return The deadline of the current request, or {@link #none()} if there is none.
+     */
+    public static Deadline current() {
+        final Deadline deadline = CURRENT.get();
+        return deadline == null ? NONE : deadline;
+    }
+
+    /**
+     * Sets the deadline returned by {@link #current()} on this thread.
+     *
+     * @param deadline The deadline of the current request, or {@code null} to clear it.
+     */
+    static void setCurrent(final Deadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    /**
+     * Creates a deadline which expires the given amount of time before this one.
+     *
+     * @param margin The time to subtract from this deadline.
+     * @return The new deadline, or this deadline if it never expires.
+     */
+    public Deadline minus(final Duration margin) {
+        return limited ? new Deadline(deadlineNanos - margin.toNanos(), true) : this;
+    }
+
+    /**
+     * Checks whether this deadline can expire.
+     *
+     * @return Returns {@code false} if this deadline never expires, otherwise {@code true}.
+     */
+    public boolean isLimited() {
+        return limited;
+    }
+
+    /**
+     * Checks whether this deadline has passed.
+     *
+     * @return Returns {@code true} if this deadline has passed, otherwise {@code false}.
+     */
+    public boolean isExpired() {
+        return limited && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Gets the time left until this deadline, in milliseconds.
+     *
+     * @return The time left, which is {@code 0} once expired, or {@link Long#MAX_VALUE} if this
+     *         deadline never expires.
+     */
+    public long remainingMillis() {
+        if (!limited) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Gets the time left until this deadline.
+     *
+     * @return The time left, which is zero once expired. A deadline which never expires
+     *         returns {@code Long.MAX_VALUE} milliseconds.
+     */
+    public Duration remaining() {
+        return Duration.ofMillis(remainingMillis());
+    }
+
+    @Override
+    public String toString() {
+        return limited ? "Deadline[remaining=" + remainingMillis() + "ms]" : "Deadline[none]";
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to designate a method which handles EventBridge events.
+ *
+ * <p>An event is handled by the method if it matches all of the annotation's criteria, each of
+ * which matches every event if left empty, for example:
+ *
+ * <pre>{@code
+ * @EventBridge(sources = "aws.ec2", detailTypes = "EC2 Instance State-change Notification")
+ * public void stateChange(@Body final String detail) { ... }
+ * }</pre>
+ *
+ * <p>The method must return {@code void}, or a {@link java.util.concurrent.CompletionStage} for
+ * asynchronous handling, and may take the {@link gg.sep.avenue.router.message.EventBridgeEvent}
+ * as its first parameter. The {@link Body} of an event is its {@code detail}, as JSON. If the
+ * method fails, the invocation fails, so that EventBridge retries the event.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface EventBridge {
+    /**
+     * The {@code detail-type}s of the handled events.
+     *
+     * @return The detail types of the handled events, or an empty array for any detail type.
+     */
+    String[] detailTypes() default {};
+
+    /**
+     * The {@code source}s of the handled events.
+     *
+     * @return The sources of the handled events, or an empty array for any source.
+     */
+    String[] sources() default {};
+}
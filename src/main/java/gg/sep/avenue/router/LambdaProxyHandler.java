@@ -75,6 +75,9 @@ public interface LambdaProxyHandler extends RequestStreamHandler {
      * Hook which can be used to perform actions on the {@link AwsProxyRequest} prior to
      * it being handled.
      *
+     * <p>This is called for every request. Actions which only apply to some routes are better
+     * registered as a {@link RouteInterceptor}, which is only run for those routes.
+     *
      * @param request The parsed {@link AwsProxyRequest}.
      */
     void beforeHandle(AwsProxyRequest request);
@@ -102,11 +105,23 @@ public interface LambdaProxyHandler extends RequestStreamHandler {
      * a server error.
      *
      * @param e The exception that was thrown during invocation of the {@link Route}.
+     * @param request The request whose route failed, which determines the payload format of the response.
      * @param outputStream The Lambda's output stream failed.
+     * @return The size of the payload sent.
      * @throws IOException Exception thrown if writing to the output stream failed.
      *                     This exception should ultimately be bubbled up to
      *                     {@link RequestStreamHandler#handleRequest(InputStream, OutputStream, Context)}
      *                     and back out to the Lambda if this step fails.
      */
-    void handleInvokeError(Exception e, OutputStream outputStream) throws IOException;
+    int handleInvokeError(Exception e, AwsProxyRequest request, OutputStream outputStream) throws IOException;
+
+    /**
+     * Indicates whether the handler streams its responses, in which case the runtime must send
+     * the output stream to the Lambda Runtime API as a streamed response, as the handler writes it.
+     *
+     * @return Returns {@code true} if responses are streamed, otherwise {@code false}.
+     */
+    default boolean isResponseStreaming() {
+        return false;
+    }
 }
@@ -22,8 +22,10 @@
 
 package gg.sep.avenue.router;
 
+import java.util.Collections;
 import java.util.Set;
 
+import gg.sep.avenue.router.core.MessageRoute;
 import gg.sep.avenue.router.core.Route;
 import gg.sep.avenue.router.core.RouteRequestMethod;
 
@@ -37,6 +39,9 @@ import gg.sep.avenue.router.core.RouteRequestMethod;
  *
  * <p>A full list of valid HTTP methods and their annotations can be found in
  * {@link RouteRequestMethod}.
+ *
+ * <p>Methods which handle non-HTTP events are instead marked with {@link SQS} or
+ * {@link EventBridge}.
  */
 public interface RouteController {
     /**
@@ -47,4 +52,15 @@ public interface RouteController {
      * @return The full set of routes contained in this controller.
      */
     Set<Route> getRoutes();
+
+    /**
+     * Returns the full set of message routes, which handle non-HTTP events, contained in this controller.
+     *
+     * The standard implementation of this method is present on {@link AbstractRouteController}.
+     *
+     * @return The full set of message routes contained in this controller.
+     */
+    default Set<MessageRoute> getMessageRoutes() {
+        return Collections.emptySet();
+    }
 }
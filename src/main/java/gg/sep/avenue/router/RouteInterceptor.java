@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * Interface for code which runs around the invocation of particular routes, such as authentication,
+ * logging or rate limiting.
+ *
+ * <p>Interceptors are registered on a handler for the routes whose method or controller class has
+ * an annotation, or whose path starts with a prefix. When routes are registered, the interceptors
+ * which apply to each route are resolved into the route's own chain, in the order the interceptors
+ * were registered, so that routes without interceptors are invoked as before.
+ *
+ * <p>{@link #beforeInvoke} is called in chain order before the route is invoked, and before its
+ * response is looked up in the response cache. {@link #afterInvoke} is then called in reverse chain
+ * order with the route's response. If an interceptor answers the request itself, only that
+ * interceptor and those before it in the chain have {@link #afterInvoke} called, as the later
+ * interceptors never saw the request. Responses sent from the response cache are not passed to
+ * {@link #afterInvoke}.
+ *
+ * <p>If the route, or a later interceptor's {@link #beforeInvoke}, throws, {@link #afterInvoke} is
+ * still called from a {@code finally} block, in reverse chain order, with a {@code null} response,
+ * so that interceptors can release anything they acquired in {@link #beforeInvoke}. Its return
+ * value is then ignored, and the failure is answered with an error response as usual.
+ */
+public interface RouteInterceptor {
+    /**
+     * Called before the route is invoked. Returning a response, eg: a 401 response, answers the
+     * request without invoking the route or the rest of the chain's {@link #beforeInvoke}.
+     *
+     * @param route The route which handles the request.
+     * @param request The request.
+     * @return The response to answer the request with, or {@code null} to continue.
+     * @throws Exception Exception thrown if the interceptor fails, which is handled as if the
+     *                   route had thrown it.
+     */
+    default AwsProxyResponse beforeInvoke(final Route route, final AwsProxyRequest request) throws Exception {
+        return null;
+    }
+
+    /**
+     * Called with the response to the request before it is encoded and sent, or with {@code null}
+     * if the request failed.
+     *
+     * @param route The route which handles the request.
+     * @param request The request.
+     * @param response The response to the request, or {@code null} if the route or a later
+     *                 interceptor threw.
+     * @return The response to send, which may be the same response modified in place. Ignored if
+     *         the request failed.
+     */
+    default AwsProxyResponse afterInvoke(final Route route, final AwsProxyRequest request,
+                                         final AwsProxyResponse response) {
+        return response;
+    }
+}
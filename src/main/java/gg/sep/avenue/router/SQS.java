@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to designate a method which handles the messages of SQS batches.
+ *
+ * <p>A message is handled by the method if it matches all of the annotation's criteria, each of
+ * which matches every message if left empty. For example, to handle the messages of one queue
+ * whose {@code type} message attribute is {@code order}:
+ *
+ * <pre>{@code
+ * @SQS(queues = "orders", attribute = "type", attributeValues = "order")
+ * public void order(@Body final String body, @MessageAttribute("tenant") final String tenant) { ... }
+ * }</pre>
+ *
+ * <p>The method must return {@code void}, or a {@link java.util.concurrent.CompletionStage} for
+ * asynchronous handling, and may take the {@link gg.sep.avenue.router.message.SqsMessage} as its
+ * first parameter. A message whose method throws, or whose stage completes exceptionally, is
+ * reported as a batch item failure.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SQS {
+    /**
+     * The queues whose messages are handled, either as ARNs or queue names.
+     *
+     * @return The queues whose messages are handled, or an empty array for every queue.
+     */
+    String[] queues() default {};
+
+    /**
+     * The name of a message attribute which handled messages must have.
+     *
+     * @return The name of the message attribute, or an empty string for any message.
+     */
+    String attribute() default "";
+
+    /**
+     * The values of the {@link #attribute()} of handled messages.
+     *
+     * @return The values of the message attribute, or an empty array for any value.
+     */
+    String[] attributeValues() default {};
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.assets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import lombok.Getter;
+import org.apache.http.HttpStatus;
+
+import gg.sep.avenue.router.compression.ResponseCompression;
+
+/**
+ * A file served by {@link StaticAssets}, with every response to it built ahead of time.
+ *
+ * <p>When the asset is loaded, its body is encoded once (as text if it is valid UTF-8 text,
+ * otherwise as base64), a gzip variant is compressed if it is compressible and smaller, and its
+ * {@code ETag} and {@code Last-Modified} headers are computed. The responses to GET, HEAD and
+ * conditional requests are then built for each encoding, and each is serialized at most once per
+ * payload format, the first time it is sent.
+ */
+public final class StaticAsset {
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String CACHE_CONTROL = "Cache-Control";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String VARY = "Vary";
+    private static final String GZIP = "gzip";
+    private static final int ETAG_HASH_BYTES = 12;
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    @Getter
+    private final String path;
+    @Getter
+    private final String eTag;
+    private final Instant lastModified;
+    private final Encoding identity;
+    private final Encoding gzip;
+
+    /**
+     * Builds the responses to the asset.
+     *
+     * @param path The request path the asset is served at.
+     * @param content The content of the asset.
+     * @param contentType The media type of the asset.
+     * @param lastModified When the asset was last modified, or {@code null} if it is not known.
+     * @param cacheControl Value of the {@code Cache-Control} header, or {@code null} to send none.
+     * @param compress Whether to compress the asset, if it is large enough that it would be smaller.
+     */
+    StaticAsset(final String path, final byte[] content, final String contentType, final Instant lastModified,
+                final String cacheControl, final boolean compress) {
+        this.path = path;
+        this.lastModified = lastModified == null ? null : lastModified.truncatedTo(ChronoUnit.SECONDS);
+        final String hash = hash(content);
+        this.eTag = "\"" + hash + "\"";
+        final byte[] compressed = compress ? gzip(content) : null;
+        final boolean vary = compressed != null;
+
+        final Headers headers = new Headers();
+        final String text = isText(contentType) ? decodeUtf8(content) : null;
+        headers.putSingle(CONTENT_TYPE, text == null ? contentType : contentType + "; charset=utf-8");
+        if (cacheControl != null) {
+            headers.putSingle(CACHE_CONTROL, cacheControl);
+        }
+        if (this.lastModified != null) {
+            headers.putSingle(LAST_MODIFIED, HTTP_DATE.format(this.lastModified.atZone(ZoneOffset.UTC)));
+        }
+        if (vary) {
+            headers.putSingle(VARY, "Accept-Encoding");
+        }
+        this.identity = new Encoding(headers, eTag, null, text == null ? base64(content) : text, text == null,
+            content.length);
+        this.gzip = vary
+            ? new Encoding(headers, "\"" + hash + "-gz\"", GZIP, base64(compressed), true, compressed.length)
+            : null;
+    }
+
+    /**
+     * Selects the response to a GET or HEAD request for the asset: its body in the encoding the
+     * client accepts, without the body for HEAD requests, or a 304 response if the request's
+     * {@code If-None-Match} or {@code If-Modified-Since} header matches.
+     *
+     * @param request The request.
+     * @return The response, which must not be modified.
+     */
+    public Response select(final AwsProxyRequest request) {
+        final Headers headers = request.getMultiValueHeaders();
+        final Encoding encoding = gzip != null && headers != null
+            && ResponseCompression.acceptsGzip(headers.getFirst("Accept-Encoding")) ? gzip : identity;
+        if (isNotModified(headers, encoding)) {
+            return encoding.notModified;
+        }
+        return "HEAD".equals(request.getHttpMethod()) ? encoding.head : encoding.get;
+    }
+
+    private boolean isNotModified(final Headers headers, final Encoding encoding) {
+        if (headers == null) {
+            return false;
+        }
+        final String ifNoneMatch = headers.getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (final String candidate : ifNoneMatch.split(",")) {
+                final String tag = candidate.trim();
+                if ("*".equals(tag) || encoding.eTag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final String ifModifiedSince = headers.getFirst("If-Modified-Since");
+        if (ifModifiedSince == null || lastModified == null) {
+            return false;
+        }
+        try {
+            return !lastModified.isAfter(ZonedDateTime.parse(ifModifiedSince, HTTP_DATE).toInstant());
+        } catch (final DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean isText(final String contentType) {
+        return contentType.startsWith("text/") || contentType.endsWith("/json") || contentType.endsWith("+json")
+            || contentType.endsWith("/javascript") || contentType.endsWith("/xml") || contentType.endsWith("+xml");
+    }
+
+    private static String decodeUtf8(final byte[] content) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(content))
+                .toString();
+        } catch (final CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    private static String base64(final byte[] content) {
+        return Base64.getEncoder().encodeToString(content);
+    }
+
+    private static String hash(final byte[] content) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            final byte[] truncated = new byte[ETAG_HASH_BYTES];
+            System.arraycopy(digest, 0, truncated, 0, ETAG_HASH_BYTES);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(truncated);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Compresses the content with gzip at the best compression level, since it is only done once.
+     *
+     * @param content The content.
+     * @return The compressed content, or {@code null} if it is no smaller.
+     */
+    private static byte[] gzip(final byte[] content) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 2 + 1);
+        try (GZIPOutputStream gzipOutput = new BestGzipOutputStream(output)) {
+            gzipOutput.write(content);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to compress static asset", e);
+        }
+        return output.size() < content.length ? output.toByteArray() : null;
+    }
+
+    /**
+     * {@link GZIPOutputStream} at the best compression level.
+     */
+    private static final class BestGzipOutputStream extends GZIPOutputStream {
+        BestGzipOutputStream(final ByteArrayOutputStream output) throws IOException {
+            super(output);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+
+    /**
+     * The responses to the asset in one content encoding.
+     */
+    private static final class Encoding {
+        private final String eTag;
+        private final Response get;
+        private final Response head;
+        private final Response notModified;
+
+        Encoding(final Headers shared, final String eTag, final String contentEncoding, final String body,
+                 final boolean base64Encoded, final int contentLength) {
+            this.eTag = eTag;
+            final Headers headers = copy(shared);
+            headers.putSingle(ETAG, eTag);
+            if (contentEncoding != null) {
+                headers.putSingle("Content-Encoding", contentEncoding);
+            }
+
+            final AwsProxyResponse getResponse = new AwsProxyResponse(HttpStatus.SC_OK, headers, body);
+            getResponse.setBase64Encoded(base64Encoded);
+            this.get = new Response(getResponse);
+
+            final Headers headHeaders = copy(headers);
+            headHeaders.putSingle("Content-Length", String.valueOf(contentLength));
+            this.head = new Response(new AwsProxyResponse(HttpStatus.SC_OK, headHeaders));
+
+            final Headers notModifiedHeaders = new Headers();
+            for (final String name : new String[] {ETAG, CACHE_CONTROL, LAST_MODIFIED, VARY}) {
+                if (headers.containsKey(name)) {
+                    notModifiedHeaders.put(name, headers.get(name));
+                }
+            }
+            this.notModified = new Response(new AwsProxyResponse(HttpStatus.SC_NOT_MODIFIED, notModifiedHeaders));
+        }
+
+        private static Headers copy(final Headers headers) {
+            final Headers copy = new Headers();
+            headers.forEach((name, values) -> copy.put(name, values));
+            return copy;
+        }
+    }
+
+    /**
+     * A response to the asset, and its payload in each payload format it has been sent in.
+     * Other prebuilt responses, such as those to CORS preflight requests, are held the same way.
+     */
+    public static final class Response {
+        @Getter
+        private final AwsProxyResponse response;
+        private final Map<String, byte[]> payloads = new ConcurrentHashMap<>();
+
+        /**
+         * Holds a prebuilt response.
+         *
+         * @param response The response, which must not be modified afterwards.
+         */
+        public Response(final AwsProxyResponse response) {
+            this.response = response;
+        }
+
+        /**
+         * Gets the serialized response in a payload format, serializing it the first time.
+         *
+         * @param format Identifies the payload format.
+         * @param serializer Serializes the response in the payload format.
+         * @return The serialized payload, which must not be modified.
+         * @throws IOException Exception thrown if serializing the response fails.
+         */
+        public byte[] payload(final String format, final PayloadSerializer serializer) throws IOException {
+            final byte[] cached = payloads.get(format);
+            if (cached != null) {
+                return cached;
+            }
+            final byte[] payload = serializer.serialize(response);
+            final byte[] existing = payloads.putIfAbsent(format, payload);
+            return existing == null ? payload : existing;
+        }
+    }
+
+    /**
+     * Serializes a response in the payload format of the request it answers.
+     */
+    @FunctionalInterface
+    public interface PayloadSerializer {
+        /**
+         * Serializes the response.
+         *
+         * @param response The response.
+         * @return The serialized payload.
+         * @throws IOException Exception thrown if serializing the response fails.
+         */
+        byte[] serialize(AwsProxyResponse response) throws IOException;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.assets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.avenue.router.AbstractLambdaProxyHandler;
+
+/**
+ * Serves the files of a directory, or of a classpath prefix, as static assets under a path prefix,
+ * eg: a single page app and its scripts and styles.
+ *
+ * <p>Every file is read into memory once, when the assets are built. Each {@link StaticAsset} then
+ * holds its encoded body, its precompressed gzip variant, and its {@code ETag} and
+ * {@code Last-Modified} headers, so that a request for it only looks up the asset and sends a
+ * response which was built, and serialized, ahead of time. The route table and controllers are
+ * not consulted.
+ *
+ * <p>A request for a directory, with or without a trailing slash, is answered with the directory's
+ * index file. Assets are enabled on a handler with
+ * {@link AbstractLambdaProxyHandler#setStaticAssets(StaticAssets)}.
+ */
+@Log4j2
+public final class StaticAssets {
+    private static final Map<String, String> DEFAULT_CONTENT_TYPES = new HashMap<>();
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final int BUFFER_SIZE = 8192;
+
+    static {
+        DEFAULT_CONTENT_TYPES.put("html", "text/html");
+        DEFAULT_CONTENT_TYPES.put("htm", "text/html");
+        DEFAULT_CONTENT_TYPES.put("css", "text/css");
+        DEFAULT_CONTENT_TYPES.put("js", "application/javascript");
+        DEFAULT_CONTENT_TYPES.put("mjs", "application/javascript");
+        DEFAULT_CONTENT_TYPES.put("json", "application/json");
+        DEFAULT_CONTENT_TYPES.put("map", "application/json");
+        DEFAULT_CONTENT_TYPES.put("txt", "text/plain");
+        DEFAULT_CONTENT_TYPES.put("md", "text/markdown");
+        DEFAULT_CONTENT_TYPES.put("csv", "text/csv");
+        DEFAULT_CONTENT_TYPES.put("xml", "application/xml");
+        DEFAULT_CONTENT_TYPES.put("svg", "image/svg+xml");
+        DEFAULT_CONTENT_TYPES.put("png", "image/png");
+        DEFAULT_CONTENT_TYPES.put("jpg", "image/jpeg");
+        DEFAULT_CONTENT_TYPES.put("jpeg", "image/jpeg");
+        DEFAULT_CONTENT_TYPES.put("gif", "image/gif");
+        DEFAULT_CONTENT_TYPES.put("webp", "image/webp");
+        DEFAULT_CONTENT_TYPES.put("ico", "image/x-icon");
+        DEFAULT_CONTENT_TYPES.put("woff", "font/woff");
+        DEFAULT_CONTENT_TYPES.put("woff2", "font/woff2");
+        DEFAULT_CONTENT_TYPES.put("ttf", "font/ttf");
+        DEFAULT_CONTENT_TYPES.put("pdf", "application/pdf");
+        DEFAULT_CONTENT_TYPES.put("wasm", "application/wasm");
+    }
+
+    private final Map<String, StaticAsset> assets;
+
+    private StaticAssets(final Map<String, StaticAsset> assets) {
+        this.assets = assets;
+    }
+
+    /**
+     * Finds the asset a GET or HEAD request is for, and selects the response to the request.
+     *
+     * @param request The request.
+     * @return The response, which must not be modified, or {@code null} if the request is not
+     *         for a static asset.
+     */
+    public StaticAsset.Response select(final AwsProxyRequest request) {
+        final String method = request.getHttpMethod();
+        if (!("GET".equals(method) || "HEAD".equals(method)) || request.getPath() == null) {
+            return null;
+        }
+        final StaticAsset asset = assets.get(request.getPath());
+        return asset == null ? null : asset.select(request);
+    }
+
+    /**
+     * Gets the asset served at a path.
+     *
+     * @param path The request path.
+     * @return The asset, or {@code null} if there is none.
+     */
+    public StaticAsset get(final String path) {
+        return assets.get(path);
+    }
+
+    /**
+     * Creates a new instance of the {@link StaticAssets} builder.
+     * @return A new instance of the {@link StaticAssets} builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class for {@link StaticAssets}.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_MINIMUM_COMPRESSION_SIZE = 1024;
+
+        private String path = "/";
+        private Path directory;
+        private String classpathPrefix;
+        private ClassLoader classLoader = StaticAssets.class.getClassLoader();
+        private String indexFile = "index.html";
+        private String cacheControl = "no-cache";
+        private boolean compression = true;
+        private int minimumCompressionSize = DEFAULT_MINIMUM_COMPRESSION_SIZE;
+        private final Map<String, String> contentTypes = new HashMap<>(DEFAULT_CONTENT_TYPES);
+
+        /**
+         * Sets the path prefix the assets are served under. Defaults to {@code /}.
+         *
+         * @param prefix The path prefix, which must be absolute.
+         * @return The builder instance.
+         */
+        public Builder withPath(final String prefix) {
+            if (prefix == null || !prefix.startsWith("/")) {
+                throw new IllegalArgumentException("Static asset path must be absolute: " + prefix);
+            }
+            path = prefix.endsWith("/") ? prefix : prefix + "/";
+            return this;
+        }
+
+        /**
+         * Serves the files of a directory on the file system.
+         *
+         * @param root The directory.
+         * @return The builder instance.
+         */
+        public Builder withDirectory(final Path root) {
+            if (root == null) {
+                throw new IllegalArgumentException("Static asset directory must not be null");
+            }
+            directory = root;
+            classpathPrefix = null;
+            return this;
+        }
+
+        /**
+         * Serves the classpath resources under a prefix, eg: {@code public}, from directories or jars.
+         * Where several classpath entries have the same resource, the first is served.
+         *
+         * @param prefix The resource prefix.
+         * @return The builder instance.
+         */
+        public Builder withClasspath(final String prefix) {
+            if (prefix == null || prefix.isEmpty()) {
+                throw new IllegalArgumentException("Static asset classpath prefix must not be empty");
+            }
+            classpathPrefix = prefix.replaceAll("^/+|/+$", "");
+            directory = null;
+            return this;
+        }
+
+        /**
+         * Sets the class loader which loads classpath resources. Defaults to the class loader of Avenue.
+         *
+         * @param loader The class loader.
+         * @return The builder instance.
+         */
+        public Builder withClassLoader(final ClassLoader loader) {
+            if (loader == null) {
+                throw new IllegalArgumentException("Class loader must not be null");
+            }
+            classLoader = loader;
+            return this;
+        }
+
+        /**
+         * Sets the name of the file served for requests for its directory. Defaults to {@code index.html}.
+         *
+         * @param name The file name, or {@code null} to serve no index files.
+         * @return The builder instance.
+         */
+        public Builder withIndexFile(final String name) {
+            indexFile = name;
+            return this;
+        }
+
+        /**
+         * Sets the {@code Cache-Control} header of the assets. Defaults to {@code no-cache}, so that
+         * clients revalidate the assets using their ETags.
+         *
+         * @param value The header's value, or {@code null} to send none.
+         * @return The builder instance.
+         */
+        public Builder withCacheControl(final String value) {
+            cacheControl = value;
+            return this;
+        }
+
+        /**
+         * Sets whether gzip variants of compressible assets are built. Defaults to {@code true}.
+         *
+         * @param enabled Whether to compress assets.
+         * @return The builder instance.
+         */
+        public Builder withCompression(final boolean enabled) {
+            compression = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the minimum size of an asset for it to be compressed. Defaults to 1024 bytes.
+         *
+         * @param bytes The minimum size, in bytes.
+         * @return The builder instance.
+         */
+        public Builder withMinimumCompressionSize(final int bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Minimum compression size must not be negative: " + bytes);
+            }
+            minimumCompressionSize = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the media type of the files with an extension.
+         *
+         * @param extension The file extension, without the dot.
+         * @param mediaType The media type.
+         * @return The builder instance.
+         */
+        public Builder withContentType(final String extension, final String mediaType) {
+            if (extension == null || mediaType == null) {
+                throw new IllegalArgumentException("Extension and media type must not be null");
+            }
+            contentTypes.put(extension.toLowerCase(Locale.ENGLISH), mediaType);
+            return this;
+        }
+
+        /**
+         * Loads every asset and builds its responses.
+         *
+         * @return The static assets.
+         * @throws IOException Exception thrown if loading the assets fails.
+         */
+        public StaticAssets build() throws IOException {
+            if (directory == null && classpathPrefix == null) {
+                throw new IllegalStateException("Static assets need a directory or classpath prefix");
+            }
+            final Map<String, StaticAsset> assets = new HashMap<>();
+            if (directory != null) {
+                loadDirectory(directory, assets);
+            } else {
+                final Enumeration<URL> roots = classLoader.getResources(classpathPrefix);
+                while (roots.hasMoreElements()) {
+                    loadClasspathRoot(roots.nextElement(), assets);
+                }
+            }
+            addIndexes(assets);
+            log.info("Loaded {} static assets under {}", assets.size(), path);
+            return new StaticAssets(Collections.unmodifiableMap(assets));
+        }
+
+        private void loadDirectory(final Path root, final Map<String, StaticAsset> assets) throws IOException {
+            final List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            for (final Path file : files) {
+                final String relative = root.relativize(file).toString()
+                    .replace(file.getFileSystem().getSeparator(), "/");
+                if (!assets.containsKey(path + relative)) {
+                    add(relative, Files.readAllBytes(file), Files.getLastModifiedTime(file).toInstant(), assets);
+                }
+            }
+        }
+
+        private void loadClasspathRoot(final URL root, final Map<String, StaticAsset> assets) throws IOException {
+            if ("file".equals(root.getProtocol())) {
+                try {
+                    loadDirectory(Paths.get(root.toURI()), assets);
+                } catch (final URISyntaxException e) {
+                    throw new IOException("Invalid classpath resource: " + root, e);
+                }
+                return;
+            }
+            if (!"jar".equals(root.getProtocol())) {
+                log.warn("Skipping static assets from unsupported classpath resource: {}", root);
+                return;
+            }
+            final JarURLConnection connection = (JarURLConnection) root.openConnection();
+            connection.setUseCaches(false);
+            final String entryPrefix = classpathPrefix + "/";
+            try (JarFile jar = connection.getJarFile()) {
+                final List<JarEntry> entries = new ArrayList<>();
+                final Enumeration<JarEntry> jarEntries = jar.entries();
+                while (jarEntries.hasMoreElements()) {
+                    final JarEntry entry = jarEntries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().startsWith(entryPrefix)) {
+                        entries.add(entry);
+                    }
+                }
+                for (final JarEntry entry : entries) {
+                    final String relative = entry.getName().substring(entryPrefix.length());
+                    if (!assets.containsKey(path + relative)) {
+                        final Instant lastModified = entry.getTime() < 0 ? null : Instant.ofEpochMilli(entry.getTime());
+                        try (InputStream input = jar.getInputStream(entry)) {
+                            add(relative, read(input), lastModified, assets);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void add(final String relative, final byte[] content, final Instant lastModified,
+                         final Map<String, StaticAsset> assets) {
+            final String contentType = contentType(relative);
+            final boolean compress = compression && content.length >= minimumCompressionSize
+                && isCompressible(contentType);
+            final String assetPath = path + relative;
+            assets.put(assetPath,
+                new StaticAsset(assetPath, content, contentType, lastModified, cacheControl, compress));
+        }
+
+        /**
+         * Serves each directory's index file for requests for the directory, with or without a trailing slash.
+         *
+         * @param assets The assets, by path.
+         */
+        private void addIndexes(final Map<String, StaticAsset> assets) {
+            if (indexFile == null) {
+                return;
+            }
+            final String suffix = "/" + indexFile;
+            final Map<String, StaticAsset> indexes = new HashMap<>();
+            assets.forEach((assetPath, asset) -> {
+                if (assetPath.endsWith(suffix)) {
+                    final String directoryPath = assetPath.substring(0, assetPath.length() - indexFile.length());
+                    indexes.put(directoryPath, asset);
+                    if (directoryPath.length() > 1) {
+                        indexes.put(directoryPath.substring(0, directoryPath.length() - 1), asset);
+                    }
+                }
+            });
+            indexes.forEach(assets::putIfAbsent);
+        }
+
+        private String contentType(final String relative) {
+            final int dot = relative.lastIndexOf('.');
+            final String extension = dot < 0 ? "" : relative.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+            return contentTypes.getOrDefault(extension, DEFAULT_CONTENT_TYPE);
+        }
+
+        private static boolean isCompressible(final String contentType) {
+            return contentType.startsWith("text/") || contentType.endsWith("json") || contentType.endsWith("xml")
+                || contentType.endsWith("javascript") || contentType.equals("application/wasm")
+                || contentType.equals("font/ttf");
+        }
+
+        private static byte[] read(final InputStream input) throws IOException {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+}
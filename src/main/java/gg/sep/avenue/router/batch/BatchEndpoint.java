@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.apache.http.HttpStatus;
+
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.event.QueryStrings;
+
+/**
+ * Endpoint which accepts a batch of sub-requests in a single request, so that clients which make
+ * many small requests at once pay for a single invocation. Each sub-request is dispatched through
+ * the handler's route table as if it had been sent on its own, and the responses are returned
+ * together, in the order of the sub-requests.
+ *
+ * <p>The batch is a {@code POST} to the endpoint's path, whose body is a JSON array of
+ * sub-requests:
+ * <pre>
+ * [
+ *   {"method": "GET", "path": "/items/1?fields=name", "headers": {"Accept": "application/json"}},
+ *   {"method": "POST", "path": "/items", "body": "{\"name\": \"new\"}"}
+ * ]
+ * </pre>
+ * The {@code headers}, {@code body} and {@code isBase64Encoded} fields are optional. Sub-requests
+ * do not inherit the headers of the batch request, but share its request context. The response is
+ * a JSON array with the {@code statusCode}, {@code headers}, {@code body} and
+ * {@code isBase64Encoded} of each sub-request's response.
+ *
+ * <p>Sub-requests run in parallel on a bounded executor, and each is isolated from the others: a
+ * sub-request which fails, or has not responded by the batch request's {@link
+ * gg.sep.avenue.router.Deadline}, has an error response in the batch, while the others are
+ * unaffected. Each sub-request has its own {@link gg.sep.avenue.router.metrics.InvocationRecord}.
+ */
+public final class BatchEndpoint {
+    private static final String DEFAULT_PATH = "/batch";
+    private static final int DEFAULT_MAXIMUM_REQUESTS = 25;
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final int RESPONSE_SIZE_HINT = 256;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The path of the endpoint.
+     */
+    @Getter
+    private final String path;
+
+    /**
+     * The maximum number of sub-requests in a batch.
+     */
+    @Getter
+    private final int maximumRequests;
+
+    /**
+     * The executor which runs sub-requests, which has at most the endpoint's parallelism threads.
+     */
+    @Getter
+    private final ExecutorService executor;
+
+    private final ObjectMapper objectMapper;
+
+    private BatchEndpoint(final Builder builder) {
+        this.path = builder.path;
+        this.maximumRequests = builder.maximumRequests;
+        this.objectMapper = builder.objectMapper;
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(builder.parallelism, builder.parallelism,
+            THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                final Thread thread = new Thread(runnable, "avenue-batch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    /**
+     * Checks whether the request is a batch for this endpoint.
+     *
+     * @param request The request.
+     * @return Returns {@code true} if the request is a {@code POST} to the endpoint's path,
+     *         otherwise {@code false}.
+     */
+    public boolean matches(final AwsProxyRequest request) {
+        return path.equals(request.getPath()) && "POST".equalsIgnoreCase(request.getHttpMethod());
+    }
+
+    /**
+     * Reads the sub-requests from the body of a batch request.
+     *
+     * @param batch The batch request.
+     * @return The sub-requests, in the order they appear in the batch.
+     * @throws IllegalArgumentException Exception thrown if the body is not a valid batch, has more
+     *                                  than the maximum number of sub-requests, or has a
+     *                                  sub-request to the endpoint itself.
+     */
+    public List<AwsProxyRequest> readRequests(final AwsProxyRequest batch) {
+        final JsonNode root;
+        try {
+            final String body = batch.getBody() == null ? "" : batch.getBody();
+            root = objectMapper.readTree(batch.isBase64Encoded()
+                ? Base64.getDecoder().decode(body) : body.getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Batch body is not valid JSON", e);
+        }
+        if (root == null || !root.isArray()) {
+            throw new IllegalArgumentException("Batch body must be an array of sub-requests");
+        }
+        if (root.size() > maximumRequests) {
+            throw new IllegalArgumentException("Batch has " + root.size() + " sub-requests, the maximum is "
+                + maximumRequests);
+        }
+        final List<AwsProxyRequest> requests = new ArrayList<>(root.size());
+        for (final JsonNode node : root) {
+            requests.add(readRequest(node, batch));
+        }
+        return requests;
+    }
+
+    /**
+     * Reads a single sub-request.
+     *
+     * @param node The sub-request.
+     * @param batch The batch request, whose request context the sub-request shares.
+     * @return The sub-request.
+     */
+    private AwsProxyRequest readRequest(final JsonNode node, final AwsProxyRequest batch) {
+        final String method = node.path("method").asText(null);
+        final String target = node.path("path").asText(null);
+        if (method == null || target == null || !target.startsWith("/")) {
+            throw new IllegalArgumentException("Sub-requests must have a method and an absolute path");
+        }
+        final int queryStart = target.indexOf('?');
+        final String requestPath = queryStart < 0 ? target : target.substring(0, queryStart);
+        if (path.equals(requestPath)) {
+            throw new IllegalArgumentException("Sub-requests must not be batches");
+        }
+
+        final AwsProxyRequest request = new AwsProxyRequest();
+        request.setHttpMethod(method.toUpperCase(Locale.ROOT));
+        request.setPath(requestPath);
+        request.setMultiValueQueryStringParameters(
+            QueryStrings.parse(queryStart < 0 ? null : target.substring(queryStart + 1)));
+        final Headers headers = new Headers();
+        final Iterator<Map.Entry<String, JsonNode>> fields = node.path("headers").fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isArray()) {
+                field.getValue().forEach(value -> headers.add(field.getKey(), value.asText()));
+            } else {
+                headers.add(field.getKey(), field.getValue().asText());
+            }
+        }
+        request.setMultiValueHeaders(headers);
+        request.setBody(node.path("body").asText(null));
+        request.setIsBase64Encoded(node.path("isBase64Encoded").asBoolean(false));
+        request.setRequestContext(batch.getRequestContext());
+        request.setStageVariables(batch.getStageVariables());
+        return request;
+    }
+
+    /**
+     * Combines the responses to the sub-requests into the response to the batch request.
+     *
+     * @param responses The responses, in the order of the sub-requests.
+     * @return The 200 response to the batch request.
+     * @throws IOException Exception thrown if serializing the responses fails.
+     */
+    public AwsProxyResponse writeResponse(final List<AwsProxyResponse> responses) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(RESPONSE_SIZE_HINT * (responses.size() + 1));
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartArray();
+            for (final AwsProxyResponse response : responses) {
+                generator.writeStartObject();
+                generator.writeNumberField("statusCode", response.getStatusCode());
+                generator.writeObjectFieldStart("headers");
+                if (response.getMultiValueHeaders() != null) {
+                    for (final Map.Entry<String, List<String>> header : response.getMultiValueHeaders().entrySet()) {
+                        generator.writeArrayFieldStart(header.getKey());
+                        for (final String value : header.getValue()) {
+                            generator.writeString(value);
+                        }
+                        generator.writeEndArray();
+                    }
+                }
+                generator.writeEndObject();
+                generator.writeStringField("body", response.getBody());
+                generator.writeBooleanField("isBase64Encoded", response.isBase64Encoded());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        return AwsResponseBuilder.newBuilder()
+            .status(HttpStatus.SC_OK)
+            .json()
+            .stringBody(new String(output.toByteArray(), StandardCharsets.UTF_8))
+            .build();
+    }
+
+    /**
+     * Creates a builder for the endpoint.
+     *
+     * @return The builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder for {@link BatchEndpoint}.
+     */
+    public static final class Builder {
+        private String path = DEFAULT_PATH;
+        private int maximumRequests = DEFAULT_MAXIMUM_REQUESTS;
+        private int parallelism = DEFAULT_PARALLELISM;
+        private ObjectMapper objectMapper = new ObjectMapper();
+
+        /**
+         * Sets the path of the endpoint. Defaults to {@code /batch}.
+         *
+         * @param endpointPath The absolute path of the endpoint.
+         * @return The builder instance.
+         */
+        public Builder withPath(final String endpointPath) {
+            if (endpointPath == null || !endpointPath.startsWith("/")) {
+                throw new IllegalArgumentException("Batch path must be absolute: " + endpointPath);
+            }
+            this.path = endpointPath;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of sub-requests in a batch. Larger batches are rejected with a
+         * 400 response. Defaults to 25.
+         *
+         * @param count The maximum number of sub-requests, which must be positive.
+         * @return The builder instance.
+         */
+        public Builder withMaximumRequests(final int count) {
+            if (count <= 0) {
+                throw new IllegalArgumentException("Maximum requests must be positive: " + count);
+            }
+            this.maximumRequests = count;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of sub-requests which run at once, across all batches.
+         * Defaults to 8.
+         *
+         * @param threads The number of threads which run sub-requests, which must be positive.
+         * @return The builder instance.
+         */
+        public Builder withParallelism(final int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("Parallelism must be positive: " + threads);
+            }
+            this.parallelism = threads;
+            return this;
+        }
+
+        /**
+         * Sets the object mapper used to read batches and write their responses.
+         *
+         * @param mapper The object mapper.
+         * @return The builder instance.
+         */
+        public Builder withObjectMapper(final ObjectMapper mapper) {
+            if (mapper == null) {
+                throw new IllegalArgumentException("Object mapper must not be null");
+            }
+            this.objectMapper = mapper;
+            return this;
+        }
+
+        /**
+         * Builds the endpoint.
+         *
+         * @return The endpoint.
+         */
+        public BatchEndpoint build() {
+            return new BatchEndpoint(this);
+        }
+    }
+}
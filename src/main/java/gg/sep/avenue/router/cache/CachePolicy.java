@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import lombok.Getter;
+
+import gg.sep.avenue.router.Cached;
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * The caching settings of a route, compiled from its {@link Cached} annotation when the route
+ * is built.
+ *
+ * <p>Each key component names a part of the request which identifies the response:
+ *
+ * <ul>
+ *     <li>{@code path}: the request's path.</li>
+ *     <li>{@code query:<name>}: every value of the named query string parameter.</li>
+ *     <li>{@code header:<name>}: every value of the named header, matched case-insensitively.</li>
+ * </ul>
+ */
+public final class CachePolicy {
+    private static final String PATH = "path";
+    private static final String QUERY_PREFIX = "query:";
+    private static final String HEADER_PREFIX = "header:";
+    private static final char SEPARATOR = '\u0000';
+
+    @Getter
+    private final Duration ttl;
+    private final Component[] components;
+
+    private CachePolicy(final Duration ttl, final Component[] components) {
+        this.ttl = ttl;
+        this.components = components;
+    }
+
+    /**
+     * Compiles the caching settings from a route method's annotation.
+     *
+     * @param cached The route method's annotation.
+     * @return The caching settings.
+     * @throws IllegalArgumentException Thrown if the TTL is not positive or a key component is invalid.
+     */
+    public static CachePolicy fromAnnotation(final Cached cached) {
+        if (cached.ttl() <= 0) {
+            throw new IllegalArgumentException("Cached ttl must be positive: " + cached.ttl());
+        }
+        final String[] key = cached.key();
+        final Component[] components = new Component[key.length];
+        for (int i = 0; i < key.length; i++) {
+            components[i] = Component.parse(key[i]);
+        }
+        return new CachePolicy(Duration.ofNanos(cached.unit().toNanos(cached.ttl())), components);
+    }
+
+    /**
+     * Builds the key which identifies the route's response to the request.
+     *
+     * @param route The route which handles the request.
+     * @param request The request.
+     * @return The cache key.
+     */
+    public String key(final Route route, final AwsProxyRequest request) {
+        final StringBuilder key = new StringBuilder(64)
+            .append(route.getRouteRequestMethod()).append(' ').append(route.getRoutePath());
+        for (final Component component : components) {
+            key.append(SEPARATOR);
+            component.append(request, key);
+        }
+        return key.toString();
+    }
+
+    /**
+     * A single part of the request which identifies the response.
+     */
+    private static final class Component {
+        private final String type;
+        private final String name;
+
+        private Component(final String type, final String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        private static Component parse(final String component) {
+            if (PATH.equals(component)) {
+                return new Component(PATH, null);
+            }
+            for (final String prefix : new String[] {QUERY_PREFIX, HEADER_PREFIX}) {
+                if (component.startsWith(prefix) && component.length() > prefix.length()) {
+                    return new Component(prefix, component.substring(prefix.length()));
+                }
+            }
+            throw new IllegalArgumentException("Invalid Cached key component: " + component);
+        }
+
+        private void append(final AwsProxyRequest request, final StringBuilder key) {
+            if (PATH.equals(type)) {
+                appendValue(key, request.getPath());
+                return;
+            }
+            final Map<String, List<String>> values = QUERY_PREFIX.equals(type)
+                ? request.getMultiValueQueryStringParameters()
+                : request.getMultiValueHeaders();
+            final List<String> found = values == null ? null : values.get(name);
+            if (found == null) {
+                return;
+            }
+            for (final String value : found) {
+                appendValue(key, value);
+            }
+        }
+
+        /**
+         * Appends a value prefixed with its length, so that no value, whatever characters it contains,
+         * can be mistaken for the end of one value and the start of another, or of the next component.
+         * An empty value is still appended, which distinguishes it from a missing one.
+         *
+         * @param key The key being built.
+         * @param value The value, which may be {@code null}.
+         */
+        private static void appendValue(final StringBuilder key, final String value) {
+            final String text = value == null ? "" : value;
+            key.append(text.length()).append(':').append(text);
+        }
+    }
+}
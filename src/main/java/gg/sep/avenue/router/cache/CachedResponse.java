@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+
+/**
+ * A response held by a {@link ResponseCache}, along with the JSON payload it was serialized to
+ * for the Lambda runtime.
+ *
+ * <p>Cached responses are shared between requests and must not be modified. A store may release
+ * an entry's contents once it is evicted, in which case it can no longer be read, and the
+ * request should be handled as if it were not cached.
+ */
+public interface CachedResponse {
+    /**
+     * Gets the HTTP status code of the response.
+     *
+     * @return The HTTP status code of the response.
+     */
+    int getStatusCode();
+
+    /**
+     * Gets the value of the response's {@code ETag} header.
+     *
+     * @return The response's ETag, or {@code null} if it has none.
+     */
+    String getETag();
+
+    /**
+     * Gets the response, eg: to send it somewhere other than the Lambda runtime.
+     *
+     * @return The response, which must not be modified, or {@code null} if it has been evicted.
+     */
+    AwsProxyResponse getResponse();
+
+    /**
+     * Gets the size of the serialized payload.
+     *
+     * @return The size of the serialized payload, in bytes.
+     */
+    int getPayloadLength();
+
+    /**
+     * Writes the serialized payload to the output stream, without closing it.
+     *
+     * @param output The output stream to write to.
+     * @return Returns {@code true} if the payload was written, or {@code false} if nothing was
+     *         written because the response has been evicted.
+     * @throws IOException Exception thrown if writing to the output stream fails.
+     */
+    boolean writeTo(OutputStream output) throws IOException;
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import java.util.List;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import org.apache.http.HttpStatus;
+
+import gg.sep.avenue.router.RouteController;
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * Adds ETags to successful GET and HEAD responses, and answers conditional requests whose
+ * {@code If-None-Match} header matches with a 304 response without a body.
+ *
+ * <p>Unless the response already has an {@code ETag} header, it is computed by hashing the final
+ * response body (after compression, so each content encoding gets its own tag) with 64-bit
+ * FNV-1a, a fast non-cryptographic hash. Computed tags are strong by default.
+ *
+ * <p>When the route's {@link RouteController} implements {@link VersionTagProvider}, the
+ * version tag is checked before the route is invoked, see {@link #versionETag(Route, AwsProxyRequest)}.
+ */
+public final class ETagGenerator {
+    static final String ETAG = "ETag";
+    static final String IF_NONE_MATCH = "If-None-Match";
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final String WEAK_PREFIX = "W/";
+    private static final String[] PRESERVED_HEADERS = {
+        "Cache-Control", "Content-Location", "Date", "Expires", "Vary",
+    };
+
+    private final boolean weak;
+
+    private ETagGenerator(final Builder builder) {
+        this.weak = builder.weak;
+    }
+
+    /**
+     * Resolves the ETag of the route's version tag, if its controller provides one.
+     *
+     * @param route The route which handles the request.
+     * @param request The request.
+     * @return The version's ETag, or {@code null} if the route's version is not known.
+     */
+    public String versionETag(final Route route, final AwsProxyRequest request) {
+        if (!isConditionalMethod(request) || !(route.getController() instanceof VersionTagProvider)) {
+            return null;
+        }
+        final String tag = ((VersionTagProvider) route.getController()).getVersionTag(route, request);
+        return tag == null ? null : WEAK_PREFIX + quote(tag);
+    }
+
+    /**
+     * Creates the 304 response to send if the request's {@code If-None-Match} header matches
+     * the ETag.
+     *
+     * @param request The request.
+     * @param eTag The ETag of the response the request would receive, eg: from {@link #versionETag}.
+     * @return The 304 response to send, or {@code null} if the header does not match.
+     */
+    public AwsProxyResponse notModifiedIfMatches(final AwsProxyRequest request, final String eTag) {
+        return matches(ifNoneMatch(request), eTag) ? notModified(eTag, null) : null;
+    }
+
+    /**
+     * Adds an ETag to the response if it is a successful response to a GET or HEAD request, and
+     * replaces it with a 304 response if the ETag matches the request's {@code If-None-Match} header.
+     *
+     * @param request The request which the response answers.
+     * @param response The response.
+     * @return The response with its ETag, or a 304 response.
+     */
+    public AwsProxyResponse apply(final AwsProxyRequest request, final AwsProxyResponse response) {
+        if (!isConditionalMethod(request) || response.getStatusCode() != HttpStatus.SC_OK) {
+            return response;
+        }
+        Headers headers = response.getMultiValueHeaders();
+        if (headers == null) {
+            headers = new Headers();
+            response.setMultiValueHeaders(headers);
+        }
+        String eTag = headers.getFirst(ETAG);
+        if (eTag == null) {
+            eTag = computeETag(response);
+            headers.putSingle(ETAG, eTag);
+        }
+        return matches(ifNoneMatch(request), eTag) ? notModified(eTag, headers) : response;
+    }
+
+    /**
+     * Computes the ETag of the response's body.
+     *
+     * @param response The response.
+     * @return The quoted ETag, prefixed with {@code W/} if ETags are weak.
+     */
+    String computeETag(final AwsProxyResponse response) {
+        final String body = response.getBody();
+        long hash = FNV_OFFSET_BASIS;
+        if (body != null) {
+            for (int i = 0; i < body.length(); i++) {
+                final char c = body.charAt(i);
+                hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+            }
+        }
+        final String tag = "\"" + Long.toHexString(hash) + (response.isBase64Encoded() ? "b" : "") + "\"";
+        return weak ? WEAK_PREFIX + tag : tag;
+    }
+
+    /**
+     * Checks whether any entity tag in an {@code If-None-Match} header matches the ETag, using
+     * the weak comparison defined for {@code If-None-Match}.
+     *
+     * @param ifNoneMatch Value of the {@code If-None-Match} header, which may be {@code null}.
+     * @param eTag The response's ETag.
+     * @return Returns {@code true} if the header matches, otherwise {@code false}.
+     */
+    static boolean matches(final String ifNoneMatch, final String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        final String opaqueTag = stripWeak(eTag);
+        for (final String candidate : ifNoneMatch.split(",")) {
+            final String trimmed = candidate.trim();
+            if ("*".equals(trimmed) || stripWeak(trimmed).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static AwsProxyResponse notModified(final String eTag, final Headers original) {
+        final Headers headers = new Headers();
+        headers.putSingle(ETAG, eTag);
+        if (original != null) {
+            for (final String name : PRESERVED_HEADERS) {
+                final List<String> values = original.get(name);
+                if (values != null) {
+                    headers.put(name, values);
+                }
+            }
+        }
+        return new AwsProxyResponse(HttpStatus.SC_NOT_MODIFIED, headers);
+    }
+
+    private static boolean isConditionalMethod(final AwsProxyRequest request) {
+        return request != null
+            && ("GET".equals(request.getHttpMethod()) || "HEAD".equals(request.getHttpMethod()));
+    }
+
+    private static String ifNoneMatch(final AwsProxyRequest request) {
+        final Headers headers = request.getMultiValueHeaders();
+        return headers == null ? null : headers.getFirst(IF_NONE_MATCH);
+    }
+
+    private static String stripWeak(final String eTag) {
+        return eTag.startsWith(WEAK_PREFIX) ? eTag.substring(WEAK_PREFIX.length()) : eTag;
+    }
+
+    private static String quote(final String tag) {
+        final StringBuilder quoted = new StringBuilder(tag.length() + 2).append('"');
+        for (int i = 0; i < tag.length(); i++) {
+            final char c = tag.charAt(i);
+            quoted.append(c == '"' || c <= ' ' || c == 0x7f ? '_' : c);
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Creates a new instance of the {@link ETagGenerator} builder.
+     * @return A new instance of the {@link ETagGenerator} builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class for the {@link ETagGenerator}.
+     */
+    public static final class Builder {
+        private boolean weak;
+
+        /**
+         * Sets whether computed ETags are weak, ie: prefixed with {@code W/}. Defaults to
+         * {@code false}.
+         *
+         * @param weakTags Whether computed ETags are weak.
+         * @return The builder instance.
+         */
+        public Builder withWeakTags(final boolean weakTags) {
+            this.weak = weakTags;
+            return this;
+        }
+
+        /**
+         * Constructs the {@link ETagGenerator} using the parameters from the builder.
+         * @return A new instance of {@link ETagGenerator}.
+         */
+        public ETagGenerator build() {
+            return new ETagGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.LongSupplier;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+
+/**
+ * {@link ResponseCache} which keeps responses and their payloads on the heap, bounded by the
+ * approximate number of bytes they use.
+ *
+ * <p>Entries are evicted in least recently used order once the bound is exceeded, and expired
+ * entries are removed when they are next looked up. A response which alone exceeds the bound
+ * is not stored.
+ *
+ * <p>Each entry is weighted as its payload's length plus two bytes for each character of its key
+ * and response body, since the response itself is kept to serve requests outside of the Lambda runtime.
+ */
+public final class HeapResponseCache implements ResponseCache {
+    private static final long DEFAULT_MAXIMUM_BYTES = 16L * 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final long maximumBytes;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private long weightedSize;
+
+    private HeapResponseCache(final Builder builder) {
+        this.maximumBytes = builder.maximumBytes;
+        this.clock = builder.clock;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized CachedResponse get(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() - entry.expiresAtNanos >= 0) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void put(final String key, final AwsProxyResponse response, final byte[] payload,
+                                 final Duration ttl) {
+        remove(key);
+        final long expiresAtNanos = clock.getAsLong() + ttl.toNanos();
+        final Entry entry = new Entry(response, payload, expiresAtNanos, weigh(key, response, payload));
+        if (entry.weight > maximumBytes) {
+            return;
+        }
+        entries.put(key, entry);
+        weightedSize += entry.weight;
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while (weightedSize > maximumBytes) {
+            weightedSize -= eldest.next().weight;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weightedSize = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getWeightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * Gets the number of stored responses, including any which have expired but not yet been removed.
+     *
+     * @return The number of stored responses.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(final String key) {
+        final Entry removed = entries.remove(key);
+        if (removed != null) {
+            weightedSize -= removed.weight;
+        }
+    }
+
+    private static long weigh(final String key, final AwsProxyResponse response, final byte[] payload) {
+        final String body = response.getBody();
+        return payload.length + 2L * (key.length() + (body == null ? 0 : body.length()));
+    }
+
+    /**
+     * A stored response.
+     */
+    private static final class Entry implements CachedResponse {
+        private final AwsProxyResponse response;
+        private final byte[] payload;
+        private final String eTag;
+        private final long expiresAtNanos;
+        private final long weight;
+
+        private Entry(final AwsProxyResponse response, final byte[] payload, final long expiresAtNanos,
+                      final long weight) {
+            this.response = response;
+            this.payload = payload;
+            this.eTag = response.getMultiValueHeaders() == null
+                ? null : response.getMultiValueHeaders().getFirst(ETagGenerator.ETAG);
+            this.expiresAtNanos = expiresAtNanos;
+            this.weight = weight;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getETag() {
+            return eTag;
+        }
+
+        @Override
+        public AwsProxyResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return payload.length;
+        }
+
+        @Override
+        public boolean writeTo(final OutputStream output) throws IOException {
+            output.write(payload);
+            return true;
+        }
+    }
+
+    /**
+     * Creates a new instance of the {@link HeapResponseCache} builder.
+     * @return A new instance of the {@link HeapResponseCache} builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class for the {@link HeapResponseCache}.
+     */
+    public static final class Builder {
+        private long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+        private LongSupplier clock = System::nanoTime;
+
+        /**
+         * Sets the approximate number of bytes the stored responses may use. Defaults to 16 MiB.
+         *
+         * @param bytes The maximum number of bytes, which must be positive.
+         * @return The builder instance.
+         */
+        public Builder withMaximumBytes(final long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Maximum bytes must be positive: " + bytes);
+            }
+            this.maximumBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the source of the current time in nanoseconds, used to expire entries.
+         *
+         * @param nanoClock The clock.
+         * @return The builder instance.
+         */
+        Builder withClock(final LongSupplier nanoClock) {
+            this.clock = nanoClock;
+            return this;
+        }
+
+        /**
+         * Constructs the {@link HeapResponseCache} using the parameters from the builder.
+         * @return A new instance of {@link HeapResponseCache}.
+         */
+        public HeapResponseCache build() {
+            return new HeapResponseCache(this);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * {@link ResponseCache} which keeps serialized payloads outside of the Java heap, in direct
+ * {@link ByteBuffer}s, so that large cached responses do not grow the old generation or lengthen
+ * garbage collection pauses. Only a small amount of metadata per entry stays on the heap.
+ *
+ * <p>Memory is reserved in slabs, allocated as needed up to the capacity, and each slab is divided
+ * into fixed-size pages. A payload is stored in as many pages as it needs, which are returned to a
+ * free list when it is evicted, so the store does not fragment. Entries are evicted in least
+ * recently used order when there are not enough free pages, and expired entries are removed when
+ * they are next looked up. Direct memory is never released back to the operating system, and is
+ * bounded by the capacity, which also counts towards {@code -XX:MaxDirectMemorySize}.
+ *
+ * <p>Payloads are written to the output stream through a channel over their pages, which copies
+ * them through a small transfer buffer rather than materializing the whole payload on the heap.
+ *
+ * <p>The response itself is not kept, so {@link CachedResponse#getResponse()} deserializes the
+ * payload; this is only needed for requests from outside of the Lambda runtime, such as from the
+ * embedded server, or for 304 responses. The deserialized response is then kept through a
+ * {@link SoftReference}, so repeated hits do not deserialize it again unless the garbage collector
+ * has needed the memory. Applications which mostly serve requests from the embedded server should
+ * prefer {@link HeapResponseCache}. An entry which is being read when it is evicted keeps its pages
+ * until the read completes.
+ */
+public final class OffHeapResponseCache implements ResponseCache {
+    private static final int DEFAULT_PAGE_SIZE = 16 * 1024;
+    private static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+    private static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int pageSize;
+    private final int slabSize;
+    private final long capacity;
+    private final ObjectMapper objectMapper;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private final ArrayDeque<ByteBuffer> freePages = new ArrayDeque<>();
+    private long allocatedBytes;
+    private long usedBytes;
+
+    private OffHeapResponseCache(final Builder builder) {
+        this.pageSize = builder.pageSize;
+        this.slabSize = builder.slabSize;
+        this.capacity = builder.capacity;
+        this.objectMapper = builder.objectMapper;
+        this.clock = builder.clock;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized CachedResponse get(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() - entry.expiresAtNanos >= 0) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The payload is copied into the store's pages; the response is not kept.
+     */
+    @Override
+    public synchronized void put(final String key, final AwsProxyResponse response, final byte[] payload,
+                                 final Duration ttl) {
+        remove(key);
+        final int pageCount = Math.max(1, (payload.length + pageSize - 1) / pageSize);
+        if ((long) pageCount * pageSize > capacity) {
+            return;
+        }
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while (availablePages() < pageCount && eldest.hasNext()) {
+            final Entry evicted = eldest.next();
+            eldest.remove();
+            evict(evicted);
+        }
+        if (availablePages() < pageCount) {
+            // the remaining pages are held by evicted entries which are still being read
+            return;
+        }
+        final ByteBuffer[] pages = new ByteBuffer[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pages[i] = takePage();
+            final int offset = i * pageSize;
+            pages[i].put(payload, offset, Math.min(pageSize, payload.length - offset));
+            pages[i].flip();
+        }
+        final String eTag = response.getMultiValueHeaders() == null
+            ? null : response.getMultiValueHeaders().getFirst(ETagGenerator.ETAG);
+        entries.put(key, new Entry(pages, payload.length, response.getStatusCode(), eTag,
+            clock.getAsLong() + ttl.toNanos()));
+        usedBytes += (long) pageCount * pageSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void invalidateAll() {
+        for (final Entry entry : entries.values()) {
+            evict(entry);
+        }
+        entries.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This is the size of the pages held by the stored entries.
+     */
+    @Override
+    public synchronized long getWeightedSize() {
+        return usedBytes;
+    }
+
+    /**
+     * Gets the amount of direct memory reserved by the store's slabs so far.
+     *
+     * @return The number of bytes of direct memory allocated.
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Gets the number of stored responses, including any which have expired but not yet been removed.
+     *
+     * @return The number of stored responses.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(final String key) {
+        final Entry removed = entries.remove(key);
+        if (removed != null) {
+            evict(removed);
+        }
+    }
+
+    private void evict(final Entry entry) {
+        usedBytes -= (long) entry.pages.length * pageSize;
+        // readers which finish after this release the pages themselves
+        entry.evicted = true;
+        if (entry.state.compareAndSet(0, Entry.RELEASED)) {
+            releasePages(entry);
+        }
+    }
+
+    private synchronized void releasePages(final Entry entry) {
+        for (final ByteBuffer page : entry.pages) {
+            page.clear();
+            freePages.add(page);
+        }
+    }
+
+    private long availablePages() {
+        return freePages.size() + (capacity - allocatedBytes) / pageSize;
+    }
+
+    private ByteBuffer takePage() {
+        if (freePages.isEmpty()) {
+            final int size = (int) Math.min(slabSize, capacity - allocatedBytes);
+            final ByteBuffer slab = ByteBuffer.allocateDirect(size);
+            allocatedBytes += size;
+            for (int offset = 0; offset + pageSize <= size; offset += pageSize) {
+                slab.limit(offset + pageSize).position(offset);
+                freePages.add(slab.slice());
+            }
+        }
+        return freePages.poll();
+    }
+
+    /**
+     * A stored payload, whose pages are pinned while they are being read.
+     */
+    private final class Entry implements CachedResponse {
+        private static final int RELEASED = -1;
+
+        private final ByteBuffer[] pages;
+        private final int length;
+        private final int statusCode;
+        private final String eTag;
+        private final long expiresAtNanos;
+        // number of readers, or RELEASED once the pages have been returned to the free list
+        private final AtomicInteger state = new AtomicInteger();
+        private volatile boolean evicted;
+        private volatile SoftReference<AwsProxyResponse> decoded;
+
+        private Entry(final ByteBuffer[] pages, final int length, final int statusCode, final String eTag,
+                      final long expiresAtNanos) {
+            this.pages = pages;
+            this.length = length;
+            this.statusCode = statusCode;
+            this.eTag = eTag;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getETag() {
+            return eTag;
+        }
+
+        @Override
+        public AwsProxyResponse getResponse() {
+            final SoftReference<AwsProxyResponse> reference = decoded;
+            final AwsProxyResponse response = reference == null ? null : reference.get();
+            if (response != null) {
+                return evicted ? null : response;
+            }
+            if (!pin()) {
+                return null;
+            }
+            final byte[] payload = new byte[length];
+            try {
+                int offset = 0;
+                for (final ByteBuffer page : pages) {
+                    final ByteBuffer source = page.duplicate();
+                    final int count = source.remaining();
+                    source.get(payload, offset, count);
+                    offset += count;
+                }
+            } finally {
+                unpin();
+            }
+            try {
+                final AwsProxyResponse read = objectMapper.readValue(payload, AwsProxyResponse.class);
+                decoded = new SoftReference<>(read);
+                return read;
+            } catch (final IOException e) {
+                throw new IllegalStateException("Failed to deserialize cached response", e);
+            }
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return length;
+        }
+
+        @Override
+        public boolean writeTo(final OutputStream output) throws IOException {
+            if (!pin()) {
+                return false;
+            }
+            try {
+                final WritableByteChannel channel = Channels.newChannel(output);
+                for (final ByteBuffer page : pages) {
+                    final ByteBuffer source = page.duplicate();
+                    while (source.hasRemaining()) {
+                        channel.write(source);
+                    }
+                }
+                return true;
+            } finally {
+                unpin();
+            }
+        }
+
+        private boolean pin() {
+            int readers;
+            do {
+                readers = state.get();
+                if (readers == RELEASED) {
+                    return false;
+                }
+            } while (!state.compareAndSet(readers, readers + 1));
+            return true;
+        }
+
+        private void unpin() {
+            if (state.decrementAndGet() == 0 && evicted && state.compareAndSet(0, RELEASED)) {
+                releasePages(this);
+            }
+        }
+    }
+
+    /**
+     * Creates a new instance of the {@link OffHeapResponseCache} builder.
+     * @return A new instance of the {@link OffHeapResponseCache} builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class for the {@link OffHeapResponseCache}.
+     */
+    public static final class Builder {
+        private int pageSize = DEFAULT_PAGE_SIZE;
+        private int slabSize = DEFAULT_SLAB_SIZE;
+        private long capacity = DEFAULT_CAPACITY;
+        private ObjectMapper objectMapper = new ObjectMapper();
+        private LongSupplier clock = System::nanoTime;
+
+        /**
+         * Sets the maximum amount of direct memory the store may allocate. Defaults to 64 MiB.
+         *
+         * @param bytes The capacity in bytes, which must be positive.
+         * @return The builder instance.
+         */
+        public Builder withCapacity(final long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive: " + bytes);
+            }
+            this.capacity = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the size of the slabs of direct memory allocated at a time. Defaults to 1 MiB.
+         *
+         * @param bytes The slab size in bytes, which must be a multiple of the page size.
+         * @return The builder instance.
+         */
+        public Builder withSlabSize(final int bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Slab size must be positive: " + bytes);
+            }
+            this.slabSize = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the size of the pages payloads are stored in. Defaults to 16 KiB. Smaller pages
+         * waste less memory on small payloads.
+         *
+         * @param bytes The page size in bytes, which must be positive.
+         * @return The builder instance.
+         */
+        public Builder withPageSize(final int bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Page size must be positive: " + bytes);
+            }
+            this.pageSize = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the object mapper used to deserialize payloads for {@link CachedResponse#getResponse()}.
+         *
+         * @param mapper The object mapper.
+         * @return The builder instance.
+         */
+        public Builder withObjectMapper(final ObjectMapper mapper) {
+            if (mapper == null) {
+                throw new IllegalArgumentException("Object mapper must not be null");
+            }
+            this.objectMapper = mapper;
+            return this;
+        }
+
+        /**
+         * Sets the source of the current time in nanoseconds, used to expire entries.
+         *
+         * @param nanoClock The clock.
+         * @return The builder instance.
+         */
+        Builder withClock(final LongSupplier nanoClock) {
+            this.clock = nanoClock;
+            return this;
+        }
+
+        /**
+         * Constructs the {@link OffHeapResponseCache} using the parameters from the builder.
+         * @return A new instance of {@link OffHeapResponseCache}.
+         * @throws IllegalArgumentException Thrown if the slab size is not a multiple of the page size,
+         *                                  or the capacity is smaller than a page.
+         */
+        public OffHeapResponseCache build() {
+            if (slabSize % pageSize != 0) {
+                throw new IllegalArgumentException(
+                    String.format("Slab size %d is not a multiple of page size %d", slabSize, pageSize));
+            }
+            if (capacity < pageSize) {
+                throw new IllegalArgumentException("Capacity is smaller than a page: " + capacity);
+            }
+            return new OffHeapResponseCache(this);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+
+import gg.sep.avenue.router.core.Route;
+import gg.sep.avenue.router.core.RouteRequestMethod;
+
+/**
+ * Coalesces identical concurrent GET requests ("single-flight"), so that when many requests for
+ * the same resource arrive at once, eg: after a cache entry expires, the route is invoked once
+ * and every request receives its response.
+ *
+ * <p>Requests are identical when they are handled by the same route with equal bound parameter
+ * values. Routes which receive the whole {@link AwsProxyRequest} as a parameter may depend on any
+ * part of it, so are never coalesced.
+ *
+ * <p>Every request receives its own copy of the response, since the handler may modify it
+ * afterwards (eg: to compress it). If the route fails, every waiting request fails with the same
+ * exception. A request which waits longer than the maximum wait for another request's response
+ * fails with a {@link TimeoutException}; the route invocation it was waiting on is unaffected.
+ *
+ * <p>Coalescing is only useful when requests are handled concurrently, such as by the embedded
+ * server; a Lambda container handles a single request at a time.
+ */
+public final class RequestCoalescer {
+    private static final Duration DEFAULT_MAXIMUM_WAIT = Duration.ofSeconds(10);
+
+    private final Map<Key, CompletableFuture<AwsProxyResponse>> inFlight = new ConcurrentHashMap<>();
+    private final long maximumWaitNanos;
+    private final ScheduledThreadPoolExecutor timer;
+
+    private RequestCoalescer(final Builder builder) {
+        this.maximumWaitNanos = builder.maximumWait.toNanos();
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "avenue-coalescer-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Functional interface which invokes a route.
+     */
+    @FunctionalInterface
+    public interface RouteInvoker {
+        /**
+         * Invokes the route.
+         *
+         * @return A stage which completes with the route's response.
+         * @throws Exception Exception thrown if invoking the route fails.
+         */
+        CompletionStage<AwsProxyResponse> invoke() throws Exception;
+    }
+
+    /**
+     * Checks whether requests to the route with the bound parameter values may be coalesced.
+     *
+     * @param route The route which handles the request.
+     * @param invokeArgs The request's bound parameter values.
+     * @return Returns {@code true} if the route handles GET requests and does not receive the
+     *         whole request as a parameter, otherwise {@code false}.
+     */
+    public boolean canCoalesce(final Route route, final Object[] invokeArgs) {
+        if (route.getRouteRequestMethod() != RouteRequestMethod.GET) {
+            return false;
+        }
+        for (final Object arg : invokeArgs) {
+            if (arg instanceof AwsProxyRequest) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invokes the route, unless an identical request is already invoking it, in which case that
+     * invocation's response is shared.
+     *
+     * @param route The route which handles the request.
+     * @param invokeArgs The request's bound parameter values.
+     * @param invoker Invokes the route with the bound parameter values.
+     * @return A stage which completes with a copy of the route's response.
+     */
+    public CompletionStage<AwsProxyResponse> coalesce(final Route route, final Object[] invokeArgs,
+                                                      final RouteInvoker invoker) {
+        final Key key = new Key(route, invokeArgs);
+        final CompletableFuture<AwsProxyResponse> leader = new CompletableFuture<>();
+        final CompletableFuture<AwsProxyResponse> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            return follow(existing);
+        }
+        try {
+            invoker.invoke().whenComplete((response, error) -> {
+                inFlight.remove(key, leader);
+                if (error != null) {
+                    leader.completeExceptionally(error);
+                } else {
+                    leader.complete(response);
+                }
+            });
+        } catch (final Exception e) {
+            inFlight.remove(key, leader);
+            leader.completeExceptionally(e);
+        }
+        return leader.thenApply(RequestCoalescer::copy);
+    }
+
+    /**
+     * Gets the number of route invocations currently shared by requests.
+     *
+     * @return The number of route invocations in flight.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Waits for the response of an identical request, up to the maximum wait.
+     *
+     * @param existing The identical request's pending response.
+     * @return A stage which completes with a copy of the response.
+     */
+    private CompletableFuture<AwsProxyResponse> follow(final CompletableFuture<AwsProxyResponse> existing) {
+        final CompletableFuture<AwsProxyResponse> follower = existing.thenApply(RequestCoalescer::copy);
+        if (follower.isDone()) {
+            return follower;
+        }
+        final ScheduledFuture<?> timeout = timer.schedule(() -> follower.completeExceptionally(
+            new TimeoutException("Timed out waiting for a coalesced request's response")),
+            maximumWaitNanos, TimeUnit.NANOSECONDS);
+        follower.whenComplete((response, error) -> timeout.cancel(false));
+        return follower;
+    }
+
+    /**
+     * Copies the response, so that each request may modify its own.
+     *
+     * @param response The route's response.
+     * @return A copy of the response.
+     */
+    private static AwsProxyResponse copy(final AwsProxyResponse response) {
+        final AwsProxyResponse copy = new AwsProxyResponse(response.getStatusCode());
+        if (response.getMultiValueHeaders() != null) {
+            final Headers headers = new Headers();
+            for (final Map.Entry<String, List<String>> header : response.getMultiValueHeaders().entrySet()) {
+                headers.put(header.getKey(), new ArrayList<>(header.getValue()));
+            }
+            copy.setMultiValueHeaders(headers);
+        }
+        if (response.getHeaders() != null) {
+            copy.setHeaders(new HashMap<>(response.getHeaders()));
+        }
+        copy.setBody(response.getBody());
+        copy.setBase64Encoded(response.isBase64Encoded());
+        copy.setStatusDescription(response.getStatusDescription());
+        return copy;
+    }
+
+    /**
+     * Identifies a request by its route and bound parameter values.
+     */
+    private static final class Key {
+        private final Route route;
+        private final Object[] invokeArgs;
+        private final int hash;
+
+        private Key(final Route route, final Object[] invokeArgs) {
+            this.route = route;
+            this.invokeArgs = invokeArgs;
+            this.hash = Objects.hash(route, Arrays.deepHashCode(invokeArgs));
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key otherKey = (Key) other;
+            return hash == otherKey.hash && route.equals(otherKey.route)
+                && Arrays.deepEquals(invokeArgs, otherKey.invokeArgs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Creates a new instance of the {@link RequestCoalescer} builder.
+     * @return A new instance of the {@link RequestCoalescer} builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class for the {@link RequestCoalescer}.
+     */
+    public static final class Builder {
+        private Duration maximumWait = DEFAULT_MAXIMUM_WAIT;
+
+        /**
+         * Sets how long a request may wait for an identical request's response. Defaults to 10 seconds.
+         *
+         * @param wait The maximum wait, which must be positive.
+         * @return The builder instance.
+         */
+        public Builder withMaximumWait(final Duration wait) {
+            if (wait == null || wait.isNegative() || wait.isZero()) {
+                throw new IllegalArgumentException("Maximum wait must be positive: " + wait);
+            }
+            this.maximumWait = wait;
+            return this;
+        }
+
+        /**
+         * Constructs the {@link RequestCoalescer} using the parameters from the builder.
+         * @return A new instance of {@link RequestCoalescer}.
+         */
+        public RequestCoalescer build() {
+            return new RequestCoalescer(this);
+        }
+    }
+}
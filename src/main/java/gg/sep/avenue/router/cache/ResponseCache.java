@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import java.time.Duration;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+
+import gg.sep.avenue.router.Cached;
+
+/**
+ * Stores the serialized responses of {@link Cached} routes, so that later requests with the same
+ * key can be answered without invoking the route or serializing the response again.
+ *
+ * <p>Implementations must be safe for use by multiple threads, and bound the memory they use
+ * by evicting entries.
+ */
+public interface ResponseCache {
+    /**
+     * Gets the response stored under the key, if it has not expired.
+     *
+     * @param key The key built by the route's {@link CachePolicy}.
+     * @return The cached response, or {@code null} if there is none.
+     */
+    CachedResponse get(String key);
+
+    /**
+     * Stores a response under the key, replacing any response already stored under it.
+     *
+     * @param key The key built by the route's {@link CachePolicy}.
+     * @param response The response, which must not be modified afterwards.
+     * @param payload The response serialized to the JSON payload expected by the Lambda runtime.
+     * @param ttl How long the response may be served for.
+     */
+    void put(String key, AwsProxyResponse response, byte[] payload, Duration ttl);
+
+    /**
+     * Removes every stored response.
+     */
+    void invalidateAll();
+
+    /**
+     * Gets the number of bytes used by the stored responses, as counted towards the cache's bound.
+     *
+     * @return The number of bytes used by the stored responses.
+     */
+    long getWeightedSize();
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+
+import gg.sep.avenue.router.RouteController;
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * Implemented by a {@link RouteController} which can cheaply tell the version of the data its
+ * routes would return, eg: from a last-modified timestamp or revision counter, without building
+ * the response.
+ *
+ * <p>When {@link ETagGenerator ETags} are enabled, the handler asks for the version tag of GET
+ * and HEAD requests before invoking the route. If it matches the request's {@code If-None-Match}
+ * header, a 304 response is sent and the route is not invoked at all. Otherwise the route is
+ * invoked and the tag is used as the response's ETag, instead of hashing the body.
+ *
+ * <p>Version tags are sent as weak ETags, since the same version may be sent with different
+ * content encodings.
+ */
+public interface VersionTagProvider {
+    /**
+     * Gets the version of the response the route would return for the request.
+     *
+     * @param route The route which handles the request.
+     * @param request The request.
+     * @return An opaque version tag, or {@code null} if the version is not known up front.
+     */
+    String getVersionTag(Route route, AwsProxyRequest request);
+}
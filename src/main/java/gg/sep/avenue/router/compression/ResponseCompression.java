@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import org.apache.http.HttpStatus;
+
+/**
+ * Compresses response bodies with gzip or deflate, negotiated from the request's
+ * {@code Accept-Encoding} header.
+ *
+ * <p>API Gateway does not compress the responses of proxy integrations, so large text responses
+ * (eg: JSON lists) are sent uncompressed and count in full towards the Lambda payload limit.
+ * A response is compressed when all of the following hold:
+ *
+ * <ul>
+ *     <li>It has a successful status code and a text (not base64 encoded) body.</li>
+ *     <li>It has no {@code Content-Encoding} already.</li>
+ *     <li>Its {@code Content-Type} is on the allowlist.</li>
+ *     <li>Its body is at least the minimum size, measured in characters.</li>
+ *     <li>The client accepts gzip or deflate.</li>
+ * </ul>
+ *
+ * <p>A compressed response has a base64 encoded binary body, which API Gateway decodes before
+ * sending it to the client, along with {@code Content-Encoding} and {@code Vary: Accept-Encoding}
+ * headers. The body is encoded in a single pass: the characters are written through the
+ * compressor straight into a base64 encoding stream, without an intermediate byte array.
+ */
+public final class ResponseCompression {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String VARY = "Vary";
+    private static final int GZIP_QUALITY = 0;
+    private static final int DEFLATE_QUALITY = 1;
+
+    private final int minimumSize;
+    private final Set<String> contentTypes;
+    private final int level;
+
+    private ResponseCompression(final Builder builder) {
+        this.minimumSize = builder.minimumSize;
+        this.contentTypes = builder.contentTypes;
+        this.level = builder.level;
+    }
+
+    /**
+     * Compresses the response's body if it is eligible and the client accepts a supported
+     * encoding. The response is modified in place.
+     *
+     * @param request The request which the response answers.
+     * @param response The response to compress.
+     * @return The response.
+     */
+    public AwsProxyResponse compress(final AwsProxyRequest request, final AwsProxyResponse response) {
+        if (!isEligible(response)) {
+            return response;
+        }
+        final Headers responseHeaders = response.getMultiValueHeaders();
+        addVary(responseHeaders);
+
+        final Headers requestHeaders = request == null ? null : request.getMultiValueHeaders();
+        final String encoding = negotiate(requestHeaders == null ? null : requestHeaders.getFirst(ACCEPT_ENCODING));
+        if (encoding == null) {
+            return response;
+        }
+
+        final String body = response.getBody();
+        final String encoded = encode(body, encoding);
+        if (encoded.length() >= body.length()) {
+            return response; // incompressible, eg: already random or encoded content
+        }
+        response.setBody(encoded);
+        response.setBase64Encoded(true);
+        responseHeaders.putSingle(CONTENT_ENCODING, encoding);
+        return response;
+    }
+
+    /**
+     * Checks whether the response is eligible for compression, regardless of the request.
+     *
+     * @param response The response to check.
+     * @return Returns {@code true} if the response could be compressed, otherwise {@code false}.
+     */
+    private boolean isEligible(final AwsProxyResponse response) {
+        final int status = response.getStatusCode();
+        if (status < HttpStatus.SC_OK || status >= HttpStatus.SC_MULTIPLE_CHOICES
+            || status == HttpStatus.SC_NO_CONTENT) {
+            return false;
+        }
+        final String body = response.getBody();
+        final Headers headers = response.getMultiValueHeaders();
+        if (body == null || response.isBase64Encoded() || body.length() < minimumSize || headers == null
+            || headers.containsKey(CONTENT_ENCODING)) {
+            return false;
+        }
+        return isAllowedContentType(headers.getFirst(CONTENT_TYPE));
+    }
+
+    /**
+     * Checks the media type of the {@code Content-Type} header against the allowlist.
+     *
+     * @param contentType Value of the response's {@code Content-Type} header.
+     * @return Returns {@code true} if the content type may be compressed, otherwise {@code false}.
+     */
+    private boolean isAllowedContentType(final String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        final int parameters = contentType.indexOf(';');
+        final String mediaType = (parameters < 0 ? contentType : contentType.substring(0, parameters))
+            .trim().toLowerCase(Locale.ENGLISH);
+        if (contentTypes.contains(mediaType)) {
+            return true;
+        }
+        final int slash = mediaType.indexOf('/');
+        return slash > 0 && contentTypes.contains(mediaType.substring(0, slash) + "/*");
+    }
+
+    /**
+     * Appends {@code Accept-Encoding} to the response's {@code Vary} header, since whether the
+     * response is compressed depends on it.
+     *
+     * @param headers The response's headers.
+     */
+    private static void addVary(final Headers headers) {
+        final String vary = headers.getFirst(VARY);
+        if (vary == null) {
+            headers.putSingle(VARY, ACCEPT_ENCODING);
+        } else if (!vary.toLowerCase(Locale.ENGLISH).contains("accept-encoding") && !"*".equals(vary.trim())) {
+            headers.putSingle(VARY, vary + ", " + ACCEPT_ENCODING);
+        }
+    }
+
+    /**
+     * Chooses the encoding to use from the client's {@code Accept-Encoding} header, preferring
+     * the encoding with the highest quality value, and gzip over deflate when they are equal.
+     *
+     * @param acceptEncoding Value of the request's {@code Accept-Encoding} header.
+     * @return The encoding to use, or {@code null} if the client accepts neither.
+     */
+    static String negotiate(final String acceptEncoding) {
+        final double[] qualities = qualities(acceptEncoding);
+        final double gzip = qualities[GZIP_QUALITY];
+        final double deflate = qualities[DEFLATE_QUALITY];
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    /**
+     * Checks whether the client accepts gzip encoded responses, eg: to choose a representation
+     * which was compressed ahead of time.
+     *
+     * @param acceptEncoding Value of the request's {@code Accept-Encoding} header.
+     * @return Returns {@code true} if the client accepts gzip, otherwise {@code false}.
+     */
+    public static boolean acceptsGzip(final String acceptEncoding) {
+        return qualities(acceptEncoding)[GZIP_QUALITY] > 0;
+    }
+
+    /**
+     * Parses the quality values of gzip and deflate from the client's {@code Accept-Encoding}
+     * header. An encoding which is not listed takes the quality value of the {@code *} wildcard.
+     *
+     * @param acceptEncoding Value of the request's {@code Accept-Encoding} header, which may be {@code null}.
+     * @return The quality values, indexed by {@link #GZIP_QUALITY} and {@link #DEFLATE_QUALITY}, which
+     *         are negative if the encoding is neither listed nor covered by a wildcard.
+     */
+    private static double[] qualities(final String acceptEncoding) {
+        double gzip = -1;
+        double deflate = -1;
+        double wildcard = -1;
+        if (acceptEncoding != null) {
+            for (final String part : acceptEncoding.split(",")) {
+                final String[] tokens = part.split(";");
+                final String coding = tokens[0].trim().toLowerCase(Locale.ENGLISH);
+                if (GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                    gzip = quality(tokens);
+                } else if (DEFLATE.equals(coding)) {
+                    deflate = quality(tokens);
+                } else if ("*".equals(coding)) {
+                    wildcard = quality(tokens);
+                }
+            }
+        }
+        return new double[] {gzip < 0 ? wildcard : gzip, deflate < 0 ? wildcard : deflate};
+    }
+
+    private static double quality(final String[] tokens) {
+        for (int i = 1; i < tokens.length; i++) {
+            final String parameter = tokens[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (final NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Compresses the body with the encoding, writing it through the compressor directly into
+     * a base64 encoding stream.
+     *
+     * @param body The response body.
+     * @param encoding The encoding to use.
+     * @return The base64 encoded, compressed body.
+     */
+    private String encode(final String body, final String encoding) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, body.length() / 4));
+        try {
+            try (Writer writer = new OutputStreamWriter(
+                compressor(Base64.getEncoder().wrap(output), encoding), StandardCharsets.UTF_8)) {
+                writer.write(body);
+            }
+            return output.toString(StandardCharsets.US_ASCII.name());
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to compress response body", e);
+        }
+    }
+
+    private OutputStream compressor(final OutputStream output, final String encoding) throws IOException {
+        if (GZIP.equals(encoding)) {
+            return new LeveledGzipOutputStream(output, level);
+        }
+        return new LeveledDeflaterOutputStream(output, level);
+    }
+
+    /**
+     * {@link GZIPOutputStream} with a configurable compression level.
+     */
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(final OutputStream output, final int level) throws IOException {
+            super(output);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * {@link DeflaterOutputStream} (zlib format) with a configurable compression level, which
+     * releases its {@link Deflater} when closed.
+     */
+    private static final class LeveledDeflaterOutputStream extends DeflaterOutputStream {
+        LeveledDeflaterOutputStream(final OutputStream output, final int level) {
+            super(output, new Deflater(level));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+
+    /**
+     * Creates a new instance of the {@link ResponseCompression} builder.
+     * @return A new instance of the {@link ResponseCompression} builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class for the {@link ResponseCompression}.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_MINIMUM_SIZE = 1024;
+        private static final String[] DEFAULT_CONTENT_TYPES = {
+            "text/*", "application/json", "application/javascript", "application/xml",
+            "application/problem+json", "image/svg+xml",
+        };
+
+        private int minimumSize = DEFAULT_MINIMUM_SIZE;
+        private Set<String> contentTypes = new LinkedHashSet<>(Arrays.asList(DEFAULT_CONTENT_TYPES));
+        private int level = Deflater.DEFAULT_COMPRESSION;
+
+        /**
+         * Sets the minimum size of a body, in characters, for it to be compressed. Defaults to 1024.
+         * @param size The minimum size of a body to compress.
+         * @return The builder instance.
+         */
+        public Builder withMinimumSize(final int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("minimumSize must not be negative");
+            }
+            this.minimumSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the media types which may be compressed, replacing the defaults. A type ending in
+         * {@code /*} allows all subtypes, eg: {@code text/*}. Defaults to text and common
+         * JSON, JavaScript and XML types.
+         *
+         * @param mediaTypes The media types which may be compressed.
+         * @return The builder instance.
+         */
+        public Builder withContentTypes(final String... mediaTypes) {
+            final Set<String> types = new LinkedHashSet<>();
+            for (final String mediaType : mediaTypes) {
+                types.add(mediaType.trim().toLowerCase(Locale.ENGLISH));
+            }
+            this.contentTypes = types;
+            return this;
+        }
+
+        /**
+         * Sets the compression level, from 1 (fastest) to 9 (smallest). Defaults to the zlib
+         * default, which is 6.
+         *
+         * @param compressionLevel The compression level.
+         * @return The builder instance.
+         */
+        public Builder withLevel(final int compressionLevel) {
+            if (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("level must be between 1 and 9");
+            }
+            this.level = compressionLevel;
+            return this;
+        }
+
+        /**
+         * Constructs the {@link ResponseCompression} using the parameters from the builder.
+         * @return A new instance of {@link ResponseCompression}.
+         */
+        public ResponseCompression build() {
+            return new ResponseCompression(this);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.core;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import gg.sep.avenue.router.Body;
+import gg.sep.avenue.router.EventBridge;
+import gg.sep.avenue.router.MessageAttribute;
+import gg.sep.avenue.router.RouteController;
+import gg.sep.avenue.router.SQS;
+import gg.sep.avenue.router.message.EventBridgeEvent;
+import gg.sep.avenue.router.message.MessageRecord;
+import gg.sep.avenue.router.message.SqsMessage;
+
+/**
+ * MessageRoute represents a method which handles the records of non-HTTP events, ie: the messages
+ * of SQS batches or EventBridge events.
+ *
+ * <p>Message routes are declared as methods inside of a {@link RouteController}, annotated with
+ * {@link SQS} or {@link EventBridge}, and are built from it by
+ * {@link MessageRoute#fromAnnotation(Annotation, RouteController, Method)}. Their parameters are
+ * bound from the record in the same way as a {@link Route}'s are from the request: the record
+ * itself may be the first parameter, and the others must be annotated with {@link Body} or
+ * {@link MessageAttribute}.
+ */
+@Builder
+public class MessageRoute {
+    @Getter
+    private Class<? extends MessageRecord> recordType;
+    @Getter
+    private RouteController controller;
+    private Method method;
+    private Set<String> queues;
+    private String attribute;
+    private Set<String> attributeValues;
+    private Set<String> detailTypes;
+    private Set<String> sources;
+
+    /**
+     * Builds the message route of a method annotated with {@link SQS} or {@link EventBridge}.
+     *
+     * @param annotation The annotation on the method.
+     * @param controller The controller which holds the method.
+     * @param method The method.
+     * @return The message route.
+     * @throws IllegalArgumentException Exception thrown if the annotation is not a message annotation.
+     */
+    public static MessageRoute fromAnnotation(final Annotation annotation, final RouteController controller,
+                                              final Method method) {
+        final MessageRouteBuilder builder = MessageRoute.builder().controller(controller).method(method);
+        if (annotation instanceof SQS) {
+            final SQS sqs = (SQS) annotation;
+            return builder.recordType(SqsMessage.class)
+                .queues(setOf(sqs.queues()))
+                .attribute(sqs.attribute())
+                .attributeValues(setOf(sqs.attributeValues()))
+                .build();
+        }
+        if (annotation instanceof EventBridge) {
+            final EventBridge eventBridge = (EventBridge) annotation;
+            return builder.recordType(EventBridgeEvent.class)
+                .detailTypes(setOf(eventBridge.detailTypes()))
+                .sources(setOf(eventBridge.sources()))
+                .build();
+        }
+        throw new IllegalArgumentException("Not a message route annotation: " + annotation);
+    }
+
+    /**
+     * Gets the annotations which designate message route methods.
+     *
+     * @return The annotations which designate message route methods.
+     */
+    public static Set<Class<? extends Annotation>> getValidAnnotations() {
+        return new HashSet<>(Arrays.asList(SQS.class, EventBridge.class));
+    }
+
+    private static Set<String> setOf(final String[] values) {
+        return values.length == 0 ? Collections.emptySet() : new HashSet<>(Arrays.asList(values));
+    }
+
+    /**
+     * Indicates whether this route handles the record.
+     *
+     * @param record The record to check.
+     * @return Returns {@code true} if the record matches all of the route's criteria,
+     *         otherwise {@code false}.
+     */
+    public boolean handlesRecord(final MessageRecord record) {
+        if (record instanceof SqsMessage && recordType == SqsMessage.class) {
+            final SqsMessage message = (SqsMessage) record;
+            if (!queueMatches(message.getEventSourceArn())) {
+                return false;
+            }
+            final String attributeValue = attribute.isEmpty() ? null : message.getMessageAttribute(attribute);
+            return attribute.isEmpty() || attributeValue != null && matches(attributeValues, attributeValue);
+        }
+        if (record instanceof EventBridgeEvent && recordType == EventBridgeEvent.class) {
+            final EventBridgeEvent event = (EventBridgeEvent) record;
+            return matches(detailTypes, event.getDetailType()) && matches(sources, event.getSource());
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the queue's ARN, or its name, is one of the route's queues.
+     *
+     * @param queueArn The ARN of the message's queue.
+     * @return Returns {@code true} if the route handles every queue or the given queue.
+     */
+    private boolean queueMatches(final String queueArn) {
+        if (queues.isEmpty()) {
+            return true;
+        }
+        if (queueArn == null) {
+            return false;
+        }
+        return queues.contains(queueArn) || queues.contains(queueArn.substring(queueArn.lastIndexOf(':') + 1));
+    }
+
+    private static boolean matches(final Set<String> accepted, final String value) {
+        return accepted.isEmpty() || accepted.contains(value);
+    }
+
+    /**
+     * Builds an array of arguments to be passed in as parameters to the route's method given the record.
+     *
+     * @param record The record for which to build arguments.
+     * @return An object array to be passed into {@link #invokeAsyncWithArgs(Object[])}.
+     */
+    public Object[] buildArgs(final MessageRecord record) {
+        final Parameter[] parameters = method.getParameters();
+        final Object[] args = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            if (i == 0 && parameters[i].getType().isInstance(record)) {
+                args[i] = record;
+                continue;
+            }
+            final Annotation[] annotations = parameters[i].getAnnotations();
+            if (annotations.length != 1) {
+                throw new IllegalStateException("Message route parameters must have exactly 1 annotation");
+            }
+            args[i] = getParameterValue(annotations[0], record);
+        }
+        return args;
+    }
+
+    private static Object getParameterValue(final Annotation annotation, final MessageRecord record) {
+        if (annotation instanceof Body) {
+            if (record instanceof SqsMessage) {
+                return ((SqsMessage) record).getBody();
+            }
+            final EventBridgeEvent event = (EventBridgeEvent) record;
+            return event.getDetail() == null ? null : event.getDetail().toString();
+        }
+        if (annotation instanceof MessageAttribute && record instanceof SqsMessage) {
+            return ((SqsMessage) record).getMessageAttribute(((MessageAttribute) annotation).value());
+        }
+        throw new IllegalStateException(
+            "Unknown message route parameter annotation: " + annotation.annotationType());
+    }
+
+    /**
+     * Invoke the route's method using arguments previously built by {@link #buildArgs(MessageRecord)}.
+     *
+     * <p>Synchronous methods are complete once they return. Exceptions thrown by the method itself,
+     * rather than by the stage it returns, are thrown from this method.
+     *
+     * @param invokeArgs The arguments to pass to the route's method.
+     * @return A stage which completes once the record has been handled.
+     * @throws Exception Exception thrown if invoking the Java method fails.
+     */
+    public CompletionStage<?> invokeAsyncWithArgs(final Object[] invokeArgs) throws Exception {
+        final Object returnVal = method.invoke(controller, invokeArgs);
+        if (returnVal instanceof CompletionStage) {
+            return (CompletionStage<?>) returnVal;
+        }
+        if (isAsync()) {
+            throw new IllegalStateException(
+                String.format("Expected CompletionStage from method invocation. method=%s, returnVal=%s",
+                    method, returnVal));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Checks whether the route's method is asynchronous, ie: it returns a {@link CompletionStage}.
+     *
+     * @return Returns {@code true} if the route's method is asynchronous, otherwise {@code false}.
+     */
+    public boolean isAsync() {
+        return CompletionStage.class.isAssignableFrom(method.getReturnType());
+    }
+
+    @Override
+    public String toString() {
+        return "MessageRoute(" + recordType.getSimpleName() + " " + controller.getClass().getSimpleName()
+            + "." + method.getName() + ")";
+    }
+}
@@ -30,6 +30,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Pattern;
 
 import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
@@ -37,12 +41,16 @@ import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
 import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
 
 import gg.sep.avenue.router.AbstractRouteController;
+import gg.sep.avenue.router.Cached;
 import gg.sep.avenue.router.GET;
 import gg.sep.avenue.router.PATCH;
 import gg.sep.avenue.router.POST;
 import gg.sep.avenue.router.RouteController;
+import gg.sep.avenue.router.RouteInterceptor;
+import gg.sep.avenue.router.cache.CachePolicy;
 import gg.sep.avenue.router.converter.TokenConverter;
 
 /**
@@ -65,15 +73,32 @@ import gg.sep.avenue.router.converter.TokenConverter;
  * generate automatically generated by each {@link RouteController} in their own
  * {@link RouteController#getRoutes()}, which is implemented in
  * {@link AbstractRouteController}
+ *
+ * <p>Routes whose method is annotated with {@link Cached} also have a
+ * {@link CachePolicy}, otherwise it is {@code null}.
+ *
+ * <p>Each route holds the chain of {@link RouteInterceptor}s which apply to it, which is resolved
+ * by the handler when the route is registered, and is empty by default.
  */
 @Builder
 @Getter(AccessLevel.PACKAGE)
+@Log4j2
 public class Route {
+    private static final RouteInterceptor[] NO_INTERCEPTORS = new RouteInterceptor[0];
+
+    @Getter
     private RouteRequestMethod routeRequestMethod;
+    @Getter
+    private String routePath;
     private Method method;
+    @Getter
     private RouteController controller;
     private Map<String, TokenConverter<?>> pathParameters;
     private Pattern pattern;
+    @Getter
+    private CachePolicy cachePolicy;
+    @Builder.Default
+    private RouteInterceptor[] interceptors = NO_INTERCEPTORS;
 
     /**
      * Invoke the route using the Lambda' request which triggered the route.
@@ -83,7 +108,27 @@ public class Route {
      * @throws Exception Exception thrown if invoking the Java method fails.
      */
     public AwsProxyResponse invoke(final AwsProxyRequest request) throws Exception {
-        final Object[] invokeArgs = buildArgs(request);
+        return invokeWithArgs(buildArgs(request));
+    }
+
+    /**
+     * Invoke the route's method using arguments previously built by {@link #buildArgs(AwsProxyRequest)}.
+     *
+     * <p>Splitting argument binding from invocation allows the handler to measure or
+     * trace each of the two phases separately.
+     *
+     * @param invokeArgs The arguments to pass to the route's method.
+     * @return The response to send back to the Lambda's output stream.
+     * @throws Exception Exception thrown if invoking the Java method fails.
+     */
+    public AwsProxyResponse invokeWithArgs(final Object[] invokeArgs) throws Exception {
+        if (isAsync()) {
+            try {
+                return invokeAsyncWithArgs(invokeArgs).toCompletableFuture().get();
+            } catch (final ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
         final Object returnVal = method.invoke(controller, invokeArgs);
         if (!(returnVal instanceof AwsProxyResponse)) {
             throw new IllegalStateException(
@@ -93,6 +138,201 @@ public class Route {
         return (AwsProxyResponse) returnVal;
     }
 
+    /**
+     * Invoke the route's method using arguments previously built by {@link #buildArgs(AwsProxyRequest)},
+     * without waiting for the response of an asynchronous route.
+     *
+     * <p>If the route's method returns an {@link AwsProxyResponse}, it is returned as an already
+     * completed stage. Exceptions thrown by the method itself, rather than by the stage it
+     * returns, are thrown from this method.
+     *
+     * @param invokeArgs The arguments to pass to the route's method.
+     * @return A stage which completes with the response to send back to the Lambda's output stream.
+     * @throws Exception Exception thrown if invoking the Java method fails.
+     */
+    @SuppressWarnings("unchecked")
+    public CompletionStage<AwsProxyResponse> invokeAsyncWithArgs(final Object[] invokeArgs) throws Exception {
+        final Object returnVal = method.invoke(controller, invokeArgs);
+        if (returnVal instanceof AwsProxyResponse) {
+            return CompletableFuture.completedFuture((AwsProxyResponse) returnVal);
+        }
+        if (!(returnVal instanceof CompletionStage)) {
+            throw new IllegalStateException(
+                String.format("Expected AwsProxyResponse or CompletionStage from method invocation. "
+                    + "method=%s, returnVal=%s", method, returnVal));
+        }
+        return (CompletionStage<AwsProxyResponse>) returnVal;
+    }
+
+    /**
+     * Sets the chain of interceptors which apply to the route. This is called by the handler when
+     * the route, or an interceptor, is registered, before any requests are handled.
+     *
+     * @param chain The interceptors, in the order their {@link RouteInterceptor#beforeInvoke} is called.
+     */
+    public void setInterceptors(final List<RouteInterceptor> chain) {
+        interceptors = chain.isEmpty() ? NO_INTERCEPTORS : chain.toArray(NO_INTERCEPTORS);
+    }
+
+    /**
+     * Checks whether any interceptors apply to the route.
+     *
+     * @return Returns {@code true} if the route has interceptors, otherwise {@code false}.
+     */
+    public boolean hasInterceptors() {
+        return interceptors.length > 0;
+    }
+
+    /**
+     * Calls {@link RouteInterceptor#beforeInvoke} of each of the route's interceptors in order,
+     * until one answers the request.
+     *
+     * @param request The request.
+     * @return The response of the interceptor which answered the request, after it has been passed
+     *         back through {@link RouteInterceptor#afterInvoke} of that interceptor and those before
+     *         it in the chain, or {@code null} if the route should be invoked.
+     * @throws Exception Exception thrown by an interceptor, after the interceptors before it in the
+     *                   chain have been unwound with a {@code null} response.
+     */
+    public AwsProxyResponse interceptBefore(final AwsProxyRequest request) throws Exception {
+        int i = 0;
+        boolean completed = false;
+        try {
+            for (; i < interceptors.length; i++) {
+                final AwsProxyResponse response = interceptors[i].beforeInvoke(this, request);
+                if (response != null) {
+                    completed = true;
+                    return unwind(request, response, i);
+                }
+            }
+            completed = true;
+            return null;
+        } finally {
+            if (!completed) {
+                unwindFailure(request, i - 1);
+            }
+        }
+    }
+
+    /**
+     * Invokes the route, then passes its response through {@link #interceptAfter}. If the
+     * invocation throws, the interceptors are instead unwound with a {@code null} response, in a
+     * {@code finally} block, and the exception is rethrown.
+     *
+     * @param request The request.
+     * @param invocation Invokes the route and returns its response.
+     * @return The response returned by the first interceptor in the chain.
+     * @throws Exception Exception thrown by the invocation.
+     */
+    public AwsProxyResponse intercept(final AwsProxyRequest request, final Callable<AwsProxyResponse> invocation)
+        throws Exception {
+        AwsProxyResponse response = null;
+        boolean invoked = false;
+        try {
+            response = invocation.call();
+            invoked = true;
+        } finally {
+            if (!invoked) {
+                interceptFailure(request);
+            }
+        }
+        return interceptAfter(request, response);
+    }
+
+    /**
+     * Calls {@link RouteInterceptor#afterInvoke} of each of the route's interceptors in reverse order
+     * with a {@code null} response, after the route failed to produce a response.
+     *
+     * @param request The request.
+     */
+    public void interceptFailure(final AwsProxyRequest request) {
+        unwindFailure(request, interceptors.length - 1);
+    }
+
+    /**
+     * Calls {@link RouteInterceptor#afterInvoke} of each of the route's interceptors in reverse order.
+     *
+     * @param request The request.
+     * @param response The response to the request.
+     * @return The response returned by the first interceptor in the chain.
+     */
+    public AwsProxyResponse interceptAfter(final AwsProxyRequest request, final AwsProxyResponse response) {
+        return unwind(request, response, interceptors.length - 1);
+    }
+
+    /**
+     * Calls {@link RouteInterceptor#afterInvoke} of the interceptors from the given index back to
+     * the start of the chain.
+     *
+     * @param request The request.
+     * @param response The response to the request.
+     * @param last The index of the last interceptor whose {@link RouteInterceptor#beforeInvoke} was called.
+     * @return The response returned by the first interceptor in the chain.
+     */
+    private AwsProxyResponse unwind(final AwsProxyRequest request, final AwsProxyResponse response,
+                                    final int last) {
+        AwsProxyResponse result = response;
+        for (int i = last; i >= 0; i--) {
+            result = interceptors[i].afterInvoke(this, request, result);
+        }
+        return result;
+    }
+
+    /**
+     * Calls {@link RouteInterceptor#afterInvoke} of the interceptors from the given index back to
+     * the start of the chain with a {@code null} response, after the request failed. An exception
+     * thrown by an interceptor is logged, so that the original failure is not replaced and the
+     * remaining interceptors are still unwound.
+     *
+     * @param request The request.
+     * @param last The index of the last interceptor whose {@link RouteInterceptor#beforeInvoke} returned.
+     */
+    private void unwindFailure(final AwsProxyRequest request, final int last) {
+        for (int i = last; i >= 0; i--) {
+            try {
+                interceptors[i].afterInvoke(this, request, null);
+            } catch (final RuntimeException e) {
+                log.warn("Route interceptor '{}' failed while unwinding a failed request", interceptors[i], e);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the route's method, or its controller's class, has an annotation.
+     *
+     * @param annotation The annotation type, which must be retained at runtime.
+     * @return Returns {@code true} if the route's method or controller class has the annotation,
+     *         otherwise {@code false}.
+     */
+    public boolean isAnnotated(final Class<? extends Annotation> annotation) {
+        return method.isAnnotationPresent(annotation) || controller.getClass().isAnnotationPresent(annotation);
+    }
+
+    /**
+     * Checks whether the route's path is under a path prefix, eg: {@code /admin/<int:id>} is under
+     * {@code /admin}, but {@code /administrators} is not.
+     *
+     * @param prefix The path prefix.
+     * @return Returns {@code true} if the route's path is, or is under, the prefix, otherwise {@code false}.
+     */
+    public boolean isUnderPath(final String prefix) {
+        if (!routePath.startsWith(prefix)) {
+            return false;
+        }
+        return routePath.length() == prefix.length() || prefix.endsWith("/")
+            || routePath.charAt(prefix.length()) == '/';
+    }
+
+    /**
+     * Checks whether the route's method is asynchronous, ie: it returns a
+     * {@link CompletionStage} of {@link AwsProxyResponse} rather than the response itself.
+     *
+     * @return Returns {@code true} if the route's method is asynchronous, otherwise {@code false}.
+     */
+    public boolean isAsync() {
+        return CompletionStage.class.isAssignableFrom(method.getReturnType());
+    }
+
     /**
      * Indicates whether this route is valid for handling the specified {@link AwsProxyRequest}.
      *
@@ -103,6 +343,16 @@ public class Route {
         return methodMatches(request) && pathMatches(request);
     }
 
+    /**
+     * Indicates whether this route's path pattern matches the path, regardless of the HTTP method.
+     *
+     * @param path The request path to check.
+     * @return Returns {@code true} if the path matches the route's path pattern, otherwise {@code false}.
+     */
+    public boolean handlesPath(final String path) {
+        return path != null && pattern.matcher(path).matches();
+    }
+
     /**
      * Checks whether the request's HTTP method matches this route's mapped annotation method.
      * @param request The request to check.
@@ -127,9 +377,9 @@ public class Route {
      * given the request.
      *
      * @param request The request for which to build arguments.
-     * @return An object array to be passed into the {@link Method#invoke(Object, Object...)} method.
+     * @return An object array to be passed into {@link #invokeWithArgs(Object[])}.
      */
-    private Object[] buildArgs(final AwsProxyRequest request) {
+    public Object[] buildArgs(final AwsProxyRequest request) {
         final List<Parameter> parameters = new ArrayList<>();
         Collections.addAll(parameters, method.getParameters());
         final List<Object> argsList = new ArrayList<>();
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cors;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import org.apache.http.HttpStatus;
+
+/**
+ * Cross-origin resource sharing (CORS) settings of a handler.
+ *
+ * <p>Preflight requests are answered by the handler's {@link PreflightIndex} from the methods of
+ * the routes whose path matches, without invoking a route. The {@code Access-Control-Allow-Origin}
+ * header, and any exposed headers or credentials, are added to the responses of other requests
+ * which have an {@code Origin} header, unless the route set its own.
+ *
+ * <p>By default any origin is allowed, in which case the allowed origin is {@code *}. Otherwise,
+ * the request's origin is echoed if it is allowed, and responses vary by {@code Origin}.
+ */
+public final class CorsPolicy {
+    static final String ORIGIN = "Origin";
+    static final String REQUEST_METHOD = "Access-Control-Request-Method";
+    static final String ALLOW_ORIGIN = "Access-Control-Allow-Origin";
+    static final String ALLOW_METHODS = "Access-Control-Allow-Methods";
+    static final String ALLOW_HEADERS = "Access-Control-Allow-Headers";
+    static final String ALLOW_CREDENTIALS = "Access-Control-Allow-Credentials";
+    static final String EXPOSE_HEADERS = "Access-Control-Expose-Headers";
+    static final String MAX_AGE = "Access-Control-Max-Age";
+
+    private static final String ANY = "*";
+    private static final String VARY = "Vary";
+
+    private final Set<String> allowedOrigins;
+    private final String allowedHeaders;
+    private final String exposedHeaders;
+    private final boolean allowCredentials;
+    private final String maxAge;
+
+    private CorsPolicy(final Builder builder) {
+        this.allowedOrigins = builder.allowedOrigins;
+        this.allowedHeaders = join(builder.allowedHeaders);
+        this.exposedHeaders = join(builder.exposedHeaders);
+        this.allowCredentials = builder.allowCredentials;
+        this.maxAge = String.valueOf(builder.maxAge.getSeconds());
+    }
+
+    /**
+     * Checks whether the request is a CORS preflight request, ie: an {@code OPTIONS} request with
+     * {@code Origin} and {@code Access-Control-Request-Method} headers.
+     *
+     * @param request The request.
+     * @return Returns {@code true} if the request is a preflight request, otherwise {@code false}.
+     */
+    public static boolean isPreflight(final AwsProxyRequest request) {
+        final Headers headers = request.getMultiValueHeaders();
+        return "OPTIONS".equals(request.getHttpMethod()) && headers != null
+            && headers.getFirst(ORIGIN) != null && headers.getFirst(REQUEST_METHOD) != null;
+    }
+
+    /**
+     * Resolves the value of the {@code Access-Control-Allow-Origin} header for the request.
+     *
+     * @param request The request.
+     * @return {@code *} if any origin is allowed, the request's origin if it is allowed, or
+     *         {@code null} if the request has no {@code Origin} header or its origin is not allowed.
+     */
+    public String allowedOrigin(final AwsProxyRequest request) {
+        final Headers headers = request.getMultiValueHeaders();
+        final String origin = headers == null ? null : headers.getFirst(ORIGIN);
+        if (origin == null) {
+            return null;
+        }
+        if (allowedOrigins == null) {
+            return ANY;
+        }
+        return allowedOrigins.contains(origin) ? origin : null;
+    }
+
+    /**
+     * Gets the part of a response cache key which identifies the CORS headers of the response,
+     * which is the allowed origin of the request. Since there are only as many as there are
+     * allowed origins, caching responses per origin is bounded.
+     *
+     * @param request The request.
+     * @return The CORS part of the key, which is empty if the response has no CORS headers.
+     */
+    public String cacheKey(final AwsProxyRequest request) {
+        final String allowedOrigin = allowedOrigin(request);
+        return allowedOrigin == null ? "" : '\u0000' + allowedOrigin;
+    }
+
+    /**
+     * Adds the CORS headers to the response to a request with an {@code Origin} header, unless it
+     * already has an {@code Access-Control-Allow-Origin} header. The response is modified in place.
+     *
+     * @param request The request which the response answers.
+     * @param response The response.
+     * @return The response.
+     */
+    public AwsProxyResponse apply(final AwsProxyRequest request, final AwsProxyResponse response) {
+        final Headers requestHeaders = request.getMultiValueHeaders();
+        if (requestHeaders == null || requestHeaders.getFirst(ORIGIN) == null) {
+            return response;
+        }
+        Headers headers = response.getMultiValueHeaders();
+        if (headers == null) {
+            headers = new Headers();
+            response.setMultiValueHeaders(headers);
+        }
+        if (headers.containsKey(ALLOW_ORIGIN)) {
+            return response;
+        }
+        addVary(headers);
+        final String allowedOrigin = allowedOrigin(request);
+        if (allowedOrigin != null) {
+            headers.putSingle(ALLOW_ORIGIN, allowedOrigin);
+            if (allowCredentials) {
+                headers.putSingle(ALLOW_CREDENTIALS, "true");
+            }
+            if (exposedHeaders != null) {
+                headers.putSingle(EXPOSE_HEADERS, exposedHeaders);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Builds the response to a preflight request.
+     *
+     * @param allowedOrigin The allowed origin, as resolved by {@link #allowedOrigin(AwsProxyRequest)}.
+     * @param allowedMethods The value of the {@code Access-Control-Allow-Methods} header.
+     * @return A 204 response, which only has CORS headers if the origin is allowed.
+     */
+    AwsProxyResponse preflightResponse(final String allowedOrigin, final String allowedMethods) {
+        final Headers headers = new Headers();
+        addVary(headers);
+        if (allowedOrigin != null) {
+            headers.putSingle(ALLOW_ORIGIN, allowedOrigin);
+            headers.putSingle(ALLOW_METHODS, allowedMethods);
+            if (allowedHeaders != null) {
+                headers.putSingle(ALLOW_HEADERS, allowedHeaders);
+            }
+            if (allowCredentials) {
+                headers.putSingle(ALLOW_CREDENTIALS, "true");
+            }
+            headers.putSingle(MAX_AGE, maxAge);
+        }
+        return new AwsProxyResponse(HttpStatus.SC_NO_CONTENT, headers);
+    }
+
+    /**
+     * Appends {@code Origin} to the response's {@code Vary} header, unless any origin is allowed,
+     * in which case the CORS headers do not depend on it.
+     *
+     * @param headers The response's headers.
+     */
+    private void addVary(final Headers headers) {
+        if (allowedOrigins == null) {
+            return;
+        }
+        final String vary = headers.getFirst(VARY);
+        if (vary == null) {
+            headers.putSingle(VARY, ORIGIN);
+        } else if (!vary.toLowerCase(Locale.ENGLISH).contains("origin") && !ANY.equals(vary.trim())) {
+            headers.putSingle(VARY, vary + ", " + ORIGIN);
+        }
+    }
+
+    private static String join(final Set<String> values) {
+        return values.isEmpty() ? null : String.join(", ", values);
+    }
+
+    /**
+     * Creates a new instance of the {@link CorsPolicy} builder.
+     * @return A new instance of the {@link CorsPolicy} builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class for the {@link CorsPolicy}.
+     */
+    public static final class Builder {
+        private static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(10);
+
+        private Set<String> allowedOrigins;
+        private Set<String> allowedHeaders = Collections.singleton(ANY);
+        private Set<String> exposedHeaders = Collections.emptySet();
+        private boolean allowCredentials;
+        private Duration maxAge = DEFAULT_MAX_AGE;
+
+        /**
+         * Restricts the origins allowed to make cross-origin requests, eg: {@code https://example.com}.
+         * By default, any origin is allowed.
+         *
+         * @param origins The allowed origins.
+         * @return The builder instance.
+         */
+        public Builder withAllowedOrigins(final String... origins) {
+            if (origins == null || origins.length == 0) {
+                throw new IllegalArgumentException("At least one allowed origin is required");
+            }
+            final Set<String> values = new LinkedHashSet<>();
+            for (final String origin : origins) {
+                if (origin == null || origin.isEmpty() || ANY.equals(origin)) {
+                    throw new IllegalArgumentException("Invalid allowed origin: " + origin);
+                }
+                values.add(origin);
+            }
+            allowedOrigins = Collections.unmodifiableSet(values);
+            return this;
+        }
+
+        /**
+         * Sets the request headers which preflight requests are told may be sent. Defaults to
+         * {@code *}, ie: any header.
+         *
+         * @param headers The allowed request headers, which may be empty.
+         * @return The builder instance.
+         */
+        public Builder withAllowedHeaders(final String... headers) {
+            allowedHeaders = headerSet(headers);
+            return this;
+        }
+
+        /**
+         * Sets the response headers, other than the CORS-safelisted headers, which scripts may read.
+         * Defaults to none.
+         *
+         * @param headers The exposed response headers, which may be empty.
+         * @return The builder instance.
+         */
+        public Builder withExposedHeaders(final String... headers) {
+            exposedHeaders = headerSet(headers);
+            return this;
+        }
+
+        /**
+         * Sets whether requests may include credentials, such as cookies. Defaults to {@code false}.
+         * Credentials require the allowed origins to be set.
+         *
+         * @param credentials Whether credentials are allowed.
+         * @return The builder instance.
+         */
+        public Builder withAllowCredentials(final boolean credentials) {
+            allowCredentials = credentials;
+            return this;
+        }
+
+        /**
+         * Sets how long clients may cache the response to a preflight request. Defaults to 10 minutes.
+         *
+         * @param age The maximum age, which is sent in seconds.
+         * @return The builder instance.
+         */
+        public Builder withMaxAge(final Duration age) {
+            if (age == null || age.isNegative()) {
+                throw new IllegalArgumentException("Max age must not be negative: " + age);
+            }
+            maxAge = age;
+            return this;
+        }
+
+        private static Set<String> headerSet(final String... headers) {
+            if (headers == null) {
+                throw new IllegalArgumentException("Headers must not be null");
+            }
+            for (final String header : headers) {
+                if (header == null || header.isEmpty()) {
+                    throw new IllegalArgumentException("Invalid header name: " + header);
+                }
+            }
+            return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(headers)));
+        }
+
+        /**
+         * Constructs the {@link CorsPolicy} using the parameters from the builder.
+         *
+         * @return A new instance of {@link CorsPolicy}.
+         * @throws IllegalStateException Thrown if credentials are allowed with any origin or any header,
+         *                               since browsers do not accept wildcards with credentials.
+         */
+        public CorsPolicy build() {
+            if (allowCredentials && (allowedOrigins == null || allowedHeaders.contains(ANY))) {
+                throw new IllegalStateException("Credentials require explicit allowed origins and headers");
+            }
+            return new CorsPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cors;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import lombok.Getter;
+
+import gg.sep.avenue.router.assets.StaticAsset;
+import gg.sep.avenue.router.core.Route;
+import gg.sep.avenue.router.core.RouteRequestMethod;
+
+/**
+ * Answers CORS preflight requests from the handler's routes, without invoking them.
+ *
+ * <p>When the index is built, the routes are grouped by their path template, and the methods of
+ * each template are resolved to a shared set of allowed methods. A preflight request is answered
+ * with the allowed methods of every template which matches its path, plus {@code OPTIONS}, and
+ * {@code HEAD} if the path has a {@code GET} route, since it handles {@code HEAD} requests too.
+ *
+ * <p>The response for each set of allowed methods is built the first time it is needed for each
+ * allowed origin, and then held as a {@link StaticAsset.Response}, so that it is serialized at most
+ * once per payload format. Since there are only as many allowed origins as the policy lists (or
+ * one, if any origin is allowed), the number of responses is bounded.
+ */
+public final class PreflightIndex {
+    @Getter
+    private final CorsPolicy policy;
+    private final Template[] templates;
+    private final Map<Set<RouteRequestMethod>, MethodSet> methodSets = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the index of the routes' path templates.
+     *
+     * @param policy The CORS policy of the preflight responses.
+     * @param routes The handler's routes.
+     */
+    public PreflightIndex(final CorsPolicy policy, final Collection<Route> routes) {
+        this.policy = policy;
+        final Map<String, Route> representatives = new LinkedHashMap<>();
+        final Map<String, Set<RouteRequestMethod>> methods = new LinkedHashMap<>();
+        for (final Route route : routes) {
+            representatives.putIfAbsent(route.getRoutePath(), route);
+            final Set<RouteRequestMethod> allowed =
+                methods.computeIfAbsent(route.getRoutePath(), path -> EnumSet.of(RouteRequestMethod.OPTIONS));
+            allowed.add(route.getRouteRequestMethod());
+            if (route.getRouteRequestMethod() == RouteRequestMethod.GET) {
+                allowed.add(RouteRequestMethod.HEAD);
+            }
+        }
+        this.templates = representatives.entrySet().stream()
+            .map(e -> new Template(e.getValue(), methodSet(methods.get(e.getKey()))))
+            .toArray(Template[]::new);
+    }
+
+    /**
+     * Selects the response to a preflight request.
+     *
+     * @param request The request.
+     * @return The response, which must not be modified, or {@code null} if the request is not a
+     *         preflight request or no route's path matches it.
+     */
+    public StaticAsset.Response select(final AwsProxyRequest request) {
+        if (!CorsPolicy.isPreflight(request)) {
+            return null;
+        }
+        final String path = request.getPath();
+        MethodSet found = null;
+        for (final Template template : templates) {
+            if (template.route.handlesPath(path)) {
+                found = found == null ? template.methods : union(found, template.methods);
+            }
+        }
+        return found == null ? null : found.response(policy.allowedOrigin(request));
+    }
+
+    /**
+     * Gets the shared instance for a set of allowed methods.
+     *
+     * @param methods The allowed methods.
+     * @return The method set.
+     */
+    private MethodSet methodSet(final Set<RouteRequestMethod> methods) {
+        final MethodSet existing = methodSets.get(methods);
+        return existing != null ? existing : methodSets.computeIfAbsent(methods, MethodSet::new);
+    }
+
+    /**
+     * Combines the allowed methods of several path templates which match the same path.
+     *
+     * @param first The allowed methods of one template.
+     * @param second The allowed methods of another template.
+     * @return The method set of their union.
+     */
+    private MethodSet union(final MethodSet first, final MethodSet second) {
+        if (first == second || first.methods.containsAll(second.methods)) {
+            return first;
+        }
+        final Set<RouteRequestMethod> methods = EnumSet.copyOf(first.methods);
+        methods.addAll(second.methods);
+        return methodSet(methods);
+    }
+
+    /**
+     * A path template, matched by one of its routes, and its allowed methods.
+     */
+    private static final class Template {
+        private final Route route;
+        private final MethodSet methods;
+
+        private Template(final Route route, final MethodSet methods) {
+            this.route = route;
+            this.methods = methods;
+        }
+    }
+
+    /**
+     * A set of allowed methods, and its preflight response for each allowed origin.
+     */
+    private final class MethodSet {
+        private static final String NOT_ALLOWED = "";
+
+        private final Set<RouteRequestMethod> methods;
+        private final String allowedMethods;
+        private final Map<String, StaticAsset.Response> responses = new ConcurrentHashMap<>();
+
+        private MethodSet(final Set<RouteRequestMethod> methods) {
+            this.methods = methods;
+            this.allowedMethods = methods.stream().map(RouteRequestMethod::name).collect(Collectors.joining(", "));
+        }
+
+        private StaticAsset.Response response(final String allowedOrigin) {
+            final String key = allowedOrigin == null ? NOT_ALLOWED : allowedOrigin;
+            final StaticAsset.Response existing = responses.get(key);
+            return existing != null ? existing : responses.computeIfAbsent(key,
+                k -> new StaticAsset.Response(policy.preflightResponse(allowedOrigin, allowedMethods)));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.amazonaws.serverless.proxy.model.AlbContext;
+import com.amazonaws.serverless.proxy.model.ApiGatewayRequestIdentity;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequestContext;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import com.amazonaws.serverless.proxy.model.MultiValuedTreeMap;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+
+/**
+ * Reads requests from, and writes responses to, Application Load Balancer target groups.
+ *
+ * <p>Load balancer events have either single value or multi-value headers and query string
+ * parameters, depending on whether the target group has multi-value headers enabled, and the
+ * response must use the same mode. In single value mode, repeated response headers are joined
+ * with commas, except for {@code Set-Cookie}, of which only the last is sent.
+ *
+ * <p>Load balancer responses also carry a {@code statusDescription}, eg: {@code 200 OK}, which is
+ * taken from the response if it has one, otherwise from the status code.
+ */
+public final class AlbCodec {
+    private static final String SET_COOKIE = "Set-Cookie";
+    private static final String FORWARDED_FOR = "X-Forwarded-For";
+    private static final int ENVELOPE_SIZE_HINT = 256;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates the codec.
+     *
+     * @param objectMapper The object mapper used to parse events.
+     */
+    public AlbCodec(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Reads a load balancer event into a request.
+     *
+     * @param event The serialized event.
+     * @return The request.
+     * @throws IOException Exception thrown if the event cannot be parsed.
+     */
+    public AlbRequest readRequest(final byte[] event) throws IOException {
+        final JsonNode root = objectMapper.readTree(event);
+        final AlbRequest request = new AlbRequest();
+        request.setHttpMethod(text(root, "httpMethod"));
+        request.setPath(text(root, "path"));
+        request.setBody(text(root, "body"));
+        request.setIsBase64Encoded(root.path("isBase64Encoded").asBoolean(false));
+
+        final JsonNode multiValueHeaders = root.get("multiValueHeaders");
+        final boolean multiValueMode = multiValueHeaders != null && multiValueHeaders.isObject();
+        request.setMultiValueMode(multiValueMode);
+        final Headers headers = new Headers();
+        readValues(multiValueMode ? multiValueHeaders : root.get("headers"), false, headers);
+        request.setMultiValueHeaders(headers);
+        final MultiValuedTreeMap<String, String> query = new MultiValuedTreeMap<>();
+        readValues(root.get(multiValueMode ? "multiValueQueryStringParameters" : "queryStringParameters"), true, query);
+        request.setMultiValueQueryStringParameters(query);
+
+        final AwsProxyRequestContext requestContext = new AwsProxyRequestContext();
+        final AlbContext elb = new AlbContext();
+        elb.setTargetGroupArn(text(root.path("requestContext").path("elb"), "targetGroupArn"));
+        requestContext.setElb(elb);
+        requestContext.setHttpMethod(request.getHttpMethod());
+        requestContext.setPath(request.getPath());
+        requestContext.setRequestId(headers.getFirst("X-Amzn-Trace-Id"));
+        final ApiGatewayRequestIdentity identity = new ApiGatewayRequestIdentity();
+        final List<String> forwardedFor = headers.get(FORWARDED_FOR);
+        if (forwardedFor != null && !forwardedFor.isEmpty()) {
+            // the load balancer appends the address of the client which connected to it
+            final String last = forwardedFor.get(forwardedFor.size() - 1);
+            identity.setSourceIp(last.substring(last.lastIndexOf(',') + 1).trim());
+        }
+        identity.setUserAgent(headers.getFirst("User-Agent"));
+        requestContext.setIdentity(identity);
+        request.setRequestContext(requestContext);
+        return request;
+    }
+
+    /**
+     * Writes a response in the load balancer format, using the request's header mode.
+     *
+     * @param request The request which the response answers.
+     * @param response The response.
+     * @return The serialized response payload.
+     * @throws IOException Exception thrown if serializing the response fails.
+     */
+    public byte[] writeResponse(final AlbRequest request, final AwsProxyResponse response) throws IOException {
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        final Headers multiValueHeaders = response.getMultiValueHeaders();
+        if (multiValueHeaders != null) {
+            multiValueHeaders.forEach((name, values) -> headers.put(name, new ArrayList<>(values)));
+        }
+        if (response.getHeaders() != null) {
+            // as with API Gateway, multi-value headers take precedence over single value headers
+            response.getHeaders().forEach((name, value) -> {
+                if (multiValueHeaders == null || !multiValueHeaders.containsKey(name)) {
+                    headers.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+                }
+            });
+        }
+
+        final int bodyLength = response.getBody() == null ? 0 : response.getBody().length();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(bodyLength + ENVELOPE_SIZE_HINT);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeNumberField("statusCode", response.getStatusCode());
+            generator.writeStringField("statusDescription", statusDescription(response));
+            if (request.isMultiValueMode()) {
+                generator.writeObjectFieldStart("multiValueHeaders");
+                for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+                    generator.writeArrayFieldStart(header.getKey());
+                    for (final String value : header.getValue()) {
+                        generator.writeString(value);
+                    }
+                    generator.writeEndArray();
+                }
+            } else {
+                generator.writeObjectFieldStart("headers");
+                for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+                    final List<String> values = header.getValue();
+                    generator.writeStringField(header.getKey(), SET_COOKIE.equalsIgnoreCase(header.getKey())
+                        ? values.get(values.size() - 1) : String.join(",", values));
+                }
+            }
+            generator.writeEndObject();
+            generator.writeStringField("body", response.getBody() == null ? "" : response.getBody());
+            generator.writeBooleanField("isBase64Encoded", response.isBase64Encoded());
+            generator.writeEndObject();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Gets the status description of the response, eg: {@code 404 Not Found}.
+     *
+     * @param response The response.
+     * @return The response's own status description, otherwise one built from its status code.
+     */
+    static String statusDescription(final AwsProxyResponse response) {
+        if (response.getStatusDescription() != null) {
+            return response.getStatusDescription();
+        }
+        final int status = response.getStatusCode();
+        final String reason = EnglishReasonPhraseCatalog.INSTANCE.getReason(status, Locale.ENGLISH);
+        return reason == null ? String.valueOf(status) : status + " " + reason;
+    }
+
+    private static void readValues(final JsonNode node, final boolean decode,
+                                   final MultiValuedTreeMap<String, String> values) {
+        if (node == null || !node.isObject()) {
+            return;
+        }
+        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            final String name = decode ? QueryStrings.decode(field.getKey()) : field.getKey();
+            if (field.getValue().isArray()) {
+                for (final JsonNode value : field.getValue()) {
+                    values.add(name, decode ? QueryStrings.decode(value.asText()) : value.asText());
+                }
+            } else {
+                values.add(name, decode ? QueryStrings.decode(field.getValue().asText()) : field.getValue().asText());
+            }
+        }
+    }
+
+    private static String text(final JsonNode node, final String field) {
+        final JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
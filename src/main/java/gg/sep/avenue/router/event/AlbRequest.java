@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.event;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Request from an Application Load Balancer target group, read by {@link AlbCodec}.
+ *
+ * <p>The request is presented as an {@link AwsProxyRequest} so that it is routed and bound like
+ * an API Gateway request. Its query string parameters are decoded, since the load balancer sends
+ * them as they appeared in the URL.
+ */
+public class AlbRequest extends AwsProxyRequest {
+    /**
+     * Whether the target group has multi-value headers enabled, in which case the event has
+     * multi-value headers and query string parameters, and the response must too.
+     */
+    @Getter @Setter
+    private boolean multiValueMode;
+}
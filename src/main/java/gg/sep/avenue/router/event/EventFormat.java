@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.event;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * The formats of the events which can be routed, each of which expects responses in its own
+ * format. SQS batches and EventBridge events are routed to
+ * {@link gg.sep.avenue.router.core.MessageRoute}s, the others to HTTP routes.
+ */
+public enum EventFormat {
+    /**
+     * API Gateway REST API proxy integration, or HTTP API payload format version 1.0.
+     */
+    API_GATEWAY,
+
+    /**
+     * API Gateway HTTP API payload format version 2.0, see {@link HttpApiV2Codec}.
+     */
+    HTTP_API_V2,
+
+    /**
+     * Application Load Balancer target group, see {@link AlbCodec}.
+     */
+    ALB,
+
+    /**
+     * SQS batch, see {@link gg.sep.avenue.router.message.MessageCodec}.
+     */
+    SQS,
+
+    /**
+     * EventBridge event, see {@link gg.sep.avenue.router.message.MessageCodec}.
+     */
+    EVENTBRIDGE;
+
+    private static final String VERSION_2 = "2.0";
+    private static final String SQS_EVENT_SOURCE = "aws:sqs";
+
+    /**
+     * Detects the format of a serialized event by scanning the top level of the event.
+     *
+     * <p>Version 2.0 events are detected from their {@code version} field, load balancer events
+     * from the {@code elb} field of their {@code requestContext}, SQS batches from the
+     * {@code eventSource} of their first record, and EventBridge events from their
+     * {@code detail-type} field. Scanning stops as soon as the format is known, which for the
+     * HTTP events sent by AWS is before the {@code body}.
+     *
+     * @param factory The JSON factory used to scan the event.
+     * @param event The serialized event.
+     * @return The event's format, {@link #API_GATEWAY} if it is not one of the others.
+     * @throws IOException Exception thrown if the event is not valid JSON.
+     */
+    public static EventFormat detect(final JsonFactory factory, final byte[] event) throws IOException {
+        try (JsonParser parser = factory.createParser(event)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return API_GATEWAY;
+            }
+            boolean contextSeen = false;
+            boolean versionOrMethodSeen = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("version".equals(name)) {
+                    if (value == JsonToken.VALUE_STRING && VERSION_2.equals(parser.getText())) {
+                        return HTTP_API_V2;
+                    }
+                    versionOrMethodSeen = true;
+                } else if ("httpMethod".equals(name)) {
+                    versionOrMethodSeen = true;
+                } else if ("detail-type".equals(name)) {
+                    return EVENTBRIDGE;
+                } else if ("Records".equals(name) && value == JsonToken.START_ARRAY) {
+                    if (isSqsRecord(parser)) {
+                        return SQS;
+                    }
+                    return API_GATEWAY;
+                } else if ("requestContext".equals(name) && value == JsonToken.START_OBJECT) {
+                    if (hasObjectField(parser, "elb")) {
+                        return ALB;
+                    }
+                    contextSeen = true;
+                } else {
+                    parser.skipChildren();
+                }
+                if (contextSeen && versionOrMethodSeen) {
+                    // version 2.0 events have no httpMethod, and send their version first
+                    return API_GATEWAY;
+                }
+            }
+            return API_GATEWAY;
+        }
+    }
+
+    /**
+     * Checks whether the first record of a {@code Records} array is an SQS message.
+     *
+     * @param parser The parser, positioned at the start of the array.
+     * @return Returns {@code true} if the first record's {@code eventSource} is {@code aws:sqs},
+     *         otherwise {@code false}.
+     * @throws IOException Exception thrown if the array is not valid JSON.
+     */
+    private static boolean isSqsRecord(final JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("eventSource".equals(name)) {
+                return value == JsonToken.VALUE_STRING && SQS_EVENT_SOURCE.equals(parser.getText());
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Scans the object the parser is at for a field whose value is an object, consuming the
+     * object unless it is found. Fields with {@code null} values, which serialized
+     * {@link com.amazonaws.serverless.proxy.model.AwsProxyRequestContext}s have, are ignored.
+     *
+     * @param parser The parser, positioned at the start of an object.
+     * @param field The name of the field.
+     * @return Returns {@code true} if the object has the field, otherwise {@code false}.
+     * @throws IOException Exception thrown if the object is not valid JSON.
+     */
+    private static boolean hasObjectField(final JsonParser parser, final String field) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final boolean matches = field.equals(parser.getCurrentName());
+            if (parser.nextToken() == JsonToken.START_OBJECT && matches) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.serverless.proxy.model.ApiGatewayRequestIdentity;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequestContext;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads requests from, and writes responses to, API Gateway HTTP APIs using payload format
+ * version 2.0.
+ *
+ * <p>Compared to the REST API format, version 2.0 events carry the {@code rawPath} and
+ * {@code rawQueryString} as sent, join repeated headers with commas rather than sending both
+ * single and multi-value maps, and send cookies separately. Responses likewise have a single
+ * {@code headers} map, whose repeated values are joined with commas, and a {@code cookies} array
+ * which carries the response's {@code Set-Cookie} headers.
+ *
+ * <p>Lambda authorizer and JWT claims are not mapped onto the request context.
+ */
+public final class HttpApiV2Codec {
+    private static final String SET_COOKIE = "Set-Cookie";
+    private static final String DEFAULT_STAGE = "$default";
+    private static final int ENVELOPE_SIZE_HINT = 256;
+    private static final byte[] STREAMING_PRELUDE_DELIMITER = new byte[8];
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates the codec.
+     *
+     * @param objectMapper The object mapper used to parse events.
+     */
+    public HttpApiV2Codec(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Reads a version 2.0 event into a request.
+     *
+     * @param event The serialized event.
+     * @return The request.
+     * @throws IOException Exception thrown if the event cannot be parsed.
+     */
+    public HttpApiV2Request readRequest(final byte[] event) throws IOException {
+        final JsonNode root = objectMapper.readTree(event);
+        final HttpApiV2Request request = new HttpApiV2Request();
+        request.setRouteKey(text(root, "routeKey"));
+        request.setRawPath(text(root, "rawPath"));
+        request.setPath(path(request.getRawPath(), text(root.path("requestContext"), "stage")));
+        request.setRawQueryString(text(root, "rawQueryString"));
+        request.setBody(text(root, "body"));
+        request.setIsBase64Encoded(root.path("isBase64Encoded").asBoolean(false));
+        request.setPathParameters(stringMap(root.get("pathParameters")));
+        request.setStageVariables(stringMap(root.get("stageVariables")));
+
+        final Headers headers = new Headers();
+        final JsonNode headerNodes = root.get("headers");
+        if (headerNodes != null) {
+            final Iterator<Map.Entry<String, JsonNode>> fields = headerNodes.fields();
+            while (fields.hasNext()) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                headers.add(field.getKey(), field.getValue().asText());
+            }
+        }
+        final JsonNode cookieNodes = root.get("cookies");
+        if (cookieNodes != null && cookieNodes.size() > 0) {
+            final List<String> cookies = new ArrayList<>(cookieNodes.size());
+            cookieNodes.forEach(cookie -> cookies.add(cookie.asText()));
+            request.setCookies(cookies);
+            headers.putSingle("Cookie", String.join("; ", cookies));
+        }
+        request.setMultiValueHeaders(headers);
+
+        final JsonNode context = root.path("requestContext");
+        final JsonNode http = context.path("http");
+        request.setHttpMethod(text(http, "method"));
+        final AwsProxyRequestContext requestContext = new AwsProxyRequestContext();
+        requestContext.setRequestId(text(context, "requestId"));
+        requestContext.setAccountId(text(context, "accountId"));
+        requestContext.setApiId(text(context, "apiId"));
+        requestContext.setStage(text(context, "stage"));
+        requestContext.setHttpMethod(request.getHttpMethod());
+        requestContext.setPath(text(http, "path"));
+        requestContext.setProtocol(text(http, "protocol"));
+        requestContext.setRequestTimeEpoch(context.path("timeEpoch").asLong());
+        final ApiGatewayRequestIdentity identity = new ApiGatewayRequestIdentity();
+        identity.setSourceIp(text(http, "sourceIp"));
+        identity.setUserAgent(text(http, "userAgent"));
+        requestContext.setIdentity(identity);
+        request.setRequestContext(requestContext);
+        return request;
+    }
+
+    /**
+     * Derives the request's path from its {@code rawPath}, which is percent-encoded and, unless the
+     * API's stage is {@code $default}, starts with the stage name, so that it matches the decoded,
+     * stage-less path of REST API events.
+     *
+     * @param rawPath The event's {@code rawPath}.
+     * @param stage The stage which received the request.
+     * @return The decoded path, without the stage prefix.
+     */
+    static String path(final String rawPath, final String stage) {
+        if (rawPath == null) {
+            return null;
+        }
+        String path = rawPath;
+        if (stage != null && !DEFAULT_STAGE.equals(stage)) {
+            final String stagePrefix = "/" + stage;
+            if (path.equals(stagePrefix)) {
+                path = "/";
+            } else if (path.startsWith(stagePrefix + "/")) {
+                path = path.substring(stagePrefix.length());
+            }
+        }
+        return QueryStrings.decodePath(path);
+    }
+
+    /**
+     * Writes a response in the version 2.0 format.
+     *
+     * @param response The response.
+     * @return The serialized response payload.
+     * @throws IOException Exception thrown if serializing the response fails.
+     */
+    public byte[] writeResponse(final AwsProxyResponse response) throws IOException {
+        final int bodyLength = response.getBody() == null ? 0 : response.getBody().length();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(bodyLength + ENVELOPE_SIZE_HINT);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartObject();
+            writeStatusAndHeaders(generator, response);
+            if (response.getBody() != null) {
+                generator.writeStringField("body", response.getBody());
+            }
+            generator.writeBooleanField("isBase64Encoded", response.isBase64Encoded());
+            generator.writeEndObject();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes the prelude of a streamed response, as expected by Lambda function URLs when the
+     * function's response is streamed: the response's status code, headers and cookies in the
+     * version 2.0 format, followed by eight {@code NUL} bytes which separate it from the body.
+     *
+     * <p>The body is then written to the stream as raw bytes, rather than as a JSON field.
+     *
+     * @param response The response, whose body is ignored.
+     * @param output The stream to write the prelude to, which is left open.
+     * @throws IOException Exception thrown if writing the prelude fails.
+     */
+    public void writeStreamingPrelude(final AwsProxyResponse response, final OutputStream output)
+        throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            // the prelude is flushed with the delimiter, once it is complete
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            generator.writeStartObject();
+            writeStatusAndHeaders(generator, response);
+            generator.writeEndObject();
+        }
+        output.write(STREAMING_PRELUDE_DELIMITER);
+    }
+
+    private static void writeStatusAndHeaders(final JsonGenerator generator, final AwsProxyResponse response)
+        throws IOException {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final List<String> cookies = new ArrayList<>();
+        final Headers multiValueHeaders = response.getMultiValueHeaders();
+        if (multiValueHeaders != null) {
+            for (final Map.Entry<String, List<String>> header : multiValueHeaders.entrySet()) {
+                for (final String value : header.getValue()) {
+                    addHeader(headers, cookies, header.getKey(), value);
+                }
+            }
+        }
+        if (response.getHeaders() != null) {
+            // as with REST APIs, multi-value headers take precedence over single value headers
+            response.getHeaders().forEach((name, value) -> {
+                if (multiValueHeaders == null || !multiValueHeaders.containsKey(name)) {
+                    addHeader(headers, cookies, name, value);
+                }
+            });
+        }
+
+        generator.writeNumberField("statusCode", response.getStatusCode());
+        generator.writeObjectFieldStart("headers");
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            generator.writeStringField(header.getKey(), header.getValue());
+        }
+        generator.writeEndObject();
+        if (!cookies.isEmpty()) {
+            generator.writeArrayFieldStart("cookies");
+            for (final String cookie : cookies) {
+                generator.writeString(cookie);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static void addHeader(final Map<String, String> headers, final List<String> cookies,
+                                  final String name, final String value) {
+        if (SET_COOKIE.equalsIgnoreCase(name)) {
+            cookies.add(value);
+        } else {
+            headers.merge(name, value, (first, second) -> first + "," + second);
+        }
+    }
+
+    private static String text(final JsonNode node, final String field) {
+        final JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static Map<String, String> stringMap(final JsonNode node) {
+        if (node == null || !node.isObject()) {
+            return null;
+        }
+        final Map<String, String> map = new HashMap<>();
+        node.fields().forEachRemaining(field -> map.put(field.getKey(), field.getValue().asText()));
+        return map;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.event;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.MultiValuedTreeMap;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Request from an API Gateway HTTP API using payload format version 2.0, read by
+ * {@link HttpApiV2Codec}.
+ *
+ * <p>The request is presented as an {@link AwsProxyRequest} so that it is routed and bound like a
+ * REST API request: its path is the {@code rawPath}, and its method is taken from the request
+ * context. Header values are kept as sent by API Gateway, where repeated headers are joined by
+ * commas, and the {@code cookies} are also available as a single {@code Cookie} header.
+ *
+ * <p>The query string parameters are parsed from the {@code rawQueryString} the first time they
+ * are requested, so requests whose routes do not use them never parse them.
+ */
+public class HttpApiV2Request extends AwsProxyRequest {
+    @Getter @Setter
+    private String routeKey;
+    @Getter @Setter
+    private String rawPath;
+    @Getter @Setter
+    private String rawQueryString;
+    @Setter
+    private List<String> cookies;
+    private boolean queryStringParsed;
+
+    /**
+     * Gets the cookies sent with the request.
+     *
+     * @return The cookies, eg: {@code name=value}, or an empty list if there are none.
+     */
+    public List<String> getCookies() {
+        return cookies == null ? Collections.emptyList() : cookies;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This is the {@code rawQueryString} of the request, without a leading {@code ?}, or an empty
+     * string if there is none.
+     */
+    @Override
+    public String getQueryString() {
+        return rawQueryString == null ? "" : rawQueryString;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The parameters are parsed from the {@code rawQueryString} on first use.
+     */
+    @Override
+    public MultiValuedTreeMap<String, String> getMultiValueQueryStringParameters() {
+        if (!queryStringParsed) {
+            queryStringParsed = true;
+            super.setMultiValueQueryStringParameters(QueryStrings.parse(rawQueryString));
+        }
+        return super.getMultiValueQueryStringParameters();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMultiValueQueryStringParameters(final MultiValuedTreeMap<String, String> parameters) {
+        queryStringParsed = true;
+        super.setMultiValueQueryStringParameters(parameters);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.event;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+import com.amazonaws.serverless.proxy.model.MultiValuedTreeMap;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Utility class for decoding query strings and paths which are not decoded by the service which
+ * sends them, such as those of HTTP API version 2.0 events and batch sub-requests.
+ */
+@UtilityClass
+public class QueryStrings {
+
+    /**
+     * Parses a raw query string into its decoded parameters.
+     *
+     * @param queryString The raw query string, eg: {@code a=1&b=2&a=3}.
+     * @return The decoded parameters, keeping repeated values in order.
+     */
+    public static MultiValuedTreeMap<String, String> parse(final String queryString) {
+        final MultiValuedTreeMap<String, String> parameters = new MultiValuedTreeMap<>();
+        if (queryString == null || queryString.isEmpty()) {
+            return parameters;
+        }
+        int start = 0;
+        while (start <= queryString.length()) {
+            int end = queryString.indexOf('&', start);
+            if (end < 0) {
+                end = queryString.length();
+            }
+            if (end > start) {
+                final int equals = queryString.indexOf('=', start);
+                if (equals < 0 || equals > end) {
+                    parameters.add(decode(queryString.substring(start, end)), "");
+                } else {
+                    parameters.add(decode(queryString.substring(start, equals)),
+                        decode(queryString.substring(equals + 1, end)));
+                }
+            }
+            start = end + 1;
+        }
+        return parameters;
+    }
+
+    /**
+     * Decodes a percent-encoded query string name or value, in which {@code +} is a space.
+     *
+     * @param value The encoded value.
+     * @return The decoded value, or the value as it was if it is malformed.
+     */
+    public static String decode(final String value) {
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
+        }
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (final UnsupportedEncodingException | IllegalArgumentException e) {
+            // leave malformed escapes as they were sent
+            return value;
+        }
+    }
+
+    /**
+     * Decodes a percent-encoded path, in which {@code +} is a literal plus sign rather than a space.
+     *
+     * @param rawPath The encoded path.
+     * @return The decoded path, or the path as it was if it is malformed.
+     */
+    public static String decodePath(final String rawPath) {
+        // URLDecoder decodes form data, where '+' is a space; in a path it is a literal '+'
+        return rawPath.indexOf('%') < 0 ? rawPath : decode(rawPath.replace("+", "%2B"));
+    }
+}
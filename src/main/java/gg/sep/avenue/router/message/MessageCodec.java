@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import gg.sep.avenue.router.event.EventFormat;
+
+/**
+ * Reads SQS batches and EventBridge events, and writes the partial batch responses of SQS batches.
+ */
+public final class MessageCodec {
+    private static final int FAILURE_SIZE_HINT = 64;
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader sqsMessageReader;
+
+    /**
+     * Creates the codec.
+     *
+     * @param objectMapper The object mapper used to parse events.
+     */
+    public MessageCodec(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.sqsMessageReader = objectMapper.readerFor(SqsMessage.class);
+    }
+
+    /**
+     * Reads the messages of an SQS batch.
+     *
+     * @param event The serialized event.
+     * @return The event, whose records are {@link SqsMessage}s.
+     * @throws IOException Exception thrown if the event cannot be parsed.
+     */
+    public MessageEvent readSqsEvent(final byte[] event) throws IOException {
+        final JsonNode records = objectMapper.readTree(event).path("Records");
+        final List<MessageRecord> messages = new ArrayList<>(records.size());
+        for (final JsonNode record : records) {
+            messages.add(sqsMessageReader.readValue(record));
+        }
+        return new MessageEvent(EventFormat.SQS, messages);
+    }
+
+    /**
+     * Reads an EventBridge event.
+     *
+     * @param event The serialized event.
+     * @return The event, whose single record is an {@link EventBridgeEvent}.
+     * @throws IOException Exception thrown if the event cannot be parsed.
+     */
+    public MessageEvent readEventBridgeEvent(final byte[] event) throws IOException {
+        final EventBridgeEvent record = objectMapper.readValue(event, EventBridgeEvent.class);
+        return new MessageEvent(EventFormat.EVENTBRIDGE, Collections.singletonList(record));
+    }
+
+    /**
+     * Writes the partial batch response of an SQS batch, which lists the messages which failed so
+     * that only they are retried. The event source mapping must have {@code ReportBatchItemFailures}
+     * enabled, otherwise the response is ignored and the whole batch is deleted.
+     *
+     * @param failedRecordIds The identifiers of the failed messages.
+     * @return The serialized response.
+     * @throws IOException Exception thrown if serializing the response fails.
+     */
+    public byte[] writeBatchResponse(final Collection<String> failedRecordIds) throws IOException {
+        final ByteArrayOutputStream output =
+            new ByteArrayOutputStream(FAILURE_SIZE_HINT * (failedRecordIds.size() + 1));
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("batchItemFailures");
+            for (final String recordId : failedRecordIds) {
+                generator.writeStartObject();
+                generator.writeStringField("itemIdentifier", recordId);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return output.toByteArray();
+    }
+}
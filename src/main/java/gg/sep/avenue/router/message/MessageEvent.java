@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.message;
+
+import java.util.List;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import lombok.Getter;
+
+import gg.sep.avenue.router.event.EventFormat;
+
+/**
+ * A non-HTTP event, ie: an SQS batch or an EventBridge event, read by {@link MessageCodec}.
+ *
+ * <p>The event is presented as an {@link AwsProxyRequest} so that it is parsed by, and passes
+ * through the hooks of, the same handler as HTTP events. It has no HTTP method or path, and its
+ * records are handled by {@link gg.sep.avenue.router.core.MessageRoute}s rather than routes.
+ */
+@Getter
+public class MessageEvent extends AwsProxyRequest {
+    /**
+     * The format of the event, either {@link EventFormat#SQS} or {@link EventFormat#EVENTBRIDGE}.
+     */
+    private final EventFormat format;
+
+    /**
+     * The records of the event, in order. An EventBridge event has a single record.
+     */
+    private final List<MessageRecord> records;
+
+    /**
+     * Creates the event.
+     *
+     * @param format The format of the event.
+     * @param records The records of the event, in order.
+     */
+    public MessageEvent(final EventFormat format, final List<MessageRecord> records) {
+        this.format = format;
+        this.records = records;
+    }
+}
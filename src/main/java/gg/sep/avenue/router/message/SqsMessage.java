@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.message;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A message of an SQS batch, as delivered to Lambda by the queue's event source mapping.
+ */
+@Getter
+@Setter
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SqsMessage implements MessageRecord {
+    private static final String FIFO_SUFFIX = ".fifo";
+
+    private String messageId;
+    private String receiptHandle;
+    private String body;
+    private String md5OfBody;
+    private String eventSource;
+    @JsonProperty("eventSourceARN")
+    private String eventSourceArn;
+    private String awsRegion;
+
+    /**
+     * The system attributes of the message, eg: {@code ApproximateReceiveCount} and
+     * {@code MessageGroupId}.
+     */
+    private Map<String, String> attributes;
+
+    /**
+     * The message attributes set by the message's sender.
+     */
+    private Map<String, Attribute> messageAttributes;
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The identifier of an SQS message is its {@code messageId}.
+     */
+    @Override
+    @JsonIgnore
+    public String getRecordId() {
+        return messageId;
+    }
+
+    /**
+     * Gets the string value of a message attribute.
+     *
+     * @param name The name of the message attribute.
+     * @return The attribute's string value, or {@code null} if the message does not have it.
+     */
+    public String getMessageAttribute(final String name) {
+        final Attribute attribute = messageAttributes == null ? null : messageAttributes.get(name);
+        return attribute == null ? null : attribute.getStringValue();
+    }
+
+    /**
+     * Gets the message group of a message from a FIFO queue.
+     *
+     * @return The message group, or {@code null} if the message is not from a FIFO queue.
+     */
+    @JsonIgnore
+    public String getMessageGroupId() {
+        return eventSourceArn == null || !eventSourceArn.endsWith(FIFO_SUFFIX) || attributes == null
+            ? null : attributes.get("MessageGroupId");
+    }
+
+    /**
+     * A message attribute set by the message's sender.
+     */
+    @Getter
+    @Setter
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Attribute {
+        private String dataType;
+        private String stringValue;
+        private String binaryValue;
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import gg.sep.avenue.router.AbstractLambdaProxyHandler;
+
+/**
+ * {@link InvocationListener} which aggregates per-route request counts, errors, latencies
+ * and response sizes in memory, and periodically writes them to an output stream
+ * (stdout by default) using the CloudWatch Embedded Metric Format (EMF).
+ *
+ * <p>CloudWatch Logs extracts the metrics from the log lines asynchronously, so no
+ * {@code PutMetricData} calls are made and nothing is added to the request path other than
+ * updating the in-memory aggregates.
+ *
+ * <p>Buffered metrics are flushed once either {@code maxInvocations} invocations have been
+ * recorded or {@code flushInterval} has elapsed since the last flush, whichever comes first.
+ * Each flush writes one compact JSON line per route seen since the previous flush, as EMF
+ * only allows a single value per dimension in each document. Latency values are written as an
+ * EMF value array so CloudWatch can still compute percentiles, with at most
+ * {@value #MAX_VALUES_PER_METRIC} values (the EMF limit) kept per route between flushes.
+ *
+ * <p>Route metrics are published with both a {@code Route} dimension and a {@code Route} and
+ * {@code InvocationType} (cold or warm) dimension set. When a cold invocation was recorded, the
+ * handler's {@link InitTimings} are also published with the {@code InvocationType} dimension.
+ *
+ * <p>Since the Lambda runtime freezes the container between invocations, the flush interval
+ * is only checked when an invocation is recorded; {@link #flush()} can be called directly to
+ * force any buffered metrics to be written. The emitter does not register a shutdown hook of its
+ * own; once added to a handler, it is flushed by the handler's shutdown hook and when an embedded
+ * server built for the handler is stopped (see
+ * {@link AbstractLambdaProxyHandler#flushInvocationListeners()}). Lambda only
+ * gives the runtime time to run shutdown hooks when an extension is registered; otherwise, metrics
+ * recorded since the last flush are lost when the environment is reclaimed.
+ */
+public class EmfMetricsEmitter implements InvocationListener {
+
+    static final int MAX_VALUES_PER_METRIC = 100;
+    static final String ROUTE_DIMENSION = "Route";
+    static final String INVOCATION_TYPE_DIMENSION = "InvocationType";
+    static final String COLD = "cold";
+    static final String WARM = "warm";
+
+    private static final String DEFAULT_NAMESPACE = "Avenue";
+    private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(60);
+    private static final int CLIENT_ERROR_STATUS = 400;
+    private static final int SERVER_ERROR_STATUS = 500;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Map<String, RouteMetrics> warmRouteMetrics = new LinkedHashMap<>();
+    private final Map<String, RouteMetrics> coldRouteMetrics = new LinkedHashMap<>();
+    private InitTimings pendingInitTimings;
+
+    private final String namespace;
+    private final PrintStream output;
+    private final long flushIntervalMillis;
+    private final int maxInvocations;
+    private final LongSupplier clock;
+
+    private int pendingInvocations;
+    private long lastFlushMillis;
+
+    private EmfMetricsEmitter(final Builder builder) {
+        this.namespace = builder.namespace;
+        this.output = builder.output;
+        this.flushIntervalMillis = builder.flushInterval.toMillis();
+        this.maxInvocations = builder.maxInvocations;
+        this.clock = builder.clock;
+        this.lastFlushMillis = clock.getAsLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onInvocation(final InvocationRecord record) {
+        final Map<String, RouteMetrics> routeMetrics = record.isColdStart() ? coldRouteMetrics : warmRouteMetrics;
+        routeMetrics.computeIfAbsent(record.getRouteKey(), k -> new RouteMetrics()).add(record);
+        if (record.isColdStart()) {
+            pendingInitTimings = record.getInitTimings();
+        }
+        pendingInvocations++;
+        if (pendingInvocations >= maxInvocations || clock.getAsLong() - lastFlushMillis >= flushIntervalMillis) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all buffered metrics to the output stream as EMF log lines, and resets the aggregates.
+     */
+    @Override
+    public synchronized void flush() {
+        final long now = clock.getAsLong();
+        for (final Map.Entry<String, RouteMetrics> entry : coldRouteMetrics.entrySet()) {
+            output.println(toEmfLine(entry.getKey(), COLD, entry.getValue(), now));
+        }
+        for (final Map.Entry<String, RouteMetrics> entry : warmRouteMetrics.entrySet()) {
+            output.println(toEmfLine(entry.getKey(), WARM, entry.getValue(), now));
+        }
+        if (pendingInitTimings != null) {
+            output.println(toInitEmfLine(pendingInitTimings, now));
+        }
+        output.flush();
+        coldRouteMetrics.clear();
+        warmRouteMetrics.clear();
+        pendingInitTimings = null;
+        pendingInvocations = 0;
+        lastFlushMillis = now;
+    }
+
+    /**
+     * Builds a single EMF JSON document for a route's aggregated metrics.
+     *
+     * <p>The metrics are published both per route, and per route and invocation type (cold or warm).
+     *
+     * @param routeKey The key identifying the route, used as the route dimension's value.
+     * @param invocationType The invocation type dimension's value, either cold or warm.
+     * @param metrics The aggregated metrics for the route.
+     * @param timestamp Timestamp of the metrics in epoch milliseconds.
+     * @return The EMF JSON document, without any line breaks.
+     */
+    private String toEmfLine(final String routeKey, final String invocationType,
+                             final RouteMetrics metrics, final long timestamp) {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator json = jsonFactory.createGenerator(writer)) {
+            json.writeStartObject();
+            writeMetadataStart(json, timestamp);
+            json.writeArrayFieldStart("Dimensions");
+            json.writeStartArray();
+            json.writeString(ROUTE_DIMENSION);
+            json.writeEndArray();
+            json.writeStartArray();
+            json.writeString(ROUTE_DIMENSION);
+            json.writeString(INVOCATION_TYPE_DIMENSION);
+            json.writeEndArray();
+            json.writeEndArray();
+            json.writeArrayFieldStart("Metrics");
+            writeMetricDefinition(json, "Requests", "Count");
+            writeMetricDefinition(json, "ClientErrors", "Count");
+            writeMetricDefinition(json, "ServerErrors", "Count");
+            writeMetricDefinition(json, "Latency", "Milliseconds");
+            writeMetricDefinition(json, "ResponseBytes", "Bytes");
+            writeMetadataEnd(json);
+
+            json.writeStringField(ROUTE_DIMENSION, routeKey);
+            json.writeStringField(INVOCATION_TYPE_DIMENSION, invocationType);
+            json.writeNumberField("Requests", metrics.requests);
+            json.writeNumberField("ClientErrors", metrics.clientErrors);
+            json.writeNumberField("ServerErrors", metrics.serverErrors);
+            json.writeArrayFieldStart("Latency");
+            for (int i = 0; i < metrics.latencyCount; i++) {
+                json.writeNumber(metrics.latencies[i]);
+            }
+            json.writeEndArray();
+            json.writeNumberField("ResponseBytes", metrics.responseBytes);
+            json.writeEndObject();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Builds a single EMF JSON document for the handler's initialization timings, published
+     * with the cold invocation type dimension.
+     *
+     * @param initTimings The handler's initialization timings.
+     * @param timestamp Timestamp of the metrics in epoch milliseconds.
+     * @return The EMF JSON document, without any line breaks.
+     */
+    private String toInitEmfLine(final InitTimings initTimings, final long timestamp) {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator json = jsonFactory.createGenerator(writer)) {
+            json.writeStartObject();
+            writeMetadataStart(json, timestamp);
+            json.writeArrayFieldStart("Dimensions");
+            json.writeStartArray();
+            json.writeString(INVOCATION_TYPE_DIMENSION);
+            json.writeEndArray();
+            json.writeEndArray();
+            json.writeArrayFieldStart("Metrics");
+            writeMetricDefinition(json, "InitConstruction", "Milliseconds");
+            writeMetricDefinition(json, "InitRegisterControllers", "Milliseconds");
+            writeMetricDefinition(json, "InitRouteBuild", "Milliseconds");
+            writeMetadataEnd(json);
+
+            json.writeStringField(INVOCATION_TYPE_DIMENSION, COLD);
+            json.writeNumberField("InitConstruction", InitTimings.toMillis(initTimings.getConstructionNanos()));
+            json.writeNumberField("InitRegisterControllers",
+                InitTimings.toMillis(initTimings.getRegisterControllerNanos()));
+            json.writeNumberField("InitRouteBuild", InitTimings.toMillis(initTimings.getRouteBuildNanos()));
+            json.writeEndObject();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes the start of the {@code _aws} metadata object, up to the metric directive's dimensions.
+     *
+     * @param json The JSON generator to write to.
+     * @param timestamp Timestamp of the metrics in epoch milliseconds.
+     * @throws IOException Exception thrown if writing to the generator fails.
+     */
+    private void writeMetadataStart(final JsonGenerator json, final long timestamp) throws IOException {
+        json.writeObjectFieldStart("_aws");
+        json.writeNumberField("Timestamp", timestamp);
+        json.writeArrayFieldStart("CloudWatchMetrics");
+        json.writeStartObject();
+        json.writeStringField("Namespace", namespace);
+    }
+
+    /**
+     * Writes the end of the {@code _aws} metadata object, after the metric definitions.
+     *
+     * @param json The JSON generator to write to.
+     * @throws IOException Exception thrown if writing to the generator fails.
+     */
+    private static void writeMetadataEnd(final JsonGenerator json) throws IOException {
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    /**
+     * Writes a single metric definition to the metric directive's metrics array.
+     *
+     * @param json The JSON generator to write to.
+     * @param name Name of the metric.
+     * @param unit CloudWatch unit of the metric.
+     * @throws IOException Exception thrown if writing to the generator fails.
+     */
+    private static void writeMetricDefinition(final JsonGenerator json, final String name,
+                                              final String unit) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("Name", name);
+        json.writeStringField("Unit", unit);
+        json.writeEndObject();
+    }
+
+    /**
+     * Creates a new instance of the {@link EmfMetricsEmitter} builder.
+     * @return A new instance of the {@link EmfMetricsEmitter} builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Aggregated metrics for a single route between flushes.
+     */
+    private static final class RouteMetrics {
+        private final double[] latencies = new double[MAX_VALUES_PER_METRIC];
+        private int latencyCount;
+        private long requests;
+        private long clientErrors;
+        private long serverErrors;
+        private long responseBytes;
+
+        private void add(final InvocationRecord record) {
+            requests++;
+            if (record.getStatusCode() >= SERVER_ERROR_STATUS) {
+                serverErrors++;
+            } else if (record.getStatusCode() >= CLIENT_ERROR_STATUS) {
+                clientErrors++;
+            }
+            if (latencyCount < latencies.length) {
+                latencies[latencyCount++] = record.getTotalMillis();
+            }
+            responseBytes += record.getResponseBytes();
+        }
+    }
+
+    /**
+     * Builder class for the {@link EmfMetricsEmitter}.
+     */
+    public static final class Builder {
+        private String namespace = DEFAULT_NAMESPACE;
+        private PrintStream output = System.out;
+        private Duration flushInterval = DEFAULT_FLUSH_INTERVAL;
+        private int maxInvocations = MAX_VALUES_PER_METRIC;
+        private LongSupplier clock = System::currentTimeMillis;
+
+        /**
+         * Sets the CloudWatch metric namespace. Defaults to "Avenue".
+         * @param metricNamespace The CloudWatch metric namespace.
+         * @return The builder instance.
+         */
+        public Builder withNamespace(final String metricNamespace) {
+            this.namespace = metricNamespace;
+            return this;
+        }
+
+        /**
+         * Sets the stream the EMF log lines are written to. Defaults to {@link System#out}.
+         * @param outputStream The stream the EMF log lines are written to.
+         * @return The builder instance.
+         */
+        public Builder withOutput(final PrintStream outputStream) {
+            this.output = outputStream;
+            return this;
+        }
+
+        /**
+         * Sets the maximum amount of time between flushes. Defaults to 60 seconds.
+         * @param interval The maximum amount of time between flushes.
+         * @return The builder instance.
+         */
+        public Builder withFlushInterval(final Duration interval) {
+            this.flushInterval = interval;
+            return this;
+        }
+
+        /**
+         * Sets the number of invocations after which the buffered metrics are flushed.
+         * Defaults to {@value EmfMetricsEmitter#MAX_VALUES_PER_METRIC}.
+         *
+         * @param invocations The number of invocations after which the buffered metrics are flushed.
+         * @return The builder instance.
+         */
+        public Builder withMaxInvocations(final int invocations) {
+            if (invocations < 1) {
+                throw new IllegalArgumentException("maxInvocations must be at least 1");
+            }
+            this.maxInvocations = invocations;
+            return this;
+        }
+
+        /**
+         * Sets the clock used for timestamps and flush intervals, in epoch milliseconds.
+         * @param millisClock The clock used for timestamps and flush intervals.
+         * @return The builder instance.
+         */
+        public Builder withClock(final LongSupplier millisClock) {
+            this.clock = millisClock;
+            return this;
+        }
+
+        /**
+         * Constructs the {@link EmfMetricsEmitter} using the parameters from the builder.
+         * @return A new instance of {@link EmfMetricsEmitter}.
+         */
+        public EmfMetricsEmitter build() {
+            return new EmfMetricsEmitter(this);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+/**
+ * Bridge between {@link InvocationRecord} and JDK Flight Recorder.
+ *
+ * <p>This is the Java 8 implementation, which does nothing. On Java 11 and newer the
+ * multi-release JAR provides an implementation which emits a JFR event for each
+ * {@link InvocationPhase}, so Avenue's phases can be viewed next to GC and allocation
+ * data in a recording.
+ */
+final class FlightRecorderSupport {
+
+    private FlightRecorderSupport() {
+    }
+
+    /**
+     * Begins the event for a phase.
+     *
+     * @param phase The phase which is starting.
+     * @return An opaque event handle to pass to {@link #commit(Object, InvocationRecord)},
+     *         or {@code null} if no event is being recorded.
+     */
+    static Object begin(final InvocationPhase phase) {
+        return null;
+    }
+
+    /**
+     * Ends and commits an event previously returned by {@link #begin(InvocationPhase)}.
+     *
+     * @param event The event handle, which may be {@code null}.
+     * @param record The invocation record used to populate the event's fields.
+     */
+    static void commit(final Object event, final InvocationRecord record) {
+    }
+}
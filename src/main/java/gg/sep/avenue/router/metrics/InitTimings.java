@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import gg.sep.avenue.router.AbstractLambdaProxyHandler;
+
+/**
+ * Breakdown of the time spent initializing a handler before its first invocation,
+ * attached to the {@link InvocationRecord} of the container's first (cold) invocation.
+ *
+ * <p>Lazy initialization performed during the first request itself, such as class loading
+ * and Jackson's serializer caches, is reported by the cold invocation's own phase timings.
+ */
+@Builder
+@Getter
+@ToString
+public final class InitTimings {
+
+    /**
+     * Time from the start of the {@link AbstractLambdaProxyHandler} constructor until the last
+     * controller was registered.
+     */
+    private final long constructionNanos;
+
+    /**
+     * Total time spent in {@link AbstractLambdaProxyHandler}'s {@code registerController}.
+     */
+    private final long registerControllerNanos;
+
+    /**
+     * Portion of {@link #registerControllerNanos} spent building the controllers' routes,
+     * which includes scanning the controller's methods, parsing the route paths with the
+     * token converters, and compiling the route patterns.
+     */
+    private final long routeBuildNanos;
+
+    /**
+     * Number of controllers registered.
+     */
+    private final int controllerCount;
+
+    /**
+     * Number of routes registered.
+     */
+    private final int routeCount;
+
+    /**
+     * Converts nanoseconds to fractional milliseconds.
+     *
+     * @param nanos The nanoseconds to convert.
+     * @return The fractional milliseconds.
+     */
+    static double toMillis(final long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import gg.sep.avenue.router.AbstractLambdaProxyHandler;
+
+/**
+ * Service provider interface for receiving instrumentation about each invocation
+ * of a handler.
+ *
+ * <p>Listeners are registered on the handler using
+ * {@link AbstractLambdaProxyHandler#addInvocationListener(InvocationListener)} and are
+ * called once the response has been written to the output stream, so any work
+ * they perform is not part of the response's latency as observed by the client.
+ * Even so, implementations should keep {@link #onInvocation(InvocationRecord)} cheap
+ * and defer expensive work, such as I/O, to {@link #flush()}.
+ */
+public interface InvocationListener {
+
+    /**
+     * Called after the response for an invocation has been sent.
+     *
+     * @param record The completed record of the invocation.
+     */
+    void onInvocation(InvocationRecord record);
+
+    /**
+     * Flushes any data the listener has buffered. The default implementation does nothing.
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.services.lambda.runtime.Context;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * Mutable record of a single handler invocation, which is filled in by the handler
+ * as the request moves through each {@link InvocationPhase} and then passed to every
+ * registered {@link InvocationListener} once the response has been sent.
+ *
+ * <p>If {@link ResourceAccounting} is enabled on the handler, {@link #getAllocatedBytes()} and
+ * {@link #getCpuNanos()} contain the heap allocation and CPU time of the route's binding and
+ * invocation, otherwise they are {@code -1}.
+ *
+ * <p>A record is owned by a single invocation and is not thread-safe. Listeners
+ * which need to retain any of its data beyond {@link InvocationListener#onInvocation(InvocationRecord)}
+ * should copy it, as the request and context are only valid for the duration of the invocation.
+ */
+@Getter
+public final class InvocationRecord {
+
+    private static final String UNMATCHED_ROUTE_KEY = "UNMATCHED";
+
+    private final long startNanos;
+    private final long startMillis;
+    private final Context context;
+    @Getter(AccessLevel.NONE)
+    private final long[] phaseNanos = new long[InvocationPhase.values().length];
+    @Getter(AccessLevel.NONE)
+    private InvocationPhase currentPhase;
+    @Getter(AccessLevel.NONE)
+    private long phaseStartNanos;
+    @Getter(AccessLevel.NONE)
+    private Object phaseEvent;
+
+    @Setter
+    private AwsProxyRequest request;
+    @Setter
+    private Route route;
+    @Getter(AccessLevel.NONE)
+    private String routeKey;
+    private InitTimings initTimings;
+    private int statusCode;
+    private long responseBytes;
+    private long totalNanos;
+    private long allocatedBytes = -1;
+    private long cpuNanos = -1;
+    @Getter(AccessLevel.NONE)
+    private long allocatedBytesStart;
+    @Getter(AccessLevel.NONE)
+    private long cpuNanosStart;
+
+    /**
+     * Starts a new record for an invocation.
+     *
+     * @param context Context of the Lambda event, which may be {@code null} when the handler
+     *                is not running inside of Lambda.
+     */
+    public InvocationRecord(final Context context) {
+        this(context, System.nanoTime(), System.currentTimeMillis());
+    }
+
+    /**
+     * Starts a new record for an invocation which started at the given time.
+     *
+     * @param context Context of the Lambda event, which may be {@code null}.
+     * @param startNanos Start of the invocation, from {@link System#nanoTime()}.
+     * @param startMillis Start of the invocation in epoch milliseconds.
+     */
+    InvocationRecord(final Context context, final long startNanos, final long startMillis) {
+        this.context = context;
+        this.startNanos = startNanos;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Marks this invocation as the container's first (cold) invocation.
+     *
+     * @param handlerInitTimings The breakdown of the handler's initialization.
+     */
+    public void markColdStart(final InitTimings handlerInitTimings) {
+        this.initTimings = handlerInitTimings;
+    }
+
+    /**
+     * Indicates whether this was the container's first (cold) invocation.
+     *
+     * @return Returns {@code true} if this was the container's first invocation.
+     */
+    public boolean isColdStart() {
+        return initTimings != null;
+    }
+
+    /**
+     * Marks the start of the given phase. Any phase which is still in progress is ended first.
+     *
+     * <p>Time between the end of one phase and the start of the next, such as time spent in
+     * user hooks, is not attributed to any phase.
+     *
+     * @param phase The phase which is starting.
+     */
+    public void startPhase(final InvocationPhase phase) {
+        endPhase();
+        currentPhase = phase;
+        phaseEvent = FlightRecorderSupport.begin(phase);
+        phaseStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the phase currently in progress, if any, attributing all time
+     * since it was started to it.
+     */
+    public void endPhase() {
+        if (currentPhase == null) {
+            return;
+        }
+        phaseNanos[currentPhase.ordinal()] += System.nanoTime() - phaseStartNanos;
+        FlightRecorderSupport.commit(phaseEvent, this);
+        currentPhase = null;
+        phaseEvent = null;
+    }
+
+    /**
+     * Marks the invocation as complete, ending the phase currently in progress.
+     *
+     * @param responseStatusCode The HTTP status code of the response that was sent.
+     * @param responseSize The size in bytes of the serialized response payload.
+     */
+    public void complete(final int responseStatusCode, final long responseSize) {
+        this.statusCode = responseStatusCode;
+        this.responseBytes = responseSize;
+        endPhase();
+        this.totalNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Stores the current thread's allocation and CPU time counters at the start of a
+     * {@link ResourceAccounting} measurement.
+     *
+     * @param allocatedBytesNow The thread's allocated bytes counter, or {@code -1} if unsupported.
+     * @param cpuNanosNow The thread's CPU time counter, or {@code -1} if unsupported.
+     */
+    void resourceAccountingStarted(final long allocatedBytesNow, final long cpuNanosNow) {
+        this.allocatedBytesStart = allocatedBytesNow;
+        this.cpuNanosStart = cpuNanosNow;
+    }
+
+    /**
+     * Adds the difference in the current thread's allocation and CPU time counters since
+     * {@link #resourceAccountingStarted(long, long)} to the record.
+     *
+     * @param allocatedBytesNow The thread's allocated bytes counter, or {@code -1} if unsupported.
+     * @param cpuNanosNow The thread's CPU time counter, or {@code -1} if unsupported.
+     */
+    void resourceAccountingEnded(final long allocatedBytesNow, final long cpuNanosNow) {
+        if (allocatedBytesNow >= 0) {
+            allocatedBytes = Math.max(allocatedBytes, 0) + allocatedBytesNow - allocatedBytesStart;
+        }
+        if (cpuNanosNow >= 0) {
+            cpuNanos = Math.max(cpuNanos, 0) + cpuNanosNow - cpuNanosStart;
+        }
+    }
+
+    /**
+     * Gets the time in nanoseconds spent in the given phase.
+     *
+     * @param phase The phase for which to get the time spent.
+     * @return The time in nanoseconds spent in the given phase.
+     */
+    public long getPhaseNanos(final InvocationPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Sets the key which identifies what handled an invocation which was not an HTTP request,
+     * eg: {@code SQS} for an SQS batch, in place of the route's method and path.
+     *
+     * @param key The key identifying what handled the invocation.
+     */
+    public void setRouteKey(final String key) {
+        this.routeKey = key;
+    }
+
+    /**
+     * Gets the end-to-end time of the invocation in fractional milliseconds.
+     *
+     * @return The end-to-end time of the invocation in fractional milliseconds.
+     */
+    public double getTotalMillis() {
+        return InitTimings.toMillis(totalNanos);
+    }
+
+    /**
+     * Gets a key which identifies the route that handled the request, made up of
+     * its HTTP method and route path, eg: {@code GET /users/<int:id>}.
+     *
+     * <p>If no route was found for the request, {@code UNMATCHED} is returned so that
+     * unmatched requests can still be aggregated together. Invocations which are not HTTP
+     * requests, such as SQS batches, have the key set by {@link #setRouteKey(String)} instead.
+     *
+     * @return The key identifying the route which handled the request.
+     */
+    public String getRouteKey() {
+        if (routeKey != null) {
+            return routeKey;
+        }
+        if (route == null) {
+            return UNMATCHED_ROUTE_KEY;
+        }
+        return route.getRouteRequestMethod() + " " + route.getRoutePath();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.Headers;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Immutable snapshot of a single invocation's request and timings, captured by the
+ * {@link SlowRequestSampler} so that it can outlive the invocation itself.
+ */
+@Getter
+@ToString
+public final class RequestSnapshot {
+
+    private final long startMillis;
+    private final String routeKey;
+    private final boolean coldStart;
+    private final String httpMethod;
+    private final String path;
+    private final int headerCount;
+    private final long headerBytes;
+    private final long bodyBytes;
+    private final int statusCode;
+    private final long responseBytes;
+    private final long totalNanos;
+    private final Map<InvocationPhase, Long> phaseNanos;
+    private final long remainingTimeMillis;
+
+    /**
+     * Captures a snapshot of a completed invocation.
+     *
+     * @param record The record of the completed invocation.
+     */
+    RequestSnapshot(final InvocationRecord record) {
+        this.startMillis = record.getStartMillis();
+        this.routeKey = record.getRouteKey();
+        this.coldStart = record.isColdStart();
+        this.statusCode = record.getStatusCode();
+        this.responseBytes = record.getResponseBytes();
+        this.totalNanos = record.getTotalNanos();
+        this.phaseNanos = new EnumMap<>(InvocationPhase.class);
+        for (final InvocationPhase phase : InvocationPhase.values()) {
+            phaseNanos.put(phase, record.getPhaseNanos(phase));
+        }
+        this.remainingTimeMillis = record.getContext() == null ? -1 : record.getContext().getRemainingTimeInMillis();
+
+        final AwsProxyRequest request = record.getRequest();
+        if (request == null) {
+            this.httpMethod = null;
+            this.path = null;
+            this.headerCount = 0;
+            this.headerBytes = 0;
+            this.bodyBytes = 0;
+            return;
+        }
+        this.httpMethod = request.getHttpMethod();
+        this.path = request.getPath();
+        this.bodyBytes = request.getBody() == null ? 0 : request.getBody().length();
+
+        int count = 0;
+        long bytes = 0;
+        final Headers headers = request.getMultiValueHeaders();
+        if (headers != null) {
+            for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+                for (final String value : header.getValue()) {
+                    count++;
+                    bytes += header.getKey().length() + (value == null ? 0 : value.length());
+                }
+            }
+        }
+        this.headerCount = count;
+        this.headerBytes = bytes;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Measures the heap allocation and CPU time of the current thread across a section of
+ * an invocation (by default, binding and invoking the route), and stores the result on the
+ * {@link InvocationRecord}.
+ *
+ * <p>Allocation is read using {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)},
+ * which is available on HotSpot based JVMs, including the AWS Lambda Java runtimes. Both
+ * measurements only count work done on the invoking thread.
+ */
+@Log4j2
+public final class ResourceAccounting {
+
+    private final com.sun.management.ThreadMXBean allocationBean;
+    private final ThreadMXBean cpuBean;
+
+    private ResourceAccounting(final com.sun.management.ThreadMXBean allocationBean, final ThreadMXBean cpuBean) {
+        this.allocationBean = allocationBean;
+        this.cpuBean = cpuBean;
+    }
+
+    /**
+     * Creates an instance of {@link ResourceAccounting} using the platform's {@link ThreadMXBean},
+     * enabling thread allocation and CPU time measurement if necessary.
+     *
+     * @return The resource accounting instance, or {@code null} if the JVM supports
+     *         neither allocation nor CPU time measurement.
+     */
+    public static ResourceAccounting create() {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) threadBean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                allocationBean = sunBean;
+            }
+        }
+        ThreadMXBean cpuBean = null;
+        if (threadBean.isCurrentThreadCpuTimeSupported()) {
+            threadBean.setThreadCpuTimeEnabled(true);
+            cpuBean = threadBean;
+        }
+        if (allocationBean == null && cpuBean == null) {
+            log.warn("Thread allocation and CPU time measurement are not supported by this JVM");
+            return null;
+        }
+        return new ResourceAccounting(allocationBean, cpuBean);
+    }
+
+    /**
+     * Starts measuring the current thread's allocation and CPU time for the invocation.
+     *
+     * @param record The record of the current invocation.
+     */
+    public void begin(final InvocationRecord record) {
+        record.resourceAccountingStarted(currentAllocatedBytes(), currentCpuNanos());
+    }
+
+    /**
+     * Stops measuring the current thread's allocation and CPU time for the invocation,
+     * and adds the difference since {@link #begin(InvocationRecord)} to the record.
+     *
+     * @param record The record of the current invocation.
+     */
+    public void end(final InvocationRecord record) {
+        record.resourceAccountingEnded(currentAllocatedBytes(), currentCpuNanos());
+    }
+
+    private long currentAllocatedBytes() {
+        return allocationBean == null ? -1 : allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long currentCpuNanos() {
+        return cpuBean == null ? -1 : cpuBean.getCurrentThreadCpuTime();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * {@link InvocationListener} which aggregates the per-route heap allocation and CPU time
+ * measured by {@link ResourceAccounting}, and periodically logs a single summary line with
+ * the routes ordered by their total allocation.
+ *
+ * <p>Invocations without resource measurements are ignored. As with {@link EmfMetricsEmitter},
+ * the summary interval is only checked when an invocation is recorded.
+ */
+@Log4j2
+public class ResourceUsageSummary implements InvocationListener {
+
+    private static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(1);
+    private static final long BYTES_PER_KB = 1024;
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final Map<String, RouteUsage> routeUsage = new HashMap<>();
+    private final long intervalMillis;
+    private final LongSupplier clock;
+    private long lastSummaryMillis;
+
+    /**
+     * Creates a summary which is logged at most once a minute.
+     */
+    public ResourceUsageSummary() {
+        this(DEFAULT_INTERVAL, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a summary which is logged once the given interval has elapsed.
+     *
+     * @param interval The minimum amount of time between summaries.
+     * @param clock The clock used for the interval, in epoch milliseconds.
+     */
+    public ResourceUsageSummary(final Duration interval, final LongSupplier clock) {
+        this.intervalMillis = interval.toMillis();
+        this.clock = clock;
+        this.lastSummaryMillis = clock.getAsLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onInvocation(final InvocationRecord record) {
+        if (record.getAllocatedBytes() < 0 && record.getCpuNanos() < 0) {
+            return;
+        }
+        routeUsage.computeIfAbsent(record.getRouteKey(), k -> new RouteUsage()).add(record);
+        if (clock.getAsLong() - lastSummaryMillis >= intervalMillis) {
+            flush();
+        }
+    }
+
+    /**
+     * Logs the summary of all invocations recorded since the last summary, and resets it.
+     */
+    @Override
+    public synchronized void flush() {
+        if (!routeUsage.isEmpty()) {
+            log.info(summarize());
+        }
+        routeUsage.clear();
+        lastSummaryMillis = clock.getAsLong();
+    }
+
+    /**
+     * Builds the summary line for the invocations recorded since the last summary.
+     *
+     * @return The summary line.
+     */
+    synchronized String summarize() {
+        final List<Map.Entry<String, RouteUsage>> entries = new ArrayList<>(routeUsage.entrySet());
+        entries.sort(Comparator.comparingLong(
+            (Map.Entry<String, RouteUsage> e) -> e.getValue().totalAllocatedBytes).reversed());
+
+        final StringBuilder summary = new StringBuilder("Route resource usage:");
+        for (final Map.Entry<String, RouteUsage> entry : entries) {
+            final RouteUsage usage = entry.getValue();
+            summary.append(String.format(
+                " [%s count=%d allocAvgKb=%d allocMaxKb=%d allocTotalKb=%d cpuAvgMs=%.3f cpuMaxMs=%.3f]",
+                entry.getKey(), usage.count,
+                usage.totalAllocatedBytes / usage.count / BYTES_PER_KB,
+                usage.maxAllocatedBytes / BYTES_PER_KB,
+                usage.totalAllocatedBytes / BYTES_PER_KB,
+                usage.totalCpuNanos / usage.count / NANOS_PER_MILLI,
+                usage.maxCpuNanos / NANOS_PER_MILLI));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Aggregated resource usage for a single route.
+     */
+    private static final class RouteUsage {
+        private long count;
+        private long totalAllocatedBytes;
+        private long maxAllocatedBytes;
+        private long totalCpuNanos;
+        private long maxCpuNanos;
+
+        private void add(final InvocationRecord record) {
+            count++;
+            final long allocated = Math.max(record.getAllocatedBytes(), 0);
+            final long cpu = Math.max(record.getCpuNanos(), 0);
+            totalAllocatedBytes += allocated;
+            maxAllocatedBytes = Math.max(maxAllocatedBytes, allocated);
+            totalCpuNanos += cpu;
+            maxCpuNanos = Math.max(maxCpuNanos, cpu);
+        }
+    }
+}
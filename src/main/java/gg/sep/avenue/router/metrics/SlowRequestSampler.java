@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * {@link InvocationListener} which captures a {@link RequestSnapshot} of requests whose
+ * end-to-end time is over a configurable threshold, as well as the slowest {@code topN}
+ * requests of each interval, into a bounded ring buffer which is logged and cleared on {@link #flush()}.
+ *
+ * <p>Requests which are neither over the threshold nor slower than the current top
+ * {@code topN} only cost a comparison of their already recorded duration. The interval is
+ * measured from each invocation's recorded start time, so no additional clock reads are made.
+ * At the end of an interval, the top {@code topN} snapshots are added to the ring buffer and
+ * the buffer is flushed.
+ */
+@Log4j2
+public class SlowRequestSampler implements InvocationListener {
+
+    private static final Comparator<RequestSnapshot> BY_DURATION =
+        Comparator.comparingLong(RequestSnapshot::getTotalNanos);
+
+    private final long thresholdNanos;
+    private final int topN;
+    private final long intervalMillis;
+    private final RequestSnapshot[] ringBuffer;
+    private final PriorityQueue<RequestSnapshot> slowest;
+
+    private int ringHead;
+    private int ringSize;
+    private long intervalStartMillis = -1;
+
+    private SlowRequestSampler(final Builder builder) {
+        this.thresholdNanos = builder.threshold.toNanos();
+        this.topN = builder.topN;
+        this.intervalMillis = builder.interval.toMillis();
+        this.ringBuffer = new RequestSnapshot[builder.capacity];
+        this.slowest = new PriorityQueue<>(Math.max(topN, 1), BY_DURATION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onInvocation(final InvocationRecord record) {
+        if (intervalStartMillis < 0) {
+            intervalStartMillis = record.getStartMillis();
+        } else if (record.getStartMillis() - intervalStartMillis >= intervalMillis) {
+            flush();
+            intervalStartMillis = record.getStartMillis();
+        }
+
+        final long totalNanos = record.getTotalNanos();
+        if (totalNanos >= thresholdNanos) {
+            addToRingBuffer(new RequestSnapshot(record));
+        } else if (topN > 0 && (slowest.size() < topN || totalNanos > slowest.peek().getTotalNanos())) {
+            if (slowest.size() == topN) {
+                slowest.poll();
+            }
+            slowest.add(new RequestSnapshot(record));
+        }
+    }
+
+    /**
+     * Adds the slowest requests of the current interval to the ring buffer, then logs and clears
+     * all of the captured snapshots.
+     */
+    @Override
+    public synchronized void flush() {
+        for (final RequestSnapshot snapshot : drain()) {
+            log.warn("Slow request: {}", snapshot);
+        }
+    }
+
+    /**
+     * Adds the slowest requests of the current interval to the ring buffer, then returns and clears
+     * all of the captured snapshots, oldest first.
+     *
+     * @return The captured snapshots, oldest first.
+     */
+    public synchronized List<RequestSnapshot> drain() {
+        final List<RequestSnapshot> topSnapshots = new ArrayList<>(slowest);
+        topSnapshots.sort(BY_DURATION.reversed());
+        topSnapshots.forEach(this::addToRingBuffer);
+        slowest.clear();
+
+        final List<RequestSnapshot> snapshots = new ArrayList<>(ringSize);
+        final int oldest = (ringHead - ringSize + ringBuffer.length) % ringBuffer.length;
+        for (int i = 0; i < ringSize; i++) {
+            final int index = (oldest + i) % ringBuffer.length;
+            snapshots.add(ringBuffer[index]);
+            ringBuffer[index] = null;
+        }
+        ringSize = 0;
+        return snapshots;
+    }
+
+    private void addToRingBuffer(final RequestSnapshot snapshot) {
+        ringBuffer[ringHead] = snapshot;
+        ringHead = (ringHead + 1) % ringBuffer.length;
+        ringSize = Math.min(ringSize + 1, ringBuffer.length);
+    }
+
+    /**
+     * Creates a new instance of the {@link SlowRequestSampler} builder.
+     * @return A new instance of the {@link SlowRequestSampler} builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class for the {@link SlowRequestSampler}.
+     */
+    public static final class Builder {
+        private static final Duration DEFAULT_THRESHOLD = Duration.ofSeconds(1);
+        private static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(1);
+        private static final int DEFAULT_CAPACITY = 32;
+
+        private Duration threshold = DEFAULT_THRESHOLD;
+        private Duration interval = DEFAULT_INTERVAL;
+        private int topN;
+        private int capacity = DEFAULT_CAPACITY;
+
+        /**
+         * Sets the end-to-end time over which every request is captured. Defaults to 1 second.
+         * @param slowThreshold The end-to-end time over which every request is captured.
+         * @return The builder instance.
+         */
+        public Builder withThreshold(final Duration slowThreshold) {
+            this.threshold = slowThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the number of slowest requests captured in each interval, regardless of the threshold.
+         * Defaults to 0, capturing only requests over the threshold.
+         *
+         * @param slowestCount The number of slowest requests captured in each interval.
+         * @return The builder instance.
+         */
+        public Builder withTopN(final int slowestCount) {
+            if (slowestCount < 0) {
+                throw new IllegalArgumentException("topN must not be negative");
+            }
+            this.topN = slowestCount;
+            return this;
+        }
+
+        /**
+         * Sets the length of each interval, after which the captured snapshots are flushed.
+         * Defaults to 1 minute.
+         *
+         * @param flushInterval The length of each interval.
+         * @return The builder instance.
+         */
+        public Builder withInterval(final Duration flushInterval) {
+            this.interval = flushInterval;
+            return this;
+        }
+
+        /**
+         * Sets the capacity of the ring buffer. Once full, the oldest snapshots are overwritten.
+         * Defaults to 32.
+         *
+         * @param bufferCapacity The capacity of the ring buffer.
+         * @return The builder instance.
+         */
+        public Builder withCapacity(final int bufferCapacity) {
+            if (bufferCapacity < 1) {
+                throw new IllegalArgumentException("capacity must be at least 1");
+            }
+            this.capacity = bufferCapacity;
+            return this;
+        }
+
+        /**
+         * Constructs the {@link SlowRequestSampler} using the parameters from the builder.
+         * @return A new instance of {@link SlowRequestSampler}.
+         */
+        public SlowRequestSampler build() {
+            return new SlowRequestSampler(this);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.runtime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import lombok.extern.log4j.Log4j2;
+
+import gg.sep.avenue.router.LambdaProxyHandler;
+
+/**
+ * Standalone entry point which runs a {@link RequestStreamHandler}, such as a
+ * {@link LambdaProxyHandler}, directly against the Lambda Runtime API.
+ *
+ * <p>This allows Avenue applications to be deployed on a custom runtime (eg: the
+ * {@code provided.al2} runtime with a jlink'd JVM or CDS archive) instead of the managed
+ * Java runtime. The custom runtime's {@code bootstrap} script should execute:
+ *
+ * <pre>{@code java -cp app.jar gg.sep.avenue.router.runtime.LambdaRuntimeBootstrap}</pre>
+ *
+ * <p>The handler class is taken from the first argument if present, otherwise from the
+ * function's configured handler ({@code _HANDLER}), eg: {@code path.to.MyHandler::handleRequest}.
+ * The handler class must have a public no-argument constructor.
+ *
+ * <p>If the handler is a {@link LambdaProxyHandler} whose responses are streamed, they are sent to
+ * the Runtime API in the streaming response mode.
+ */
+@Log4j2
+public final class LambdaRuntimeBootstrap {
+
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+    private static final int MAX_CONSECUTIVE_FAILURES = 10;
+
+    private final RequestStreamHandler handler;
+    private final LambdaRuntimeClient client;
+
+    /**
+     * Creates a bootstrap which passes invocations from the client to the handler.
+     *
+     * @param handler The handler which processes each invocation.
+     * @param client The client used to communicate with the Runtime API.
+     */
+    public LambdaRuntimeBootstrap(final RequestStreamHandler handler, final LambdaRuntimeClient client) {
+        this.handler = handler;
+        this.client = client;
+    }
+
+    /**
+     * Runs the handler named by the first argument or {@code _HANDLER} against the Runtime API
+     * named by {@code AWS_LAMBDA_RUNTIME_API}.
+     *
+     * @param args Optional handler class name.
+     * @throws IOException Exception thrown if communication with the Runtime API fails.
+     */
+    public static void main(final String[] args) throws IOException {
+        final LambdaRuntimeClient client = new LambdaRuntimeClient(System.getenv("AWS_LAMBDA_RUNTIME_API"));
+        final RequestStreamHandler handler;
+        try {
+            handler = loadHandler(args.length > 0 ? args[0] : System.getenv("_HANDLER"));
+        } catch (final ReflectiveOperationException | RuntimeException | LinkageError e) {
+            log.fatal("Failed to initialize handler", e);
+            client.postInitError(e);
+            return;
+        }
+        new LambdaRuntimeBootstrap(handler, client).run();
+    }
+
+    /**
+     * Processes invocations until communication with the Runtime API fails.
+     *
+     * <p>A failed request to the Runtime API is retried after a delay, starting at
+     * {@value #INITIAL_RETRY_DELAY_MILLIS}ms and doubling after each consecutive failure up to
+     * {@value #MAX_RETRY_DELAY_MILLIS}ms, so that a transient failure does not end the runtime.
+     * After {@value #MAX_CONSECUTIVE_FAILURES} consecutive failures the Runtime API is assumed to
+     * be gone, and the last failure is thrown.
+     */
+    public void run() {
+        int failures = 0;
+        while (true) {
+            try {
+                processNextInvocation();
+                failures = 0;
+            } catch (final IOException e) {
+                failures++;
+                if (failures >= MAX_CONSECUTIVE_FAILURES) {
+                    throw new UncheckedIOException("Lambda Runtime API request failed " + failures + " times", e);
+                }
+                final long delay = Math.min(MAX_RETRY_DELAY_MILLIS, INITIAL_RETRY_DELAY_MILLIS << (failures - 1));
+                log.warn("Lambda Runtime API request failed, retrying in {}ms", delay, e);
+                try {
+                    Thread.sleep(delay);
+                } catch (final InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException("Interrupted while retrying Lambda Runtime API request", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the next invocation, passes it to the handler and sends the handler's
+     * response, or its error, back to the Runtime API. Once part of the response has been sent,
+     * an error can no longer be posted, so the response is aborted instead of being completed,
+     * and the Runtime API reports the invocation as failed.
+     *
+     * <p>An {@link Error} thrown by the handler, such as an {@link OutOfMemoryError}, is reported
+     * to the Runtime API in the same way and then rethrown, as the runtime may not be able to
+     * continue processing invocations.
+     *
+     * @throws IOException Exception thrown if communication with the Runtime API fails.
+     */
+    public void processNextInvocation() throws IOException {
+        final RuntimeInvocation invocation = client.nextInvocation();
+        final String requestId = invocation.getContext().getAwsRequestId();
+        final boolean streaming = handler instanceof LambdaProxyHandler
+            && ((LambdaProxyHandler) handler).isResponseStreaming();
+        final LambdaRuntimeClient.RuntimeResponseStream output = client.responseStream(requestId, streaming);
+        try {
+            handler.handleRequest(invocation.getPayload(), output, invocation.getContext());
+        } catch (final Throwable e) {
+            log.error("Invocation {} failed", requestId, e);
+            if (output.isCommitted()) {
+                output.abort();
+            } else {
+                client.postInvocationError(requestId, e);
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            return;
+        }
+        output.close();
+    }
+
+    /**
+     * Loads and instantiates the handler class.
+     *
+     * @param handlerName The handler's class name, optionally followed by {@code ::method}.
+     * @return A new instance of the handler.
+     * @throws ReflectiveOperationException Exception thrown if the handler can not be instantiated.
+     */
+    static RequestStreamHandler loadHandler(final String handlerName) throws ReflectiveOperationException {
+        if (handlerName == null || handlerName.isEmpty()) {
+            throw new IllegalArgumentException("No handler class was specified");
+        }
+        final int methodSeparator = handlerName.indexOf("::");
+        final String className = methodSeparator < 0 ? handlerName : handlerName.substring(0, methodSeparator);
+        return Class.forName(className)
+            .asSubclass(RequestStreamHandler.class)
+            .getConstructor()
+            .newInstance();
+    }
+}
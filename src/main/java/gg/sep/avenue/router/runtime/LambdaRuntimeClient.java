@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Minimal client for the AWS Lambda Runtime API, used by {@link LambdaRuntimeBootstrap}
+ * to run Avenue handlers on a custom runtime.
+ *
+ * <p>The client relies on {@link HttpURLConnection}'s built-in keep-alive connection pooling,
+ * always fully consuming and closing response streams so that the connection to the
+ * Runtime API is reused across invocations. Invocation payloads are read into a single
+ * buffer which is reused across invocations, and responses are streamed to the Runtime API as
+ * they are written by the handler. The buffer grows as needed up to
+ * {@value #MAX_RETAINED_BUFFER_SIZE} bytes; larger payloads are read into a buffer of their own,
+ * so that a single large invocation does not hold on to its memory for the life of the runtime.
+ *
+ * <p>This class is not thread-safe; the Runtime API delivers one invocation at a time.
+ */
+@Log4j2
+public final class LambdaRuntimeClient {
+
+    private static final String API_VERSION = "2018-06-01";
+    private static final String REQUEST_ID_HEADER = "Lambda-Runtime-Aws-Request-Id";
+    private static final String DEADLINE_HEADER = "Lambda-Runtime-Deadline-Ms";
+    private static final String FUNCTION_ARN_HEADER = "Lambda-Runtime-Invoked-Function-Arn";
+    private static final String TRACE_ID_HEADER = "Lambda-Runtime-Trace-Id";
+    private static final String ERROR_TYPE_HEADER = "Lambda-Runtime-Function-Error-Type";
+    private static final String RESPONSE_MODE_HEADER = "Lambda-Runtime-Function-Response-Mode";
+    private static final String STREAMING_CONTENT_TYPE = "application/vnd.awslambda.http-integration-response";
+    private static final String TRACE_ID_PROPERTY = "com.amazonaws.xray.traceHeader";
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_ACCEPTED = 202;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final String runtimeUrl;
+    private byte[] payloadBuffer = new byte[INITIAL_BUFFER_SIZE];
+
+    /**
+     * Creates a client for the given Runtime API endpoint.
+     *
+     * @param runtimeApi Host and port of the Runtime API, as provided by the
+     *                   {@code AWS_LAMBDA_RUNTIME_API} environment variable.
+     */
+    public LambdaRuntimeClient(final String runtimeApi) {
+        this.runtimeUrl = "http://" + runtimeApi + "/" + API_VERSION + "/runtime";
+    }
+
+    /**
+     * Blocks until the next invocation is available, and returns it.
+     *
+     * <p>The X-Ray trace header system property is set to the invocation's trace ID, or cleared
+     * if the invocation has none, so that a previous invocation's trace is never reused.
+     *
+     * @return The next invocation.
+     * @throws IOException Exception thrown if the request to the Runtime API fails.
+     */
+    public RuntimeInvocation nextInvocation() throws IOException {
+        final HttpURLConnection connection = open("/invocation/next", "GET");
+        // the call blocks until an event is available, which may be indefinitely
+        connection.setReadTimeout(0);
+        final int status = connection.getResponseCode();
+        if (status != HTTP_OK) {
+            drain(connection);
+            throw new IOException("Unexpected status from Runtime API next invocation: " + status);
+        }
+
+        final String traceId = connection.getHeaderField(TRACE_ID_HEADER);
+        if (traceId != null) {
+            System.setProperty(TRACE_ID_PROPERTY, traceId);
+        } else {
+            System.clearProperty(TRACE_ID_PROPERTY);
+        }
+        final RuntimeContext context = new RuntimeContext(
+            connection.getHeaderField(REQUEST_ID_HEADER),
+            connection.getHeaderField(FUNCTION_ARN_HEADER),
+            traceId,
+            connection.getHeaderFieldLong(DEADLINE_HEADER, Long.MAX_VALUE));
+
+        return new RuntimeInvocation(context, readPayload(connection));
+    }
+
+    /**
+     * Creates an output stream which sends the invocation's response to the Runtime API.
+     *
+     * <p>The connection is only opened once the first byte is written, so an error can still
+     * be reported using {@link #postInvocationError(String, Throwable)} if the handler fails
+     * before writing anything. The response is complete once the stream is closed.
+     *
+     * @param requestId The invocation's request ID.
+     * @return The response output stream.
+     */
+    public RuntimeResponseStream responseStream(final String requestId) {
+        return responseStream(requestId, false);
+    }
+
+    /**
+     * Creates an output stream which sends the invocation's response to the Runtime API, as
+     * {@link #responseStream(String)}.
+     *
+     * <p>A streamed response is sent in Lambda's streaming response mode, which function URLs
+     * relay to the client as it is received. The handler must write the response in the
+     * streaming format: a JSON prelude with the status code and headers, eight {@code NUL}
+     * bytes, and then the body. Each flush of the stream sends the bytes written so far.
+     *
+     * @param requestId The invocation's request ID.
+     * @param streaming Whether the response is streamed.
+     * @return The response output stream.
+     */
+    public RuntimeResponseStream responseStream(final String requestId, final boolean streaming) {
+        return new RuntimeResponseStream("/invocation/" + requestId + "/response", streaming);
+    }
+
+    /**
+     * Reports that an invocation failed.
+     *
+     * @param requestId The invocation's request ID.
+     * @param error The error which caused the invocation to fail.
+     * @throws IOException Exception thrown if the request to the Runtime API fails.
+     */
+    public void postInvocationError(final String requestId, final Throwable error) throws IOException {
+        postError("/invocation/" + requestId + "/error", error);
+    }
+
+    /**
+     * Reports that the runtime failed to initialize.
+     *
+     * @param error The error which caused initialization to fail.
+     * @throws IOException Exception thrown if the request to the Runtime API fails.
+     */
+    public void postInitError(final Throwable error) throws IOException {
+        postError("/init/error", error);
+    }
+
+    private void postError(final String path, final Throwable error) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (JsonGenerator json = jsonFactory.createGenerator(body)) {
+            json.writeStartObject();
+            json.writeStringField("errorMessage", String.valueOf(error.getMessage()));
+            json.writeStringField("errorType", error.getClass().getName());
+            json.writeEndObject();
+        }
+        final HttpURLConnection connection = open(path, "POST");
+        connection.setRequestProperty(ERROR_TYPE_HEADER, "Unhandled");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setFixedLengthStreamingMode(body.size());
+        try (OutputStream output = connection.getOutputStream()) {
+            body.writeTo(output);
+        }
+        checkAccepted(connection);
+    }
+
+    private HttpURLConnection open(final String path, final String method) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(runtimeUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setDoOutput("POST".equals(method));
+        return connection;
+    }
+
+    /**
+     * Reads the response body of the connection into the reusable payload buffer. If the body
+     * does not fit, it is read into a larger buffer, which replaces the reusable buffer unless it
+     * is larger than {@value #MAX_RETAINED_BUFFER_SIZE} bytes.
+     *
+     * @param connection The connection to read.
+     * @return A stream of the bytes read.
+     * @throws IOException Exception thrown if reading from the connection fails.
+     */
+    private ByteArrayInputStream readPayload(final HttpURLConnection connection) throws IOException {
+        final long contentLength = connection.getContentLengthLong();
+        byte[] buffer = contentLength > payloadBuffer.length ? new byte[(int) contentLength] : payloadBuffer;
+        int length = 0;
+        try (InputStream input = connection.getInputStream()) {
+            int read;
+            while ((read = input.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+        }
+        if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+            payloadBuffer = buffer;
+        }
+        return new ByteArrayInputStream(buffer, 0, length);
+    }
+
+    /**
+     * Gets the size of the payload buffer which is reused across invocations.
+     *
+     * @return The size of the payload buffer, in bytes.
+     */
+    int getPayloadBufferSize() {
+        return payloadBuffer.length;
+    }
+
+    private static void checkAccepted(final HttpURLConnection connection) throws IOException {
+        final int status = connection.getResponseCode();
+        drain(connection);
+        if (status != HTTP_ACCEPTED) {
+            throw new IOException("Unexpected status from Runtime API: " + status);
+        }
+    }
+
+    /**
+     * Fully consumes and closes the connection's response body, allowing the connection to be reused.
+     *
+     * @param connection The connection to drain.
+     */
+    private static void drain(final HttpURLConnection connection) {
+        try (InputStream input = connection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST ?
+            connection.getErrorStream() : connection.getInputStream()) {
+            if (input != null) {
+                final byte[] discard = new byte[1024];
+                while (input.read(discard) != -1) {
+                    log.trace("Discarding Runtime API response body");
+                }
+            }
+        } catch (final IOException e) {
+            log.debug("Failed to drain Runtime API response", e);
+        }
+    }
+
+    /**
+     * Output stream which sends the handler's response to the Runtime API using chunked
+     * transfer encoding, so the response does not need to be buffered before being sent.
+     */
+    public final class RuntimeResponseStream extends OutputStream {
+        private final String path;
+        private final boolean streaming;
+        private HttpURLConnection connection;
+        private OutputStream output;
+        private boolean closed;
+
+        private RuntimeResponseStream(final String path, final boolean streaming) {
+            this.path = path;
+            this.streaming = streaming;
+        }
+
+        /**
+         * Indicates whether any part of the response has been sent to the Runtime API.
+         *
+         * @return Returns {@code true} if any part of the response has been sent.
+         */
+        public boolean isCommitted() {
+            return connection != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(final int b) throws IOException {
+            connect(-1).write(b);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            connect(-1).write(b, off, len);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void flush() throws IOException {
+            if (output != null) {
+                output.flush();
+            }
+        }
+
+        /**
+         * Aborts a response which has been partially sent, by dropping the connection without ending
+         * the chunked body, so the Runtime API does not receive it as a complete response. Does
+         * nothing if the response has already been completed.
+         */
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        /**
+         * Completes the response. If nothing was written, an empty response is sent.
+         *
+         * @throws IOException Exception thrown if sending the response fails.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connect(0).close();
+            checkAccepted(connection);
+        }
+
+        private OutputStream connect(final int fixedLength) throws IOException {
+            if (closed && fixedLength < 0) {
+                throw new IOException("Response stream is closed");
+            }
+            if (output == null) {
+                connection = open(path, "POST");
+                if (streaming) {
+                    connection.setRequestProperty(RESPONSE_MODE_HEADER, "streaming");
+                    connection.setRequestProperty("Content-Type", STREAMING_CONTENT_TYPE);
+                }
+                if (fixedLength >= 0) {
+                    connection.setFixedLengthStreamingMode(fixedLength);
+                } else {
+                    connection.setChunkedStreamingMode(0);
+                }
+                output = connection.getOutputStream();
+            }
+            return output;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.runtime;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import lombok.Getter;
+
+/**
+ * {@link Context} of a single invocation received from the Lambda Runtime API.
+ *
+ * <p>Request specific values are taken from the invocation's response headers, while function
+ * level values are read from the standard Lambda environment variables.
+ */
+@Getter
+public final class RuntimeContext implements Context {
+
+    private static final LambdaLogger LOGGER = new RuntimeLambdaLogger();
+    private static final int DEFAULT_MEMORY_LIMIT = 128;
+
+    private final String awsRequestId;
+    private final String invokedFunctionArn;
+    private final String traceId;
+    private final long deadlineMillis;
+    private final String functionName = System.getenv("AWS_LAMBDA_FUNCTION_NAME");
+    private final String functionVersion = System.getenv("AWS_LAMBDA_FUNCTION_VERSION");
+    private final String logGroupName = System.getenv("AWS_LAMBDA_LOG_GROUP_NAME");
+    private final String logStreamName = System.getenv("AWS_LAMBDA_LOG_STREAM_NAME");
+
+    /**
+     * Creates the context for an invocation.
+     *
+     * @param awsRequestId The invocation's request ID.
+     * @param invokedFunctionArn The ARN of the function, version or alias which was invoked.
+     * @param traceId The invocation's X-Ray trace header, if any.
+     * @param deadlineMillis The invocation's deadline in epoch milliseconds.
+     */
+    RuntimeContext(final String awsRequestId, final String invokedFunctionArn,
+                   final String traceId, final long deadlineMillis) {
+        this.awsRequestId = awsRequestId;
+        this.invokedFunctionArn = invokedFunctionArn;
+        this.traceId = traceId;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRemainingTimeInMillis() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, deadlineMillis - System.currentTimeMillis()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMemoryLimitInMB() {
+        final String memory = System.getenv("AWS_LAMBDA_FUNCTION_MEMORY_SIZE");
+        return memory == null ? DEFAULT_MEMORY_LIMIT : Integer.parseInt(memory);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LambdaLogger getLogger() {
+        return LOGGER;
+    }
+
+    /**
+     * {@link LambdaLogger} which writes to stdout, which the Lambda service sends to CloudWatch Logs.
+     */
+    private static final class RuntimeLambdaLogger implements LambdaLogger {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void log(final String message) {
+            System.out.print(message);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void log(final byte[] message) {
+            System.out.write(message, 0, message.length);
+        }
+    }
+}
@@ -0,0 +1,637 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import lombok.extern.log4j.Log4j2;
+import org.apache.http.HttpStatus;
+
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+
+/**
+ * Embedded HTTP/1.1 server which serves an Avenue application outside of Lambda, eg: for local
+ * development, or when running in a container.
+ *
+ * <p>A single selector thread accepts connections, reads requests and writes responses using
+ * non-blocking NIO. Complete requests are converted into {@link AwsProxyRequest}s and dispatched
+ * on a pool of worker threads, sized to the number of available processors by default, so the
+ * selector thread is never blocked by a route. Asynchronous routes do not hold a worker
+ * thread while their response is pending; it is written when their stage completes.
+ * Connections are kept alive between requests according to the HTTP/1.0 and HTTP/1.1 rules,
+ * and closed after being idle for the idle timeout.
+ *
+ * <p>When routes spend most of their time blocked on I/O (eg: JDBC or HTTP calls), the server can
+ * instead dispatch each request on its own virtual thread ({@link Builder#withVirtualThreads(boolean)}),
+ * which requires Java 21 or later. This allows tens of thousands of requests to be in flight
+ * without a matching number of platform threads. The number of requests dispatched concurrently
+ * can be limited in either mode with {@link Builder#withMaxConcurrentRequests(int)}; requests
+ * over the limit wait for a permit on their worker thread, without blocking the selector.
+ *
+ * <pre>{@code
+ * final MyHandler handler = new MyHandler();
+ * final EmbeddedServer server = EmbeddedServer.builder(handler).withPort(8080).build();
+ * server.start();
+ * }</pre>
+ *
+ * <p>A server built for a handler flushes the handler's invocation listeners when it is stopped,
+ * so data they have buffered for the current interval is not lost.
+ *
+ * @see BasicLambdaProxyHandler#dispatch(AwsProxyRequest)
+ */
+@Log4j2
+public final class EmbeddedServer implements Closeable {
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final RequestDispatcher dispatcher;
+    private final Runnable onStop;
+    private final String host;
+    private final int requestedPort;
+    private final int workerThreads;
+    private final int maxRequestBytes;
+    private final long idleTimeoutNanos;
+    private final boolean virtualThreads;
+    private final Duration pinningThreshold;
+    private final Semaphore concurrencyLimit;
+    private final Queue<SelectionKey> completed = new ConcurrentLinkedQueue<>();
+
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private ExecutorService workers;
+    private Thread selectorThread;
+    private Closeable pinningMonitor;
+    private volatile boolean running;
+
+    private EmbeddedServer(final Builder builder) {
+        this.dispatcher = builder.dispatcher;
+        this.onStop = builder.onStop;
+        this.host = builder.host;
+        this.requestedPort = builder.port;
+        this.workerThreads = builder.workerThreads;
+        this.maxRequestBytes = builder.maxRequestBytes;
+        this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+        this.virtualThreads = builder.virtualThreads;
+        this.pinningThreshold = builder.pinningThreshold;
+        this.concurrencyLimit = builder.maxConcurrentRequests > 0 ?
+            new Semaphore(builder.maxConcurrentRequests) : null;
+    }
+
+    /**
+     * Binds the server's port and starts accepting connections.
+     *
+     * @throws IOException Exception thrown if the port could not be bound.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server is already running");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(host == null ? new InetSocketAddress(requestedPort) :
+            new InetSocketAddress(host, requestedPort));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        if (virtualThreads) {
+            workers = VirtualThreadSupport.newVirtualThreadExecutor("avenue-worker-");
+            if (pinningThreshold != null) {
+                pinningMonitor = VirtualThreadSupport.monitorPinning(pinningThreshold);
+            }
+        } else {
+            workers = Executors.newFixedThreadPool(workerThreads, namedThreadFactory("avenue-worker-", true));
+        }
+        running = true;
+        selectorThread = namedThreadFactory("avenue-selector-", false).newThread(this::runSelector);
+        selectorThread.start();
+        if (virtualThreads) {
+            log.info("Embedded server listening on port {} using virtual threads", getPort());
+        } else {
+            log.info("Embedded server listening on port {} with {} worker threads", getPort(), workerThreads);
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes all open connections and stops the worker threads.
+     * Requests which are being dispatched are allowed a short time to complete, after which
+     * the invocation listeners of the handler the server was built for are flushed.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+            workers.shutdown();
+            workers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+        if (pinningMonitor != null) {
+            try {
+                pinningMonitor.close();
+            } catch (final IOException e) {
+                log.warn("Failed to stop virtual thread pinning monitor", e);
+            }
+            pinningMonitor = null;
+        }
+        if (onStop != null) {
+            onStop.run();
+        }
+    }
+
+    /**
+     * Alias for {@link #stop()}.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Gets the port the server is listening on, which is useful if the server was configured
+     * with port {@code 0}.
+     *
+     * @return The port the server is listening on.
+     * @throws IOException Exception thrown if the server is not running.
+     */
+    public int getPort() throws IOException {
+        if (serverChannel == null || !serverChannel.isOpen()) {
+            throw new IOException("Server is not running");
+        }
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Main loop of the selector thread.
+     */
+    private void runSelector() {
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                processCompleted();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+                closeIdleConnections();
+            }
+        } catch (final IOException | ClosedSelectorException e) {
+            log.error("Embedded server selector failed", e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Handles a key selected as ready for I/O.
+     *
+     * @param key The selected key.
+     */
+    private void handleKey(final SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            final HttpConnection connection = (HttpConnection) key.attachment();
+            if (key.isReadable()) {
+                if (connection.read() < 0) {
+                    closeConnection(key);
+                    return;
+                }
+                processReadBuffer(key, connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(key, connection);
+            }
+        } catch (final IOException e) {
+            log.debug("Closing connection after I/O failure", e);
+            closeConnection(key);
+        }
+    }
+
+    /**
+     * Accepts all pending connections.
+     *
+     * @throws IOException Exception thrown if the server channel fails.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            final HttpConnection connection = new HttpConnection(channel,
+                (InetSocketAddress) channel.getRemoteAddress(), maxRequestBytes + HttpCodec.MAX_HEADER_BYTES);
+            channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    /**
+     * Parses a request from the connection's read buffer and, if one is complete, dispatches it
+     * on a worker thread. The connection is not selected for reads or writes until the response
+     * has been queued.
+     *
+     * @param key The connection's key.
+     * @param connection The connection.
+     * @throws IOException Exception thrown if writing an error response fails.
+     */
+    private void processReadBuffer(final SelectionKey key, final HttpConnection connection) throws IOException {
+        final HttpCodec.HttpRequest request;
+        try {
+            request = HttpCodec.parse(connection.getReadBuffer(), maxRequestBytes);
+        } catch (final HttpCodec.MalformedRequestException e) {
+            log.debug("Rejecting malformed request: {}", e.getMessage());
+            connection.queueWrite(HttpCodec.encodeErrorResponse(e.getStatusCode()));
+            connection.setCloseAfterWrite(true);
+            write(key, connection);
+            return;
+        }
+        if (request == null) {
+            return; // wait for the rest of the request
+        }
+
+        key.interestOps(0);
+        connection.setProcessing(true);
+        try {
+            workers.execute(() -> dispatch(key, connection, request));
+        } catch (final RejectedExecutionException e) {
+            closeConnection(key);
+        }
+    }
+
+    /**
+     * Dispatches the request. Runs on a worker thread, waiting for a permit first if the number
+     * of concurrent requests is limited. The permit is held until the dispatcher's stage
+     * completes, so asynchronous requests count towards the limit while they are in flight.
+     *
+     * @param key The connection's key.
+     * @param connection The connection the request was read from.
+     * @param request The parsed request.
+     */
+    private void dispatch(final SelectionKey key, final HttpConnection connection,
+                          final HttpCodec.HttpRequest request) {
+        if (concurrencyLimit != null) {
+            try {
+                concurrencyLimit.acquire();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closeConnection(key);
+                return;
+            }
+        }
+
+        CompletionStage<AwsProxyResponse> stage;
+        try {
+            stage = dispatcher.dispatch(HttpCodec.toProxyRequest(request, connection.getRemoteAddress()));
+            if (stage == null) {
+                throw new IllegalStateException("Dispatcher returned no response");
+            }
+        } catch (final RuntimeException e) {
+            final CompletableFuture<AwsProxyResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            stage = failed;
+        }
+        stage.whenComplete((response, error) -> {
+            if (concurrencyLimit != null) {
+                concurrencyLimit.release();
+            }
+            if (error != null || response == null) {
+                log.error("Failed to dispatch request. path={}", request.getTarget(), error);
+                respond(key, connection, request, new AwsProxyResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR));
+            } else {
+                respond(key, connection, request, response);
+            }
+        });
+    }
+
+    /**
+     * Queues the response to a request and hands the connection back to the selector thread
+     * to write it.
+     *
+     * @param key The connection's key.
+     * @param connection The connection the request was read from.
+     * @param request The parsed request.
+     * @param response The response to send.
+     */
+    private void respond(final SelectionKey key, final HttpConnection connection,
+                         final HttpCodec.HttpRequest request, final AwsProxyResponse response) {
+        final byte[] body = HttpCodec.responseBody(response);
+        connection.queueWrite(HttpCodec.encodeResponseHead(response, body, request.isKeepAlive()));
+        if (!"HEAD".equals(request.getMethod())) {
+            connection.queueWrite(body);
+        }
+        connection.setCloseAfterWrite(!request.isKeepAlive());
+        completed.add(key);
+        selector.wakeup();
+    }
+
+    /**
+     * Hands connections whose responses have been queued by worker threads back to the selector.
+     */
+    private void processCompleted() {
+        SelectionKey key;
+        while ((key = completed.poll()) != null) {
+            final HttpConnection connection = (HttpConnection) key.attachment();
+            connection.setProcessing(false);
+            if (!key.isValid()) {
+                continue;
+            }
+            try {
+                write(key, connection);
+            } catch (final IOException e) {
+                log.debug("Closing connection after I/O failure", e);
+                closeConnection(key);
+            }
+        }
+    }
+
+    /**
+     * Writes queued data to the connection. Once everything has been written, the connection is
+     * either closed or returned to reading, processing any request already buffered.
+     *
+     * @param key The connection's key.
+     * @param connection The connection.
+     * @throws IOException Exception thrown if writing to the connection fails.
+     */
+    private void write(final SelectionKey key, final HttpConnection connection) throws IOException {
+        if (!connection.flush()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        if (connection.isCloseAfterWrite()) {
+            closeConnection(key);
+            return;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        processReadBuffer(key, connection); // pipelined requests
+    }
+
+    /**
+     * Closes connections which have not been used within the idle timeout.
+     */
+    private void closeIdleConnections() {
+        final long now = System.nanoTime();
+        for (final SelectionKey key : selector.keys()) {
+            final Object attachment = key.attachment();
+            if (!(attachment instanceof HttpConnection)) {
+                continue;
+            }
+            final HttpConnection connection = (HttpConnection) attachment;
+            if (!connection.isProcessing() && !connection.hasPendingWrites()
+                && now - connection.getLastActiveNanos() > idleTimeoutNanos) {
+                closeConnection(key);
+            }
+        }
+    }
+
+    /**
+     * Closes all connections, the server channel and the selector.
+     */
+    private void closeAll() {
+        try {
+            for (final SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (final IOException | ClosedSelectorException e) {
+            log.warn("Failed to close embedded server cleanly", e);
+        }
+    }
+
+    private static void closeConnection(final SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (final IOException e) {
+            log.debug("Failed to close connection", e);
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(final String prefix, final boolean daemon) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates a new instance of the {@link EmbeddedServer} builder.
+     *
+     * @param dispatcher Handles the requests received by the server.
+     * @return A new instance of the {@link EmbeddedServer} builder.
+     */
+    public static Builder builder(final RequestDispatcher dispatcher) {
+        return new Builder(dispatcher, null);
+    }
+
+    /**
+     * Creates a new instance of the {@link EmbeddedServer} builder which dispatches requests to the
+     * handler, and flushes the handler's invocation listeners when the server is stopped.
+     *
+     * @param handler Handles the requests received by the server.
+     * @return A new instance of the {@link EmbeddedServer} builder.
+     * @see BasicLambdaProxyHandler#flushInvocationListeners()
+     */
+    public static Builder builder(final BasicLambdaProxyHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("handler must not be null");
+        }
+        return new Builder(handler::dispatch, handler::flushInvocationListeners);
+    }
+
+    /**
+     * Builder class for the {@link EmbeddedServer}.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_PORT = 8080;
+        private static final int DEFAULT_MAX_REQUEST_BYTES = 6 * 1024 * 1024;
+        private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(1);
+
+        private final RequestDispatcher dispatcher;
+        private final Runnable onStop;
+        private String host;
+        private int port = DEFAULT_PORT;
+        private int workerThreads = Runtime.getRuntime().availableProcessors();
+        private int maxRequestBytes = DEFAULT_MAX_REQUEST_BYTES;
+        private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        private boolean virtualThreads;
+        private int maxConcurrentRequests;
+        private Duration pinningThreshold;
+
+        private Builder(final RequestDispatcher dispatcher, final Runnable onStop) {
+            if (dispatcher == null) {
+                throw new IllegalArgumentException("dispatcher must not be null");
+            }
+            this.dispatcher = dispatcher;
+            this.onStop = onStop;
+        }
+
+        /**
+         * Sets the host name or address to listen on. Defaults to all interfaces.
+         * @param bindHost The host name or address to listen on.
+         * @return The builder instance.
+         */
+        public Builder withHost(final String bindHost) {
+            this.host = bindHost;
+            return this;
+        }
+
+        /**
+         * Sets the port to listen on, or {@code 0} to use any free port. Defaults to 8080.
+         * @param listenPort The port to listen on.
+         * @return The builder instance.
+         */
+        public Builder withPort(final int listenPort) {
+            this.port = listenPort;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads which dispatch requests. Defaults to the number of
+         * available processors.
+         *
+         * @param threads The number of threads which dispatch requests.
+         * @return The builder instance.
+         */
+        public Builder withWorkerThreads(final int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("workerThreads must be at least 1");
+            }
+            this.workerThreads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of a request body. Larger requests are rejected with a 413 response.
+         * Defaults to 6 MB, the Lambda invocation payload limit.
+         *
+         * @param maxBytes The maximum size of a request body.
+         * @return The builder instance.
+         */
+        public Builder withMaxRequestBytes(final int maxBytes) {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("maxRequestBytes must not be negative");
+            }
+            this.maxRequestBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the time after which an unused keep-alive connection is closed. Defaults to 1 minute.
+         * @param timeout The time after which an unused connection is closed.
+         * @return The builder instance.
+         */
+        public Builder withIdleTimeout(final Duration timeout) {
+            this.idleTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets whether each request is dispatched on its own virtual thread, instead of on a fixed
+         * pool of platform threads. The number of worker threads is ignored in this mode.
+         * Requires Java 21 or later. Defaults to {@code false}.
+         *
+         * @param enabled Whether to dispatch requests on virtual threads.
+         * @return The builder instance.
+         */
+        public Builder withVirtualThreads(final boolean enabled) {
+            this.virtualThreads = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests dispatched at the same time, or {@code 0} for no limit.
+         * This protects downstream resources, such as connection pools, when using virtual threads.
+         * Defaults to {@code 0}.
+         *
+         * @param maxRequests The maximum number of requests dispatched at the same time.
+         * @return The builder instance.
+         */
+        public Builder withMaxConcurrentRequests(final int maxRequests) {
+            if (maxRequests < 0) {
+                throw new IllegalArgumentException("maxConcurrentRequests must not be negative");
+            }
+            this.maxConcurrentRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * Enables logging of virtual threads which are pinned to their carrier thread for longer
+         * than the threshold, eg: by blocking inside a {@code synchronized} block. Only applies
+         * when using virtual threads. Disabled by default.
+         *
+         * @param threshold The pinned duration above which a warning is logged.
+         * @return The builder instance.
+         */
+        public Builder withPinningDiagnostics(final Duration threshold) {
+            this.pinningThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Constructs the {@link EmbeddedServer} using the parameters from the builder.
+         * @return A new instance of {@link EmbeddedServer}.
+         * @throws UnsupportedOperationException Exception thrown if virtual threads were requested
+         *                                       but are not available on the running JVM.
+         */
+        public EmbeddedServer build() {
+            if (virtualThreads && !VirtualThreadSupport.isAvailable()) {
+                throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+            }
+            return new EmbeddedServer(this);
+        }
+    }
+}
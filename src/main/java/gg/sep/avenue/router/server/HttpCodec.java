@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.server;
+
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import com.amazonaws.serverless.proxy.model.ApiGatewayRequestIdentity;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequestContext;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import com.amazonaws.serverless.proxy.model.MultiValuedTreeMap;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.http.HttpStatus;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+
+import gg.sep.avenue.router.event.QueryStrings;
+
+/**
+ * Minimal HTTP/1.x codec used by the {@link EmbeddedServer}.
+ *
+ * <p>Requests are parsed from a connection's read buffer into {@link AwsProxyRequest} objects
+ * shaped like those API Gateway sends to a Lambda proxy integration, and {@link AwsProxyResponse}
+ * objects are encoded back into HTTP responses. Only {@code Content-Length} delimited request
+ * bodies are supported.
+ */
+final class HttpCodec {
+    static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    private static final int REQUEST_HEADER_FIELDS_TOO_LARGE = 431; // not defined by HttpStatus
+
+    private static final byte[] HEADER_TERMINATOR = {'\r', '\n', '\r', '\n'};
+    private static final String CRLF = "\r\n";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String HTTP_1_0 = "HTTP/1.0";
+    private static final String HTTP_1_1 = "HTTP/1.1";
+
+    private HttpCodec() {
+    }
+
+    /**
+     * A request parsed from the connection, before conversion to an {@link AwsProxyRequest}.
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class HttpRequest {
+        private final String method;
+        private final String target;
+        private final Headers headers;
+        private final byte[] body;
+        private final boolean keepAlive;
+    }
+
+    /**
+     * Thrown when a request can not be parsed, carrying the status code to respond with.
+     */
+    @Getter
+    static final class MalformedRequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        /**
+         * Creates the exception.
+         *
+         * @param statusCode The status code to respond with.
+         * @param message Description of the problem.
+         */
+        MalformedRequestException(final int statusCode, final String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+    }
+
+    /**
+     * Attempts to parse a complete request from the buffer. The buffer is expected to be in
+     * write mode, ie: the data read so far is between {@code 0} and its position. If a complete
+     * request was present, it is removed from the buffer, leaving any following (pipelined)
+     * data in place.
+     *
+     * @param buffer The connection's read buffer.
+     * @param maxBodyBytes The maximum size of a request body.
+     * @return The parsed request, or {@code null} if the buffer does not yet contain a complete request.
+     * @throws MalformedRequestException Exception thrown if the request is invalid or unsupported.
+     */
+    static HttpRequest parse(final ByteBuffer buffer, final int maxBodyBytes) throws MalformedRequestException {
+        final byte[] data = buffer.array();
+        final int length = buffer.position();
+        final int headerEnd = indexOf(data, length, HEADER_TERMINATOR);
+        if (headerEnd < 0) {
+            if (length > MAX_HEADER_BYTES) {
+                throw new MalformedRequestException(REQUEST_HEADER_FIELDS_TOO_LARGE,
+                    "Request headers too large");
+            }
+            return null;
+        }
+
+        final String[] lines = new String(data, 0, headerEnd, StandardCharsets.ISO_8859_1).split(CRLF);
+        final String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new MalformedRequestException(HttpStatus.SC_BAD_REQUEST, "Invalid request line");
+        }
+
+        final Headers headers = new Headers();
+        for (int i = 1; i < lines.length; i++) {
+            final int separator = lines[i].indexOf(':');
+            if (separator <= 0) {
+                throw new MalformedRequestException(HttpStatus.SC_BAD_REQUEST, "Invalid header line");
+            }
+            headers.add(lines[i].substring(0, separator).trim(), lines[i].substring(separator + 1).trim());
+        }
+        if (headers.containsKey("Transfer-Encoding")) {
+            throw new MalformedRequestException(HttpStatus.SC_NOT_IMPLEMENTED, "Transfer-Encoding not supported");
+        }
+
+        final int contentLength = contentLength(headers);
+        if (contentLength > maxBodyBytes) {
+            throw new MalformedRequestException(HttpStatus.SC_REQUEST_TOO_LONG, "Request body too large");
+        }
+        final int bodyStart = headerEnd + HEADER_TERMINATOR.length;
+        if (length - bodyStart < contentLength) {
+            return null;
+        }
+        final byte[] body = new byte[contentLength];
+        System.arraycopy(data, bodyStart, body, 0, contentLength);
+
+        buffer.flip();
+        buffer.position(bodyStart + contentLength);
+        buffer.compact();
+
+        return new HttpRequest(requestLine[0], requestLine[1], headers, body, isKeepAlive(requestLine[2], headers));
+    }
+
+    /**
+     * Converts the parsed request into the request passed to the {@link RequestDispatcher}.
+     *
+     * @param httpRequest The parsed request.
+     * @param remoteAddress The address of the client, used as the source IP of the request.
+     * @return The request in the format of an API Gateway proxy integration.
+     */
+    static AwsProxyRequest toProxyRequest(final HttpRequest httpRequest, final InetSocketAddress remoteAddress) {
+        final String target = httpRequest.getTarget();
+        final int queryStart = target.indexOf('?');
+        final String path = QueryStrings.decodePath(queryStart < 0 ? target : target.substring(0, queryStart));
+
+        final AwsProxyRequest request = new AwsProxyRequest();
+        request.setHttpMethod(httpRequest.getMethod());
+        request.setPath(path);
+        request.setMultiValueHeaders(httpRequest.getHeaders());
+        request.setMultiValueQueryStringParameters(
+            parseQuery(queryStart < 0 ? "" : target.substring(queryStart + 1)));
+
+        final byte[] body = httpRequest.getBody();
+        if (body.length > 0) {
+            if (isTextContent(httpRequest.getHeaders().getFirst("Content-Type"))) {
+                request.setBody(new String(body, StandardCharsets.UTF_8));
+            } else {
+                request.setBody(Base64.getEncoder().encodeToString(body));
+                request.setIsBase64Encoded(true);
+            }
+        }
+
+        final ApiGatewayRequestIdentity identity = new ApiGatewayRequestIdentity();
+        if (remoteAddress != null) {
+            identity.setSourceIp(remoteAddress.getAddress().getHostAddress());
+        }
+        final AwsProxyRequestContext requestContext = new AwsProxyRequestContext();
+        requestContext.setRequestId(UUID.randomUUID().toString());
+        requestContext.setRequestTimeEpoch(System.currentTimeMillis());
+        requestContext.setHttpMethod(httpRequest.getMethod());
+        requestContext.setPath(path);
+        requestContext.setIdentity(identity);
+        request.setRequestContext(requestContext);
+        return request;
+    }
+
+    /**
+     * Encodes the response's status line and headers, adding the {@code Content-Length} and
+     * {@code Connection} headers. The response's own {@code Content-Length} is only sent if it has
+     * no body, as for the response to a {@code HEAD} request.
+     *
+     * @param response The response returned by the {@link RequestDispatcher}.
+     * @param body The decoded response body, as returned by {@link #responseBody(AwsProxyResponse)}.
+     * @param keepAlive Whether the connection will be kept open after the response.
+     * @return The encoded response head.
+     */
+    static byte[] encodeResponseHead(final AwsProxyResponse response, final byte[] body, final boolean keepAlive) {
+        final StringBuilder head = new StringBuilder(256);
+        statusLine(head, response.getStatusCode());
+
+        String declaredLength = null;
+        final Headers multiValueHeaders = response.getMultiValueHeaders();
+        if (multiValueHeaders != null) {
+            for (final Map.Entry<String, List<String>> header : multiValueHeaders.entrySet()) {
+                if (CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                    declaredLength = header.getValue().isEmpty() ? null : header.getValue().get(0);
+                    continue;
+                }
+                for (final String value : header.getValue()) {
+                    appendHeader(head, header.getKey(), value);
+                }
+            }
+        }
+        final Map<String, String> singleValueHeaders = response.getHeaders();
+        if (singleValueHeaders != null) {
+            for (final Map.Entry<String, String> header : singleValueHeaders.entrySet()) {
+                if (CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                    declaredLength = declaredLength == null ? header.getValue() : declaredLength;
+                } else if (multiValueHeaders == null || !multiValueHeaders.containsKey(header.getKey())) {
+                    appendHeader(head, header.getKey(), header.getValue());
+                }
+            }
+        }
+        head.append(CONTENT_LENGTH).append(": ")
+            .append(body.length == 0 && declaredLength != null ? declaredLength : String.valueOf(body.length))
+            .append(CRLF);
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append(CRLF);
+        head.append(CRLF);
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decodes the response body into the bytes sent to the client.
+     *
+     * @param response The response returned by the {@link RequestDispatcher}.
+     * @return The response body, which is empty if the response has no body.
+     */
+    static byte[] responseBody(final AwsProxyResponse response) {
+        final String body = response.getBody();
+        if (body == null) {
+            return new byte[0];
+        }
+        return response.isBase64Encoded() ?
+            Base64.getDecoder().decode(body) : body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes a response with no body, sent when a request could not be parsed.
+     *
+     * @param statusCode The status code of the response.
+     * @return The encoded response.
+     */
+    static byte[] encodeErrorResponse(final int statusCode) {
+        final StringBuilder head = new StringBuilder(64);
+        statusLine(head, statusCode);
+        head.append("Content-Length: 0").append(CRLF);
+        head.append("Connection: close").append(CRLF);
+        head.append(CRLF);
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void statusLine(final StringBuilder head, final int statusCode) {
+        final String reason = EnglishReasonPhraseCatalog.INSTANCE.getReason(statusCode, Locale.ENGLISH);
+        head.append(HTTP_1_1).append(' ').append(statusCode).append(' ')
+            .append(reason == null ? "" : reason).append(CRLF);
+    }
+
+    private static void appendHeader(final StringBuilder head, final String name, final String value) {
+        if ("Content-Length".equalsIgnoreCase(name) || "Connection".equalsIgnoreCase(name)
+            || "Transfer-Encoding".equalsIgnoreCase(name)) {
+            return; // set by the server
+        }
+        head.append(name).append(": ").append(value).append(CRLF);
+    }
+
+    private static int contentLength(final Headers headers) throws MalformedRequestException {
+        final String value = headers.getFirst("Content-Length");
+        if (value == null) {
+            return 0;
+        }
+        try {
+            final int contentLength = Integer.parseInt(value);
+            if (contentLength < 0) {
+                throw new MalformedRequestException(HttpStatus.SC_BAD_REQUEST, "Invalid Content-Length");
+            }
+            return contentLength;
+        } catch (final NumberFormatException e) {
+            throw new MalformedRequestException(HttpStatus.SC_BAD_REQUEST, "Invalid Content-Length");
+        }
+    }
+
+    private static boolean isKeepAlive(final String version, final Headers headers) {
+        final String connection = headers.getFirst("Connection");
+        if (HTTP_1_0.equals(version)) {
+            return "keep-alive".equalsIgnoreCase(connection);
+        }
+        return !"close".equalsIgnoreCase(connection);
+    }
+
+    private static boolean isTextContent(final String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        final String type = contentType.toLowerCase(Locale.ENGLISH);
+        return type.startsWith("text/") || type.startsWith("application/json")
+            || type.startsWith("application/xml") || type.startsWith("application/x-www-form-urlencoded")
+            || type.contains("+json") || type.contains("+xml");
+    }
+
+    private static MultiValuedTreeMap<String, String> parseQuery(final String query) {
+        final MultiValuedTreeMap<String, String> parameters = new MultiValuedTreeMap<>();
+        for (final String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int separator = pair.indexOf('=');
+            final String name = separator < 0 ? pair : pair.substring(0, separator);
+            final String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.add(urlDecode(name), urlDecode(value));
+        }
+        return parameters;
+    }
+
+    private static String urlDecode(final String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (final UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+
+    private static int indexOf(final byte[] data, final int length, final byte[] pattern) {
+        final int last = length - pattern.length;
+        for (int i = 0; i <= last; i++) {
+            int matched = 0;
+            while (matched < pattern.length && data[i + matched] == pattern[matched]) {
+                matched++;
+            }
+            if (matched == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
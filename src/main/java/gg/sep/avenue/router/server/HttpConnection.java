@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * State of a single client connection to the {@link EmbeddedServer}.
+ *
+ * <p>A connection is owned by the selector thread, except while a request read from it is being
+ * dispatched ({@link #isProcessing()}), during which it is owned by the worker thread handling
+ * the request. The worker queues the response and hands the connection back to the selector
+ * thread, which writes it.
+ *
+ * <p>Responses are copied into a direct buffer which is reused for every write on the
+ * connection, so the head and body of small responses are sent with a single write and the
+ * channel does not need to copy heap buffers into a temporary direct buffer.
+ */
+@Getter(AccessLevel.PACKAGE)
+final class HttpConnection {
+    private static final int INITIAL_READ_BUFFER_BYTES = 8 * 1024;
+    private static final int WRITE_BUFFER_BYTES = 16 * 1024;
+
+    private final SocketChannel channel;
+    private final InetSocketAddress remoteAddress;
+    private final int maxReadBufferBytes;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_BYTES);
+    @Getter(AccessLevel.NONE) private ByteBuffer writeBuffer;
+    @Getter(AccessLevel.NONE) private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    @Setter(AccessLevel.PACKAGE) private boolean processing;
+    @Setter(AccessLevel.PACKAGE) private boolean closeAfterWrite;
+    private long lastActiveNanos = System.nanoTime();
+
+    /**
+     * Creates the connection state for a newly accepted channel.
+     *
+     * @param channel The client's channel.
+     * @param remoteAddress The client's address.
+     * @param maxReadBufferBytes The size to which the read buffer may grow to hold a single request.
+     */
+    HttpConnection(final SocketChannel channel, final InetSocketAddress remoteAddress,
+                   final int maxReadBufferBytes) {
+        this.channel = channel;
+        this.remoteAddress = remoteAddress;
+        this.maxReadBufferBytes = maxReadBufferBytes;
+    }
+
+    /**
+     * Reads available data from the channel into the read buffer, growing the buffer if it is full.
+     *
+     * @return The number of bytes read, or {@code -1} if the client closed the connection.
+     * @throws IOException Exception thrown if reading from the channel fails.
+     */
+    int read() throws IOException {
+        if (!readBuffer.hasRemaining() && readBuffer.capacity() < maxReadBufferBytes) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, maxReadBufferBytes));
+            readBuffer.flip();
+            grown.put(readBuffer);
+            readBuffer = grown;
+        }
+        final int read = channel.read(readBuffer);
+        if (read > 0) {
+            lastActiveNanos = System.nanoTime();
+        }
+        return read;
+    }
+
+    /**
+     * Queues data to be written to the client by {@link #flush()}.
+     *
+     * @param data The data to write.
+     */
+    void queueWrite(final byte[] data) {
+        if (data.length > 0) {
+            pendingWrites.add(ByteBuffer.wrap(data));
+        }
+    }
+
+    /**
+     * Checks whether any queued data has not yet been written.
+     *
+     * @return Whether any queued data has not yet been written.
+     */
+    boolean hasPendingWrites() {
+        return !pendingWrites.isEmpty() || writeBuffer != null && writeBuffer.hasRemaining();
+    }
+
+    /**
+     * Writes as much of the queued data to the channel as it will accept without blocking.
+     *
+     * @return Whether all queued data has been written.
+     * @throws IOException Exception thrown if writing to the channel fails.
+     */
+    boolean flush() throws IOException {
+        if (writeBuffer == null) {
+            writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            writeBuffer.limit(0);
+        }
+        while (true) {
+            if (!writeBuffer.hasRemaining()) {
+                if (pendingWrites.isEmpty()) {
+                    lastActiveNanos = System.nanoTime();
+                    return true;
+                }
+                fillWriteBuffer();
+            }
+            if (channel.write(writeBuffer) == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Copies as much queued data as fits into the (empty) direct write buffer.
+     */
+    private void fillWriteBuffer() {
+        writeBuffer.clear();
+        while (writeBuffer.hasRemaining() && !pendingWrites.isEmpty()) {
+            final ByteBuffer next = pendingWrites.peek();
+            final int count = Math.min(writeBuffer.remaining(), next.remaining());
+            final ByteBuffer chunk = next.duplicate();
+            chunk.limit(chunk.position() + count);
+            writeBuffer.put(chunk);
+            next.position(next.position() + count);
+            if (!next.hasRemaining()) {
+                pendingWrites.poll();
+            }
+        }
+        writeBuffer.flip();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.server;
+
+import java.util.concurrent.CompletionStage;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+
+/**
+ * Handles requests received by the {@link EmbeddedServer}.
+ *
+ * <p>Usually this is the {@link BasicLambdaProxyHandler#dispatch(AwsProxyRequest)} method
+ * of the application's handler, which {@link EmbeddedServer#builder(BasicLambdaProxyHandler)} uses.
+ *
+ * <p>Requests are dispatched concurrently from the server's worker threads, so implementations
+ * must be thread safe. Dispatchers should not block waiting for asynchronous work; the server
+ * sends the response when the returned stage completes.
+ */
+@FunctionalInterface
+public interface RequestDispatcher {
+    /**
+     * Handles the request.
+     *
+     * @param request The request received by the server.
+     * @return A stage which completes with the response to send to the client.
+     */
+    CompletionStage<AwsProxyResponse> dispatch(AwsProxyRequest request);
+}
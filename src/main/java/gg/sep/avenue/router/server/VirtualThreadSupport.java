@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.server;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Bridge to virtual threads for the {@link EmbeddedServer}.
+ *
+ * <p>This is the Java 8 implementation, used when running on a JVM older than 21. Virtual
+ * threads are not available; the Java 21 implementation is packaged into
+ * {@code META-INF/versions/21} of the multi-release JAR.
+ */
+final class VirtualThreadSupport {
+
+    private VirtualThreadSupport() {
+    }
+
+    /**
+     * Checks whether virtual threads are available on the running JVM.
+     *
+     * @return Always {@code false}.
+     */
+    static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * Creates an executor which runs each task on a new virtual thread.
+     *
+     * @param namePrefix The prefix of the virtual threads' names.
+     * @return Never returns.
+     * @throws UnsupportedOperationException Always, as virtual threads are not available.
+     */
+    static ExecutorService newVirtualThreadExecutor(final String namePrefix) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+    }
+
+    /**
+     * Starts logging virtual threads which are pinned to their carrier thread for longer than
+     * the threshold.
+     *
+     * @param threshold The pinned duration above which a warning is logged.
+     * @return A handle which stops the monitoring when closed.
+     */
+    static Closeable monitorPinning(final Duration threshold) {
+        return () -> { };
+    }
+}
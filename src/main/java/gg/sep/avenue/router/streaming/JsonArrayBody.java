@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.streaming;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import gg.sep.avenue.router.AwsResponseBuilder;
+
+/**
+ * Body of a {@link StreamingResponse} which is a JSON array, written an element at a time as the
+ * elements are produced by an iterator or stream, so that the collection is never held in memory.
+ *
+ * <p>When the response is streamed, every element is written, and memory use is limited to the
+ * JSON generator's buffer. When it is buffered instead, elements are written until the next would
+ * take the body past the maximum buffered size. The response then carries a cursor header, from
+ * which the client can request the rest of the elements, or if no cursor was configured, writing
+ * the body fails.
+ *
+ * <p>The elements can only be iterated once, so the body can only be written once. A stream's
+ * resources are released by closing it once the body has been written. JSON array bodies are
+ * usually set with {@link AwsResponseBuilder#jsonArrayBody(JsonArrayBody)}.
+ *
+ * @param <T> The type of the elements.
+ */
+public final class JsonArrayBody<T> implements StreamingResponse.BodyWriter {
+    private static final int DEFAULT_MAXIMUM_BUFFERED_SIZE = 4 * 1024 * 1024;
+    private static final String DEFAULT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final byte[] START_ARRAY = {'['};
+    private static final byte[] SEPARATOR = {','};
+    private static final byte[] END_ARRAY = {']'};
+
+    private final Iterator<? extends T> elements;
+    private final AutoCloseable resource;
+    private final ObjectWriter objectWriter;
+    private final int maximumBufferedSize;
+    private final Function<? super T, String> cursor;
+    private final String cursorHeader;
+
+    private JsonArrayBody(final Builder<T> builder) {
+        this.elements = builder.elements;
+        this.resource = builder.resource;
+        this.objectWriter = builder.objectWriter;
+        this.maximumBufferedSize = builder.maximumBufferedSize;
+        this.cursor = builder.cursor;
+        this.cursorHeader = builder.cursorHeader;
+    }
+
+    /**
+     * Writes every element to the stream as a JSON array.
+     *
+     * @param output The stream to write the body to.
+     * @throws IOException Exception thrown if writing the body fails.
+     */
+    @Override
+    public void writeTo(final OutputStream output) throws IOException {
+        try (JsonGenerator generator = objectWriter.getFactory().createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            while (elements.hasNext()) {
+                objectWriter.writeValue(generator, elements.next());
+            }
+            generator.writeEndArray();
+        } finally {
+            closeResource();
+        }
+    }
+
+    /**
+     * Writes elements to the buffer as a JSON array until the next would exceed the maximum
+     * buffered size, and sets the cursor of the last element written on the response.
+     *
+     * @param output The buffer to write the body to.
+     * @param response The buffered response.
+     * @throws IOException Exception thrown if writing the body fails, or it is too large and
+     *                     there is no cursor.
+     */
+    @Override
+    public void writeBuffered(final OutputStream output, final AwsProxyResponse response) throws IOException {
+        try {
+            output.write(START_ARRAY);
+            long size = START_ARRAY.length + END_ARRAY.length;
+            T last = null;
+            boolean first = true;
+            while (elements.hasNext()) {
+                final T element = elements.next();
+                final byte[] value = objectWriter.writeValueAsBytes(element);
+                final int separator = first ? 0 : SEPARATOR.length;
+                if (size + separator + value.length > maximumBufferedSize) {
+                    truncate(response, last, first);
+                    break;
+                }
+                if (!first) {
+                    output.write(SEPARATOR);
+                }
+                output.write(value);
+                size += separator + value.length;
+                last = element;
+                first = false;
+            }
+            output.write(END_ARRAY);
+        } finally {
+            closeResource();
+        }
+    }
+
+    private void truncate(final AwsProxyResponse response, final T last, final boolean empty) throws IOException {
+        if (cursor == null || empty) {
+            throw new IOException("JSON array body exceeds the maximum buffered size of "
+                + maximumBufferedSize + " bytes");
+        }
+        if (response.getMultiValueHeaders() == null) {
+            response.setMultiValueHeaders(new Headers());
+        }
+        response.getMultiValueHeaders().putSingle(cursorHeader, cursor.apply(last));
+    }
+
+    private void closeResource() throws IOException {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (final IOException | RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IOException("Failed to close the elements of a JSON array body", e);
+        }
+    }
+
+    /**
+     * Creates a builder for a body with the elements produced by the iterator. If the iterator
+     * is {@link AutoCloseable}, it is closed once the body has been written.
+     *
+     * @param <T> The type of the elements.
+     * @param elements The elements of the array.
+     * @param writer The writer used to serialize each element.
+     * @return A new builder.
+     */
+    public static <T> Builder<T> builder(final Iterator<? extends T> elements, final ObjectWriter writer) {
+        return new Builder<>(elements, elements instanceof AutoCloseable ? (AutoCloseable) elements : null, writer);
+    }
+
+    /**
+     * Creates a builder for a body with the elements of the stream, which is closed once the
+     * body has been written.
+     *
+     * @param <T> The type of the elements.
+     * @param elements The elements of the array.
+     * @param writer The writer used to serialize each element.
+     * @return A new builder.
+     */
+    public static <T> Builder<T> builder(final Stream<? extends T> elements, final ObjectWriter writer) {
+        if (elements == null) {
+            throw new IllegalArgumentException("Elements must not be null");
+        }
+        return new Builder<>(elements.iterator(), elements, writer);
+    }
+
+    /**
+     * Builder for {@link JsonArrayBody}.
+     *
+     * @param <T> The type of the elements.
+     */
+    public static final class Builder<T> {
+        private final Iterator<? extends T> elements;
+        private final AutoCloseable resource;
+        private final ObjectWriter objectWriter;
+        private int maximumBufferedSize = DEFAULT_MAXIMUM_BUFFERED_SIZE;
+        private Function<? super T, String> cursor;
+        private String cursorHeader = DEFAULT_CURSOR_HEADER;
+
+        private Builder(final Iterator<? extends T> elements, final AutoCloseable resource,
+                        final ObjectWriter writer) {
+            if (elements == null) {
+                throw new IllegalArgumentException("Elements must not be null");
+            }
+            if (writer == null) {
+                throw new IllegalArgumentException("Object writer must not be null");
+            }
+            this.elements = elements;
+            this.resource = resource;
+            this.objectWriter = writer;
+        }
+
+        /**
+         * Sets the maximum size of the body when it is buffered rather than streamed. Defaults to
+         * 4 MiB, which leaves room within Lambda's 6 MB response payload for the escaping of the
+         * body as a JSON string.
+         *
+         * @param bytes The maximum size of the body, in bytes.
+         * @return The builder instance.
+         */
+        public Builder<T> withMaximumBufferedSize(final int bytes) {
+            if (bytes <= START_ARRAY.length + END_ARRAY.length) {
+                throw new IllegalArgumentException("Maximum buffered size is too small: " + bytes);
+            }
+            maximumBufferedSize = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the function which gives the cursor of an element, from which the client can request
+         * the elements after it. If a buffered body is cut short, the cursor of its last element is
+         * sent in the cursor header.
+         *
+         * @param elementCursor The function which gives the cursor of an element.
+         * @return The builder instance.
+         */
+        public Builder<T> withCursor(final Function<? super T, String> elementCursor) {
+            if (elementCursor == null) {
+                throw new IllegalArgumentException("Cursor function must not be null");
+            }
+            cursor = elementCursor;
+            return this;
+        }
+
+        /**
+         * Sets the name of the header which carries the cursor. Defaults to {@code X-Next-Cursor}.
+         *
+         * @param name The name of the header.
+         * @return The builder instance.
+         */
+        public Builder<T> withCursorHeader(final String name) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("Cursor header must not be empty");
+            }
+            cursorHeader = name;
+            return this;
+        }
+
+        /**
+         * Builds the body.
+         *
+         * @return The body.
+         */
+        public JsonArrayBody<T> build() {
+            return new JsonArrayBody<>(this);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.streaming;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+
+import gg.sep.avenue.router.AbstractLambdaProxyHandler;
+import gg.sep.avenue.router.AwsResponseBuilder;
+
+/**
+ * A response whose body is produced while it is being sent, rather than held in memory.
+ *
+ * <p>If response streaming is enabled on the handler, see
+ * {@link AbstractLambdaProxyHandler#setResponseStreaming(boolean)}, the status code and headers are
+ * sent first and the body is then written directly to the Lambda's output stream, so it is not
+ * limited by the size of a buffered response, and the client receives its first bytes as soon as
+ * they are written. Otherwise, the body is written to a buffer and sent as an ordinary response.
+ * If writing a streamed body fails, the response is aborted rather than completed, so the
+ * invocation is reported as failed instead of the partial body being received as a whole one.
+ *
+ * <p>Streamed bodies are sent as-is: they are not compressed, ETags are not computed from them,
+ * and they are never cached. Streaming responses are usually built with
+ * {@link AwsResponseBuilder#streamingBody(BodyWriter)} or {@link AwsResponseBuilder#chunkedBody(Iterator)}.
+ */
+public class StreamingResponse extends AwsProxyResponse {
+
+    private final BodyWriter bodyWriter;
+
+    /**
+     * Writes the body of a {@link StreamingResponse}.
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+        /**
+         * Writes the body to the stream. The stream must not be closed.
+         *
+         * <p>Each call to {@link OutputStream#flush()} sends the bytes written so far to the client.
+         *
+         * @param output The stream to write the body to.
+         * @throws IOException Exception thrown if writing the body fails.
+         */
+        void writeTo(OutputStream output) throws IOException;
+
+        /**
+         * Writes the body to the buffer of a response which is not streamed. By default, the
+         * whole body is written as by {@link #writeTo(OutputStream)}, but writers may limit the
+         * size of the body, and describe how it was limited on the response's headers.
+         *
+         * @param output The buffer to write the body to.
+         * @param response The buffered response, whose body is set once it has been written.
+         * @throws IOException Exception thrown if writing the body fails.
+         */
+        default void writeBuffered(OutputStream output, AwsProxyResponse response) throws IOException {
+            writeTo(output);
+        }
+    }
+
+    /**
+     * Creates a streaming response.
+     *
+     * @param statusCode The status code of the response.
+     * @param headers The headers of the response, or {@code null} if it has none.
+     * @param bodyWriter Writes the body of the response.
+     */
+    public StreamingResponse(final int statusCode, final Headers headers, final BodyWriter bodyWriter) {
+        super(statusCode, headers == null ? new Headers() : headers);
+        if (bodyWriter == null) {
+            throw new IllegalArgumentException("Body writer must not be null");
+        }
+        this.bodyWriter = bodyWriter;
+    }
+
+    /**
+     * Creates a body writer which writes each of the chunks, in order, flushing after each one so
+     * that it is sent to the client as soon as it is produced.
+     *
+     * @param chunks The chunks of the body, which are produced as they are iterated.
+     * @return The body writer.
+     */
+    public static BodyWriter chunks(final Iterator<byte[]> chunks) {
+        return output -> {
+            while (chunks.hasNext()) {
+                output.write(chunks.next());
+                output.flush();
+            }
+        };
+    }
+
+    /**
+     * Writes the body to the stream.
+     *
+     * @param output The stream to write the body to, which is not closed.
+     * @throws IOException Exception thrown if writing the body fails.
+     */
+    public void writeBody(final OutputStream output) throws IOException {
+        bodyWriter.writeTo(output);
+    }
+
+    /**
+     * Writes the body to a buffer, as by {@link BodyWriter#writeBuffered(OutputStream, AwsProxyResponse)},
+     * and returns an ordinary response with the same status code and headers, whose body is the
+     * buffered body. Unless the response is marked as
+     * Base64 encoded, the body is decoded as UTF-8 text.
+     *
+     * @return The buffered response.
+     * @throws IOException Exception thrown if writing the body fails.
+     */
+    public AwsProxyResponse buffer() throws IOException {
+        final AwsProxyResponse response = new AwsProxyResponse(getStatusCode(), getMultiValueHeaders());
+        response.setHeaders(getHeaders());
+        response.setStatusDescription(getStatusDescription());
+        response.setBase64Encoded(isBase64Encoded());
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        bodyWriter.writeBuffered(body, response);
+        response.setBody(isBase64Encoded()
+            ? Base64.getEncoder().encodeToString(body.toByteArray())
+            : new String(body.toByteArray(), StandardCharsets.UTF_8));
+        return response;
+    }
+}
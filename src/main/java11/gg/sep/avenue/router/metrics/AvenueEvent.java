@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * Base class for the JFR events emitted for each {@link InvocationPhase}.
+ *
+ * <p>The status code and body size are only known once the response has been serialized,
+ * so they are left unset on the events for earlier phases.
+ */
+@Category({"Avenue", "Router"})
+@StackTrace(false)
+abstract class AvenueEvent extends Event {
+
+    @Label("HTTP Method")
+    String httpMethod;
+
+    @Label("Path")
+    String path;
+
+    @Label("Route Template")
+    String routeTemplate;
+
+    @Label("Status Code")
+    int statusCode;
+
+    @Label("Body Size")
+    @DataAmount
+    long bodySize;
+
+    /**
+     * Populates the event's fields from the invocation record.
+     *
+     * @param record The invocation record.
+     */
+    void populate(final InvocationRecord record) {
+        final AwsProxyRequest request = record.getRequest();
+        if (request != null) {
+            httpMethod = request.getHttpMethod();
+            path = request.getPath();
+        }
+        final Route route = record.getRoute();
+        if (route != null) {
+            routeTemplate = route.getRoutePath();
+        }
+        statusCode = record.getStatusCode();
+        bodySize = record.getResponseBytes();
+    }
+}
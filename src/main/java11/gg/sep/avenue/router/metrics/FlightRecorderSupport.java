@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import jdk.jfr.EventType;
+
+/**
+ * Bridge between {@link InvocationRecord} and JDK Flight Recorder.
+ *
+ * <p>This is the Java 11 implementation, packaged into {@code META-INF/versions/11}
+ * of the multi-release JAR. Each {@link InvocationPhase} is recorded as its own event type.
+ * When the events are not enabled in any recording, no event is allocated and the only cost
+ * is the enabled check against the phase's shared {@link EventType}.
+ */
+final class FlightRecorderSupport {
+
+    private static final Map<InvocationPhase, EventType> EVENT_TYPES = new EnumMap<>(InvocationPhase.class);
+    private static final Map<InvocationPhase, Supplier<AvenueEvent>> EVENT_FACTORIES =
+        new EnumMap<>(InvocationPhase.class);
+
+    static {
+        register(InvocationPhase.PARSE, RequestParseEvent.class, RequestParseEvent::new);
+        register(InvocationPhase.MATCH, RouteMatchEvent.class, RouteMatchEvent::new);
+        register(InvocationPhase.BIND, ParameterBindEvent.class, ParameterBindEvent::new);
+        register(InvocationPhase.INVOKE, RouteInvokeEvent.class, RouteInvokeEvent::new);
+        register(InvocationPhase.SERIALIZE, ResponseSerializeEvent.class, ResponseSerializeEvent::new);
+    }
+
+    private FlightRecorderSupport() {
+    }
+
+    /**
+     * Begins the event for a phase.
+     *
+     * @param phase The phase which is starting.
+     * @return An opaque event handle to pass to {@link #commit(Object, InvocationRecord)},
+     *         or {@code null} if the phase's event is not enabled.
+     */
+    static Object begin(final InvocationPhase phase) {
+        final EventType eventType = EVENT_TYPES.get(phase);
+        if (eventType == null) {
+            throw new IllegalArgumentException("Unknown invocation phase: " + phase);
+        }
+        if (!eventType.isEnabled()) {
+            return null;
+        }
+        final AvenueEvent event = EVENT_FACTORIES.get(phase).get();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits an event previously returned by {@link #begin(InvocationPhase)}.
+     *
+     * @param event The event handle, which may be {@code null}.
+     * @param record The invocation record used to populate the event's fields.
+     */
+    static void commit(final Object event, final InvocationRecord record) {
+        if (event == null) {
+            return;
+        }
+        final AvenueEvent avenueEvent = (AvenueEvent) event;
+        avenueEvent.end();
+        if (avenueEvent.shouldCommit()) {
+            avenueEvent.populate(record);
+            avenueEvent.commit();
+        }
+    }
+
+    private static void register(final InvocationPhase phase, final Class<? extends AvenueEvent> eventClass,
+                                 final Supplier<AvenueEvent> factory) {
+        EVENT_TYPES.put(phase, EventType.getEventType(eventClass));
+        EVENT_FACTORIES.put(phase, factory);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.server;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Bridge to virtual threads for the {@link EmbeddedServer}.
+ *
+ * <p>This is the Java 21 implementation, packaged into {@code META-INF/versions/21} of the
+ * multi-release JAR. Pinning is detected using the JDK's {@code jdk.VirtualThreadPinned}
+ * Flight Recorder event, which is emitted when a virtual thread blocks while it can not
+ * unmount from its carrier, eg: inside a {@code synchronized} block or a native frame.
+ */
+@Log4j2
+final class VirtualThreadSupport {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private VirtualThreadSupport() {
+    }
+
+    /**
+     * Checks whether virtual threads are available on the running JVM.
+     *
+     * @return Always {@code true}.
+     */
+    static boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Creates an executor which runs each task on a new virtual thread.
+     *
+     * @param namePrefix The prefix of the virtual threads' names.
+     * @return The executor.
+     */
+    static ExecutorService newVirtualThreadExecutor(final String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+    }
+
+    /**
+     * Starts logging virtual threads which are pinned to their carrier thread for longer than
+     * the threshold, along with the stack trace of the blocking call.
+     *
+     * @param threshold The pinned duration above which a warning is logged.
+     * @return A handle which stops the monitoring when closed.
+     */
+    static Closeable monitorPinning(final Duration threshold) {
+        final RecordingStream stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, VirtualThreadSupport::logPinned);
+        stream.startAsync();
+        return stream::close;
+    }
+
+    private static void logPinned(final RecordedEvent event) {
+        final StringBuilder stack = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            for (final RecordedFrame frame : event.getStackTrace().getFrames()) {
+                stack.append(System.lineSeparator()).append("\tat ")
+                    .append(frame.getMethod().getType().getName()).append('.')
+                    .append(frame.getMethod().getName()).append(':').append(frame.getLineNumber());
+            }
+        }
+        final String thread = event.getThread() == null ? "unknown" :
+            event.getThread().getJavaName() + "#" + event.getThread().getJavaThreadId();
+        log.warn("Virtual thread {} was pinned to its carrier for {} ms{}",
+            thread, event.getDuration().toMillis(), stack);
+    }
+}
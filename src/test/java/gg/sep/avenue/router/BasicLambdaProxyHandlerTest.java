@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.compression.ResponseCompression;
+import gg.sep.avenue.router.metrics.InitTimings;
+import gg.sep.avenue.router.metrics.InvocationListener;
+import gg.sep.avenue.router.metrics.InvocationPhase;
+import gg.sep.avenue.router.metrics.InvocationRecord;
+
+/**
+ * Unit tests for {@link BasicLambdaProxyHandler}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class BasicLambdaProxyHandlerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static class HandlerTestController extends AbstractRouteController {
+        @GET(paths = "/hello/<string:name>")
+        public AwsProxyResponse hello(@Path("name") final String name) {
+            return AwsResponseBuilder.newBuilder()
+                .html()
+                .stringBody("Hello, " + name)
+                .build();
+        }
+
+        @GET(paths = "/error")
+        public AwsProxyResponse error() {
+            throw new IllegalStateException("error");
+        }
+
+        @GET(paths = "/async/<string:name>")
+        public CompletableFuture<AwsProxyResponse> helloAsync(@Path("name") final String name) {
+            return CompletableFuture.supplyAsync(() -> hello(name));
+        }
+
+        @GET(paths = "/async-error")
+        public CompletionStage<AwsProxyResponse> errorAsync() {
+            return CompletableFuture.supplyAsync(this::error);
+        }
+
+        @GET(paths = "/async-pending")
+        public CompletableFuture<AwsProxyResponse> pendingAsync() {
+            return PENDING;
+        }
+
+        @GET(paths = "/slow")
+        public AwsProxyResponse slow() {
+            try {
+                Thread.sleep(10_000);
+            } catch (final InterruptedException e) {
+                SLOW_INTERRUPTED.countDown();
+            }
+            return hello("slow");
+        }
+
+        @GET(paths = "/budget")
+        public AwsProxyResponse budget() {
+            return AwsResponseBuilder.newBuilder()
+                .stringBody(String.valueOf(Deadline.current().remainingMillis()))
+                .build();
+        }
+
+        // not a route: the stage is not of AwsProxyResponse
+        @GET(paths = "/async-string")
+        public CompletableFuture<String> stringAsync() {
+            return CompletableFuture.completedFuture("string");
+        }
+    }
+
+    private static final CompletableFuture<AwsProxyResponse> PENDING = new CompletableFuture<>();
+    private static final CountDownLatch SLOW_INTERRUPTED = new CountDownLatch(1);
+
+    public static class TestHandler extends BasicLambdaProxyHandler {
+        public TestHandler() {
+            super();
+            registerController(new HandlerTestController());
+        }
+    }
+
+    private TestHandler handler;
+    private List<InvocationRecord> records;
+
+    @BeforeEach
+    void setUp() {
+        handler = new TestHandler();
+        records = new ArrayList<>();
+        handler.addInvocationListener(records::add);
+    }
+
+    private AwsProxyResponse handle(final AwsProxyRequestBuilder request) throws Exception {
+        return handle(request, new TestLambdaContext());
+    }
+
+    private AwsProxyResponse handle(final AwsProxyRequestBuilder request, final Context context) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(request.buildStream(), output, context);
+        return MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+    }
+
+    private static Context contextWithRemainingTime(final int remainingMillis) {
+        final Context context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(remainingMillis);
+        return context;
+    }
+
+    @Test
+    void handleRequest_MatchingRoute_InvokesRouteAndNotifiesListeners() throws Exception {
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/hello/world", "GET"));
+        assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+        assertEquals("Hello, world", response.getBody());
+
+        assertEquals(1, records.size());
+        final InvocationRecord record = records.get(0);
+        assertEquals("GET /hello/<string:name>", record.getRouteKey());
+        assertEquals(HttpStatus.SC_OK, record.getStatusCode());
+        assertTrue(record.getResponseBytes() > 0);
+        assertTrue(record.getTotalNanos() > 0);
+        assertTrue(record.getPhaseNanos(InvocationPhase.PARSE) > 0);
+        assertTrue(record.getTotalNanos() >= record.getPhaseNanos(InvocationPhase.INVOKE));
+    }
+
+    @Test
+    void handleRequest_NoRoute_Returns404() throws Exception {
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/missing", "GET"));
+        assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+        assertEquals(1, records.size());
+        assertNull(records.get(0).getRoute());
+        assertEquals("UNMATCHED", records.get(0).getRouteKey());
+        assertEquals(HttpStatus.SC_NOT_FOUND, records.get(0).getStatusCode());
+    }
+
+    @Test
+    void handleRequest_RouteThrows_Returns500() throws Exception {
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/error", "GET"));
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertEquals(1, records.size());
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, records.get(0).getStatusCode());
+    }
+
+    @Test
+    void handleRequest_RouteThrows_RecordsErrorResponseSize() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new AwsProxyRequestBuilder("/error", "GET").buildStream(), output,
+            new TestLambdaContext());
+        assertTrue(output.size() > 0);
+        assertEquals(output.size(), records.get(0).getResponseBytes());
+    }
+
+    @Test
+    void handleRequest_FirstInvocation_IsMarkedColdStart() throws Exception {
+        AbstractLambdaProxyHandler.resetColdStart();
+        handle(new AwsProxyRequestBuilder("/hello/world", "GET"));
+        handle(new AwsProxyRequestBuilder("/hello/world", "GET"));
+
+        assertTrue(records.get(0).isColdStart());
+        final InitTimings initTimings = records.get(0).getInitTimings();
+        assertEquals(1, initTimings.getControllerCount());
+        assertEquals(7, initTimings.getRouteCount());
+        assertTrue(initTimings.getRegisterControllerNanos() >= initTimings.getRouteBuildNanos());
+        assertTrue(initTimings.getConstructionNanos() >= initTimings.getRegisterControllerNanos());
+        assertFalse(records.get(1).isColdStart());
+    }
+
+    @Test
+    void handleRequest_ResourceAccountingEnabled_RecordsAllocation() throws Exception {
+        assertTrue(handler.enableResourceAccounting());
+        handle(new AwsProxyRequestBuilder("/hello/world", "GET"));
+        assertTrue(records.get(0).getAllocatedBytes() > 0);
+        assertTrue(records.get(0).getCpuNanos() >= 0);
+    }
+
+    @Test
+    void handleRequest_ListenerThrows_ResponseStillSent() throws Exception {
+        handler.addInvocationListener(record -> {
+            throw new IllegalStateException("listener failure");
+        });
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/hello/world", "GET"));
+        assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+    }
+
+    @Test
+    void addInvocationListener_MultipleListeners_RegistersOneShutdownHookWhichFlushes() {
+        final Thread hook = handler.getListenerShutdownHook();
+        assertNotNull(hook);
+        final List<String> flushed = new ArrayList<>();
+        handler.addInvocationListener(new InvocationListener() {
+            @Override
+            public void onInvocation(final InvocationRecord record) {
+            }
+
+            @Override
+            public void flush() {
+                throw new IllegalStateException("flush failure");
+            }
+        });
+        handler.addInvocationListener(new InvocationListener() {
+            @Override
+            public void onInvocation(final InvocationRecord record) {
+            }
+
+            @Override
+            public void flush() {
+                flushed.add("flushed");
+            }
+        });
+        assertSame(hook, handler.getListenerShutdownHook());
+        assertTrue(Runtime.getRuntime().removeShutdownHook(hook));
+
+        hook.run();
+        assertEquals(1, flushed.size());
+    }
+
+    @Test
+    void addInvocationListener_NoListeners_RegistersNoShutdownHook() {
+        assertNull(new TestHandler().getListenerShutdownHook());
+    }
+
+    @Test
+    void handleRequest_AsyncRoute_WaitsForResponse() throws Exception {
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/async/world", "GET"));
+        assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+        assertEquals("Hello, world", response.getBody());
+        assertEquals("GET /async/<string:name>", records.get(0).getRouteKey());
+    }
+
+    @Test
+    void handleRequest_AsyncRouteFails_Returns500() throws Exception {
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/async-error", "GET"));
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, records.get(0).getStatusCode());
+    }
+
+    @Test
+    void handleRequest_AsyncRoutePastDeadline_CancelsAndReturns504() throws Exception {
+        handler.setTimeoutMargin(Duration.ofMillis(300));
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/async-pending", "GET"),
+            contextWithRemainingTime(400));
+
+        assertEquals(HttpStatus.SC_GATEWAY_TIMEOUT, response.getStatusCode());
+        assertEquals(HttpStatus.SC_GATEWAY_TIMEOUT, records.get(0).getStatusCode());
+        assertTrue(records.get(0).getTotalNanos() < TimeUnit.MILLISECONDS.toNanos(400));
+        assertTrue(PENDING.isCancelled());
+    }
+
+    @Test
+    void handleRequest_BlockingRoutePastDeadline_InterruptsAndReturns504() throws Exception {
+        handler.enableBlockingRouteTimeouts();
+        handler.setTimeoutMargin(Duration.ofMillis(300));
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/slow", "GET"),
+            contextWithRemainingTime(400));
+
+        assertEquals(HttpStatus.SC_GATEWAY_TIMEOUT, response.getStatusCode());
+        assertTrue(SLOW_INTERRUPTED.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void enableBlockingRouteTimeouts_Default_BoundedPool() {
+        handler.enableBlockingRouteTimeouts();
+        final ThreadPoolExecutor executor = (ThreadPoolExecutor) handler.getBlockingRouteExecutor();
+        assertEquals(32, executor.getMaximumPoolSize());
+        assertTrue(executor.allowsCoreThreadTimeOut());
+    }
+
+    @Test
+    void enableBlockingRouteTimeouts_SuppliedExecutor_RunsRoutes() throws Exception {
+        final AtomicInteger threads = new AtomicInteger();
+        final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            threads.incrementAndGet();
+            return new Thread(runnable);
+        });
+        try {
+            handler.enableBlockingRouteTimeouts(executor);
+            final long budget = Long.parseLong(handle(new AwsProxyRequestBuilder("/budget", "GET"),
+                contextWithRemainingTime(10_000)).getBody());
+            assertTrue(budget > 9_000 && budget <= 9_750);
+            assertEquals(1, threads.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void handleRequest_LessThanMarginRemaining_Returns503WithoutInvoking() throws Exception {
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/hello/world", "GET"),
+            contextWithRemainingTime(100));
+
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertNull(records.get(0).getRoute());
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, records.get(0).getStatusCode());
+    }
+
+    @Test
+    void handleRequest_RouteQueriesDeadline_SeesRemainingTimeLessMargin() throws Exception {
+        final long budget = Long.parseLong(handle(new AwsProxyRequestBuilder("/budget", "GET"),
+            contextWithRemainingTime(10_000)).getBody());
+        assertTrue(budget > 9_000 && budget <= 9_750);
+
+        handler.enableBlockingRouteTimeouts();
+        final long blockingBudget = Long.parseLong(handle(new AwsProxyRequestBuilder("/budget", "GET"),
+            contextWithRemainingTime(10_000)).getBody());
+        assertTrue(blockingBudget > 9_000 && blockingBudget <= 9_750);
+
+        final AwsProxyResponse noContext = handle(new AwsProxyRequestBuilder("/budget", "GET"), null);
+        assertEquals(Long.MAX_VALUE, Long.parseLong(noContext.getBody()));
+        assertFalse(Deadline.current().isLimited());
+    }
+
+    @Test
+    void getRoutes_StageOfOtherType_NotARoute() throws Exception {
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/async-string", "GET"));
+        assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void dispatch_AsyncRoute_CompletesWithoutBlocking() throws Exception {
+        final CompletableFuture<AwsProxyResponse> pending = handler
+            .dispatch(new AwsProxyRequestBuilder("/async/world", "GET").build()).toCompletableFuture();
+        assertEquals("Hello, world", pending.get().getBody());
+        assertEquals(1, records.size());
+        assertEquals(HttpStatus.SC_OK, records.get(0).getStatusCode());
+
+        final AwsProxyResponse error = handler
+            .dispatch(new AwsProxyRequestBuilder("/async-error", "GET").build()).toCompletableFuture().get();
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, error.getStatusCode());
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, records.get(1).getStatusCode());
+    }
+
+    @Test
+    void handleRequest_CompressionEnabled_CompressesResponse() throws Exception {
+        handler.setResponseCompression(ResponseCompression.builder().build());
+        final StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            name.append('a');
+        }
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/hello/" + name, "GET")
+            .header("Accept-Encoding", "gzip"));
+
+        assertTrue(response.isBase64Encoded());
+        assertEquals("gzip", response.getMultiValueHeaders().getFirst("Content-Encoding"));
+        assertTrue(records.get(0).getResponseBytes() < 1000);
+    }
+}
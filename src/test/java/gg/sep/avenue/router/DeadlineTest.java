@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import com.amazonaws.serverless.proxy.internal.testutils.MockLambdaContext;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link Deadline}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class DeadlineTest {
+
+    @Test
+    void none_NeverExpires() {
+        final Deadline deadline = Deadline.none();
+        assertFalse(deadline.isLimited());
+        assertFalse(deadline.isExpired());
+        assertEquals(Long.MAX_VALUE, deadline.remainingMillis());
+        assertSame(deadline, deadline.minus(Duration.ofDays(1)));
+    }
+
+    @Test
+    void after_Timeout_ExpiresAfterTimeout() {
+        final Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+        assertTrue(deadline.isLimited());
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.remainingMillis() > 9_000 && deadline.remainingMillis() <= 10_000);
+    }
+
+    @Test
+    void minus_MoreThanRemaining_IsExpired() {
+        final Deadline deadline = Deadline.after(Duration.ofMillis(100)).minus(Duration.ofMillis(200));
+        assertTrue(deadline.isExpired());
+        assertEquals(0, deadline.remainingMillis());
+        assertEquals(Duration.ZERO, deadline.remaining());
+    }
+
+    @Test
+    void fromContext_NullContext_IsNone() {
+        assertSame(Deadline.none(), Deadline.fromContext(null));
+    }
+
+    @Test
+    void fromContext_NoRemainingTime_IsExpired() {
+        final Deadline deadline = Deadline.fromContext(new MockLambdaContext());
+        assertTrue(deadline.isLimited());
+        assertTrue(deadline.isExpired());
+        assertEquals(0, deadline.remainingMillis());
+    }
+
+    @Test
+    void fromContext_RemainingTime_ExpiresWithContext() {
+        final Deadline deadline = Deadline.fromContext(new TestLambdaContext());
+        assertTrue(deadline.isLimited());
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.remainingMillis() <= TestLambdaContext.REMAINING_TIME_MILLIS);
+    }
+
+    @Test
+    void current_NotSet_IsNone() {
+        assertSame(Deadline.none(), Deadline.current());
+        final Deadline deadline = Deadline.after(Duration.ofSeconds(1));
+        Deadline.setCurrent(deadline);
+        assertSame(deadline, Deadline.current());
+        Deadline.setCurrent(null);
+        assertSame(Deadline.none(), Deadline.current());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.cache.ETagGenerator;
+import gg.sep.avenue.router.cache.HeapResponseCache;
+import gg.sep.avenue.router.compression.ResponseCompression;
+
+/**
+ * Unit tests for the handling of {@code HEAD} requests by {@link BasicLambdaProxyHandler}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class HeadRequestTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String TEXT = "h\u00e9llo \ud83d\ude00";
+
+    public static class DocumentController extends AbstractRouteController {
+        private final AtomicInteger getInvocations = new AtomicInteger();
+        private final AtomicInteger headInvocations = new AtomicInteger();
+        private final AtomicInteger chunksWritten = new AtomicInteger();
+
+        @GET(paths = "/text")
+        public AwsProxyResponse text() {
+            getInvocations.incrementAndGet();
+            return AwsResponseBuilder.newBuilder().setHeader("X-Version", "3").stringBody(TEXT).build();
+        }
+
+        @GET(paths = "/binary")
+        public AwsProxyResponse binary() {
+            return AwsResponseBuilder.newBuilder().binaryBody(new byte[] {0, 1, 2, 3, 4}).build();
+        }
+
+        @GET(paths = "/large")
+        public AwsProxyResponse large() {
+            final StringBuilder body = new StringBuilder();
+            for (int i = 0; i < 500; i++) {
+                body.append("repeated text ");
+            }
+            return AwsResponseBuilder.newBuilder().setHeader("Content-Type", "text/plain")
+                .stringBody(body.toString()).build();
+        }
+
+        @GET(paths = "/stream")
+        public AwsProxyResponse stream() {
+            return AwsResponseBuilder.newBuilder().streamingBody(output -> {
+                chunksWritten.incrementAndGet();
+                output.write("chunk".getBytes(StandardCharsets.UTF_8));
+            }).build();
+        }
+
+        @GET(paths = "/cached")
+        @Cached(ttl = 60)
+        public AwsProxyResponse cached() {
+            getInvocations.incrementAndGet();
+            return AwsResponseBuilder.newBuilder().stringBody("cached " + getInvocations.get()).build();
+        }
+
+        @GET(paths = "/document")
+        @Cached(ttl = 60)
+        public AwsProxyResponse document() {
+            getInvocations.incrementAndGet();
+            return AwsResponseBuilder.newBuilder().stringBody("full document").build();
+        }
+
+        @HEAD(paths = "/document")
+        public AwsProxyResponse documentMetadata() {
+            headInvocations.incrementAndGet();
+            return AwsResponseBuilder.newBuilder().setHeader("Content-Length", "13").build();
+        }
+    }
+
+    private final DocumentController controller = new DocumentController();
+    private final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandler() {
+        {
+            registerController(controller);
+        }
+    };
+
+    private static AwsProxyRequest head(final String path) {
+        return new AwsProxyRequestBuilder(path, "HEAD").build();
+    }
+
+    private AwsProxyResponse handle(final AwsProxyRequest request) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(MAPPER.writeValueAsBytes(request)), output,
+            new TestLambdaContext());
+        return MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+    }
+
+    @Test
+    void handleRequest_HeadForGetRoute_OmitsBody() throws Exception {
+        final AwsProxyResponse response = handle(head("/text"));
+
+        assertEquals(200, response.getStatusCode());
+        assertNull(response.getBody());
+        assertFalse(response.isBase64Encoded());
+        assertEquals("3", response.getMultiValueHeaders().getFirst("X-Version"));
+        assertEquals(String.valueOf(TEXT.getBytes(StandardCharsets.UTF_8).length),
+            response.getMultiValueHeaders().getFirst("Content-Length"));
+        assertEquals(1, controller.getInvocations.get());
+    }
+
+    @Test
+    void handleRequest_HeadForBinaryRoute_SendsDecodedLength() throws Exception {
+        final AwsProxyResponse response = handle(head("/binary"));
+        assertNull(response.getBody());
+        assertEquals("5", response.getMultiValueHeaders().getFirst("Content-Length"));
+    }
+
+    @Test
+    void handleRequest_HeadWithCompressionAndETags_MatchesGetHeaders() throws Exception {
+        handler.setResponseCompression(ResponseCompression.builder().build());
+        handler.setETagGenerator(ETagGenerator.builder().build());
+
+        final AwsProxyResponse get = handle(new AwsProxyRequestBuilder("/large", "GET")
+            .header("Accept-Encoding", "gzip").build());
+        final AwsProxyResponse head = handle(new AwsProxyRequestBuilder("/large", "HEAD")
+            .header("Accept-Encoding", "gzip").build());
+
+        assertNull(head.getBody());
+        assertEquals("gzip", head.getMultiValueHeaders().getFirst("Content-Encoding"));
+        assertEquals(get.getMultiValueHeaders().getFirst("ETag"), head.getMultiValueHeaders().getFirst("ETag"));
+        assertEquals(String.valueOf(Base64.getDecoder().decode(get.getBody()).length),
+            head.getMultiValueHeaders().getFirst("Content-Length"));
+    }
+
+    @Test
+    void handleRequest_HeadForStreamingRoute_BodyNotWritten() throws Exception {
+        final AwsProxyResponse response = handle(head("/stream"));
+        assertEquals(200, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(0, controller.chunksWritten.get());
+    }
+
+    @Test
+    void handleRequest_HeadRoute_PreferredOverGetRoute() throws Exception {
+        handler.setResponseCache(HeapResponseCache.builder().build());
+
+        final AwsProxyResponse head = handle(head("/document"));
+        assertNull(head.getBody());
+        assertEquals("13", head.getMultiValueHeaders().getFirst("Content-Length"));
+        assertEquals(1, controller.headInvocations.get());
+        assertEquals(0, controller.getInvocations.get());
+
+        assertEquals("full document", handle(new AwsProxyRequestBuilder("/document", "GET").build()).getBody());
+    }
+
+    @Test
+    void handleRequest_HeadForCachedGetRoute_DoesNotCacheEmptyBody() throws Exception {
+        handler.setResponseCache(HeapResponseCache.builder().build());
+
+        assertNull(handle(head("/cached")).getBody());
+        assertEquals("cached 2", handle(new AwsProxyRequestBuilder("/cached", "GET").build()).getBody());
+        assertEquals("cached 2", handle(new AwsProxyRequestBuilder("/cached", "GET").build()).getBody());
+        assertEquals(404, handle(head("/missing")).getStatusCode());
+        assertNull(handle(head("/missing")).getBody());
+    }
+
+    @Test
+    void dispatch_HeadForGetRoute_OmitsBody() throws Exception {
+        final AwsProxyResponse response = handler.dispatch(head("/text")).toCompletableFuture().get();
+        assertNull(response.getBody());
+        assertEquals(String.valueOf(TEXT.getBytes(StandardCharsets.UTF_8).length),
+            response.getMultiValueHeaders().getFirst("Content-Length"));
+    }
+}
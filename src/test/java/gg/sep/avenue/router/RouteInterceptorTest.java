@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.cache.HeapResponseCache;
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * Unit tests for {@link RouteInterceptor}s and their per-route chains.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class RouteInterceptorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.METHOD, ElementType.TYPE})
+    public @interface Authenticated {
+    }
+
+    @Retention(RetentionPolicy.CLASS)
+    public @interface CompileTimeOnly {
+    }
+
+    public static class PublicController extends AbstractRouteController {
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @GET(paths = "/public")
+        public AwsProxyResponse open() {
+            return respond("public");
+        }
+
+        @GET(paths = "/account")
+        @Authenticated
+        public AwsProxyResponse account() {
+            return respond("account");
+        }
+
+        @GET(paths = "/broken")
+        public AwsProxyResponse broken() {
+            throw new IllegalStateException("route failure");
+        }
+
+        @GET(paths = "/administrators")
+        public AwsProxyResponse administrators() {
+            return respond("administrators");
+        }
+
+        @GET(paths = "/report")
+        @Authenticated
+        @Cached(ttl = 60)
+        public AwsProxyResponse report() {
+            return respond("report " + invocations.get());
+        }
+
+        AwsProxyResponse respond(final String body) {
+            invocations.incrementAndGet();
+            return AwsResponseBuilder.newBuilder().stringBody(body).build();
+        }
+    }
+
+    @Authenticated
+    public static class AdminController extends AbstractRouteController {
+        @GET(paths = "/admin/<string:id>")
+        public AwsProxyResponse admin() {
+            return AwsResponseBuilder.newBuilder().stringBody("admin").build();
+        }
+    }
+
+    public static class AdminRoutes extends AbstractRouteController {
+        @GET(paths = "/admin")
+        public AwsProxyResponse adminIndex() {
+            return AwsResponseBuilder.newBuilder().stringBody("admin index").build();
+        }
+    }
+
+    /**
+     * Records its calls, and rejects requests without an {@code Authorization} header if it is strict.
+     */
+    static final class RecordingInterceptor implements RouteInterceptor {
+        private final String name;
+        private final List<String> calls;
+        private final boolean strict;
+
+        RecordingInterceptor(final String name, final List<String> calls, final boolean strict) {
+            this.name = name;
+            this.calls = calls;
+            this.strict = strict;
+        }
+
+        @Override
+        public AwsProxyResponse beforeInvoke(final Route route, final AwsProxyRequest request) {
+            calls.add(name + ":before:" + route.getRoutePath());
+            if (strict && request.getMultiValueHeaders().getFirst("Authorization") == null) {
+                return AwsResponseBuilder.newBuilder().status(401).stringBody("Unauthorized").build();
+            }
+            return null;
+        }
+
+        @Override
+        public AwsProxyResponse afterInvoke(final Route route, final AwsProxyRequest request,
+                                            final AwsProxyResponse response) {
+            calls.add(name + ":after:" + (response == null ? "failed" : response.getStatusCode()));
+            return response;
+        }
+    }
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private final PublicController controller = new PublicController();
+
+    private final class Handler extends BasicLambdaProxyHandler {
+        Handler() {
+            registerInterceptor(new RecordingInterceptor("log", calls, false), "/");
+            registerController(controller);
+            registerInterceptor(new RecordingInterceptor("auth", calls, true), Authenticated.class);
+        }
+
+        boolean intercepted(final String path) {
+            return findRoute(new AwsProxyRequestBuilder(path, "GET").build())
+                .orElseThrow(IllegalStateException::new).hasInterceptors();
+        }
+    }
+
+    private final Handler handler = new Handler();
+
+    private AwsProxyResponse handle(final AwsProxyRequestBuilder request) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(MAPPER.writeValueAsBytes(request.build())), output,
+            new TestLambdaContext());
+        return MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+    }
+
+    private static AwsProxyRequestBuilder get(final String path) {
+        return new AwsProxyRequestBuilder(path, "GET");
+    }
+
+    @Test
+    void handleRequest_AnnotatedRoute_RunsChainInOrder() throws Exception {
+        final AwsProxyResponse response = handle(get("/account").header("Authorization", "token"));
+
+        assertEquals("account", response.getBody());
+        assertEquals(4, calls.size());
+        assertEquals("log:before:/account", calls.get(0));
+        assertEquals("auth:before:/account", calls.get(1));
+        assertEquals("auth:after:200", calls.get(2));
+        assertEquals("log:after:200", calls.get(3));
+    }
+
+    @Test
+    void handleRequest_InterceptorAnswers_RouteNotInvoked() throws Exception {
+        final AwsProxyResponse response = handle(get("/account"));
+
+        assertEquals(401, response.getStatusCode());
+        assertEquals(0, controller.invocations.get());
+        assertEquals("log:before:/account", calls.get(0));
+        assertEquals("auth:before:/account", calls.get(1));
+        assertEquals("auth:after:401", calls.get(2));
+        assertEquals("log:after:401", calls.get(3));
+    }
+
+    @Test
+    void handleRequest_InterceptorAnswers_LaterInterceptorsNotUnwound() throws Exception {
+        handler.registerInterceptor(new RecordingInterceptor("audit", calls, false), "/account");
+        final AwsProxyResponse response = handle(get("/account"));
+
+        assertEquals(401, response.getStatusCode());
+        assertEquals(4, calls.size());
+        assertEquals("auth:before:/account", calls.get(1));
+        assertEquals("auth:after:401", calls.get(2));
+        assertEquals("log:after:401", calls.get(3));
+        assertFalse(calls.stream().anyMatch(call -> call.startsWith("audit:")));
+    }
+
+    @Test
+    void handleRequest_UnannotatedRoute_SkipsAnnotationInterceptor() throws Exception {
+        assertEquals("public", handle(get("/public")).getBody());
+        assertEquals(2, calls.size());
+        assertEquals("log:before:/public", calls.get(0));
+    }
+
+    @Test
+    void registerController_AnnotatedControllerClass_AppliesToAllItsRoutes() throws Exception {
+        handler.registerController(new AdminController());
+        assertEquals(401, handle(get("/admin/1")).getStatusCode());
+        assertEquals("admin", handle(get("/admin/1").header("Authorization", "token")).getBody());
+    }
+
+    @Test
+    void registerInterceptor_PathPrefix_AppliesToPathAndBelow() throws Exception {
+        handler.registerController(new AdminRoutes());
+        handler.registerController(new AdminController());
+        handler.registerInterceptor(new RecordingInterceptor("admin", calls, true), "/admin");
+
+        assertEquals(401, handle(get("/admin")).getStatusCode());
+        assertTrue(calls.contains("admin:before:/admin"));
+        handle(get("/admin/7").header("Authorization", "token"));
+        assertTrue(calls.contains("admin:before:/admin/<string:id>"));
+        calls.clear();
+        assertEquals("administrators", handle(get("/administrators")).getBody());
+        assertFalse(calls.stream().anyMatch(call -> call.startsWith("admin:")));
+    }
+
+    @Test
+    void handleRequest_CachedRoute_InterceptorRunsBeforeCache() throws Exception {
+        handler.setResponseCache(HeapResponseCache.builder().build());
+
+        assertEquals("report 0", handle(get("/report").header("Authorization", "token")).getBody());
+        assertEquals("report 0", handle(get("/report").header("Authorization", "token")).getBody());
+        assertEquals(401, handle(get("/report")).getStatusCode());
+        assertEquals(1, controller.invocations.get());
+    }
+
+    @Test
+    void handleRequest_InterceptorThrows_Returns500() throws Exception {
+        handler.registerInterceptor(new RouteInterceptor() {
+            @Override
+            public AwsProxyResponse beforeInvoke(final Route route, final AwsProxyRequest request) {
+                throw new IllegalStateException("interceptor failure");
+            }
+        }, "/public");
+
+        assertEquals(500, handle(get("/public")).getStatusCode());
+        assertEquals(0, controller.invocations.get());
+        assertEquals(Arrays.asList("log:before:/public", "log:after:failed"), calls);
+    }
+
+    @Test
+    void handleRequest_RouteThrows_UnwindsChainWithNullResponse() throws Exception {
+        handler.registerInterceptor(new RouteInterceptor() {
+            @Override
+            public AwsProxyResponse afterInvoke(final Route route, final AwsProxyRequest request,
+                                                final AwsProxyResponse response) {
+                throw new IllegalStateException("unwind failure");
+            }
+        }, "/broken");
+
+        assertEquals(500, handle(get("/broken")).getStatusCode());
+        assertEquals(Arrays.asList("log:before:/broken", "log:after:failed"), calls);
+    }
+
+    @Test
+    void dispatch_RouteThrows_UnwindsChainWithNullResponse() throws Exception {
+        final AwsProxyResponse response = handler.dispatch(get("/broken").build()).toCompletableFuture().get();
+
+        assertEquals(500, response.getStatusCode());
+        assertEquals(Arrays.asList("log:before:/broken", "log:after:failed"), calls);
+    }
+
+    @Test
+    void dispatch_InterceptedRoute_RunsChain() throws Exception {
+        final AwsProxyResponse rejected = handler.dispatch(get("/account").build()).toCompletableFuture().get();
+        assertEquals(401, rejected.getStatusCode());
+
+        calls.clear();
+        final AwsProxyResponse response = handler.dispatch(get("/account").header("Authorization", "token")
+            .build()).toCompletableFuture().get();
+        assertEquals("account", response.getBody());
+        assertEquals("log:after:200", calls.get(3));
+    }
+
+    @Test
+    void hasInterceptors_ResolvedAtRegistration() {
+        assertTrue(handler.intercepted("/public"));
+        assertFalse(new PublicController().getRoutes().iterator().next().hasInterceptors());
+    }
+
+    @Test
+    void registerInterceptor_InvalidSelectors_Throw() {
+        final RouteInterceptor interceptor = new RecordingInterceptor("invalid", calls, false);
+        assertThrows(IllegalArgumentException.class, () -> handler.registerInterceptor(interceptor, "admin"));
+        assertThrows(IllegalArgumentException.class,
+            () -> handler.registerInterceptor(interceptor, CompileTimeOnly.class));
+        assertThrows(IllegalArgumentException.class, () -> handler.registerInterceptor(null, "/"));
+    }
+}
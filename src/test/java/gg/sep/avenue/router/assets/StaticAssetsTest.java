@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.assets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import gg.sep.avenue.router.BasicLambdaProxyHandlerTest;
+import gg.sep.avenue.router.TestLambdaContext;
+
+/**
+ * Unit tests for {@link StaticAssets} and {@link StaticAsset}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class StaticAssetsTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Instant MODIFIED = Instant.parse("2019-12-01T10:15:30Z");
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0, (byte) 0xff};
+
+    @TempDir
+    Path root;
+
+    private String indexHtml;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        final StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 200; i++) {
+            html.append("<p>Paragraph ").append(i).append("</p>");
+        }
+        indexHtml = html.append("</body></html>").toString();
+        write("index.html", indexHtml.getBytes(StandardCharsets.UTF_8));
+        write("app.js", "console.log('hi');".getBytes(StandardCharsets.UTF_8));
+        write("img/logo.png", PNG);
+        write("docs/index.html", "<h1>Docs</h1>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void write(final String name, final byte[] content) throws IOException {
+        final Path file = root.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(MODIFIED.plusMillis(500)));
+    }
+
+    private StaticAssets assets() throws IOException {
+        return StaticAssets.builder().withPath("/static").withDirectory(root).build();
+    }
+
+    private static AwsProxyRequestBuilder get(final String path) {
+        return new AwsProxyRequestBuilder(path, "GET");
+    }
+
+    private static byte[] gunzip(final String base64) throws IOException {
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(base64)))) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    @Test
+    void select_TextAsset_SendsTextWithHeaders() throws Exception {
+        final AwsProxyResponse response = assets().select(get("/static/app.js").build()).getResponse();
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("console.log('hi');", response.getBody());
+        assertFalse(response.isBase64Encoded());
+        assertEquals("application/javascript; charset=utf-8", response.getMultiValueHeaders().getFirst("Content-Type"));
+        assertEquals("no-cache", response.getMultiValueHeaders().getFirst("Cache-Control"));
+        assertEquals("Sun, 1 Dec 2019 10:15:30 GMT", response.getMultiValueHeaders().getFirst("Last-Modified"));
+        assertTrue(response.getMultiValueHeaders().getFirst("ETag").startsWith("\""));
+        assertNull(response.getMultiValueHeaders().getFirst("Vary"));
+    }
+
+    @Test
+    void select_BinaryAsset_SendsBase64() throws Exception {
+        final AwsProxyResponse response = assets().select(get("/static/img/logo.png").build()).getResponse();
+
+        assertTrue(response.isBase64Encoded());
+        assertArrayEquals(PNG, Base64.getDecoder().decode(response.getBody()));
+        assertEquals("image/png", response.getMultiValueHeaders().getFirst("Content-Type"));
+    }
+
+    @Test
+    void select_AcceptsGzip_SendsPrecompressedVariant() throws Exception {
+        final StaticAssets assets = assets();
+        final AwsProxyResponse identity = assets.select(get("/static/index.html").build()).getResponse();
+        final AwsProxyResponse gzip = assets.select(get("/static/index.html")
+            .header("Accept-Encoding", "br, gzip;q=0.8").build()).getResponse();
+
+        assertEquals(indexHtml, identity.getBody());
+        assertEquals("Accept-Encoding", identity.getMultiValueHeaders().getFirst("Vary"));
+        assertEquals("gzip", gzip.getMultiValueHeaders().getFirst("Content-Encoding"));
+        assertTrue(gzip.isBase64Encoded());
+        assertEquals(indexHtml, new String(gunzip(gzip.getBody()), StandardCharsets.UTF_8));
+        assertNotEquals(identity.getMultiValueHeaders().getFirst("ETag"), gzip.getMultiValueHeaders().getFirst("ETag"));
+        assertSame(gzip, assets.select(get("/static/index.html").header("Accept-Encoding", "gzip").build())
+            .getResponse());
+        assertSame(identity, assets.select(get("/static/index.html").header("Accept-Encoding", "gzip;q=0").build())
+            .getResponse());
+    }
+
+    @Test
+    void select_HeadRequest_SendsHeadersOnly() throws Exception {
+        final AwsProxyResponse response = assets().select(new AwsProxyRequestBuilder("/static/index.html", "HEAD")
+            .build()).getResponse();
+
+        assertEquals(200, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(String.valueOf(indexHtml.length()), response.getMultiValueHeaders().getFirst("Content-Length"));
+        assertEquals("text/html; charset=utf-8", response.getMultiValueHeaders().getFirst("Content-Type"));
+    }
+
+    @Test
+    void select_ConditionalRequest_SendsNotModified() throws Exception {
+        final StaticAssets assets = assets();
+        final String eTag = assets.get("/static/app.js").getETag();
+
+        final AwsProxyResponse matched = assets.select(get("/static/app.js")
+            .header("If-None-Match", "\"other\", W/" + eTag).build()).getResponse();
+        assertEquals(304, matched.getStatusCode());
+        assertNull(matched.getBody());
+        assertEquals(eTag, matched.getMultiValueHeaders().getFirst("ETag"));
+        assertEquals("no-cache", matched.getMultiValueHeaders().getFirst("Cache-Control"));
+
+        assertEquals(200, assets.select(get("/static/app.js").header("If-None-Match", "\"other\"").build())
+            .getResponse().getStatusCode());
+        assertEquals(304, assets.select(get("/static/app.js")
+            .header("If-Modified-Since", "Sun, 01 Dec 2019 10:15:30 GMT").build()).getResponse().getStatusCode());
+        assertEquals(200, assets.select(get("/static/app.js")
+            .header("If-Modified-Since", "Sun, 01 Dec 2019 10:15:29 GMT").build()).getResponse().getStatusCode());
+        assertEquals(200, assets.select(get("/static/app.js")
+            .header("If-Modified-Since", "yesterday").build()).getResponse().getStatusCode());
+    }
+
+    @Test
+    void select_DirectoryOrUnknownPath() throws Exception {
+        final StaticAssets assets = assets();
+        assertEquals(indexHtml, assets.select(get("/static/").build()).getResponse().getBody());
+        assertEquals(indexHtml, assets.select(get("/static").build()).getResponse().getBody());
+        assertEquals("<h1>Docs</h1>", assets.select(get("/static/docs").build()).getResponse().getBody());
+        assertEquals("<h1>Docs</h1>", assets.select(get("/static/docs/").build()).getResponse().getBody());
+        assertNull(assets.select(get("/static/missing.js").build()));
+        assertNull(assets.select(get("/app.js").build()));
+        assertNull(assets.select(new AwsProxyRequestBuilder("/static/app.js", "POST").build()));
+    }
+
+    @Test
+    void build_Classpath_LoadsFromDirectoriesAndJars() throws Exception {
+        final Path jar = Files.createTempFile(root, "assets", ".jar");
+        try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(jar))) {
+            output.putNextEntry(new JarEntry("web/"));
+            output.closeEntry();
+            output.putNextEntry(new JarEntry("web/app.js"));
+            output.write("shadowed".getBytes(StandardCharsets.UTF_8));
+            output.closeEntry();
+            output.putNextEntry(new JarEntry("web/jar.txt"));
+            output.write("from jar".getBytes(StandardCharsets.UTF_8));
+            output.closeEntry();
+        }
+        final Path classes = root.resolve("classes");
+        Files.createDirectories(classes.resolve("web"));
+        Files.write(classes.resolve("web/app.js"), "from directory".getBytes(StandardCharsets.UTF_8));
+
+        try (URLClassLoader loader = new URLClassLoader(
+            new URL[] {classes.toUri().toURL(), jar.toUri().toURL()}, null)) {
+            final StaticAssets assets = StaticAssets.builder()
+                .withClasspath("/web/")
+                .withClassLoader(loader)
+                .build();
+            assertEquals("from directory", assets.select(get("/app.js").build()).getResponse().getBody());
+            assertEquals("from jar", assets.select(get("/jar.txt").build()).getResponse().getBody());
+        }
+    }
+
+    @Test
+    void payload_SerializedOncePerFormat() throws Exception {
+        final StaticAsset.Response response = assets().select(get("/static/app.js").build());
+        final AtomicInteger serialized = new AtomicInteger();
+        final StaticAsset.PayloadSerializer serializer = r -> {
+            serialized.incrementAndGet();
+            return MAPPER.writeValueAsBytes(r);
+        };
+
+        final byte[] first = response.payload("", serializer);
+        assertSame(first, response.payload("", serializer));
+        assertEquals(1, serialized.get());
+        response.payload("\u0000v2", serializer);
+        assertEquals(2, serialized.get());
+    }
+
+    @Test
+    void builder_InvalidValues_Throw() {
+        assertThrows(IllegalArgumentException.class, () -> StaticAssets.builder().withPath("static"));
+        assertThrows(IllegalArgumentException.class, () -> StaticAssets.builder().withClasspath(""));
+        assertThrows(IllegalArgumentException.class, () -> StaticAssets.builder().withMinimumCompressionSize(-1));
+        assertThrows(IllegalStateException.class, () -> StaticAssets.builder().build());
+    }
+
+    @Test
+    void handleRequest_StaticAsset_SendsPrebuiltResponse() throws Exception {
+        final BasicLambdaProxyHandlerTest.TestHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        handler.setStaticAssets(StaticAssets.builder().withPath("/hello/").withDirectory(root).build());
+
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            handler.handleRequest(get("/hello/app.js").buildStream(), output, new TestLambdaContext());
+            final AwsProxyResponse response = MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+            assertEquals("console.log('hi');", response.getBody());
+        }
+
+        final ByteArrayOutputStream v2Output = new ByteArrayOutputStream();
+        final byte[] v2Event = ("{\"version\": \"2.0\", \"rawPath\": \"/hello/app.js\", \"rawQueryString\": \"\","
+            + " \"headers\": {}, \"requestContext\": {\"http\": {\"method\": \"GET\"}}}")
+            .getBytes(StandardCharsets.UTF_8);
+        handler.handleRequest(new ByteArrayInputStream(v2Event), v2Output, new TestLambdaContext());
+        final JsonNode v2Response = MAPPER.readTree(v2Output.toByteArray());
+        assertEquals("application/javascript; charset=utf-8", v2Response.get("headers").get("Content-Type").asText());
+        assertFalse(v2Response.has("multiValueHeaders"));
+
+        // paths which are not assets are routed as usual
+        final OutputStream routed = new ByteArrayOutputStream();
+        handler.handleRequest(get("/hello/world").buildStream(), routed, new TestLambdaContext());
+        assertEquals("Hello, world", MAPPER.readValue(routed.toString(), AwsProxyResponse.class).getBody());
+
+        final AwsProxyResponse dispatched = handler.dispatch(get("/hello/app.js").build()).toCompletableFuture().get();
+        assertEquals("console.log('hi');", dispatched.getBody());
+    }
+}
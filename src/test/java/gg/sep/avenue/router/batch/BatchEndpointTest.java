@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AbstractRouteController;
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandlerTest;
+import gg.sep.avenue.router.GET;
+import gg.sep.avenue.router.TestLambdaContext;
+import gg.sep.avenue.router.metrics.InvocationRecord;
+
+/**
+ * Unit tests for {@link BatchEndpoint} and batch handling in
+ * {@link gg.sep.avenue.router.BasicLambdaProxyHandler}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class BatchEndpointTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static class PendingController extends AbstractRouteController {
+        @GET(paths = "/pending")
+        public CompletableFuture<AwsProxyResponse> pending() {
+            return new CompletableFuture<>();
+        }
+    }
+
+    public static class BatchTestHandler extends BasicLambdaProxyHandlerTest.TestHandler {
+        public BatchTestHandler() {
+            super();
+            registerController(new PendingController());
+        }
+    }
+
+    private final BatchEndpoint endpoint = BatchEndpoint.builder().withMaximumRequests(4).build();
+    private BatchTestHandler handler;
+    private List<InvocationRecord> records;
+
+    @BeforeEach
+    void setUp() {
+        handler = new BatchTestHandler();
+        handler.setBatchEndpoint(endpoint);
+        records = new CopyOnWriteArrayList<>();
+        handler.addInvocationListener(records::add);
+    }
+
+    private static AwsProxyRequestBuilder batch(final String body) {
+        return new AwsProxyRequestBuilder("/batch", "POST").body(body);
+    }
+
+    private JsonNode handle(final AwsProxyRequestBuilder request, final Context context) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(request.buildStream(), output, context);
+        final AwsProxyResponse response = MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+        assertEquals(200, response.getStatusCode());
+        return MAPPER.readTree(response.getBody());
+    }
+
+    @Test
+    void readRequests_ParsesSubRequests() {
+        final AwsProxyRequest batch = batch("[{\"method\": \"get\", \"path\": \"/items/1?fields=a%20b&x\","
+            + " \"headers\": {\"Accept\": \"application/json\", \"X-Tag\": [\"a\", \"b\"]}},"
+            + " {\"method\": \"POST\", \"path\": \"/items\", \"body\": \"{}\"}]")
+            .header("Authorization", "secret")
+            .build();
+        final List<AwsProxyRequest> requests = endpoint.readRequests(batch);
+
+        assertEquals(2, requests.size());
+        final AwsProxyRequest first = requests.get(0);
+        assertEquals("GET", first.getHttpMethod());
+        assertEquals("/items/1", first.getPath());
+        assertEquals("a b", first.getMultiValueQueryStringParameters().getFirst("fields"));
+        assertEquals("", first.getMultiValueQueryStringParameters().getFirst("x"));
+        assertEquals("application/json", first.getMultiValueHeaders().getFirst("accept"));
+        assertEquals(Arrays.asList("a", "b"), first.getMultiValueHeaders().get("X-Tag"));
+        assertNull(first.getMultiValueHeaders().get("Authorization"));
+        assertNull(first.getBody());
+        assertSame(batch.getRequestContext(), first.getRequestContext());
+
+        assertEquals("POST", requests.get(1).getHttpMethod());
+        assertEquals("{}", requests.get(1).getBody());
+        assertTrue(requests.get(1).getMultiValueQueryStringParameters().isEmpty());
+    }
+
+    @Test
+    void readRequests_InvalidBatch_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> endpoint.readRequests(batch("{}").build()));
+        assertThrows(IllegalArgumentException.class, () -> endpoint.readRequests(batch("[").build()));
+        assertThrows(IllegalArgumentException.class, () -> endpoint.readRequests(batch(null).build()));
+        assertThrows(IllegalArgumentException.class,
+            () -> endpoint.readRequests(batch("[{\"method\": \"GET\"}]").build()));
+        assertThrows(IllegalArgumentException.class,
+            () -> endpoint.readRequests(batch("[{\"method\": \"GET\", \"path\": \"relative\"}]").build()));
+        assertThrows(IllegalArgumentException.class,
+            () -> endpoint.readRequests(batch("[{\"method\": \"POST\", \"path\": \"/batch?a=b\"}]").build()));
+        final String five = String.join(",", Collections.nCopies(5, "{\"method\": \"GET\", \"path\": \"/\"}"));
+        assertThrows(IllegalArgumentException.class, () -> endpoint.readRequests(batch("[" + five + "]").build()));
+    }
+
+    @Test
+    void matches_PostToPath() {
+        assertTrue(endpoint.matches(batch("[]").build()));
+        assertEquals(false, endpoint.matches(new AwsProxyRequestBuilder("/batch", "GET").build()));
+        assertEquals(false, endpoint.matches(new AwsProxyRequestBuilder("/batch/x", "POST").build()));
+    }
+
+    @Test
+    void writeResponse_CombinesResponsesInOrder() throws Exception {
+        final AwsProxyResponse first = AwsResponseBuilder.newBuilder().json().stringBody("{}").build();
+        final AwsProxyResponse second = new AwsProxyResponse(404);
+        final JsonNode body = MAPPER.readTree(endpoint.writeResponse(Arrays.asList(first, second)).getBody());
+
+        assertEquals(2, body.size());
+        assertEquals(200, body.get(0).get("statusCode").asInt());
+        assertEquals("application/json", body.get(0).get("headers").get("Content-Type").get(0).asText());
+        assertEquals("{}", body.get(0).get("body").asText());
+        assertEquals(404, body.get(1).get("statusCode").asInt());
+        assertTrue(body.get(1).get("body").isNull());
+    }
+
+    @Test
+    void handleRequest_Batch_DispatchesEachSubRequest() throws Exception {
+        final JsonNode responses = handle(batch("[{\"method\": \"GET\", \"path\": \"/hello/a\"},"
+            + " {\"method\": \"GET\", \"path\": \"/error\"},"
+            + " {\"method\": \"GET\", \"path\": \"/async/b\"},"
+            + " {\"method\": \"GET\", \"path\": \"/missing\"}]"), new TestLambdaContext());
+
+        assertEquals(4, responses.size());
+        assertEquals(200, responses.get(0).get("statusCode").asInt());
+        assertEquals("Hello, a", responses.get(0).get("body").asText());
+        assertEquals(500, responses.get(1).get("statusCode").asInt());
+        assertEquals(200, responses.get(2).get("statusCode").asInt());
+        assertEquals("Hello, b", responses.get(2).get("body").asText());
+        assertEquals(404, responses.get(3).get("statusCode").asInt());
+
+        // a record for each sub-request, then the batch itself
+        assertEquals(5, records.size());
+        assertEquals("POST", records.get(4).getRequest().getHttpMethod());
+        assertTrue(records.stream().anyMatch(record -> "GET /hello/<string:name>".equals(record.getRouteKey())));
+    }
+
+    @Test
+    void handleRequest_SubRequestPastDeadline_HasTimeoutResponse() throws Exception {
+        handler.setTimeoutMargin(Duration.ofMillis(100));
+        final Context context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(400);
+        final JsonNode responses = handle(batch("[{\"method\": \"GET\", \"path\": \"/pending\"},"
+            + " {\"method\": \"GET\", \"path\": \"/budget\"}]"), context);
+
+        assertEquals(504, responses.get(0).get("statusCode").asInt());
+        assertEquals(200, responses.get(1).get("statusCode").asInt());
+        final long budget = Long.parseLong(responses.get(1).get("body").asText());
+        assertTrue(budget > 0 && budget <= 300, "budget " + budget);
+    }
+
+    @Test
+    void handleRequest_InvalidBatch_BadRequest() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(batch("{\"method\": \"GET\"}").buildStream(), output, new TestLambdaContext());
+        final AwsProxyResponse response = MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+
+        assertEquals(400, response.getStatusCode());
+        assertEquals("Batch body must be an array of sub-requests", response.getBody());
+    }
+
+    @Test
+    void dispatch_Batch_CompletesWithCombinedResponse() throws Exception {
+        final AwsProxyRequest request = batch("[{\"method\": \"GET\", \"path\": \"/hello/a\"},"
+            + " {\"method\": \"GET\", \"path\": \"/async/b\"}]").build();
+        final AwsProxyResponse response = handler.dispatch(request).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        final JsonNode responses = MAPPER.readTree(response.getBody());
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("Hello, a", responses.get(0).get("body").asText());
+        assertEquals("Hello, b", responses.get(1).get("body").asText());
+    }
+
+    @Test
+    void builder_InvalidValues_Throw() {
+        assertThrows(IllegalArgumentException.class, () -> BatchEndpoint.builder().withPath("batch"));
+        assertThrows(IllegalArgumentException.class, () -> BatchEndpoint.builder().withMaximumRequests(0));
+        assertThrows(IllegalArgumentException.class, () -> BatchEndpoint.builder().withParallelism(0));
+        assertThrows(IllegalArgumentException.class, () -> BatchEndpoint.builder().withObjectMapper(null));
+        assertEquals("/v1/batch", BatchEndpoint.builder().withPath("/v1/batch").build().getPath());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.MultiValuedTreeMap;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AbstractRouteController;
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.Cached;
+import gg.sep.avenue.router.GET;
+import gg.sep.avenue.router.POST;
+import gg.sep.avenue.router.Query;
+import gg.sep.avenue.router.TestLambdaContext;
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * Unit tests for {@link CachePolicy} and the caching of {@link Cached} routes.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class CachePolicyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static class CachedController extends AbstractRouteController {
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @GET(paths = "/countries")
+        @Cached(ttl = 1, unit = TimeUnit.MINUTES, key = {"path", "query:lang", "header:X-Region"})
+        public AwsProxyResponse countries(@Query("lang") final String lang) {
+            return AwsResponseBuilder.newBuilder()
+                .json()
+                .stringBody("{\"lang\": \"" + lang + "\", \"n\": " + invocations.incrementAndGet() + "}")
+                .build();
+        }
+
+        @GET(paths = "/private")
+        @Cached(ttl = 60)
+        public AwsProxyResponse privateData() {
+            return AwsResponseBuilder.newBuilder()
+                .setHeader("Cache-Control", "private")
+                .stringBody(String.valueOf(invocations.incrementAndGet()))
+                .build();
+        }
+
+        @GET(paths = "/missing")
+        @Cached(ttl = 60)
+        public AwsProxyResponse missing() {
+            invocations.incrementAndGet();
+            return AwsResponseBuilder.newBuilder().status(404).stringBody("missing").build();
+        }
+    }
+
+    public static class CachedPostController extends AbstractRouteController {
+        @POST(paths = "/submit")
+        @Cached(ttl = 60)
+        public AwsProxyResponse submit() {
+            return AwsResponseBuilder.newBuilder().build();
+        }
+    }
+
+    public static class InvalidKeyController extends AbstractRouteController {
+        @GET(paths = "/invalid")
+        @Cached(ttl = 60, key = "cookie:session")
+        public AwsProxyResponse invalid() {
+            return AwsResponseBuilder.newBuilder().build();
+        }
+    }
+
+    private final CachedController controller = new CachedController();
+    private final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandler() {
+        {
+            registerController(controller);
+        }
+    };
+
+    private static AwsProxyRequest get(final String path) {
+        return new AwsProxyRequestBuilder(path, "GET").build();
+    }
+
+    private AwsProxyResponse handle(final AwsProxyRequest request) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(MAPPER.writeValueAsBytes(request)), output,
+            new TestLambdaContext());
+        return MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+    }
+
+    @Test
+    void key_Components_IdentifyRequest() {
+        final Route route = controller.getRoutes().stream()
+            .filter(r -> "/countries".equals(r.getRoutePath()))
+            .findFirst()
+            .orElseThrow(IllegalStateException::new);
+        final CachePolicy policy = route.getCachePolicy();
+        assertEquals(60, policy.getTtl().getSeconds());
+
+        final String key = policy.key(route, new AwsProxyRequestBuilder("/countries", "GET")
+            .queryString("lang", "en").header("X-Region", "eu").build());
+        assertEquals(key, policy.key(route, new AwsProxyRequestBuilder("/countries", "GET")
+            .queryString("lang", "en").header("x-region", "eu").header("X-Other", "1").build()));
+        assertNotEquals(key, policy.key(route, new AwsProxyRequestBuilder("/countries", "GET")
+            .queryString("lang", "fr").header("X-Region", "eu").build()));
+        assertNotEquals(policy.key(route, get("/countries")), policy.key(route, new AwsProxyRequestBuilder(
+            "/countries", "GET").queryString("lang", "").build()));
+    }
+
+    @Test
+    void key_ValuesContainingSeparators_DoNotCollide() {
+        final Route route = controller.getRoutes().stream()
+            .filter(r -> "/countries".equals(r.getRoutePath()))
+            .findFirst()
+            .orElseThrow(IllegalStateException::new);
+        final CachePolicy policy = route.getCachePolicy();
+
+        final AwsProxyRequest encoded = get("/countries");
+        encoded.setMultiValueQueryStringParameters(new MultiValuedTreeMap<>());
+        encoded.getMultiValueQueryStringParameters().add("lang", "a=b");
+        final AwsProxyRequest repeated = get("/countries");
+        repeated.setMultiValueQueryStringParameters(new MultiValuedTreeMap<>());
+        repeated.getMultiValueQueryStringParameters().add("lang", "a");
+        repeated.getMultiValueQueryStringParameters().add("lang", "b");
+        assertNotEquals(policy.key(route, encoded), policy.key(route, repeated));
+
+        final AwsProxyRequest shifted = get("/countries");
+        shifted.setMultiValueQueryStringParameters(new MultiValuedTreeMap<>());
+        shifted.getMultiValueQueryStringParameters().add("lang", "en\u0000=eu");
+        assertNotEquals(policy.key(route, shifted), policy.key(route, new AwsProxyRequestBuilder("/countries", "GET")
+            .queryString("lang", "en").header("X-Region", "eu").build()));
+    }
+
+    @Test
+    void getRoutes_InvalidCachedRoutes_Throws() {
+        assertThrows(IllegalStateException.class, () -> new CachedPostController().getRoutes());
+        assertThrows(IllegalArgumentException.class, () -> new InvalidKeyController().getRoutes());
+    }
+
+    @Test
+    void handleRequest_CacheHit_SkipsRoute() throws Exception {
+        handler.setResponseCache(HeapResponseCache.builder().build());
+
+        final AwsProxyRequest english =
+            new AwsProxyRequestBuilder("/countries", "GET").queryString("lang", "en").build();
+        final AwsProxyResponse first = handle(english);
+        assertEquals("{\"lang\": \"en\", \"n\": 1}", first.getBody());
+        final AwsProxyResponse second = handle(english);
+        assertEquals(first.getBody(), second.getBody());
+        assertEquals("application/json", second.getMultiValueHeaders().getFirst("Content-Type"));
+        assertEquals(1, controller.invocations.get());
+
+        final AwsProxyResponse french = handle(
+            new AwsProxyRequestBuilder("/countries", "GET").queryString("lang", "fr").build());
+        assertEquals("{\"lang\": \"fr\", \"n\": 2}", french.getBody());
+
+        final AwsProxyResponse dispatched = handler.dispatch(english).toCompletableFuture().get();
+        assertEquals(first.getBody(), dispatched.getBody());
+        assertEquals(2, controller.invocations.get());
+    }
+
+    @Test
+    void handleRequest_CachedETag_Returns304() throws Exception {
+        handler.setResponseCache(HeapResponseCache.builder().build());
+        handler.setETagGenerator(ETagGenerator.builder().build());
+
+        final AwsProxyResponse first = handle(get("/countries"));
+        final String eTag = first.getMultiValueHeaders().getFirst(ETagGenerator.ETAG);
+        final AwsProxyResponse notModified = handle(new AwsProxyRequestBuilder("/countries", "GET")
+            .header(ETagGenerator.IF_NONE_MATCH, eTag).build());
+        assertEquals(304, notModified.getStatusCode());
+        assertEquals(eTag, notModified.getMultiValueHeaders().getFirst(ETagGenerator.ETAG));
+        assertEquals(1, controller.invocations.get());
+    }
+
+    @Test
+    void handleRequest_UncacheableResponses_InvokeRouteEachTime() throws Exception {
+        handler.setResponseCache(HeapResponseCache.builder().build());
+
+        assertEquals("1", handle(get("/private")).getBody());
+        assertEquals("2", handle(get("/private")).getBody());
+        assertEquals(404, handle(get("/missing")).getStatusCode());
+        assertEquals(404, handle(get("/missing")).getStatusCode());
+        assertEquals(4, controller.invocations.get());
+    }
+
+    @Test
+    void handleRequest_CacheDisabled_InvokesRoute() throws Exception {
+        handle(get("/countries"));
+        handle(get("/countries"));
+        assertEquals(2, controller.invocations.get());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AbstractRouteController;
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.GET;
+import gg.sep.avenue.router.TestLambdaContext;
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * Unit tests for {@link ETagGenerator}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class ETagGeneratorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ETagGenerator generator = ETagGenerator.builder().build();
+
+    public static class VersionedController extends AbstractRouteController implements VersionTagProvider {
+        private final AtomicInteger invocations = new AtomicInteger();
+        private volatile String version = "v1";
+
+        @GET(paths = "/item")
+        public AwsProxyResponse item() {
+            invocations.incrementAndGet();
+            return AwsResponseBuilder.newBuilder().json().stringBody("{\"version\": \"" + version + "\"}").build();
+        }
+
+        @Override
+        public String getVersionTag(final Route route, final AwsProxyRequest request) {
+            return version;
+        }
+    }
+
+    private static AwsProxyRequest get(final String ifNoneMatch) {
+        final AwsProxyRequestBuilder builder = new AwsProxyRequestBuilder("/item", "GET");
+        if (ifNoneMatch != null) {
+            builder.header(ETagGenerator.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return builder.build();
+    }
+
+    private static AwsProxyResponse body(final String body) {
+        return AwsResponseBuilder.newBuilder()
+            .json()
+            .setHeader("Cache-Control", "max-age=60")
+            .stringBody(body)
+            .build();
+    }
+
+    @Test
+    void apply_SuccessfulGet_AddsStableETag() {
+        final AwsProxyResponse first = generator.apply(get(null), body("{\"a\": 1}"));
+        final AwsProxyResponse second = generator.apply(get(null), body("{\"a\": 1}"));
+        final AwsProxyResponse other = generator.apply(get(null), body("{\"a\": 2}"));
+
+        final String eTag = first.getMultiValueHeaders().getFirst(ETagGenerator.ETAG);
+        assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+        assertEquals(eTag, second.getMultiValueHeaders().getFirst(ETagGenerator.ETAG));
+        assertNotEquals(eTag, other.getMultiValueHeaders().getFirst(ETagGenerator.ETAG));
+    }
+
+    @Test
+    void apply_IfNoneMatchMatches_Returns304WithoutBody() {
+        final String eTag = generator.computeETag(body("{\"a\": 1}"));
+        final AwsProxyResponse response = generator.apply(get("\"other\", W/" + eTag), body("{\"a\": 1}"));
+
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(eTag, response.getMultiValueHeaders().getFirst(ETagGenerator.ETAG));
+        assertEquals("max-age=60", response.getMultiValueHeaders().getFirst("Cache-Control"));
+        assertNull(response.getMultiValueHeaders().getFirst("Content-Type"));
+
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, generator.apply(get("*"), body("x")).getStatusCode());
+    }
+
+    @Test
+    void apply_NotApplicable_Unchanged() {
+        final AwsProxyResponse post = body("x");
+        assertSame(post, generator.apply(new AwsProxyRequestBuilder("/item", "POST").build(), post));
+        assertNull(post.getMultiValueHeaders().getFirst(ETagGenerator.ETAG));
+
+        final AwsProxyResponse error = AwsResponseBuilder.newBuilder().status(500).stringBody("x").build();
+        assertSame(error, generator.apply(get("*"), error));
+    }
+
+    @Test
+    void computeETag_WeakTags_PrefixedAndBinaryDistinct() {
+        final ETagGenerator weak = ETagGenerator.builder().withWeakTags(true).build();
+        assertTrue(weak.computeETag(body("x")).startsWith("W/\""));
+
+        final AwsProxyResponse binary = body("eA==");
+        binary.setBase64Encoded(true);
+        assertNotEquals(generator.computeETag(body("eA==")), generator.computeETag(binary));
+    }
+
+    @Test
+    void handleRequest_VersionTagMatches_SkipsRoute() throws Exception {
+        final VersionedController controller = new VersionedController();
+        final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandler() {
+            {
+                registerController(controller);
+            }
+        };
+        handler.setETagGenerator(generator);
+
+        final AwsProxyResponse first = handle(handler, get(null));
+        assertEquals(HttpStatus.SC_OK, first.getStatusCode());
+        assertEquals("W/\"v1\"", first.getMultiValueHeaders().getFirst(ETagGenerator.ETAG));
+        assertEquals(1, controller.invocations.get());
+
+        final AwsProxyResponse notModified = handle(handler, get("W/\"v1\""));
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, notModified.getStatusCode());
+        assertEquals(1, controller.invocations.get());
+
+        controller.version = "v2";
+        assertEquals(HttpStatus.SC_OK, handle(handler, get("W/\"v1\"")).getStatusCode());
+        assertEquals(2, controller.invocations.get());
+
+        final AwsProxyResponse dispatched = handler.dispatch(get("W/\"v2\"")).toCompletableFuture().get();
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, dispatched.getStatusCode());
+        assertEquals(2, controller.invocations.get());
+    }
+
+    private static AwsProxyResponse handle(final BasicLambdaProxyHandler handler,
+                                           final AwsProxyRequest request) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(
+            new ByteArrayInputStream(MAPPER.writeValueAsBytes(request)), output, new TestLambdaContext());
+        return MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+    }
+}
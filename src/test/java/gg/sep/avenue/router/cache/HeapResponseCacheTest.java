@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AwsResponseBuilder;
+
+/**
+ * Unit tests for {@link HeapResponseCache}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class HeapResponseCacheTest {
+
+    private static final Duration TTL = Duration.ofSeconds(10);
+
+    private final AtomicLong now = new AtomicLong();
+
+    private HeapResponseCache cache(final long maximumBytes) {
+        return HeapResponseCache.builder().withMaximumBytes(maximumBytes).withClock(now::get).build();
+    }
+
+    private static AwsProxyResponse response(final String body) {
+        return AwsResponseBuilder.newBuilder().html().setHeader("ETag", "\"tag\"").stringBody(body).build();
+    }
+
+    private static byte[] payload(final int length) {
+        return new byte[length];
+    }
+
+    @Test
+    void get_StoredResponse_WritesPayload() throws Exception {
+        final HeapResponseCache cache = cache(1024);
+        final byte[] payload = "{\"body\":\"x\"}".getBytes(StandardCharsets.UTF_8);
+        cache.put("a", response("x"), payload, TTL);
+
+        final CachedResponse cached = cache.get("a");
+        assertNotNull(cached);
+        assertEquals(200, cached.getStatusCode());
+        assertEquals("\"tag\"", cached.getETag());
+        assertEquals("x", cached.getResponse().getBody());
+        assertEquals(payload.length, cached.getPayloadLength());
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        cached.writeTo(output);
+        assertArrayEquals(payload, output.toByteArray());
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    void get_Expired_RemovesEntry() {
+        final HeapResponseCache cache = cache(1024);
+        cache.put("a", response("x"), payload(10), TTL);
+        now.addAndGet(TTL.toNanos() - 1);
+        assertNotNull(cache.get("a"));
+        now.incrementAndGet();
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightedSize());
+    }
+
+    @Test
+    void put_OverMaximumBytes_EvictsLeastRecentlyUsed() {
+        // each entry weighs 100 + 2 * (1 + 1) = 104 bytes
+        final HeapResponseCache cache = cache(320);
+        cache.put("a", response("x"), payload(100), TTL);
+        cache.put("b", response("x"), payload(100), TTL);
+        cache.put("c", response("x"), payload(100), TTL);
+        assertEquals(312, cache.getWeightedSize());
+
+        assertNotNull(cache.get("a"));
+        cache.put("d", response("x"), payload(100), TTL);
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(312, cache.getWeightedSize());
+    }
+
+    @Test
+    void put_ReplacesAndOversized_UpdatesWeight() {
+        final HeapResponseCache cache = cache(200);
+        cache.put("a", response("x"), payload(100), TTL);
+        cache.put("a", response("x"), payload(50), TTL);
+        assertEquals(54, cache.getWeightedSize());
+
+        cache.put("a", response("x"), payload(500), TTL);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getWeightedSize());
+
+        cache.put("b", response("x"), payload(10), TTL);
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightedSize());
+    }
+
+    @Test
+    void builder_InvalidMaximumBytes_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> HeapResponseCache.builder().withMaximumBytes(0));
+    }
+}
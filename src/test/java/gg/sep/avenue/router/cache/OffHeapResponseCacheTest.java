@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.TestLambdaContext;
+
+/**
+ * Unit tests for {@link OffHeapResponseCache}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class OffHeapResponseCacheTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Duration TTL = Duration.ofSeconds(10);
+
+    private final AtomicLong now = new AtomicLong();
+
+    // 4 pages of 16 bytes, in slabs of 2 pages
+    private OffHeapResponseCache cache() {
+        return OffHeapResponseCache.builder()
+            .withCapacity(64)
+            .withSlabSize(32)
+            .withPageSize(16)
+            .withClock(now::get)
+            .build();
+    }
+
+    private static AwsProxyResponse response() {
+        return AwsResponseBuilder.newBuilder().html().setHeader("ETag", "\"tag\"").stringBody("x").build();
+    }
+
+    private static byte[] payload(final int length, final char fill) {
+        final byte[] payload = new byte[length];
+        Arrays.fill(payload, (byte) fill);
+        return payload;
+    }
+
+    private static byte[] read(final CachedResponse cached) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(cached.writeTo(output));
+        return output.toByteArray();
+    }
+
+    @Test
+    void get_StoredAcrossPages_ReadsPayloadAndResponse() throws Exception {
+        final OffHeapResponseCache cache = cache();
+        final AwsProxyResponse response = response();
+        final byte[] payload = MAPPER.writeValueAsBytes(response);
+        final OffHeapResponseCache large = OffHeapResponseCache.builder().withPageSize(16).withSlabSize(64).build();
+        large.put("a", response, payload, TTL);
+
+        final CachedResponse cached = large.get("a");
+        assertEquals(200, cached.getStatusCode());
+        assertEquals("\"tag\"", cached.getETag());
+        assertEquals(payload.length, cached.getPayloadLength());
+        assertArrayEquals(payload, read(cached));
+        assertEquals("x", cached.getResponse().getBody());
+        assertEquals("\"tag\"", cached.getResponse().getMultiValueHeaders().getFirst("ETag"));
+
+        cache.put("b", response, payload(20, 'b'), TTL);
+        assertEquals(32, cache.getWeightedSize());
+        assertEquals(32, cache.getAllocatedBytes());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void getResponse_RepeatedHits_DeserializedOnce() throws Exception {
+        final OffHeapResponseCache cache = OffHeapResponseCache.builder().build();
+        final AwsProxyResponse response = response();
+        cache.put("a", response, MAPPER.writeValueAsBytes(response), TTL);
+
+        final CachedResponse cached = cache.get("a");
+        final AwsProxyResponse first = cached.getResponse();
+        assertEquals("x", first.getBody());
+        assertSame(first, cache.get("a").getResponse());
+
+        cache.invalidateAll();
+        assertNull(cached.getResponse());
+    }
+
+    @Test
+    void put_NotEnoughPages_EvictsLeastRecentlyUsed() throws Exception {
+        final OffHeapResponseCache cache = cache();
+        cache.put("a", response(), payload(32, 'a'), TTL);
+        cache.put("b", response(), payload(32, 'b'), TTL);
+        assertEquals(64, cache.getAllocatedBytes());
+
+        assertNotNull(cache.get("a"));
+        cache.put("c", response(), payload(20, 'c'), TTL);
+
+        assertNull(cache.get("b"));
+        assertArrayEquals(payload(32, 'a'), read(cache.get("a")));
+        assertArrayEquals(payload(20, 'c'), read(cache.get("c")));
+        assertEquals(64, cache.getWeightedSize());
+        assertEquals(64, cache.getAllocatedBytes());
+
+        cache.put("d", response(), payload(65, 'd'), TTL);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void writeTo_EvictedWhileReading_KeepsPagesUntilDone() throws Exception {
+        final OffHeapResponseCache cache = cache();
+        cache.put("a", response(), payload(48, 'a'), TTL);
+        final CachedResponse cached = cache.get("a");
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(final byte[] bytes, final int offset, final int length) {
+                if (size() == 0) {
+                    cache.invalidateAll();
+                    cache.put("b", response(), payload(32, 'b'), TTL);
+                }
+                super.write(bytes, offset, length);
+            }
+        };
+        assertTrue(cached.writeTo(output));
+        assertArrayEquals(payload(48, 'a'), output.toByteArray());
+        // only one page was free while the evicted entry was being read
+        assertNull(cache.get("b"));
+
+        assertFalse(cached.writeTo(new ByteArrayOutputStream()));
+        assertNull(cached.getResponse());
+        cache.put("b", response(), payload(32, 'b'), TTL);
+        assertArrayEquals(payload(32, 'b'), read(cache.get("b")));
+    }
+
+    @Test
+    void get_Expired_ReleasesPages() {
+        final OffHeapResponseCache cache = cache();
+        cache.put("a", response(), payload(64, 'a'), TTL);
+        now.addAndGet(TTL.toNanos());
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getWeightedSize());
+        cache.put("b", response(), payload(64, 'b'), TTL);
+        assertNotNull(cache.get("b"));
+    }
+
+    @Test
+    void builder_InvalidSizes_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> OffHeapResponseCache.builder().withCapacity(0));
+        assertThrows(IllegalArgumentException.class, () -> OffHeapResponseCache.builder().withPageSize(-1));
+        assertThrows(IllegalArgumentException.class,
+            () -> OffHeapResponseCache.builder().withPageSize(10).withSlabSize(64).build());
+        assertThrows(IllegalArgumentException.class,
+            () -> OffHeapResponseCache.builder().withPageSize(16).withSlabSize(16).withCapacity(8).build());
+    }
+
+    @Test
+    void handleRequest_OffHeapCache_ServesCachedPayload() throws Exception {
+        final CachePolicyTest.CachedController controller = new CachePolicyTest.CachedController();
+        final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandler() {
+            {
+                registerController(controller);
+            }
+        };
+        handler.setResponseCache(OffHeapResponseCache.builder().withPageSize(64).withSlabSize(1024).build());
+
+        final byte[] request = MAPPER.writeValueAsBytes(new AwsProxyRequestBuilder("/countries", "GET")
+            .queryString("lang", "en").build());
+        final String first = handle(handler, request);
+        final String second = handle(handler, request);
+        assertEquals(first, second);
+        assertTrue(second.contains("\\\"n\\\": 1"));
+
+        final AwsProxyResponse dispatched = handler.dispatch(MAPPER.readValue(request,
+            AwsProxyRequest.class)).toCompletableFuture().get();
+        assertEquals("{\"lang\": \"en\", \"n\": 1}", dispatched.getBody());
+    }
+
+    private static String handle(final BasicLambdaProxyHandler handler, final byte[] request) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(request), output, new TestLambdaContext());
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
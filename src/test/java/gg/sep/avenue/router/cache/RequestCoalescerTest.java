@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AbstractRouteController;
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.GET;
+import gg.sep.avenue.router.POST;
+import gg.sep.avenue.router.Path;
+import gg.sep.avenue.router.core.Route;
+
+/**
+ * Unit tests for {@link RequestCoalescer}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class RequestCoalescerTest {
+
+    public static class SlowController extends AbstractRouteController {
+        private final AtomicInteger invocations = new AtomicInteger();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @GET(paths = "/items/<int:id>")
+        public AwsProxyResponse item(@Path("id") final Integer id) throws InterruptedException {
+            invocations.incrementAndGet();
+            entered.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return AwsResponseBuilder.newBuilder().html().stringBody("item " + id).build();
+        }
+
+        @GET(paths = "/raw")
+        public AwsProxyResponse raw(final AwsProxyRequest request) {
+            return AwsResponseBuilder.newBuilder().build();
+        }
+
+        @POST(paths = "/items")
+        public AwsProxyResponse create() {
+            return AwsResponseBuilder.newBuilder().build();
+        }
+    }
+
+    private final SlowController controller = new SlowController();
+    private final RequestCoalescer coalescer = RequestCoalescer.builder()
+        .withMaximumWait(Duration.ofMillis(100))
+        .build();
+
+    private Route route(final String path) {
+        return controller.getRoutes().stream()
+            .filter(r -> path.equals(r.getRoutePath()))
+            .findFirst()
+            .orElseThrow(IllegalStateException::new);
+    }
+
+    private static AwsProxyResponse response(final String body) {
+        return AwsResponseBuilder.newBuilder().html().stringBody(body).build();
+    }
+
+    @Test
+    void coalesce_IdenticalRequests_ShareInvocation() throws Exception {
+        final Route route = route("/items/<int:id>");
+        final CompletableFuture<AwsProxyResponse> pending = new CompletableFuture<>();
+        final AtomicInteger invocations = new AtomicInteger();
+
+        final CompletableFuture<AwsProxyResponse> first = coalescer.coalesce(route, new Object[] {1}, () -> {
+            invocations.incrementAndGet();
+            return pending;
+        }).toCompletableFuture();
+        final CompletableFuture<AwsProxyResponse> second = coalescer.coalesce(route, new Object[] {1}, () -> {
+            invocations.incrementAndGet();
+            return pending;
+        }).toCompletableFuture();
+        final CompletableFuture<AwsProxyResponse> other = coalescer.coalesce(route, new Object[] {2},
+            () -> CompletableFuture.completedFuture(response("other"))).toCompletableFuture();
+        assertEquals(1, invocations.get());
+        assertEquals(1, coalescer.getInFlightCount());
+        assertEquals("other", other.get().getBody());
+
+        final AwsProxyResponse original = response("shared");
+        pending.complete(original);
+        assertEquals("shared", first.get().getBody());
+        assertEquals("shared", second.get().getBody());
+        assertNotSame(first.get(), second.get());
+        assertNotSame(first.get().getMultiValueHeaders(), second.get().getMultiValueHeaders());
+        assertNotSame(original, first.get());
+        assertEquals(0, coalescer.getInFlightCount());
+
+        coalescer.coalesce(route, new Object[] {1}, () -> {
+            invocations.incrementAndGet();
+            return pending;
+        });
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    void coalesce_RouteFails_FailsEveryRequest() {
+        final Route route = route("/items/<int:id>");
+        final CompletableFuture<AwsProxyResponse> pending = new CompletableFuture<>();
+        final CompletableFuture<AwsProxyResponse> first =
+            coalescer.coalesce(route, new Object[] {1}, () -> pending).toCompletableFuture();
+        final CompletableFuture<AwsProxyResponse> second =
+            coalescer.coalesce(route, new Object[] {1}, () -> pending).toCompletableFuture();
+
+        final IllegalStateException failure = new IllegalStateException("failed");
+        pending.completeExceptionally(failure);
+        assertSame(failure, assertThrows(ExecutionException.class, first::get).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, second::get).getCause());
+
+        final CompletableFuture<AwsProxyResponse> thrown = coalescer.coalesce(route, new Object[] {2}, () -> {
+            throw failure;
+        }).toCompletableFuture();
+        assertSame(failure, assertThrows(ExecutionException.class, thrown::get).getCause());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    void coalesce_WaitExceeded_FailsWaitingRequestOnly() throws Exception {
+        final Route route = route("/items/<int:id>");
+        final CompletableFuture<AwsProxyResponse> pending = new CompletableFuture<>();
+        final CompletableFuture<AwsProxyResponse> first =
+            coalescer.coalesce(route, new Object[] {1}, () -> pending).toCompletableFuture();
+        final CompletableFuture<AwsProxyResponse> second =
+            coalescer.coalesce(route, new Object[] {1}, () -> pending).toCompletableFuture();
+
+        final ExecutionException timeout =
+            assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertTrue(timeout.getCause() instanceof TimeoutException);
+        assertFalse(first.isDone());
+        pending.complete(response("late"));
+        assertEquals("late", first.get().getBody());
+    }
+
+    @Test
+    void canCoalesce_OnlyGetRoutesWithoutRawRequest() {
+        assertTrue(coalescer.canCoalesce(route("/items/<int:id>"), new Object[] {1}));
+        assertFalse(coalescer.canCoalesce(route("/items"), new Object[0]));
+        final AwsProxyRequest request = new AwsProxyRequestBuilder("/raw", "GET").build();
+        assertFalse(coalescer.canCoalesce(route("/raw"), new Object[] {request}));
+    }
+
+    @Test
+    void dispatch_ConcurrentIdenticalRequests_InvokeRouteOnce() throws Exception {
+        final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandler() {
+            {
+                registerController(controller);
+            }
+        };
+        handler.setRequestCoalescer(RequestCoalescer.builder().build());
+
+        final CompletableFuture<AwsProxyResponse> first = CompletableFuture.supplyAsync(() ->
+            handler.dispatch(new AwsProxyRequestBuilder("/items/7", "GET").build()).toCompletableFuture().join());
+        assertTrue(controller.entered.await(5, TimeUnit.SECONDS));
+        final CompletableFuture<AwsProxyResponse> second =
+            handler.dispatch(new AwsProxyRequestBuilder("/items/7", "GET").build()).toCompletableFuture();
+        assertFalse(second.isDone());
+
+        controller.release.countDown();
+        assertEquals("item 7", first.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals("item 7", second.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals(1, controller.invocations.get());
+    }
+}
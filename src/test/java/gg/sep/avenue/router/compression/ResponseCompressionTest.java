@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AwsResponseBuilder;
+
+/**
+ * Unit tests for {@link ResponseCompression}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class ResponseCompressionTest {
+
+    private static final String BODY = repeat("{\"id\": 12345, \"name\": \"élan\"},", 200);
+
+    private final ResponseCompression compression = ResponseCompression.builder().build();
+
+    private static String repeat(final String value, final int count) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    private static AwsProxyRequest request(final String acceptEncoding) {
+        final AwsProxyRequestBuilder builder = new AwsProxyRequestBuilder("/items", "GET");
+        if (acceptEncoding != null) {
+            builder.header("Accept-Encoding", acceptEncoding);
+        }
+        return builder.build();
+    }
+
+    private static AwsProxyResponse jsonResponse(final String body) {
+        return AwsResponseBuilder.newBuilder().json().stringBody(body).build();
+    }
+
+    private static String decompress(final InputStream compressed) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = compressed.read(buffer)) > 0) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void compress_AcceptsGzip_GzipsBody() throws IOException {
+        final AwsProxyResponse response = compression.compress(request("gzip, deflate, br"), jsonResponse(BODY));
+
+        assertTrue(response.isBase64Encoded());
+        assertEquals("gzip", response.getMultiValueHeaders().getFirst("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getMultiValueHeaders().getFirst("Vary"));
+        final byte[] compressed = Base64.getDecoder().decode(response.getBody());
+        assertTrue(compressed.length < BODY.length() / 10);
+        assertEquals(BODY, decompress(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    void compress_AcceptsOnlyDeflate_DeflatesBody() throws IOException {
+        final AwsProxyResponse response = compression.compress(request("deflate"), jsonResponse(BODY));
+
+        assertEquals("deflate", response.getMultiValueHeaders().getFirst("Content-Encoding"));
+        final byte[] compressed = Base64.getDecoder().decode(response.getBody());
+        assertEquals(BODY, decompress(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    void compress_NotAccepted_AddsOnlyVary() {
+        for (final String acceptEncoding : new String[] {null, "br", "gzip;q=0, deflate;q=0", "identity"}) {
+            final AwsProxyResponse response = compression.compress(request(acceptEncoding), jsonResponse(BODY));
+            assertFalse(response.isBase64Encoded());
+            assertEquals(BODY, response.getBody());
+            assertNull(response.getMultiValueHeaders().getFirst("Content-Encoding"));
+            assertEquals("Accept-Encoding", response.getMultiValueHeaders().getFirst("Vary"));
+        }
+    }
+
+    @Test
+    void compress_IneligibleResponses_Unchanged() {
+        final AwsProxyResponse small = compression.compress(request("gzip"), jsonResponse("{}"));
+        assertFalse(small.isBase64Encoded());
+
+        final AwsProxyResponse image = AwsResponseBuilder.newBuilder()
+            .setHeader("Content-Type", "image/png").stringBody(BODY).build();
+        assertFalse(compression.compress(request("gzip"), image).isBase64Encoded());
+
+        final AwsProxyResponse error = AwsResponseBuilder.newBuilder()
+            .status(HttpStatus.SC_INTERNAL_SERVER_ERROR).json().stringBody(BODY).build();
+        assertFalse(compression.compress(request("gzip"), error).isBase64Encoded());
+
+        final AwsProxyResponse encoded = AwsResponseBuilder.newBuilder()
+            .json().setHeader("Content-Encoding", "br").stringBody(BODY).build();
+        assertEquals(BODY, compression.compress(request("gzip"), encoded).getBody());
+    }
+
+    @Test
+    void compress_ContentTypeWildcardAndParameters_Allowed() {
+        final AwsProxyResponse response = AwsResponseBuilder.newBuilder()
+            .setHeader("Content-Type", "text/csv; charset=utf-8")
+            .setHeader("Vary", "Origin")
+            .stringBody(BODY)
+            .build();
+        compression.compress(request("*"), response);
+        assertTrue(response.isBase64Encoded());
+        assertEquals("Origin, Accept-Encoding", response.getMultiValueHeaders().getFirst("Vary"));
+    }
+
+    @Test
+    void negotiate_QualityValues_PrefersHighest() {
+        assertEquals("gzip", ResponseCompression.negotiate("deflate, gzip"));
+        assertEquals("deflate", ResponseCompression.negotiate("gzip;q=0.5, deflate;q=0.8"));
+        assertEquals("deflate", ResponseCompression.negotiate("gzip;q=0, *"));
+        assertNull(ResponseCompression.negotiate("*;q=0"));
+    }
+
+    @Test
+    void acceptsGzip_QualityValues_FollowsGzipOrWildcard() {
+        assertTrue(ResponseCompression.acceptsGzip("deflate, x-gzip"));
+        assertTrue(ResponseCompression.acceptsGzip("deflate, *;q=0.1"));
+        assertFalse(ResponseCompression.acceptsGzip("gzip;q=0, *"));
+        assertFalse(ResponseCompression.acceptsGzip("deflate"));
+        assertFalse(ResponseCompression.acceptsGzip(null));
+    }
+
+    @Test
+    void builder_InvalidSettings_Throw() {
+        assertThrows(IllegalArgumentException.class, () -> ResponseCompression.builder().withMinimumSize(-1));
+        assertThrows(IllegalArgumentException.class, () -> ResponseCompression.builder().withLevel(0));
+    }
+}
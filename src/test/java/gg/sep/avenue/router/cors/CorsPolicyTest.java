@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.cors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.Headers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AbstractRouteController;
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.Cached;
+import gg.sep.avenue.router.DELETE;
+import gg.sep.avenue.router.GET;
+import gg.sep.avenue.router.PATCH;
+import gg.sep.avenue.router.POST;
+import gg.sep.avenue.router.PUT;
+import gg.sep.avenue.router.TestLambdaContext;
+import gg.sep.avenue.router.cache.HeapResponseCache;
+
+/**
+ * Unit tests for {@link CorsPolicy} and {@link PreflightIndex}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class CorsPolicyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String ORIGIN = "https://app.example.com";
+
+    public static class ItemController extends AbstractRouteController {
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @GET(paths = "/items")
+        public AwsProxyResponse list() {
+            return respond("list");
+        }
+
+        @POST(paths = "/items")
+        public AwsProxyResponse create() {
+            return respond("create");
+        }
+
+        @GET(paths = "/items/<string:id>")
+        public AwsProxyResponse get() {
+            return respond("get");
+        }
+
+        @PUT(paths = "/items/<string:id>")
+        public AwsProxyResponse put() {
+            return respond("put");
+        }
+
+        @DELETE(paths = "/items/<string:id>")
+        public AwsProxyResponse delete() {
+            return respond("delete");
+        }
+
+        @PATCH(paths = "/items/special")
+        public AwsProxyResponse patchSpecial() {
+            return respond("patch");
+        }
+
+        @GET(paths = "/cached")
+        @Cached(ttl = 60)
+        public AwsProxyResponse cached() {
+            return respond("cached");
+        }
+
+        @GET(paths = "/own-cors")
+        public AwsProxyResponse ownCors() {
+            return AwsResponseBuilder.newBuilder().setHeader("Access-Control-Allow-Origin", "https://other").build();
+        }
+
+        private AwsProxyResponse respond(final String body) {
+            invocations.incrementAndGet();
+            return AwsResponseBuilder.newBuilder().stringBody(body).build();
+        }
+    }
+
+    private final ItemController controller = new ItemController();
+    private final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandler() {
+        {
+            registerController(controller);
+        }
+    };
+
+    private static AwsProxyRequest preflight(final String path, final String origin) {
+        return new AwsProxyRequestBuilder(path, "OPTIONS")
+            .header("Origin", origin)
+            .header("Access-Control-Request-Method", "PUT")
+            .build();
+    }
+
+    private static String header(final AwsProxyResponse response, final String name) {
+        return response.getMultiValueHeaders() == null ? null : response.getMultiValueHeaders().getFirst(name);
+    }
+
+    private AwsProxyResponse handle(final AwsProxyRequest request) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(MAPPER.writeValueAsBytes(request)), output,
+            new TestLambdaContext());
+        return MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+    }
+
+    @Test
+    void handleRequest_Preflight_AnsweredFromRouteMethods() throws Exception {
+        handler.setCorsPolicy(CorsPolicy.builder().withMaxAge(Duration.ofHours(1)).build());
+
+        final AwsProxyResponse response = handle(preflight("/items/42", ORIGIN));
+        assertEquals(204, response.getStatusCode());
+        final Headers headers = response.getMultiValueHeaders();
+        assertEquals("*", headers.getFirst("Access-Control-Allow-Origin"));
+        assertEquals("DELETE, GET, HEAD, OPTIONS, PUT", headers.getFirst("Access-Control-Allow-Methods"));
+        assertEquals("*", headers.getFirst("Access-Control-Allow-Headers"));
+        assertEquals("3600", headers.getFirst("Access-Control-Max-Age"));
+        assertNull(headers.getFirst("Vary"));
+
+        assertEquals("GET, HEAD, OPTIONS, POST", handle(preflight("/items", ORIGIN))
+            .getMultiValueHeaders().getFirst("Access-Control-Allow-Methods"));
+        // both /items/<string:id> and /items/special match
+        assertEquals("DELETE, GET, HEAD, OPTIONS, PATCH, PUT", handle(preflight("/items/special", ORIGIN))
+            .getMultiValueHeaders().getFirst("Access-Control-Allow-Methods"));
+        assertEquals(0, controller.invocations.get());
+    }
+
+    @Test
+    void handleRequest_PreflightWithoutRoute_NotFound() throws Exception {
+        handler.setCorsPolicy(CorsPolicy.builder().build());
+        assertEquals(404, handle(preflight("/missing", ORIGIN)).getStatusCode());
+        // an OPTIONS request without CORS headers is not a preflight request
+        assertEquals(404, handle(new AwsProxyRequestBuilder("/items", "OPTIONS").build()).getStatusCode());
+    }
+
+    @Test
+    void handleRequest_CorsDisabled_PreflightNotAnswered() throws Exception {
+        assertEquals(404, handle(preflight("/items", ORIGIN)).getStatusCode());
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/items", "GET")
+            .header("Origin", ORIGIN).build());
+        assertNull(header(response, "Access-Control-Allow-Origin"));
+    }
+
+    @Test
+    void handleRequest_AllowedOrigins_EchoesAllowedOrigin() throws Exception {
+        handler.setCorsPolicy(CorsPolicy.builder()
+            .withAllowedOrigins(ORIGIN)
+            .withAllowedHeaders("Content-Type", "Authorization")
+            .withExposedHeaders("X-Next-Cursor")
+            .withAllowCredentials(true)
+            .build());
+
+        final Headers allowed = handle(preflight("/items", ORIGIN)).getMultiValueHeaders();
+        assertEquals(ORIGIN, allowed.getFirst("Access-Control-Allow-Origin"));
+        assertEquals("Content-Type, Authorization", allowed.getFirst("Access-Control-Allow-Headers"));
+        assertEquals("true", allowed.getFirst("Access-Control-Allow-Credentials"));
+        assertEquals("Origin", allowed.getFirst("Vary"));
+
+        final Headers denied = handle(preflight("/items", "https://evil.example.com")).getMultiValueHeaders();
+        assertNull(denied.getFirst("Access-Control-Allow-Origin"));
+        assertNull(denied.getFirst("Access-Control-Allow-Methods"));
+        assertEquals("Origin", denied.getFirst("Vary"));
+
+        final AwsProxyResponse actual = handle(new AwsProxyRequestBuilder("/items/1", "GET")
+            .header("Origin", ORIGIN).build());
+        assertEquals("get", actual.getBody());
+        assertEquals(ORIGIN, actual.getMultiValueHeaders().getFirst("Access-Control-Allow-Origin"));
+        assertEquals("true", actual.getMultiValueHeaders().getFirst("Access-Control-Allow-Credentials"));
+        assertEquals("X-Next-Cursor", actual.getMultiValueHeaders().getFirst("Access-Control-Expose-Headers"));
+        assertEquals("Origin", actual.getMultiValueHeaders().getFirst("Vary"));
+
+        final AwsProxyResponse foreign = handle(new AwsProxyRequestBuilder("/items/1", "GET")
+            .header("Origin", "https://evil.example.com").build());
+        assertNull(foreign.getMultiValueHeaders().getFirst("Access-Control-Allow-Origin"));
+    }
+
+    @Test
+    void handleRequest_RouteSetsOwnHeaders_LeftAsIs() throws Exception {
+        handler.setCorsPolicy(CorsPolicy.builder().build());
+        final AwsProxyResponse response = handle(new AwsProxyRequestBuilder("/own-cors", "GET")
+            .header("Origin", ORIGIN).build());
+        assertEquals("https://other", response.getMultiValueHeaders().getFirst("Access-Control-Allow-Origin"));
+    }
+
+    @Test
+    void handleRequest_CachedRoute_CachedPerAllowedOrigin() throws Exception {
+        handler.setResponseCache(HeapResponseCache.builder().build());
+        handler.setCorsPolicy(CorsPolicy.builder().withAllowedOrigins(ORIGIN, "https://other.example.com").build());
+
+        final AwsProxyResponse sameOrigin = handle(new AwsProxyRequestBuilder("/cached", "GET").build());
+        assertNull(header(sameOrigin, "Access-Control-Allow-Origin"));
+        final AwsProxyResponse first = handle(new AwsProxyRequestBuilder("/cached", "GET")
+            .header("Origin", ORIGIN).build());
+        assertEquals(ORIGIN, first.getMultiValueHeaders().getFirst("Access-Control-Allow-Origin"));
+        final AwsProxyResponse other = handle(new AwsProxyRequestBuilder("/cached", "GET")
+            .header("Origin", "https://other.example.com").build());
+        assertEquals("https://other.example.com", other.getMultiValueHeaders().getFirst("Access-Control-Allow-Origin"));
+        handle(new AwsProxyRequestBuilder("/cached", "GET").header("Origin", ORIGIN).build());
+        assertEquals(3, controller.invocations.get());
+    }
+
+    @Test
+    void dispatch_Preflight_AnsweredWithoutRoute() throws Exception {
+        handler.setCorsPolicy(CorsPolicy.builder().build());
+        final AwsProxyResponse response = handler.dispatch(preflight("/items", ORIGIN)).toCompletableFuture().get();
+        assertEquals(204, response.getStatusCode());
+        assertEquals("GET, HEAD, OPTIONS, POST",
+            response.getMultiValueHeaders().getFirst("Access-Control-Allow-Methods"));
+
+        final AwsProxyResponse actual = handler.dispatch(new AwsProxyRequestBuilder("/items", "GET")
+            .header("Origin", ORIGIN).build()).toCompletableFuture().get();
+        assertEquals("*", actual.getMultiValueHeaders().getFirst("Access-Control-Allow-Origin"));
+        assertEquals(1, controller.invocations.get());
+    }
+
+    @Test
+    void select_SameMethods_SharesPrebuiltResponse() {
+        final PreflightIndex index = new PreflightIndex(CorsPolicy.builder().build(), controller.getRoutes());
+        assertSame(index.select(preflight("/items/1", ORIGIN)), index.select(preflight("/items/2", "https://b")));
+        assertNull(index.select(new AwsProxyRequestBuilder("/items/1", "GET").header("Origin", ORIGIN).build()));
+    }
+
+    @Test
+    void builder_InvalidValues_Throw() {
+        assertThrows(IllegalArgumentException.class, () -> CorsPolicy.builder().withAllowedOrigins());
+        assertThrows(IllegalArgumentException.class, () -> CorsPolicy.builder().withAllowedOrigins("*"));
+        assertThrows(IllegalArgumentException.class, () -> CorsPolicy.builder().withMaxAge(Duration.ofSeconds(-1)));
+        assertThrows(IllegalStateException.class, () -> CorsPolicy.builder().withAllowCredentials(true).build());
+        assertThrows(IllegalStateException.class, () -> CorsPolicy.builder().withAllowedOrigins(ORIGIN)
+            .withAllowCredentials(true).build());
+        assertFalse(CorsPolicy.isPreflight(new AwsProxyRequestBuilder("/items", "OPTIONS")
+            .header("Origin", ORIGIN).build()));
+    }
+}
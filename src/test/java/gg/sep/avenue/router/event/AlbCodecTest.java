@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.BasicLambdaProxyHandlerTest;
+import gg.sep.avenue.router.TestLambdaContext;
+
+/**
+ * Unit tests for {@link AlbCodec}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class AlbCodecTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String TARGET_GROUP = "arn:aws:elasticloadbalancing:region:123456789012:targetgroup/tg/id";
+    private final AlbCodec codec = new AlbCodec(MAPPER);
+
+    private static byte[] singleValueEvent(final String path) {
+        final String json = "{"
+            + "\"requestContext\": {\"elb\": {\"targetGroupArn\": \"" + TARGET_GROUP + "\"}},"
+            + "\"httpMethod\": \"GET\","
+            + "\"path\": \"" + path + "\","
+            + "\"queryStringParameters\": {\"q\": \"a%20b\", \"sort%5B%5D\": \"name\"},"
+            + "\"headers\": {\"accept\": \"text/html\", \"user-agent\": \"agent\","
+            + "  \"x-forwarded-for\": \"198.51.100.1, 192.0.2.1\", \"x-amzn-trace-id\": \"Root=trace\"},"
+            + "\"body\": \"\","
+            + "\"isBase64Encoded\": false"
+            + "}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] multiValueEvent(final String path) {
+        final String json = "{"
+            + "\"requestContext\": {\"elb\": {\"targetGroupArn\": \"" + TARGET_GROUP + "\"}},"
+            + "\"httpMethod\": \"POST\","
+            + "\"path\": \"" + path + "\","
+            + "\"multiValueQueryStringParameters\": {\"tag\": [\"x%2By\", \"z\"]},"
+            + "\"multiValueHeaders\": {\"accept\": [\"text/html\", \"application/json\"]},"
+            + "\"body\": \"eyJ0ZXN0IjoiYm9keSJ9\","
+            + "\"isBase64Encoded\": true"
+            + "}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static AwsProxyResponse response() {
+        final AwsProxyResponse response = AwsResponseBuilder.newBuilder()
+            .status(404)
+            .json()
+            .stringBody("{}")
+            .build();
+        response.getMultiValueHeaders().add("Vary", "Accept");
+        response.getMultiValueHeaders().add("Vary", "Accept-Encoding");
+        response.getMultiValueHeaders().add("Set-Cookie", "a=1");
+        response.getMultiValueHeaders().add("Set-Cookie", "b=2");
+        return response;
+    }
+
+    @Test
+    void readRequest_SingleValueEvent_DecodesQuery() throws Exception {
+        final AlbRequest request = codec.readRequest(singleValueEvent("/items"));
+
+        assertFalse(request.isMultiValueMode());
+        assertEquals("GET", request.getHttpMethod());
+        assertEquals("/items", request.getPath());
+        assertEquals("text/html", request.getMultiValueHeaders().getFirst("Accept"));
+        assertEquals("a b", request.getMultiValueQueryStringParameters().getFirst("q"));
+        assertEquals("name", request.getMultiValueQueryStringParameters().getFirst("sort[]"));
+        assertFalse(request.isBase64Encoded());
+
+        assertEquals(TARGET_GROUP, request.getRequestContext().getElb().getTargetGroupArn());
+        assertEquals("Root=trace", request.getRequestContext().getRequestId());
+        assertEquals("192.0.2.1", request.getRequestContext().getIdentity().getSourceIp());
+        assertEquals("agent", request.getRequestContext().getIdentity().getUserAgent());
+    }
+
+    @Test
+    void readRequest_MultiValueEvent_KeepsEveryValue() throws Exception {
+        final AlbRequest request = codec.readRequest(multiValueEvent("/items"));
+
+        assertTrue(request.isMultiValueMode());
+        assertEquals("POST", request.getHttpMethod());
+        assertEquals(Arrays.asList("text/html", "application/json"), request.getMultiValueHeaders().get("Accept"));
+        assertEquals(Arrays.asList("x+y", "z"), request.getMultiValueQueryStringParameters().get("tag"));
+        assertEquals("eyJ0ZXN0IjoiYm9keSJ9", request.getBody());
+        assertTrue(request.isBase64Encoded());
+        assertNull(request.getRequestContext().getIdentity().getSourceIp());
+    }
+
+    @Test
+    void writeResponse_SingleValueMode_JoinsHeaders() throws Exception {
+        final AlbRequest request = codec.readRequest(singleValueEvent("/items"));
+        final JsonNode payload = MAPPER.readTree(codec.writeResponse(request, response()));
+
+        assertEquals(404, payload.get("statusCode").asInt());
+        assertEquals("404 Not Found", payload.get("statusDescription").asText());
+        assertEquals("application/json", payload.get("headers").get("Content-Type").asText());
+        assertEquals("Accept,Accept-Encoding", payload.get("headers").get("Vary").asText());
+        assertEquals("b=2", payload.get("headers").get("Set-Cookie").asText());
+        assertNull(payload.get("multiValueHeaders"));
+        assertEquals("{}", payload.get("body").asText());
+        assertFalse(payload.get("isBase64Encoded").asBoolean());
+    }
+
+    @Test
+    void writeResponse_MultiValueMode_KeepsEveryValue() throws Exception {
+        final AlbRequest request = codec.readRequest(multiValueEvent("/items"));
+        final AwsProxyResponse response = response();
+        response.setStatusDescription("404 Nothing Here");
+        final JsonNode payload = MAPPER.readTree(codec.writeResponse(request, response));
+
+        assertEquals("404 Nothing Here", payload.get("statusDescription").asText());
+        final JsonNode headers = payload.get("multiValueHeaders");
+        assertEquals(2, headers.get("Set-Cookie").size());
+        assertEquals("Accept-Encoding", headers.get("Vary").get(1).asText());
+        assertEquals("application/json", headers.get("Content-Type").get(0).asText());
+        assertNull(payload.get("headers"));
+    }
+
+    @Test
+    void statusDescription_UnknownStatus_UsesCode() {
+        assertEquals("200 OK", AlbCodec.statusDescription(new AwsProxyResponse(200)));
+        assertEquals("599", AlbCodec.statusDescription(new AwsProxyResponse(599)));
+    }
+
+    @Test
+    void handleRequest_AlbEvent_RespondsInAlbFormat() throws Exception {
+        final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(singleValueEvent("/hello/alb")), output,
+            new TestLambdaContext());
+
+        final JsonNode payload = MAPPER.readTree(output.toByteArray());
+        assertEquals(200, payload.get("statusCode").asInt());
+        assertEquals("200 OK", payload.get("statusDescription").asText());
+        assertEquals("Hello, alb", payload.get("body").asText());
+        assertTrue(payload.get("headers").isObject());
+        assertNull(payload.get("multiValueHeaders"));
+    }
+
+    @Test
+    void handleRequest_MultiValueAlbEvent_RespondsWithMultiValueHeaders() throws Exception {
+        final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final String event = new String(multiValueEvent("/hello/multi"), StandardCharsets.UTF_8)
+            .replace("\"POST\"", "\"GET\"").replace("\"isBase64Encoded\": true", "\"isBase64Encoded\": false");
+        handler.handleRequest(new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)), output,
+            new TestLambdaContext());
+
+        final JsonNode payload = MAPPER.readTree(output.toByteArray());
+        assertEquals("Hello, multi", payload.get("body").asText());
+        assertTrue(payload.get("multiValueHeaders").isObject());
+        assertNull(payload.get("headers"));
+    }
+
+    @Test
+    void handleRequest_MultiValueAlbRouteThrows_Returns500InAlbFormat() throws Exception {
+        final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final String event = new String(multiValueEvent("/error"), StandardCharsets.UTF_8)
+            .replace("\"POST\"", "\"GET\"").replace("\"isBase64Encoded\": true", "\"isBase64Encoded\": false");
+        handler.handleRequest(new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)), output,
+            new TestLambdaContext());
+
+        final JsonNode payload = MAPPER.readTree(output.toByteArray());
+        assertEquals(500, payload.get("statusCode").asInt());
+        assertEquals("500 Internal Server Error", payload.get("statusDescription").asText());
+        assertEquals("Server Error", payload.get("body").asText());
+        assertTrue(payload.get("multiValueHeaders").isObject());
+        assertNull(payload.get("headers"));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link EventFormat}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class EventFormatTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static EventFormat detect(final String json) throws IOException {
+        return EventFormat.detect(MAPPER.getFactory(), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void detect_HttpApiV2_FromVersion() throws Exception {
+        assertEquals(EventFormat.HTTP_API_V2, detect("{\"version\": \"2.0\", \"rawPath\": \"/\"}"));
+        assertEquals(EventFormat.HTTP_API_V2, detect("{\"headers\": {\"version\": \"1.0\"}, \"version\": \"2.0\"}"));
+        assertEquals(EventFormat.API_GATEWAY, detect("{\"version\": \"1.0\", \"httpMethod\": \"GET\"}"));
+    }
+
+    @Test
+    void detect_Alb_FromRequestContext() throws Exception {
+        assertEquals(EventFormat.ALB, detect("{\"requestContext\": {\"elb\": {\"targetGroupArn\": \"arn\"}},"
+            + " \"httpMethod\": \"GET\"}"));
+        assertEquals(EventFormat.ALB, detect("{\"httpMethod\": \"GET\", \"requestContext\": {\"a\": {\"elb\": 1},"
+            + " \"elb\": {}}}"));
+        assertEquals(EventFormat.ALB,
+            EventFormat.detect(MAPPER.getFactory(), MAPPER.writeValueAsBytes(
+                new AwsProxyRequestBuilder("/", "GET").alb().build())));
+    }
+
+    @Test
+    void detect_RestApi_IsApiGateway() throws Exception {
+        assertEquals(EventFormat.API_GATEWAY,
+            EventFormat.detect(MAPPER.getFactory(), MAPPER.writeValueAsBytes(
+                new AwsProxyRequestBuilder("/", "GET").build())));
+        assertEquals(EventFormat.API_GATEWAY, detect("{\"httpMethod\": \"GET\", \"requestContext\": {\"stage\": \"a\"},"
+            + " \"body\": \"{\\\"version\\\": \\\"2.0\\\"}\"}"));
+        assertEquals(EventFormat.API_GATEWAY, detect("[]"));
+        assertEquals(EventFormat.API_GATEWAY, detect("{}"));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.serverless.proxy.model.MultiValuedTreeMap;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.BasicLambdaProxyHandlerTest;
+import gg.sep.avenue.router.TestLambdaContext;
+
+/**
+ * Unit tests for {@link HttpApiV2Codec}, {@link HttpApiV2Request} and {@link QueryStrings}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class HttpApiV2CodecTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private final HttpApiV2Codec codec = new HttpApiV2Codec(MAPPER);
+
+    private static byte[] event(final String method, final String rawPath, final String rawQueryString) {
+        final String json = "{"
+            + "\"version\": \"2.0\","
+            + "\"routeKey\": \"$default\","
+            + "\"rawPath\": \"" + rawPath + "\","
+            + "\"rawQueryString\": \"" + rawQueryString + "\","
+            + "\"cookies\": [\"a=1\", \"b=2\"],"
+            + "\"headers\": {\"accept\": \"text/html, application/json\", \"x-region\": \"eu\"},"
+            + "\"queryStringParameters\": {\"ignored\": \"true\"},"
+            + "\"requestContext\": {"
+            + "  \"accountId\": \"123456789012\", \"apiId\": \"api-id\", \"requestId\": \"request-id\","
+            + "  \"stage\": \"$default\", \"timeEpoch\": 1583348638390,"
+            + "  \"http\": {\"method\": \"" + method + "\", \"path\": \"" + rawPath + "\","
+            + "    \"protocol\": \"HTTP/1.1\", \"sourceIp\": \"192.0.2.1\", \"userAgent\": \"agent\"}"
+            + "},"
+            + "\"pathParameters\": {\"proxy\": \"hello\"},"
+            + "\"body\": \"eyJ0ZXN0IjoiYm9keSJ9\","
+            + "\"isBase64Encoded\": true"
+            + "}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void readRequest_V2Event_MapsOntoProxyRequest() throws Exception {
+        final HttpApiV2Request request = codec.readRequest(event("POST", "/my/path", "a=1&b=x%20y&a=2&flag"));
+
+        assertEquals("POST", request.getHttpMethod());
+        assertEquals("/my/path", request.getPath());
+        assertEquals("/my/path", request.getRawPath());
+        assertEquals("$default", request.getRouteKey());
+        assertEquals("text/html, application/json", request.getMultiValueHeaders().getFirst("Accept"));
+        assertEquals("eu", request.getMultiValueHeaders().getFirst("X-Region"));
+        assertEquals(Arrays.asList("a=1", "b=2"), request.getCookies());
+        assertEquals("a=1; b=2", request.getMultiValueHeaders().getFirst("Cookie"));
+        assertEquals("eyJ0ZXN0IjoiYm9keSJ9", request.getBody());
+        assertTrue(request.isBase64Encoded());
+        assertEquals(Collections.singletonMap("proxy", "hello"), request.getPathParameters());
+        assertNull(request.getStageVariables());
+
+        assertEquals("request-id", request.getRequestContext().getRequestId());
+        assertEquals("$default", request.getRequestContext().getStage());
+        assertEquals("192.0.2.1", request.getRequestContext().getIdentity().getSourceIp());
+        assertEquals("agent", request.getRequestContext().getIdentity().getUserAgent());
+        assertEquals(1583348638390L, request.getRequestContext().getRequestTimeEpoch());
+
+        assertEquals("a=1&b=x%20y&a=2&flag", request.getQueryString());
+        final MultiValuedTreeMap<String, String> query = request.getMultiValueQueryStringParameters();
+        assertEquals(Arrays.asList("1", "2"), query.get("a"));
+        assertEquals("x y", query.getFirst("b"));
+        assertEquals("", query.getFirst("flag"));
+        assertNull(query.get("ignored"));
+    }
+
+    private static byte[] stagedEvent(final String stage, final String rawPath) {
+        return new String(event("GET", rawPath, ""), StandardCharsets.UTF_8)
+            .replace("\"stage\": \"$default\"", "\"stage\": \"" + stage + "\"")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void readRequest_EncodedRawPath_DecodesPath() throws Exception {
+        final HttpApiV2Request request = codec.readRequest(event("GET", "/hello/hello%20world+1", ""));
+        assertEquals("/hello/hello world+1", request.getPath());
+        assertEquals("/hello/hello%20world+1", request.getRawPath());
+    }
+
+    @Test
+    void readRequest_NamedStage_StripsStageFromPath() throws Exception {
+        final HttpApiV2Request request = codec.readRequest(stagedEvent("prod", "/prod/hello/v2"));
+        assertEquals("/hello/v2", request.getPath());
+        assertEquals("/prod/hello/v2", request.getRawPath());
+
+        assertEquals("/", HttpApiV2Codec.path("/prod", "prod"));
+        assertEquals("/production/x", HttpApiV2Codec.path("/production/x", "prod"));
+        assertEquals("/prod/x", HttpApiV2Codec.path("/prod/x", "$default"));
+    }
+
+    @Test
+    void handleRequest_EncodedPathInNamedStage_MatchesDecodedRoute() throws Exception {
+        final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(stagedEvent("prod", "/prod/hello/hello%20world")), output,
+            new TestLambdaContext());
+
+        final JsonNode payload = MAPPER.readTree(output.toByteArray());
+        assertEquals(200, payload.get("statusCode").asInt());
+        assertEquals("Hello, hello world", payload.get("body").asText());
+    }
+
+    @Test
+    void parse_EdgeCases() {
+        assertTrue(QueryStrings.parse(null).isEmpty());
+        assertTrue(QueryStrings.parse("&&").isEmpty());
+        final MultiValuedTreeMap<String, String> query = QueryStrings.parse("a+b=c+d&e=%ZZ&f==");
+        assertEquals("c d", query.getFirst("a b"));
+        assertEquals("%ZZ", query.getFirst("e"));
+        assertEquals("=", query.getFirst("f"));
+    }
+
+    @Test
+    void writeResponse_JoinsHeadersAndExtractsCookies() throws Exception {
+        final AwsProxyResponse response = AwsResponseBuilder.newBuilder()
+            .status(201)
+            .json()
+            .stringBody("{}")
+            .build();
+        response.getMultiValueHeaders().add("Vary", "Accept");
+        response.getMultiValueHeaders().add("Vary", "Accept-Encoding");
+        response.getMultiValueHeaders().add("Set-Cookie", "a=1; Path=/");
+        response.getMultiValueHeaders().add("Set-Cookie", "b=2");
+        response.setHeaders(Collections.singletonMap("Content-Type", "text/plain"));
+
+        final JsonNode payload = MAPPER.readTree(codec.writeResponse(response));
+        assertEquals(201, payload.get("statusCode").asInt());
+        assertEquals("application/json", payload.get("headers").get("Content-Type").asText());
+        assertEquals("Accept,Accept-Encoding", payload.get("headers").get("Vary").asText());
+        assertNull(payload.get("headers").get("Set-Cookie"));
+        assertEquals("a=1; Path=/", payload.get("cookies").get(0).asText());
+        assertEquals("b=2", payload.get("cookies").get(1).asText());
+        assertEquals("{}", payload.get("body").asText());
+        assertFalse(payload.get("isBase64Encoded").asBoolean());
+        assertNull(payload.get("multiValueHeaders"));
+    }
+
+    @Test
+    void handleRequest_V2Event_RespondsInV2Format() throws Exception {
+        final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(event("GET", "/hello/v2", "")), output,
+            new TestLambdaContext());
+
+        final JsonNode payload = MAPPER.readTree(output.toByteArray());
+        assertEquals(200, payload.get("statusCode").asInt());
+        assertEquals("Hello, v2", payload.get("body").asText());
+        assertTrue(payload.get("headers").isObject());
+        assertNull(payload.get("multiValueHeaders"));
+    }
+
+    @Test
+    void handleRequest_V2RouteThrows_Returns500InV2Format() throws Exception {
+        final BasicLambdaProxyHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(event("GET", "/error", "")), output,
+            new TestLambdaContext());
+
+        final JsonNode payload = MAPPER.readTree(output.toByteArray());
+        assertEquals(500, payload.get("statusCode").asInt());
+        assertEquals("Server Error", payload.get("body").asText());
+        assertTrue(payload.get("headers").isObject());
+        assertNull(payload.get("multiValueHeaders"));
+    }
+}
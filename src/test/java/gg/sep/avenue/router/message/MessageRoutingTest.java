@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AbstractRouteController;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.Body;
+import gg.sep.avenue.router.EventBridge;
+import gg.sep.avenue.router.MessageAttribute;
+import gg.sep.avenue.router.SQS;
+import gg.sep.avenue.router.TestLambdaContext;
+import gg.sep.avenue.router.core.MessageRoute;
+import gg.sep.avenue.router.event.EventFormat;
+import gg.sep.avenue.router.metrics.InvocationRecord;
+
+/**
+ * Unit tests for routing SQS batches and EventBridge events to {@link MessageRoute}s.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class MessageRoutingTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String ORDERS_ARN = "arn:aws:sqs:us-east-1:123456789012:orders";
+    private static final String FIFO_ARN = "arn:aws:sqs:us-east-1:123456789012:events.fifo";
+
+    public static class MessageController extends AbstractRouteController {
+        private final List<String> handled = new CopyOnWriteArrayList<>();
+        private final CountDownLatch concurrent = new CountDownLatch(2);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        @SQS(queues = "orders", attribute = "type", attributeValues = "order")
+        public void order(final SqsMessage message, @Body final String body,
+                          @MessageAttribute("tenant") final String tenant) {
+            if ("fail".equals(body)) {
+                throw new IllegalStateException("failed");
+            }
+            handled.add(message.getMessageId() + ":" + body + ":" + tenant);
+        }
+
+        @SQS(queues = ORDERS_ARN, attribute = "type", attributeValues = "refund")
+        public CompletableFuture<Void> refund(@Body final String body) {
+            if ("fail".equals(body)) {
+                final CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IllegalStateException("failed"));
+                return failed;
+            }
+            return CompletableFuture.runAsync(() -> handled.add("refund:" + body));
+        }
+
+        @SQS(queues = "parallel")
+        public void parallel(@Body final String body) throws InterruptedException {
+            concurrent.countDown();
+            // both messages must be handled at once for the latch to open
+            if (!concurrent.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("not concurrent");
+            }
+            handled.add(body);
+        }
+
+        @SQS(queues = "events.fifo")
+        public void fifo(@Body final String body) {
+            if (body.startsWith("fail")) {
+                throw new IllegalStateException("failed");
+            }
+            handled.add(body);
+        }
+
+        @SQS(queues = "slow")
+        public CompletableFuture<Void> slow() {
+            return new CompletableFuture<>();
+        }
+
+        @SQS(queues = "blocking")
+        public void blocking() {
+            try {
+                Thread.sleep(10_000);
+            } catch (final InterruptedException e) {
+                interrupted.countDown();
+            }
+        }
+
+        @EventBridge(sources = "aws.ec2", detailTypes = "EC2 Instance State-change Notification")
+        public void stateChange(final EventBridgeEvent event, @Body final String detail) {
+            if (detail.contains("fail")) {
+                throw new IllegalStateException("failed");
+            }
+            handled.add(event.getId() + ":" + detail);
+        }
+    }
+
+    public static class MessageHandler extends BasicLambdaProxyHandler {
+        private final MessageController controller = new MessageController();
+
+        public MessageHandler() {
+            super();
+            registerController(controller);
+        }
+    }
+
+    private MessageHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        handler = new MessageHandler();
+    }
+
+    private static String message(final String id, final String queueArn, final String body, final String type) {
+        return "{\"messageId\": \"" + id + "\", \"receiptHandle\": \"handle-" + id + "\", \"body\": \"" + body + "\","
+            + " \"attributes\": {\"ApproximateReceiveCount\": \"1\", \"MessageGroupId\": \"" + type + "\"},"
+            + " \"messageAttributes\": {\"type\": {\"stringValue\": \"" + type + "\", \"dataType\": \"String\"},"
+            + "   \"tenant\": {\"stringValue\": \"acme\", \"dataType\": \"String\"}},"
+            + " \"md5OfBody\": \"md5\", \"eventSource\": \"aws:sqs\", \"eventSourceARN\": \"" + queueArn + "\","
+            + " \"awsRegion\": \"us-east-1\"}";
+    }
+
+    private static byte[] sqsEvent(final String... messages) {
+        return ("{\"Records\": [" + String.join(",", messages) + "]}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] eventBridgeEvent(final String detail) {
+        return ("{\"version\": \"0\", \"id\": \"event-1\", \"detail-type\": \"EC2 Instance State-change Notification\","
+            + " \"source\": \"aws.ec2\", \"account\": \"123456789012\", \"time\": \"2019-12-01T00:00:00Z\","
+            + " \"region\": \"us-east-1\", \"resources\": [\"arn:instance\"], \"detail\": " + detail + "}")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Set<String> failures(final byte[] event, final Context context) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(event), output, context);
+        final Set<String> failures = new HashSet<>();
+        for (final JsonNode failure : MAPPER.readTree(output.toByteArray()).get("batchItemFailures")) {
+            failures.add(failure.get("itemIdentifier").asText());
+        }
+        return failures;
+    }
+
+    @Test
+    void detect_MessageEvents() throws Exception {
+        assertEquals(EventFormat.SQS, EventFormat.detect(MAPPER.getFactory(), sqsEvent(message("1", "a", "b", "c"))));
+        assertEquals(EventFormat.EVENTBRIDGE, EventFormat.detect(MAPPER.getFactory(), eventBridgeEvent("{}")));
+        assertEquals(EventFormat.API_GATEWAY, EventFormat.detect(MAPPER.getFactory(),
+            "{\"Records\": [{\"eventSource\": \"aws:s3\"}]}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void readSqsEvent_MapsMessages() throws Exception {
+        final MessageEvent event = new MessageCodec(MAPPER).readSqsEvent(
+            sqsEvent(message("1", ORDERS_ARN, "body", "order"), message("2", FIFO_ARN, "body", "group")));
+
+        assertEquals(EventFormat.SQS, event.getFormat());
+        assertEquals(2, event.getRecords().size());
+        final SqsMessage first = (SqsMessage) event.getRecords().get(0);
+        assertEquals("1", first.getRecordId());
+        assertEquals("handle-1", first.getReceiptHandle());
+        assertEquals(ORDERS_ARN, first.getEventSourceArn());
+        assertEquals("acme", first.getMessageAttribute("tenant"));
+        assertNull(first.getMessageAttribute("missing"));
+        assertNull(first.getMessageGroupId());
+        assertEquals("group", ((SqsMessage) event.getRecords().get(1)).getMessageGroupId());
+    }
+
+    @Test
+    void writeBatchResponse_ListsFailures() throws Exception {
+        final JsonNode response = MAPPER.readTree(new MessageCodec(MAPPER).writeBatchResponse(Arrays.asList("1", "2")));
+        assertEquals("2", response.get("batchItemFailures").get(1).get("itemIdentifier").asText());
+        assertEquals(0, MAPPER.readTree(new MessageCodec(MAPPER).writeBatchResponse(Collections.emptyList()))
+            .get("batchItemFailures").size());
+    }
+
+    @Test
+    void getMessageRoutes_BuildsRouteForEachAnnotatedMethod() {
+        assertEquals(7, new MessageController().getMessageRoutes().size());
+        assertThrows(IllegalStateException.class, () -> new AbstractRouteController() {
+            @SQS
+            public String invalid() {
+                return "";
+            }
+        }.getMessageRoutes());
+    }
+
+    @Test
+    void handleRequest_SqsBatch_RoutesMessagesAndReportsFailures() throws Exception {
+        final Set<String> failures = failures(sqsEvent(
+            message("1", ORDERS_ARN, "first", "order"),
+            message("2", ORDERS_ARN, "fail", "order"),
+            message("3", ORDERS_ARN, "second", "refund"),
+            message("4", ORDERS_ARN, "fail", "refund"),
+            message("5", ORDERS_ARN, "unrouted", "other"),
+            message("6", "arn:aws:sqs:us-east-1:123456789012:other", "unrouted", "order")), new TestLambdaContext());
+
+        assertEquals(new HashSet<>(Arrays.asList("2", "4", "5", "6")), failures);
+        assertEquals(new HashSet<>(Arrays.asList("1:first:acme", "refund:second")),
+            new HashSet<>(handler.controller.handled));
+    }
+
+    @Test
+    void handleRequest_SqsBatch_HandlesMessagesConcurrently() throws Exception {
+        final Set<String> failures = failures(sqsEvent(
+            message("1", "arn:parallel", "a", "x"), message("2", "arn:parallel", "b", "x")), new TestLambdaContext());
+
+        assertTrue(failures.isEmpty());
+        assertEquals(2, handler.controller.handled.size());
+    }
+
+    @Test
+    void handleRequest_FifoBatch_StopsGroupAtFirstFailure() throws Exception {
+        handler.setMessageParallelism(1);
+        final Set<String> failures = failures(sqsEvent(
+            message("1", FIFO_ARN, "a1", "a"),
+            message("2", FIFO_ARN, "b1", "b"),
+            message("3", FIFO_ARN, "fail-a2", "a"),
+            message("4", FIFO_ARN, "b2", "b"),
+            message("5", FIFO_ARN, "a3", "a")), new TestLambdaContext());
+
+        assertEquals(new HashSet<>(Arrays.asList("3", "5")), failures);
+        final List<String> handled = new ArrayList<>(handler.controller.handled);
+        assertEquals(Arrays.asList("a1", "b1", "b2"), handled);
+    }
+
+    @Test
+    void handleRequest_SqsBatchPastDeadline_ReportsUnhandledMessages() throws Exception {
+        final Context context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(400);
+        final Set<String> failures = failures(sqsEvent(
+            message("1", "arn:slow", "a", "x"), message("2", ORDERS_ARN, "b", "order")), context);
+
+        assertEquals(Collections.singleton("1"), failures);
+    }
+
+    @Test
+    void handleRequest_BlockingRoutePastDeadline_InterruptsAndReportsFailure() throws Exception {
+        handler.enableBlockingRouteTimeouts();
+        final Context context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(400);
+        final Set<String> failures = failures(sqsEvent(message("1", "arn:blocking", "a", "x")), context);
+
+        assertEquals(Collections.singleton("1"), failures);
+        assertTrue(handler.controller.interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void handleRequest_LessThanMarginRemaining_MessagesNotHandled() throws Exception {
+        final Context context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(100);
+        final Set<String> failures = failures(sqsEvent(
+            message("1", ORDERS_ARN, "a", "order"), message("2", ORDERS_ARN, "b", "order")), context);
+
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), failures);
+        assertThrows(IllegalStateException.class, () -> handler.handleRequest(
+            new ByteArrayInputStream(eventBridgeEvent("{\"state\":\"running\"}")), new ByteArrayOutputStream(),
+            context));
+        assertTrue(handler.controller.handled.isEmpty());
+    }
+
+    @Test
+    void handleRequest_MessageEvents_NotifyInvocationListeners() throws Exception {
+        final List<InvocationRecord> records = new ArrayList<>();
+        handler.addInvocationListener(records::add);
+        failures(sqsEvent(message("1", ORDERS_ARN, "a", "order")), new TestLambdaContext());
+        assertThrows(IllegalStateException.class, () -> handler.handleRequest(
+            new ByteArrayInputStream(eventBridgeEvent("{\"state\":\"fail\"}")), new ByteArrayOutputStream(),
+            new TestLambdaContext()));
+
+        assertEquals(2, records.size());
+        assertEquals("SQS", records.get(0).getRouteKey());
+        assertEquals(200, records.get(0).getStatusCode());
+        assertTrue(records.get(0).getResponseBytes() > 0);
+        assertEquals("EVENTBRIDGE", records.get(1).getRouteKey());
+        assertEquals(500, records.get(1).getStatusCode());
+    }
+
+    @Test
+    void handleRequest_EventBridgeEvent_InvokesRoute() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(eventBridgeEvent("{\"state\":\"running\"}")), output,
+            new TestLambdaContext());
+
+        assertEquals(Collections.singletonList("event-1:{\"state\":\"running\"}"), handler.controller.handled);
+        assertEquals(0, output.size());
+    }
+
+    @Test
+    void handleRequest_EventBridgeEventFails_Throws() {
+        final IllegalStateException e = assertThrows(IllegalStateException.class, () -> handler.handleRequest(
+            new ByteArrayInputStream(eventBridgeEvent("{\"state\":\"fail\"}")), new ByteArrayOutputStream(),
+            new TestLambdaContext()));
+        assertTrue(e.getMessage().contains("event-1"));
+        assertFalse(handler.controller.handled.contains("event-1"));
+    }
+}
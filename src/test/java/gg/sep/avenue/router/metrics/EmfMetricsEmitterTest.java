@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.core.Route;
+import gg.sep.avenue.router.core.RouteRequestMethod;
+
+/**
+ * Unit tests for {@link EmfMetricsEmitter}.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public class EmfMetricsEmitterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ByteArrayOutputStream captured;
+    private AtomicLong clock;
+
+    @BeforeEach
+    void setUp() {
+        captured = new ByteArrayOutputStream();
+        clock = new AtomicLong(1_000_000L);
+    }
+
+    private EmfMetricsEmitter.Builder emitter() {
+        return EmfMetricsEmitter.builder()
+            .withOutput(new PrintStream(captured, true))
+            .withClock(clock::get);
+    }
+
+    private static InvocationRecord record(final String routePath, final int status, final long bytes) {
+        final InvocationRecord record = new InvocationRecord(null);
+        if (routePath != null) {
+            record.setRoute(Route.builder()
+                .routeRequestMethod(RouteRequestMethod.GET)
+                .routePath(routePath)
+                .build());
+        }
+        record.complete(status, bytes);
+        return record;
+    }
+
+    private String[] lines() {
+        final String output = new String(captured.toByteArray(), StandardCharsets.UTF_8).trim();
+        return output.isEmpty() ? new String[0] : output.split("\\R");
+    }
+
+    @Test
+    void onInvocation_BelowThresholds_WritesNothing() {
+        final EmfMetricsEmitter emitter = emitter().withMaxInvocations(3).build();
+        emitter.onInvocation(record("/foo", 200, 10));
+        emitter.onInvocation(record("/foo", 200, 10));
+        assertEquals(0, lines().length);
+    }
+
+    @Test
+    void onInvocation_MaxInvocationsReached_FlushesOneLinePerRoute() throws Exception {
+        final EmfMetricsEmitter emitter = emitter().withMaxInvocations(4).build();
+        emitter.onInvocation(record("/foo", 200, 10));
+        emitter.onInvocation(record("/foo", 404, 20));
+        emitter.onInvocation(record("/bar", 500, 5));
+        emitter.onInvocation(record(null, 404, 1));
+
+        final String[] lines = lines();
+        assertEquals(3, lines.length);
+
+        final JsonNode foo = MAPPER.readTree(lines[0]);
+        assertEquals("GET /foo", foo.get("Route").asText());
+        assertEquals(2, foo.get("Requests").asInt());
+        assertEquals(1, foo.get("ClientErrors").asInt());
+        assertEquals(0, foo.get("ServerErrors").asInt());
+        assertEquals(2, foo.get("Latency").size());
+        assertEquals(30, foo.get("ResponseBytes").asLong());
+
+        assertEquals("warm", foo.get("InvocationType").asText());
+
+        final JsonNode directive = foo.get("_aws").get("CloudWatchMetrics").get(0);
+        assertEquals("Avenue", directive.get("Namespace").asText());
+        assertEquals("Route", directive.get("Dimensions").get(0).get(0).asText());
+        assertEquals("InvocationType", directive.get("Dimensions").get(1).get(1).asText());
+        assertEquals(1_000_000L, foo.get("_aws").get("Timestamp").asLong());
+
+        final JsonNode bar = MAPPER.readTree(lines[1]);
+        assertEquals("GET /bar", bar.get("Route").asText());
+        assertEquals(1, bar.get("ServerErrors").asInt());
+
+        assertEquals("UNMATCHED", MAPPER.readTree(lines[2]).get("Route").asText());
+    }
+
+    @Test
+    void onInvocation_FlushIntervalElapsed_Flushes() throws Exception {
+        final EmfMetricsEmitter emitter = emitter()
+            .withNamespace("Custom")
+            .withFlushInterval(Duration.ofSeconds(10))
+            .build();
+        emitter.onInvocation(record("/foo", 200, 10));
+        assertEquals(0, lines().length);
+
+        clock.addAndGet(Duration.ofSeconds(10).toMillis());
+        emitter.onInvocation(record("/foo", 200, 10));
+        final String[] lines = lines();
+        assertEquals(1, lines.length);
+        final JsonNode node = MAPPER.readTree(lines[0]);
+        assertEquals(2, node.get("Requests").asInt());
+        assertEquals("Custom", node.get("_aws").get("CloudWatchMetrics").get(0).get("Namespace").asText());
+    }
+
+    @Test
+    void onInvocation_ColdStart_WritesColdRouteAndInitLines() throws Exception {
+        final EmfMetricsEmitter emitter = emitter().build();
+        final InvocationRecord cold = new InvocationRecord(null);
+        cold.markColdStart(InitTimings.builder()
+            .constructionNanos(3_000_000)
+            .registerControllerNanos(2_000_000)
+            .routeBuildNanos(1_000_000)
+            .build());
+        cold.complete(200, 10);
+        emitter.onInvocation(cold);
+        emitter.onInvocation(record(null, 200, 10));
+        emitter.flush();
+
+        final String[] lines = lines();
+        assertEquals(3, lines.length);
+        assertEquals("cold", MAPPER.readTree(lines[0]).get("InvocationType").asText());
+        assertEquals("warm", MAPPER.readTree(lines[1]).get("InvocationType").asText());
+
+        final JsonNode init = MAPPER.readTree(lines[2]);
+        assertEquals("cold", init.get("InvocationType").asText());
+        assertEquals(3.0, init.get("InitConstruction").asDouble());
+        assertEquals(2.0, init.get("InitRegisterControllers").asDouble());
+        assertEquals(1.0, init.get("InitRouteBuild").asDouble());
+
+        emitter.onInvocation(record(null, 200, 10));
+        emitter.flush();
+        assertEquals(4, lines().length);
+    }
+
+    @Test
+    void flush_ResetsAggregates() {
+        final EmfMetricsEmitter emitter = emitter().build();
+        emitter.onInvocation(record("/foo", 200, 10));
+        emitter.flush();
+        assertEquals(1, lines().length);
+        emitter.flush();
+        assertEquals(1, lines().length);
+    }
+
+    @Test
+    void onInvocation_LatencyValuesCappedAtEmfLimit() throws Exception {
+        final EmfMetricsEmitter emitter = emitter().withMaxInvocations(500).build();
+        for (int i = 0; i < 150; i++) {
+            emitter.onInvocation(record("/foo", 200, 1));
+        }
+        emitter.flush();
+        final JsonNode node = MAPPER.readTree(lines()[0]);
+        assertEquals(150, node.get("Requests").asInt());
+        assertEquals(EmfMetricsEmitter.MAX_VALUES_PER_METRIC, node.get("Latency").size());
+        assertTrue(lines()[0].indexOf('\n') < 0);
+    }
+
+    @Test
+    void builder_InvalidMaxInvocations_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> EmfMetricsEmitter.builder().withMaxInvocations(0));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.core.Route;
+import gg.sep.avenue.router.core.RouteRequestMethod;
+
+/**
+ * Unit tests for {@link ResourceUsageSummary} and {@link ResourceAccounting}.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public class ResourceUsageSummaryTest {
+
+    private static InvocationRecord record(final String routePath, final long allocated, final long cpu) {
+        final InvocationRecord record = new InvocationRecord(null);
+        record.setRoute(Route.builder()
+            .routeRequestMethod(RouteRequestMethod.GET)
+            .routePath(routePath)
+            .build());
+        record.resourceAccountingStarted(0, 0);
+        record.resourceAccountingEnded(allocated, cpu);
+        record.complete(200, 0);
+        return record;
+    }
+
+    @Test
+    void summarize_OrdersRoutesByTotalAllocation() {
+        final ResourceUsageSummary summary = new ResourceUsageSummary(Duration.ofMinutes(1), () -> 0L);
+        summary.onInvocation(record("/small", 1024, 1_000_000));
+        summary.onInvocation(record("/large", 4096, 2_000_000));
+        summary.onInvocation(record("/large", 2048, 4_000_000));
+
+        final String line = summary.summarize();
+        assertTrue(line.indexOf("GET /large") < line.indexOf("GET /small"), line);
+        assertTrue(line.contains("[GET /large count=2 allocAvgKb=3 allocMaxKb=4 allocTotalKb=6 cpuAvgMs=3.000"), line);
+        assertTrue(line.contains("[GET /small count=1 allocAvgKb=1"), line);
+    }
+
+    @Test
+    void onInvocation_WithoutMeasurements_IsIgnored() {
+        final ResourceUsageSummary summary = new ResourceUsageSummary(Duration.ofMinutes(1), () -> 0L);
+        summary.onInvocation(new InvocationRecord(null));
+        assertEquals("Route resource usage:", summary.summarize());
+    }
+
+    @Test
+    void onInvocation_IntervalElapsed_ResetsSummary() {
+        final AtomicLong clock = new AtomicLong();
+        final ResourceUsageSummary summary = new ResourceUsageSummary(Duration.ofSeconds(1), clock::get);
+        summary.onInvocation(record("/foo", 1024, 1));
+        clock.addAndGet(1000);
+        summary.onInvocation(record("/foo", 1024, 1));
+        assertEquals("Route resource usage:", summary.summarize());
+    }
+
+    @Test
+    void resourceAccounting_MeasuresAllocation() {
+        final ResourceAccounting accounting = ResourceAccounting.create();
+        final InvocationRecord record = new InvocationRecord(null);
+        accounting.begin(record);
+        final byte[] allocation = new byte[1024 * 1024];
+        accounting.end(record);
+        assertTrue(allocation.length > 0);
+        assertTrue(record.getAllocatedBytes() >= 1024 * 1024, "allocated=" + record.getAllocatedBytes());
+        assertTrue(record.getCpuNanos() >= 0);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.TestLambdaContext;
+
+/**
+ * Unit tests for {@link SlowRequestSampler}.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public class SlowRequestSamplerTest {
+
+    private static InvocationRecord record(final String path, final long durationMillis, final long startMillis) {
+        final long startNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        final InvocationRecord record = new InvocationRecord(new TestLambdaContext(), startNanos, startMillis);
+        record.setRequest(new AwsProxyRequestBuilder(path, "POST")
+            .header("X-Test", "value")
+            .body("body")
+            .build());
+        record.complete(200, 10);
+        return record;
+    }
+
+    @Test
+    void onInvocation_OverThreshold_CapturesSnapshot() {
+        final SlowRequestSampler sampler = SlowRequestSampler.builder()
+            .withThreshold(Duration.ofMillis(100))
+            .build();
+        sampler.onInvocation(record("/fast", 1, 0));
+        sampler.onInvocation(record("/slow", 200, 0));
+
+        final List<RequestSnapshot> snapshots = sampler.drain();
+        assertEquals(1, snapshots.size());
+        final RequestSnapshot snapshot = snapshots.get(0);
+        assertEquals("/slow", snapshot.getPath());
+        assertEquals("POST", snapshot.getHttpMethod());
+        assertEquals(4, snapshot.getBodyBytes());
+        assertTrue(snapshot.getHeaderCount() >= 1);
+        assertTrue(snapshot.getHeaderBytes() >= "X-Testvalue".length());
+        assertTrue(snapshot.getTotalNanos() >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(InvocationPhase.values().length, snapshot.getPhaseNanos().size());
+        assertTrue(snapshot.getRemainingTimeMillis() >= 0);
+
+        assertTrue(sampler.drain().isEmpty());
+    }
+
+    @Test
+    void onInvocation_TopN_CapturesSlowestBelowThreshold() {
+        final SlowRequestSampler sampler = SlowRequestSampler.builder()
+            .withThreshold(Duration.ofSeconds(10))
+            .withTopN(2)
+            .build();
+        sampler.onInvocation(record("/a", 10, 0));
+        sampler.onInvocation(record("/b", 50, 0));
+        sampler.onInvocation(record("/c", 30, 0));
+        sampler.onInvocation(record("/d", 1, 0));
+
+        final List<RequestSnapshot> snapshots = sampler.drain();
+        assertEquals(2, snapshots.size());
+        assertEquals("/b", snapshots.get(0).getPath());
+        assertEquals("/c", snapshots.get(1).getPath());
+    }
+
+    @Test
+    void onInvocation_IntervalElapsed_FlushesPreviousInterval() {
+        final SlowRequestSampler sampler = SlowRequestSampler.builder()
+            .withThreshold(Duration.ofSeconds(10))
+            .withTopN(1)
+            .withInterval(Duration.ofSeconds(1))
+            .build();
+        sampler.onInvocation(record("/first-interval", 10, 0));
+        sampler.onInvocation(record("/second-interval", 5, 1000));
+
+        final List<RequestSnapshot> snapshots = sampler.drain();
+        assertEquals(1, snapshots.size());
+        assertEquals("/second-interval", snapshots.get(0).getPath());
+    }
+
+    @Test
+    void onInvocation_RingBufferFull_OverwritesOldest() {
+        final SlowRequestSampler sampler = SlowRequestSampler.builder()
+            .withThreshold(Duration.ZERO)
+            .withCapacity(2)
+            .build();
+        sampler.onInvocation(record("/1", 1, 0));
+        sampler.onInvocation(record("/2", 1, 0));
+        sampler.onInvocation(record("/3", 1, 0));
+
+        final List<RequestSnapshot> snapshots = sampler.drain();
+        assertEquals(2, snapshots.size());
+        assertEquals("/2", snapshots.get(0).getPath());
+        assertEquals("/3", snapshots.get(1).getPath());
+    }
+
+    @Test
+    void builder_InvalidValues_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> SlowRequestSampler.builder().withCapacity(0));
+        assertThrows(IllegalArgumentException.class, () -> SlowRequestSampler.builder().withTopN(-1));
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.BasicLambdaProxyHandlerTest;
+
+/**
+ * Unit tests for {@link LambdaRuntimeBootstrap} and {@link LambdaRuntimeClient}, using a
+ * local stand-in for the Lambda Runtime API.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class LambdaRuntimeBootstrapTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String RUNTIME_PATH = "/2018-06-01/runtime";
+
+    private HttpServer server;
+    private LambdaRuntimeClient client;
+    private final LinkedBlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final Map<String, byte[]> responses = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> errors = new ConcurrentHashMap<>();
+    private final Map<String, String> responseModes = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<String> abortedResponses = new LinkedBlockingQueue<>();
+    private final AtomicInteger failingNextRequests = new AtomicInteger();
+    private volatile String traceId = "Root=trace";
+    private int nextRequestId;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(RUNTIME_PATH + "/invocation/", this::handleInvocation);
+        server.start();
+        client = new LambdaRuntimeClient("127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private void handleInvocation(final HttpExchange exchange) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        if (path.endsWith("/next")) {
+            if (failingNextRequests.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            final String event;
+            try {
+                event = events.take();
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            }
+            final byte[] body = event.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Lambda-Runtime-Aws-Request-Id", "request-" + (++nextRequestId));
+            exchange.getResponseHeaders().add("Lambda-Runtime-Deadline-Ms",
+                String.valueOf(System.currentTimeMillis() + 30_000));
+            exchange.getResponseHeaders().add("Lambda-Runtime-Invoked-Function-Arn", "arn:test");
+            if (traceId != null) {
+                exchange.getResponseHeaders().add("Lambda-Runtime-Trace-Id", traceId);
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+            return;
+        }
+        final String requestId = path.substring((RUNTIME_PATH + "/invocation/").length(), path.lastIndexOf('/'));
+        final byte[] body;
+        try {
+            body = readAll(exchange.getRequestBody());
+        } catch (final IOException e) {
+            abortedResponses.add(requestId);
+            throw e;
+        }
+        if (path.endsWith("/response")) {
+            responses.put(requestId, body);
+            responseModes.put(requestId,
+                String.valueOf(exchange.getRequestHeaders().getFirst("Lambda-Runtime-Function-Response-Mode")));
+        } else {
+            errors.put(requestId, body);
+        }
+        exchange.sendResponseHeaders(202, -1);
+        exchange.close();
+    }
+
+    private static byte[] readAll(final InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private static String event(final String path) throws IOException {
+        return MAPPER.writeValueAsString(new AwsProxyRequestBuilder(path, "GET").build());
+    }
+
+    @Test
+    void processNextInvocation_SendsHandlerResponse() throws Exception {
+        final LambdaRuntimeBootstrap bootstrap =
+            new LambdaRuntimeBootstrap(new BasicLambdaProxyHandlerTest.TestHandler(), client);
+        events.add(event("/hello/first"));
+        events.add(event("/hello/second"));
+        bootstrap.processNextInvocation();
+        bootstrap.processNextInvocation();
+
+        final AwsProxyResponse first = MAPPER.readValue(responses.get("request-1"), AwsProxyResponse.class);
+        assertEquals(200, first.getStatusCode());
+        assertEquals("Hello, first", first.getBody());
+        final AwsProxyResponse second = MAPPER.readValue(responses.get("request-2"), AwsProxyResponse.class);
+        assertEquals("Hello, second", second.getBody());
+        assertEquals("null", responseModes.get("request-1"));
+        assertEquals("Root=trace", System.getProperty("com.amazonaws.xray.traceHeader"));
+    }
+
+    @Test
+    void processNextInvocation_LargePayload_GrowsBuffer() throws Exception {
+        final StringBuilder path = new StringBuilder("/hello/");
+        for (int i = 0; i < 100_000; i++) {
+            path.append('x');
+        }
+        final LambdaRuntimeBootstrap bootstrap =
+            new LambdaRuntimeBootstrap(new BasicLambdaProxyHandlerTest.TestHandler(), client);
+        events.add(event(path.toString()));
+        bootstrap.processNextInvocation();
+
+        final AwsProxyResponse response = MAPPER.readValue(responses.get("request-1"), AwsProxyResponse.class);
+        assertTrue(response.getBody().endsWith("xxxxx"));
+        assertEquals(100_000 + "Hello, ".length(), response.getBody().length());
+    }
+
+    @Test
+    void processNextInvocation_NoTraceId_ClearsTraceProperty() throws Exception {
+        final LambdaRuntimeBootstrap bootstrap =
+            new LambdaRuntimeBootstrap(new BasicLambdaProxyHandlerTest.TestHandler(), client);
+        events.add(event("/hello/first"));
+        bootstrap.processNextInvocation();
+        assertEquals("Root=trace", System.getProperty("com.amazonaws.xray.traceHeader"));
+
+        traceId = null;
+        events.add(event("/hello/second"));
+        bootstrap.processNextInvocation();
+        assertNull(System.getProperty("com.amazonaws.xray.traceHeader"));
+    }
+
+    @Test
+    void processNextInvocation_PayloadLargerThanRetainedBuffer_BufferNotRetained() throws Exception {
+        final StringBuilder path = new StringBuilder("/hello/");
+        for (int i = 0; i < LambdaRuntimeClient.MAX_RETAINED_BUFFER_SIZE; i++) {
+            path.append('x');
+        }
+        final LambdaRuntimeBootstrap bootstrap =
+            new LambdaRuntimeBootstrap(new BasicLambdaProxyHandlerTest.TestHandler(), client);
+        events.add(event(path.toString()));
+        bootstrap.processNextInvocation();
+
+        final AwsProxyResponse response = MAPPER.readValue(responses.get("request-1"), AwsProxyResponse.class);
+        assertEquals(LambdaRuntimeClient.MAX_RETAINED_BUFFER_SIZE + "Hello, ".length(), response.getBody().length());
+        assertTrue(client.getPayloadBufferSize() <= LambdaRuntimeClient.MAX_RETAINED_BUFFER_SIZE);
+    }
+
+    @Test
+    void run_RuntimeApiFailsTransiently_RetriesNextInvocation() throws Exception {
+        final RequestStreamHandler failingHandler = (input, output, context) -> {
+            throw new OutOfMemoryError("stop the runtime");
+        };
+        failingNextRequests.set(2);
+        events.add("{}");
+        assertThrows(OutOfMemoryError.class, new LambdaRuntimeBootstrap(failingHandler, client)::run);
+
+        assertTrue(failingNextRequests.get() < 0);
+        assertEquals("stop the runtime", MAPPER.readTree(errors.get("request-1")).get("errorMessage").asText());
+    }
+
+    @Test
+    void processNextInvocation_HandlerFailsBeforeResponding_PostsError() throws Exception {
+        final RequestStreamHandler failingHandler = (input, output, context) -> {
+            throw new IllegalStateException("handler failure");
+        };
+        final LambdaRuntimeBootstrap bootstrap = new LambdaRuntimeBootstrap(failingHandler, client);
+        events.add("{}");
+        bootstrap.processNextInvocation();
+
+        final JsonNode error = MAPPER.readTree(errors.get("request-1"));
+        assertEquals("handler failure", error.get("errorMessage").asText());
+        assertEquals(IllegalStateException.class.getName(), error.get("errorType").asText());
+        assertTrue(responses.isEmpty());
+    }
+
+    @Test
+    void processNextInvocation_HandlerThrowsError_PostsErrorAndRethrows() throws Exception {
+        final RequestStreamHandler failingHandler = (input, output, context) -> {
+            throw new OutOfMemoryError("handler out of memory");
+        };
+        final LambdaRuntimeBootstrap bootstrap = new LambdaRuntimeBootstrap(failingHandler, client);
+        events.add("{}");
+        assertThrows(OutOfMemoryError.class, bootstrap::processNextInvocation);
+
+        final JsonNode error = MAPPER.readTree(errors.get("request-1"));
+        assertEquals("handler out of memory", error.get("errorMessage").asText());
+        assertEquals(OutOfMemoryError.class.getName(), error.get("errorType").asText());
+        assertTrue(responses.isEmpty());
+    }
+
+    @Test
+    void processNextInvocation_HandlerFailsAfterResponding_AbortsResponse() throws Exception {
+        final RequestStreamHandler failingHandler = (input, output, context) -> {
+            output.write("{\"partial\":".getBytes(StandardCharsets.UTF_8));
+            output.flush();
+            throw new IOException("body failure");
+        };
+        final LambdaRuntimeBootstrap bootstrap = new LambdaRuntimeBootstrap(failingHandler, client);
+        events.add("{}");
+        bootstrap.processNextInvocation();
+
+        assertEquals("request-1", abortedResponses.poll(5, TimeUnit.SECONDS));
+        assertTrue(responses.isEmpty());
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    void getRemainingTimeInMillis_NoDeadline_ClampsToIntRange() {
+        assertEquals(Integer.MAX_VALUE,
+            new RuntimeContext("request-1", "arn:test", null, Long.MAX_VALUE).getRemainingTimeInMillis());
+        assertEquals(0, new RuntimeContext("request-1", "arn:test", null, 0).getRemainingTimeInMillis());
+    }
+
+    @Test
+    void processNextInvocation_HandlerDoesNotCloseStream_ResponseStillSent() throws Exception {
+        final RequestStreamHandler handler = (input, output, context) -> {
+            output.write(("{\"remaining\":" + context.getRemainingTimeInMillis() + "}").getBytes(StandardCharsets.UTF_8));
+        };
+        final LambdaRuntimeBootstrap bootstrap = new LambdaRuntimeBootstrap(handler, client);
+        events.add("{}");
+        bootstrap.processNextInvocation();
+
+        final JsonNode response = MAPPER.readTree(responses.get("request-1"));
+        assertTrue(response.get("remaining").asInt() > 0);
+    }
+
+    @Test
+    void processNextInvocation_StreamingHandler_SendsStreamedResponse() throws Exception {
+        final BasicLambdaProxyHandlerTest.TestHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        handler.setResponseStreaming(true);
+        final LambdaRuntimeBootstrap bootstrap = new LambdaRuntimeBootstrap(handler, client);
+        events.add("{\"version\": \"2.0\", \"rawPath\": \"/hello/stream\", \"rawQueryString\": \"\","
+            + " \"headers\": {}, \"requestContext\": {\"http\": {\"method\": \"GET\"}}}");
+        events.add(event("/hello/buffered"));
+        bootstrap.processNextInvocation();
+        bootstrap.processNextInvocation();
+
+        assertEquals("streaming", responseModes.get("request-1"));
+        final String streamed = new String(responses.get("request-1"), StandardCharsets.UTF_8);
+        assertTrue(streamed.startsWith("{\"statusCode\":200,"));
+        assertTrue(streamed.endsWith("}\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000Hello, stream"));
+
+        // only function URL requests are streamed, but the handler's responses are always sent in streaming mode
+        assertEquals("streaming", responseModes.get("request-2"));
+        final AwsProxyResponse buffered = MAPPER.readValue(responses.get("request-2"), AwsProxyResponse.class);
+        assertEquals("Hello, buffered", buffered.getBody());
+    }
+
+    @Test
+    void loadHandler_InstantiatesHandlerClass() throws Exception {
+        final String handlerName = BasicLambdaProxyHandlerTest.TestHandler.class.getName() + "::handleRequest";
+        assertTrue(LambdaRuntimeBootstrap.loadHandler(handlerName) instanceof BasicLambdaProxyHandlerTest.TestHandler);
+        assertThrows(IllegalArgumentException.class, () -> LambdaRuntimeBootstrap.loadHandler(null));
+        assertThrows(ClassNotFoundException.class, () -> LambdaRuntimeBootstrap.loadHandler("does.not.Exist"));
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.BasicLambdaProxyHandlerTest;
+import gg.sep.avenue.router.metrics.InvocationListener;
+import gg.sep.avenue.router.metrics.InvocationRecord;
+
+/**
+ * Unit tests for {@link EmbeddedServer}, using raw sockets as the client.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class EmbeddedServerTest {
+
+    private EmbeddedServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private Socket connect(final RequestDispatcher dispatcher) throws IOException {
+        start(EmbeddedServer.builder(dispatcher).withWorkerThreads(2));
+        return connect();
+    }
+
+    private void start(final EmbeddedServer.Builder builder) throws IOException {
+        server = builder
+            .withHost("127.0.0.1")
+            .withPort(0)
+            .withMaxRequestBytes(1024)
+            .withIdleTimeout(Duration.ofSeconds(30))
+            .build();
+        server.start();
+    }
+
+    private Socket connect() throws IOException {
+        final Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    /**
+     * Sends one request on each of a number of connections at once, then reads all of the responses.
+     */
+    private List<String> concurrentRequests(final int count) throws IOException {
+        final List<Socket> sockets = new ArrayList<>();
+        final List<String> responses = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                final Socket socket = connect();
+                sockets.add(socket);
+                send(socket, "GET /" + i + " HTTP/1.1\r\n\r\n");
+            }
+            for (final Socket socket : sockets) {
+                responses.add(readResponse(socket));
+            }
+        } finally {
+            for (final Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        return responses;
+    }
+
+    private static void send(final Socket socket, final String request) throws IOException {
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+    }
+
+    /**
+     * Reads the status line and headers of one response.
+     */
+    private static String readHead(final InputStream in) throws IOException {
+        final ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString("ISO-8859-1").endsWith("\r\n\r\n")) {
+            final int next = in.read();
+            if (next < 0) {
+                throw new IOException("Connection closed");
+            }
+            head.write(next);
+        }
+        return head.toString("ISO-8859-1");
+    }
+
+    /**
+     * Reads one response, returning its head and body separated by a blank line.
+     */
+    private static String readResponse(final Socket socket) throws IOException {
+        final InputStream in = socket.getInputStream();
+        final String headText = readHead(in);
+        int contentLength = 0;
+        for (final String line : headText.split("\r\n")) {
+            if (line.toLowerCase(Locale.ENGLISH).startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        final byte[] body = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            read += in.read(body, read, contentLength - read);
+        }
+        return headText + new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static CompletionStage<AwsProxyResponse> echo(final AwsProxyRequest request) {
+        final AwsProxyResponse response = new AwsProxyResponse(200);
+        response.addHeader("X-Method", request.getHttpMethod());
+        response.addHeader("X-Path", request.getPath());
+        response.addHeader("X-Query", String.valueOf(request.getMultiValueQueryStringParameters().get("q")));
+        response.addHeader("X-Source", request.getRequestContext().getIdentity().getSourceIp());
+        response.setBody(request.getBody());
+        return CompletableFuture.completedFuture(response);
+    }
+
+    @Test
+    void dispatch_HandlerRoute_ReturnsRouteResponse() throws IOException {
+        final BasicLambdaProxyHandlerTest.TestHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        try (Socket socket = connect(handler::dispatch)) {
+            send(socket, "GET /hello/world HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            final String response = readResponse(socket);
+            assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"));
+            assertTrue(response.contains("Connection: keep-alive\r\n"));
+            assertTrue(response.endsWith("\r\n\r\nHello, world"));
+
+            send(socket, "GET /missing HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            assertTrue(readResponse(socket).startsWith("HTTP/1.1 404 Not Found\r\n"));
+        }
+    }
+
+    @Test
+    void stop_BuiltForHandler_FlushesInvocationListeners() throws IOException {
+        final BasicLambdaProxyHandlerTest.TestHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        final AtomicInteger flushes = new AtomicInteger();
+        handler.addInvocationListener(new InvocationListener() {
+            @Override
+            public void onInvocation(final InvocationRecord record) {
+            }
+
+            @Override
+            public void flush() {
+                flushes.incrementAndGet();
+            }
+        });
+        start(EmbeddedServer.builder(handler));
+        try (Socket socket = connect()) {
+            send(socket, "GET /hello/world HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            assertTrue(readResponse(socket).startsWith("HTTP/1.1 200 OK\r\n"));
+        }
+        assertEquals(0, flushes.get());
+
+        server.stop();
+        assertEquals(1, flushes.get());
+        server.stop();
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    void dispatch_RequestParts_ConvertedToProxyRequest() throws IOException {
+        try (Socket socket = connect(EmbeddedServerTest::echo)) {
+            send(socket, "POST /a%20b/c+d?q=1&q=two%21 HTTP/1.1\r\nContent-Type: application/json\r\n"
+                + "Content-Length: 11\r\n\r\n{\"a\": true}");
+            final String response = readResponse(socket);
+            assertTrue(response.contains("X-Method: POST\r\n"));
+            assertTrue(response.contains("X-Path: /a b/c+d\r\n"));
+            assertTrue(response.contains("X-Query: [1, two!]\r\n"));
+            assertTrue(response.contains("X-Source: 127.0.0.1\r\n"));
+            assertTrue(response.endsWith("{\"a\": true}"));
+        }
+    }
+
+    @Test
+    void dispatch_PipelinedRequests_RespondsInOrder() throws IOException {
+        try (Socket socket = connect(EmbeddedServerTest::echo)) {
+            send(socket, "POST /one HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc"
+                + "POST /two HTTP/1.1\r\nContent-Length: 3\r\nConnection: close\r\n\r\ndef");
+            final String first = readResponse(socket);
+            final String second = readResponse(socket);
+            assertTrue(first.contains("X-Path: /one\r\n") && first.endsWith("abc"));
+            assertTrue(second.contains("X-Path: /two\r\n") && second.endsWith("def"));
+            assertTrue(second.contains("Connection: close\r\n"));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void dispatch_Http10WithoutKeepAlive_ClosesConnection() throws IOException {
+        try (Socket socket = connect(EmbeddedServerTest::echo)) {
+            send(socket, "GET /one HTTP/1.0\r\n\r\n");
+            assertTrue(readResponse(socket).contains("Connection: close\r\n"));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void dispatch_LargeResponse_WrittenCompletely() throws IOException {
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            body.append((char) ('a' + i % 26));
+        }
+        try (Socket socket = connect(request -> {
+            final AwsProxyResponse response = new AwsProxyResponse(200);
+            response.setBody(body.toString());
+            return CompletableFuture.completedFuture(response);
+        })) {
+            send(socket, "GET / HTTP/1.1\r\n\r\n");
+            assertTrue(readResponse(socket).endsWith("\r\n\r\n" + body));
+        }
+    }
+
+    @Test
+    void dispatch_HeadRequest_OmitsBody() throws IOException {
+        try (Socket socket = connect(EmbeddedServerTest::echo)) {
+            send(socket, "HEAD /one HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc"
+                + "GET /two HTTP/1.1\r\n\r\n");
+            final String head = readHead(socket.getInputStream());
+            assertTrue(head.contains("Content-Length: 3\r\n"));
+            assertTrue(readResponse(socket).contains("X-Path: /two\r\n"));
+        }
+    }
+
+    @Test
+    void dispatch_HeadRequestForGetRoute_SendsRouteContentLength() throws IOException {
+        final BasicLambdaProxyHandlerTest.TestHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        try (Socket socket = connect(handler::dispatch)) {
+            send(socket, "HEAD /hello/world HTTP/1.1\r\n\r\nGET /hello/two HTTP/1.1\r\n\r\n");
+            final String head = readHead(socket.getInputStream());
+            assertTrue(head.startsWith("HTTP/1.1 200"));
+            assertEquals(head.indexOf("Content-Length: "), head.lastIndexOf("Content-Length: "));
+            assertTrue(head.contains("Content-Length: 12\r\n"));
+            assertTrue(readResponse(socket).endsWith("Hello, two"));
+        }
+    }
+
+    @Test
+    void dispatch_DispatcherThrows_Returns500() throws IOException {
+        try (Socket socket = connect(request -> {
+            throw new IllegalStateException("broken");
+        })) {
+            send(socket, "GET / HTTP/1.1\r\n\r\n");
+            assertTrue(readResponse(socket).startsWith("HTTP/1.1 500 Internal Server Error\r\n"));
+        }
+    }
+
+    @Test
+    void parse_InvalidRequests_RejectedWithStatus() throws IOException {
+        try (Socket socket = connect(EmbeddedServerTest::echo)) {
+            send(socket, "NONSENSE\r\n\r\n");
+            assertTrue(readResponse(socket).startsWith("HTTP/1.1 400 Bad Request\r\n"));
+        }
+        server.stop();
+        try (Socket socket = connect(EmbeddedServerTest::echo)) {
+            send(socket, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+            assertTrue(readResponse(socket).startsWith("HTTP/1.1 501 Not Implemented\r\n"));
+        }
+        server.stop();
+        try (Socket socket = connect(EmbeddedServerTest::echo)) {
+            send(socket, "POST / HTTP/1.1\r\nContent-Length: 1025\r\n\r\n");
+            assertTrue(readResponse(socket).startsWith("HTTP/1.1 413 Request Too Long\r\n"));
+        }
+    }
+
+    @Test
+    void dispatch_MaxConcurrentRequests_LimitsInFlightRequests() throws IOException {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        start(EmbeddedServer.builder(request -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return CompletableFuture.completedFuture(new AwsProxyResponse(204));
+        }).withWorkerThreads(4).withMaxConcurrentRequests(2));
+
+        final List<String> responses = concurrentRequests(8);
+        assertEquals(8, responses.size());
+        responses.forEach(response -> assertTrue(response.startsWith("HTTP/1.1 204 ")));
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    void dispatch_VirtualThreads_ManyBlockingRequestsInFlight() throws IOException {
+        // on Java 21 the versioned classes must be in use, rather than the Java 8 stub
+        final String specification = System.getProperty("java.specification.version");
+        if (!specification.startsWith("1.") && Integer.parseInt(specification) >= 21) {
+            assertTrue(VirtualThreadSupport.isAvailable(), "Java 21 VirtualThreadSupport is not on the classpath");
+        }
+        if (!VirtualThreadSupport.isAvailable()) {
+            assertThrows(UnsupportedOperationException.class, () ->
+                EmbeddedServer.builder(EmbeddedServerTest::echo).withVirtualThreads(true).build());
+            return;
+        }
+        // every request blocks until all have arrived, which a small platform pool could never satisfy
+        final int requests = 200;
+        final CountDownLatch allArrived = new CountDownLatch(requests);
+        start(EmbeddedServer.builder(request -> {
+            allArrived.countDown();
+            try {
+                allArrived.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return CompletableFuture.completedFuture(new AwsProxyResponse(allArrived.getCount() == 0 ? 204 : 500));
+        }).withWorkerThreads(1).withVirtualThreads(true).withPinningDiagnostics(Duration.ofMillis(20)));
+
+        concurrentRequests(requests).forEach(response -> assertTrue(response.startsWith("HTTP/1.1 204 ")));
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.streaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AbstractRouteController;
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.GET;
+import gg.sep.avenue.router.Query;
+import gg.sep.avenue.router.TestLambdaContext;
+
+/**
+ * Unit tests for {@link JsonArrayBody}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class JsonArrayBodyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectWriter WRITER = MAPPER.writer();
+
+    public static final class Row {
+        private final int id;
+
+        Row(final int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return "row-" + id;
+        }
+    }
+
+    public static class ExportController extends AbstractRouteController {
+        @GET(paths = "/export")
+        public AwsProxyResponse export(@Query("after") final String after) {
+            final int start = after == null ? 0 : Integer.parseInt(after) + 1;
+            final Stream<Row> rows = IntStream.range(start, 100_000).mapToObj(Row::new);
+            return AwsResponseBuilder.newBuilder()
+                .jsonArrayBody(JsonArrayBody.builder(rows, WRITER)
+                    .withMaximumBufferedSize(64 * 1024)
+                    .withCursor(row -> String.valueOf(row.getId()))
+                    .build())
+                .build();
+        }
+
+        @GET(paths = "/export-all")
+        public AwsProxyResponse exportAll() {
+            return AwsResponseBuilder.newBuilder()
+                .jsonArrayBody(rows(Integer.MAX_VALUE), WRITER)
+                .build();
+        }
+    }
+
+    public static class ExportHandler extends BasicLambdaProxyHandler {
+        public ExportHandler() {
+            super();
+            registerController(new ExportController());
+        }
+    }
+
+    /**
+     * Produces rows lazily, so that none are held in memory.
+     */
+    private static Iterator<Row> rows(final int count) {
+        return IntStream.range(0, count).mapToObj(Row::new).iterator();
+    }
+
+    /**
+     * Discards what is written to it, keeping only the size and the last bytes.
+     */
+    private static final class TailStream extends OutputStream {
+        private long size;
+        private final StringBuilder tail = new StringBuilder();
+
+        @Override
+        public void write(final int b) {
+            size++;
+            tail.append((char) b);
+            if (tail.length() > 64) {
+                tail.delete(0, tail.length() - 64);
+            }
+        }
+    }
+
+    @Test
+    void writeTo_WritesEveryElement() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonArrayBody.builder(rows(3), WRITER).build().writeTo(output);
+
+        final JsonNode array = MAPPER.readTree(output.toByteArray());
+        assertEquals(3, array.size());
+        assertEquals("row-2", array.get(2).get("name").asText());
+    }
+
+    @Test
+    void writeTo_ManyElements_WritesAsProduced() throws Exception {
+        final TailStream output = new TailStream();
+        JsonArrayBody.builder(rows(1_000_000), WRITER).build().writeTo(output);
+
+        assertTrue(output.size > 20_000_000);
+        assertTrue(output.tail.toString().endsWith("{\"id\":999999,\"name\":\"row-999999\"}]"));
+    }
+
+    @Test
+    void writeTo_Stream_ClosesStream() throws Exception {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Stream<String> elements = Stream.of("a", "b").onClose(() -> closed.set(true));
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonArrayBody.builder(elements, WRITER).build().writeTo(output);
+
+        assertEquals("[\"a\",\"b\"]", new String(output.toByteArray(), StandardCharsets.UTF_8));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void writeBuffered_WithinLimit_WritesEveryElement() throws Exception {
+        final AwsProxyResponse response = AwsResponseBuilder.newBuilder()
+            .jsonArrayBody(Arrays.asList(1, 2, 3).iterator(), WRITER)
+            .build();
+        final AwsProxyResponse buffered = ((StreamingResponse) response).buffer();
+
+        assertEquals("[1,2,3]", buffered.getBody());
+        assertEquals("application/json", buffered.getMultiValueHeaders().getFirst("Content-Type"));
+        assertNull(buffered.getMultiValueHeaders().getFirst("X-Next-Cursor"));
+        final AwsProxyResponse empty = ((StreamingResponse) AwsResponseBuilder.newBuilder()
+            .jsonArrayBody(Collections.emptyIterator(), WRITER).build()).buffer();
+        assertEquals("[]", empty.getBody());
+    }
+
+    @Test
+    void writeBuffered_ExceedsLimit_StopsWithCursor() throws Exception {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Stream<Integer> elements = IntStream.iterate(0, i -> i + 1).boxed().onClose(() -> closed.set(true));
+        final StreamingResponse response = new StreamingResponse(200, null, JsonArrayBody.builder(elements, WRITER)
+            .withMaximumBufferedSize(100)
+            .withCursor(String::valueOf)
+            .withCursorHeader("X-Cursor")
+            .build());
+        final AwsProxyResponse buffered = response.buffer();
+
+        final JsonNode array = MAPPER.readTree(buffered.getBody());
+        assertTrue(buffered.getBody().length() <= 100);
+        assertTrue(buffered.getBody().length() > 95);
+        final int last = array.get(array.size() - 1).asInt();
+        assertEquals(String.valueOf(last), buffered.getMultiValueHeaders().getFirst("X-Cursor"));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void writeBuffered_ExceedsLimitWithoutCursor_Fails() {
+        final StreamingResponse response = new StreamingResponse(200, null, JsonArrayBody.builder(rows(100), WRITER)
+            .withMaximumBufferedSize(100)
+            .build());
+        assertThrows(IOException.class, response::buffer);
+        final StreamingResponse tooLarge = new StreamingResponse(200, null, JsonArrayBody.builder(rows(1), WRITER)
+            .withMaximumBufferedSize(10)
+            .withCursor(row -> String.valueOf(row.getId()))
+            .build());
+        assertThrows(IOException.class, tooLarge::buffer);
+    }
+
+    @Test
+    void builder_InvalidValues_Throw() {
+        assertThrows(IllegalArgumentException.class, () -> JsonArrayBody.builder((Iterator<?>) null, WRITER));
+        assertThrows(IllegalArgumentException.class, () -> JsonArrayBody.builder(rows(1), null));
+        assertThrows(IllegalArgumentException.class, () -> JsonArrayBody.builder(rows(1), WRITER)
+            .withMaximumBufferedSize(2));
+        assertThrows(IllegalArgumentException.class, () -> JsonArrayBody.builder(rows(1), WRITER)
+            .withCursorHeader(""));
+    }
+
+    @Test
+    void handleRequest_BufferedExport_PagesWithCursor() throws Exception {
+        final ExportHandler handler = new ExportHandler();
+        String after = null;
+        int total = 0;
+        int pages = 0;
+        do {
+            final AwsProxyRequestBuilder request = new AwsProxyRequestBuilder("/export", "GET");
+            if (after != null) {
+                request.queryString("after", after);
+            }
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            handler.handleRequest(request.buildStream(), output, new TestLambdaContext());
+            final AwsProxyResponse response = MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class);
+            assertEquals(200, response.getStatusCode());
+            final JsonNode page = MAPPER.readTree(response.getBody());
+            assertEquals(total, page.get(0).get("id").asInt());
+            total += page.size();
+            pages++;
+            after = response.getMultiValueHeaders().getFirst("X-Next-Cursor");
+        } while (after != null);
+
+        assertEquals(100_000, total);
+        assertTrue(pages > 10);
+    }
+
+    @Test
+    void handleRequest_BufferedExportWithoutCursor_Fails() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ExportHandler().handleRequest(new AwsProxyRequestBuilder("/export-all", "GET").buildStream(), output,
+            new TestLambdaContext());
+        assertEquals(500, MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class).getStatusCode());
+    }
+
+    @Test
+    void handleRequest_StreamedExport_WritesEveryElement() throws Exception {
+        final ExportHandler handler = new ExportHandler();
+        handler.setResponseStreaming(true);
+        final byte[] event = ("{\"version\": \"2.0\", \"rawPath\": \"/export\", \"rawQueryString\": \"\","
+            + " \"headers\": {}, \"requestContext\": {\"http\": {\"method\": \"GET\"}}}")
+            .getBytes(StandardCharsets.UTF_8);
+        final TailStream output = new TailStream();
+        handler.handleRequest(new ByteArrayInputStream(event), output, new TestLambdaContext());
+
+        assertTrue(output.size > 64 * 1024);
+        assertTrue(output.tail.toString().endsWith("{\"id\":99999,\"name\":\"row-99999\"}]"));
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.streaming;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import com.amazonaws.serverless.proxy.model.AwsProxyResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gg.sep.avenue.router.AbstractRouteController;
+import gg.sep.avenue.router.AwsResponseBuilder;
+import gg.sep.avenue.router.BasicLambdaProxyHandler;
+import gg.sep.avenue.router.GET;
+import gg.sep.avenue.router.TestLambdaContext;
+
+/**
+ * Unit tests for {@link StreamingResponse}, and streaming responses to function URL requests.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod", "checkstyle:MissingJavadocType"})
+public class StreamingResponseTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int DELIMITER_LENGTH = 8;
+
+    public static class StreamingController extends AbstractRouteController {
+        @GET(paths = "/chunks")
+        public AwsProxyResponse chunks() {
+            final Iterator<byte[]> chunks = Arrays.asList(bytes("one,"), bytes("two,"), bytes("three")).iterator();
+            return AwsResponseBuilder.newBuilder()
+                .setHeader("Content-Type", "text/csv")
+                .setHeader("Set-Cookie", "session=1")
+                .chunkedBody(chunks)
+                .build();
+        }
+
+        @GET(paths = "/broken")
+        public AwsProxyResponse broken() {
+            return AwsResponseBuilder.newBuilder().streamingBody(output -> {
+                output.write(bytes("partial"));
+                output.flush();
+                throw new IOException("source failed");
+            }).build();
+        }
+
+        @GET(paths = "/plain")
+        public AwsProxyResponse plain() {
+            return AwsResponseBuilder.newBuilder().status(201).stringBody("plain body").build();
+        }
+
+        @GET(paths = "/error")
+        public AwsProxyResponse error() {
+            throw new IllegalStateException("route failed");
+        }
+    }
+
+    public static class StreamingHandler extends BasicLambdaProxyHandler {
+        public StreamingHandler() {
+            super();
+            registerController(new StreamingController());
+        }
+    }
+
+    /**
+     * Stand-in for the runtime's response stream, which records the bytes sent by each flush.
+     */
+    private static final class ChunkRecordingStream extends OutputStream {
+        private final List<byte[]> chunks = new ArrayList<>();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private boolean closed;
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (closed) {
+                throw new IOException("closed");
+            }
+            pending.write(b);
+        }
+
+        @Override
+        public void flush() {
+            if (pending.size() > 0) {
+                chunks.add(pending.toByteArray());
+                pending.reset();
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+            closed = true;
+        }
+    }
+
+    private StreamingHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        handler = new StreamingHandler();
+        handler.setResponseStreaming(true);
+    }
+
+    private static byte[] bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(final byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] functionUrlEvent(final String path) {
+        return bytes("{\"version\": \"2.0\", \"routeKey\": \"$default\", \"rawPath\": \"" + path + "\","
+            + " \"rawQueryString\": \"\", \"headers\": {\"host\": \"example.lambda-url.us-east-1.on.aws\"},"
+            + " \"requestContext\": {\"requestId\": \"request-id\", \"http\": {\"method\": \"GET\","
+            + " \"path\": \"" + path + "\"}}, \"isBase64Encoded\": false}");
+    }
+
+    private ChunkRecordingStream handle(final byte[] event) throws IOException {
+        final ChunkRecordingStream output = new ChunkRecordingStream();
+        handler.handleRequest(new ByteArrayInputStream(event), output, new TestLambdaContext());
+        assertTrue(output.closed);
+        return output;
+    }
+
+    /**
+     * Splits the prelude from a streamed payload, checking the delimiter which separates it from the body.
+     */
+    private static JsonNode prelude(final byte[] payload) throws IOException {
+        int end = 0;
+        while (payload[end] != 0) {
+            end++;
+        }
+        assertArrayEquals(new byte[DELIMITER_LENGTH], Arrays.copyOfRange(payload, end, end + DELIMITER_LENGTH));
+        return MAPPER.readTree(Arrays.copyOfRange(payload, 0, end));
+    }
+
+    private static byte[] body(final byte[] payload) {
+        int end = 0;
+        while (payload[end] != 0) {
+            end++;
+        }
+        return Arrays.copyOfRange(payload, end + DELIMITER_LENGTH, payload.length);
+    }
+
+    @Test
+    void handleRequest_StreamingResponse_SendsPreludeThenEachChunk() throws Exception {
+        final ChunkRecordingStream output = handle(functionUrlEvent("/chunks"));
+
+        assertEquals(4, output.chunks.size());
+        final JsonNode prelude = prelude(output.chunks.get(0));
+        assertEquals(200, prelude.get("statusCode").asInt());
+        assertEquals("text/csv", prelude.get("headers").get("Content-Type").asText());
+        assertEquals("session=1", prelude.get("cookies").get(0).asText());
+        assertFalse(prelude.has("body"));
+        assertEquals(0, body(output.chunks.get(0)).length);
+        assertEquals("one,", text(output.chunks.get(1)));
+        assertEquals("two,", text(output.chunks.get(2)));
+        assertEquals("three", text(output.chunks.get(3)));
+    }
+
+    @Test
+    void handleRequest_BodyWriterFails_ThrowsWithoutCompletingStream() throws Exception {
+        final ChunkRecordingStream output = new ChunkRecordingStream();
+        final IOException thrown = assertThrows(IOException.class, () -> handler.handleRequest(
+            new ByteArrayInputStream(functionUrlEvent("/broken")), output, new TestLambdaContext()));
+
+        assertEquals("source failed", thrown.getCause().getMessage());
+        assertFalse(output.closed);
+        assertEquals(2, output.chunks.size());
+        assertEquals(200, prelude(output.chunks.get(0)).get("statusCode").asInt());
+        assertEquals("partial", text(output.chunks.get(1)));
+    }
+
+    @Test
+    void handleRequest_OrdinaryResponse_SentInStreamingFormat() throws Exception {
+        final ChunkRecordingStream output = handle(functionUrlEvent("/plain"));
+
+        assertEquals(1, output.chunks.size());
+        assertEquals(201, prelude(output.chunks.get(0)).get("statusCode").asInt());
+        assertEquals("plain body", text(body(output.chunks.get(0))));
+
+        final byte[] error = handle(functionUrlEvent("/error")).chunks.get(0);
+        assertEquals(500, prelude(error).get("statusCode").asInt());
+        assertEquals("Server Error", text(body(error)));
+
+        final byte[] notFound = handle(functionUrlEvent("/missing")).chunks.get(0);
+        assertEquals(404, prelude(notFound).get("statusCode").asInt());
+    }
+
+    @Test
+    void handleRequest_StreamingDisabled_BuffersBody() throws Exception {
+        handler.setResponseStreaming(false);
+        final ChunkRecordingStream output = handle(functionUrlEvent("/chunks"));
+
+        assertEquals(1, output.chunks.size());
+        final JsonNode response = MAPPER.readTree(output.chunks.get(0));
+        assertEquals("one,two,three", response.get("body").asText());
+        assertEquals("session=1", response.get("cookies").get(0).asText());
+    }
+
+    @Test
+    void handleRequest_RestApiRequest_BuffersBody() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new AwsProxyRequestBuilder("/chunks", "GET").buildStream(), output,
+            new TestLambdaContext());
+        assertEquals("one,two,three", MAPPER.readValue(output.toByteArray(), AwsProxyResponse.class).getBody());
+
+        final ByteArrayOutputStream broken = new ByteArrayOutputStream();
+        handler.handleRequest(new AwsProxyRequestBuilder("/broken", "GET").buildStream(), broken,
+            new TestLambdaContext());
+        assertEquals(500, MAPPER.readValue(broken.toByteArray(), AwsProxyResponse.class).getStatusCode());
+    }
+
+    @Test
+    void dispatch_StreamingResponse_BuffersBody() throws Exception {
+        final AwsProxyResponse response = handler.dispatch(new AwsProxyRequestBuilder("/chunks", "GET").build())
+            .toCompletableFuture().get();
+        assertFalse(response instanceof StreamingResponse);
+        assertEquals("one,two,three", response.getBody());
+    }
+
+    @Test
+    void buffer_Base64Encoded_EncodesBody() throws Exception {
+        final StreamingResponse response = new StreamingResponse(200, null, output -> output.write(new byte[]{1, 2}));
+        assertNull(response.getBody());
+        response.setBase64Encoded(true);
+        final AwsProxyResponse buffered = response.buffer();
+        assertEquals("AQI=", buffered.getBody());
+        assertTrue(buffered.isBase64Encoded());
+        assertEquals(200, buffered.getStatusCode());
+    }
+
+    @Test
+    void build_StringBodyAfterStreamingBody_IsNotStreamed() {
+        final AwsProxyResponse response = AwsResponseBuilder.newBuilder()
+            .streamingBody(output -> output.write(1))
+            .stringBody("text")
+            .build();
+        assertFalse(response instanceof StreamingResponse);
+        assertEquals("text", response.getBody());
+    }
+}
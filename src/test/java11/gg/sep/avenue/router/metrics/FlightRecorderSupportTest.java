@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 sep.gg <seputaes@sep.gg>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package gg.sep.avenue.router.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.amazonaws.serverless.proxy.internal.testutils.AwsProxyRequestBuilder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import gg.sep.avenue.router.BasicLambdaProxyHandlerTest;
+import gg.sep.avenue.router.TestLambdaContext;
+
+/**
+ * Unit tests for the JFR events committed by the Java 11 {@link FlightRecorderSupport}.
+ */
+@SuppressWarnings({"checkstyle:MagicNumber", "checkstyle:MissingJavadocMethod"})
+public class FlightRecorderSupportTest {
+
+    private static final List<String> PHASE_EVENTS = Arrays.asList(
+        "gg.sep.avenue.RouteMatch",
+        "gg.sep.avenue.ParameterBind",
+        "gg.sep.avenue.RouteInvoke",
+        "gg.sep.avenue.ResponseSerialize");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void handleRequest_RecordingEnabled_CommitsPhaseEventsWithRouteAndPath() throws Exception {
+        final BasicLambdaProxyHandlerTest.TestHandler handler = new BasicLambdaProxyHandlerTest.TestHandler();
+        final Path dump = tempDir.resolve("avenue.jfr");
+        try (Recording recording = new Recording()) {
+            PHASE_EVENTS.forEach(name -> recording.enable(name).withoutThreshold());
+            recording.start();
+            handler.handleRequest(new AwsProxyRequestBuilder("/hello/world", "GET").buildStream(),
+                new ByteArrayOutputStream(), new TestLambdaContext());
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        final Map<String, RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+            .filter(event -> PHASE_EVENTS.contains(event.getEventType().getName()))
+            .collect(Collectors.toMap(event -> event.getEventType().getName(), Function.identity()));
+        for (final String name : PHASE_EVENTS) {
+            final RecordedEvent event = events.get(name);
+            assertNotNull(event, name + " was not committed");
+            assertEquals("GET", event.getString("httpMethod"));
+            assertEquals("/hello/world", event.getString("path"));
+            assertEquals("/hello/<string:name>", event.getString("routeTemplate"));
+        }
+        assertEquals(200, events.get("gg.sep.avenue.ResponseSerialize").getInt("statusCode"));
+    }
+
+    @Test
+    void begin_EventNotEnabled_ReturnsNullWithoutEvent() {
+        for (final InvocationPhase phase : InvocationPhase.values()) {
+            assertNull(FlightRecorderSupport.begin(phase), phase + " began an event without a recording");
+        }
+    }
+}